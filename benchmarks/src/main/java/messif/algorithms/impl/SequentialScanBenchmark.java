@@ -0,0 +1,129 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.algorithms.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.objects.impl.ObjectFloatVectorL2;
+import messif.objects.keys.AbstractObjectKey;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.query.KNNQueryOperation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the end-to-end evaluation of the k-nearest neighbors queries
+ * by the {@link SequentialScan} and {@link ParallelSequentialScan} algorithms
+ * on synthetic data (uniformly distributed random vectors).
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequentialScanBenchmark {
+
+    /** Number of the parallel buckets, zero means the {@link SequentialScan} */
+    @Param({"0", "4"})
+    public int parallelization;
+
+    /** Number of objects in the algorithm */
+    @Param({"100000"})
+    public int count;
+
+    /** Dimension of the vectors */
+    @Param({"64"})
+    public int dimension;
+
+    /** Number of nearest neighbors to search */
+    @Param({"10", "100"})
+    public int k;
+
+    /** Benchmarked algorithm */
+    private Algorithm algorithm;
+    /** Query objects */
+    private LocalAbstractObject[] queries;
+    /** Index of the next query object */
+    private int queryIndex;
+
+    /**
+     * Creates a random vector object.
+     * @param random the generator of the vector data
+     * @param locator the locator of the object
+     * @return a new random vector object
+     */
+    private LocalAbstractObject createObject(Random random, String locator) {
+        float[] data = new float[dimension];
+        for (int i = 0; i < dimension; i++)
+            data[i] = random.nextFloat();
+        LocalAbstractObject object = new ObjectFloatVectorL2(data);
+        object.setObjectKey(new AbstractObjectKey(locator));
+        return object;
+    }
+
+    /**
+     * Creates the algorithm and inserts the random objects.
+     * @throws Exception if there was an error creating the algorithm or inserting the objects
+     */
+    @Setup
+    public void setup() throws Exception {
+        algorithm = parallelization > 0 ? new ParallelSequentialScan(parallelization) : new SequentialScan();
+        Random random = new Random(1);
+        List<LocalAbstractObject> objects = new ArrayList<LocalAbstractObject>(count);
+        for (int i = 0; i < count; i++)
+            objects.add(createObject(random, "object" + i));
+        algorithm.executeOperation(new BulkInsertOperation(objects));
+        queries = new LocalAbstractObject[100];
+        for (int i = 0; i < queries.length; i++)
+            queries[i] = createObject(random, "query" + i);
+    }
+
+    /**
+     * Destroys the algorithm.
+     * @throws Throwable if there was an error destroying the algorithm
+     */
+    @TearDown
+    public void destroy() throws Throwable {
+        algorithm.destroy();
+    }
+
+    @Benchmark
+    public KNNQueryOperation knn() throws Exception {
+        LocalAbstractObject query = queries[queryIndex];
+        queryIndex = (queryIndex + 1) % queries.length;
+        return algorithm.executeOperation(new KNNQueryOperation(query, k));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.index.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import messif.buckets.BucketStorageException;
+import messif.buckets.index.LocalAbstractObjectOrder;
+import messif.buckets.index.Search;
+import messif.buckets.storage.impl.DiskStorage;
+import messif.objects.LocalAbstractObject;
+import messif.objects.impl.ObjectFloatVectorL2;
+import messif.objects.keys.AbstractObjectKey;
+import messif.objects.nio.CachingSerializator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the search for objects by their locators in the {@link LongStorageMemoryIndex}.
+ * The point search uses the binary search in the memory index and reads the found object
+ * from the {@link DiskStorage}, the range search returns all the objects with the locator
+ * in a random interval.
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongStorageMemoryIndexBenchmark {
+
+    /** Number of objects in the index */
+    @Param({"10000", "100000"})
+    public int count;
+
+    /** Number of objects returned by the range search */
+    @Param({"100"})
+    public int rangeSize;
+
+    /** Benchmarked index */
+    private LongStorageMemoryIndex<String, LocalAbstractObject> index;
+    /** Generator of the random keys */
+    private Random random;
+
+    /**
+     * Creates the storage and the index with random objects.
+     * @throws IOException if there was an error creating the storage file
+     * @throws BucketStorageException if there was an error storing the objects
+     */
+    @Setup
+    public void setup() throws IOException, BucketStorageException {
+        File file = File.createTempFile("messif_benchmark", ".ds");
+        file.deleteOnExit();
+        DiskStorage<LocalAbstractObject> storage = new DiskStorage<LocalAbstractObject>(
+                LocalAbstractObject.class, file, false, 0, false, 1, 0, Long.MAX_VALUE,
+                new CachingSerializator<LocalAbstractObject>(ObjectFloatVectorL2.class, new Class<?>[] { ObjectFloatVectorL2.class })
+        );
+        index = new LongStorageMemoryIndex<String, LocalAbstractObject>(storage, LocalAbstractObjectOrder.locatorToLocalObjectComparator);
+        random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            float[] data = new float[32];
+            for (int j = 0; j < data.length; j++)
+                data[j] = random.nextFloat();
+            LocalAbstractObject object = new ObjectFloatVectorL2(data);
+            object.setObjectKey(new AbstractObjectKey(getLocator(random.nextInt(count))));
+            index.add(object);
+        }
+    }
+
+    /**
+     * Deletes the index and its storage.
+     * @throws Throwable if there was an error closing the storage
+     */
+    @TearDown
+    public void destroy() throws Throwable {
+        index.destroy();
+    }
+
+    /**
+     * Returns the locator for the given number.
+     * The number is zero-padded so that the locators are sorted by the numbers.
+     * @param number the number to convert
+     * @return the locator
+     */
+    private static String getLocator(int number) {
+        return String.format("object%09d", number);
+    }
+
+    @Benchmark
+    public LocalAbstractObject searchKey() {
+        Search<LocalAbstractObject> search = index.search(getLocator(random.nextInt(count)), true);
+        LocalAbstractObject object = search.next() ? search.getCurrentObject() : null;
+        search.close();
+        return object;
+    }
+
+    @Benchmark
+    public int searchRange() {
+        int from = random.nextInt(count - rangeSize);
+        Search<LocalAbstractObject> search = index.search(getLocator(from), getLocator(from + rangeSize));
+        int found = 0;
+        while (search.next())
+            found++;
+        search.close();
+        return found;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.storage.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import messif.buckets.BucketStorageException;
+import messif.buckets.index.Search;
+import messif.objects.LocalAbstractObject;
+import messif.objects.impl.ObjectFloatVectorL2;
+import messif.objects.keys.AbstractObjectKey;
+import messif.objects.nio.CachingSerializator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the storing, random reading and sequential scanning of objects in a {@link DiskStorage}.
+ * The storage is created in a temporary file that is deleted after the benchmark.
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiskStorageBenchmark {
+
+    /** Number of objects in the storage */
+    public static final int OBJECT_COUNT = 10000;
+
+    /** Dimension of the stored vectors */
+    @Param({"64", "1024"})
+    public int dimension;
+
+    /** Flag whether the objects are read from the memory-mapped file */
+    @Param({"false", "true"})
+    public boolean mmap;
+
+    /** Benchmarked storage */
+    private DiskStorage<LocalAbstractObject> storage;
+    /** Objects to store */
+    private LocalAbstractObject[] objects;
+    /** Addresses of the stored objects */
+    private long[] addresses;
+    /** Generator of the random read positions */
+    private Random random;
+    /** Index of the next object to store */
+    private int storeIndex;
+
+    /**
+     * Generates the random objects.
+     */
+    @Setup
+    public void setup() {
+        random = new Random(1);
+        objects = new LocalAbstractObject[OBJECT_COUNT];
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            float[] data = new float[dimension];
+            for (int j = 0; j < dimension; j++)
+                data[j] = random.nextFloat();
+            objects[i] = new ObjectFloatVectorL2(data);
+            objects[i].setObjectKey(new AbstractObjectKey("object" + i));
+        }
+    }
+
+    /**
+     * Creates a new storage with all the objects for every iteration,
+     * so that the {@link #store} benchmark does not grow the file indefinitely.
+     * @throws IOException if there was an error creating the storage file
+     * @throws BucketStorageException if there was an error storing the objects
+     */
+    @Setup(Level.Iteration)
+    public void createStorage() throws IOException, BucketStorageException {
+        File file = File.createTempFile("messif_benchmark", ".ds");
+        file.deleteOnExit();
+        storage = new DiskStorage<LocalAbstractObject>(
+                LocalAbstractObject.class, file, false, 0, false, mmap, 1, 0, Long.MAX_VALUE,
+                new CachingSerializator<LocalAbstractObject>(ObjectFloatVectorL2.class, new Class<?>[] { ObjectFloatVectorL2.class })
+        );
+        addresses = new long[OBJECT_COUNT];
+        for (int i = 0; i < OBJECT_COUNT; i++)
+            addresses[i] = storage.store(objects[i]).getAddress();
+        storage.flush(false);
+        storeIndex = 0;
+    }
+
+    /**
+     * Deletes the storage of the finished iteration.
+     * @throws Throwable if there was an error closing the storage
+     */
+    @TearDown(Level.Iteration)
+    public void destroyStorage() throws Throwable {
+        File file = storage.getFile();
+        storage.destroy();
+        file.delete();
+    }
+
+    @Benchmark
+    public long store() throws BucketStorageException {
+        LocalAbstractObject object = objects[storeIndex];
+        storeIndex = (storeIndex + 1) % OBJECT_COUNT;
+        return storage.store(object).getAddress();
+    }
+
+    @Benchmark
+    public LocalAbstractObject read() throws BucketStorageException {
+        return storage.read(addresses[random.nextInt(OBJECT_COUNT)]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OBJECT_COUNT)
+    public LocalAbstractObject scan() {
+        Search<LocalAbstractObject> search = storage.search();
+        LocalAbstractObject object = null;
+        while (search.next())
+            object = search.getCurrentObject();
+        search.close();
+        return object;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects.impl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link VectorDistanceKernel} implementations on vectors of different dimensions.
+ * Additional kernels can be compared by passing their class names to the {@code kernel} parameter
+ * (e.g. {@code -p kernel=my.package.MyKernel}).
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorDistanceKernelBenchmark {
+
+    /** Class name of the benchmarked kernel */
+    @Param({"messif.objects.impl.ScalarVectorDistanceKernel", "messif.objects.impl.UnrolledVectorDistanceKernel"})
+    public String kernel;
+
+    /** Dimension of the vectors */
+    @Param({"64", "512", "1024", "4096"})
+    public int dimension;
+
+    /** Benchmarked kernel instance */
+    private VectorDistanceKernel kernelInstance;
+    /** First float vector */
+    private float[] floats1;
+    /** Second float vector */
+    private float[] floats2;
+    /** Threshold that abandons the float L2 distance computation in the middle of the vectors */
+    private float floatL2Threshold;
+    /** First byte vector */
+    private byte[] bytes1;
+    /** Second byte vector */
+    private byte[] bytes2;
+    /** First double vector */
+    private double[] doubles1;
+    /** Second double vector */
+    private double[] doubles2;
+
+    /**
+     * Creates the kernel and generates the random vectors.
+     */
+    @Setup
+    public void setup() {
+        kernelInstance = VectorDistanceKernel.createInstance(kernel);
+        Random random = new Random(1);
+        floats1 = new float[dimension];
+        floats2 = new float[dimension];
+        doubles1 = new double[dimension];
+        doubles2 = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            floats1[i] = random.nextFloat();
+            floats2[i] = random.nextFloat();
+            doubles1[i] = random.nextDouble();
+            doubles2[i] = random.nextDouble();
+        }
+        bytes1 = new byte[dimension];
+        bytes2 = new byte[dimension];
+        random.nextBytes(bytes1);
+        random.nextBytes(bytes2);
+        floatL2Threshold = kernelInstance.l2(floats1, floats2) / 2;
+    }
+
+    @Benchmark
+    public float floatL1() {
+        return kernelInstance.l1(floats1, floats2);
+    }
+
+    @Benchmark
+    public float floatL2() {
+        return kernelInstance.l2(floats1, floats2);
+    }
+
+    @Benchmark
+    public float floatL2Abandoned() {
+        return kernelInstance.l2(floats1, floats2, floatL2Threshold);
+    }
+
+    @Benchmark
+    public float floatLmax() {
+        return kernelInstance.lmax(floats1, floats2);
+    }
+
+    @Benchmark
+    public float floatCosine() {
+        return kernelInstance.cosine(floats1, floats2);
+    }
+
+    @Benchmark
+    public float doubleL2() {
+        return kernelInstance.l2(doubles1, doubles2);
+    }
+
+    @Benchmark
+    public float byteL1() {
+        return kernelInstance.l1(bytes1, bytes2);
+    }
+
+    @Benchmark
+    public float byteL2() {
+        return kernelInstance.l2(bytes1, bytes2);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import messif.objects.LocalAbstractObject;
+import messif.objects.impl.ObjectFloatVectorL2;
+import messif.objects.keys.AbstractObjectKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the writing and reading of objects by the {@link BinarySerializator}s
+ * through heap and direct {@link ByteBuffer}s.
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinarySerializatorBenchmark {
+
+    /** Type of the benchmarked serializator */
+    @Param({"caching", "multiclass"})
+    public String serializatorType;
+
+    /** Dimension of the serialized vectors */
+    @Param({"64", "1024"})
+    public int dimension;
+
+    /** Flag whether the buffer is direct */
+    @Param({"false", "true"})
+    public boolean bufferDirect;
+
+    /** Number of objects serialized by one benchmark invocation */
+    @Param({"1000"})
+    public int count;
+
+    /** Benchmarked serializator */
+    private BinarySerializator serializator;
+    /** Objects to serialize */
+    private LocalAbstractObject[] objects;
+    /** Output stream for writing */
+    private BufferOutputStream output;
+    /** Input stream with the serialized objects */
+    private BufferInputStream input;
+
+    /**
+     * Creates the serializator and the random objects and serializes them for the reading.
+     * @throws IOException if there was an error serializing the objects
+     */
+    @Setup
+    public void setup() throws IOException {
+        if (serializatorType.equals("caching"))
+            serializator = new CachingSerializator<LocalAbstractObject>(ObjectFloatVectorL2.class, new Class<?>[] { ObjectFloatVectorL2.class });
+        else
+            serializator = new MultiClassSerializator<LocalAbstractObject>(LocalAbstractObject.class);
+        Random random = new Random(1);
+        objects = new LocalAbstractObject[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            float[] data = new float[dimension];
+            for (int j = 0; j < dimension; j++)
+                data[j] = random.nextFloat();
+            objects[i] = new ObjectFloatVectorL2(data);
+            objects[i].setObjectKey(new AbstractObjectKey("object" + i));
+            size += serializator.getBinarySize(objects[i]);
+        }
+        output = new BufferOutputStream(bufferDirect ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size));
+        write();
+        ByteBuffer buffer = output.prepareOutput(0).duplicate();
+        buffer.flip();
+        input = new BufferInputStream(buffer);
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        output.prepareOutput(0).clear();
+        int size = 0;
+        for (LocalAbstractObject object : objects)
+            size += serializator.write(output, object);
+        return size;
+    }
+
+    @Benchmark
+    public LocalAbstractObject read() throws IOException {
+        input.setPosition(0);
+        LocalAbstractObject object = null;
+        for (int i = 0; i < count; i++)
+            object = serializator.readObject(input, LocalAbstractObject.class);
+        return object;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.utility;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Launcher of the MESSIF benchmarks that stores the results in a machine-readable form.
+ * All the arguments are passed to the JMH {@link org.openjdk.jmh.Main}, but unless
+ * the result format is specified explicitly, the results are written in the JSON format
+ * to the {@code jmh-result.json} file (as with {@code -rf json -rff jmh-result.json}).
+ * The JSON files of different releases can be then compared by the standard JMH tools.
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class BenchmarkRunner {
+
+    /** Default name of the file with the results */
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    /**
+     * Runs the JMH benchmarks.
+     * @param args the JMH command line arguments
+     * @throws Exception if there was an error running the benchmarks
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = Arrays.asList(args);
+        if (!arguments.contains("-rf") && !arguments.contains("-h") && !arguments.contains("-l")) {
+            String[] jsonArgs = new String[args.length + 4];
+            jsonArgs[0] = "-rf";
+            jsonArgs[1] = "json";
+            jsonArgs[2] = "-rff";
+            jsonArgs[3] = DEFAULT_RESULT_FILE;
+            System.arraycopy(args, 0, jsonArgs, 4, args.length);
+            args = jsonArgs;
+        }
+        org.openjdk.jmh.Main.main(args);
+    }
+
+}
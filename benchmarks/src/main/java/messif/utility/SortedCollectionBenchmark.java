@@ -0,0 +1,86 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.utility;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the insertion of random values into a {@link SortedCollection}
+ * with limited and unlimited capacity.
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortedCollectionBenchmark {
+
+    /** Number of values inserted by one benchmark invocation */
+    @Param({"10000"})
+    public int count;
+
+    /** Maximal capacity of the collection (k of the k-nearest neighbors) */
+    @Param({"10", "100", "1000"})
+    public int capacity;
+
+    /** Values to insert */
+    private Float[] values;
+
+    /**
+     * Generates the random values.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        values = new Float[count];
+        for (int i = 0; i < count; i++)
+            values[i] = random.nextFloat();
+    }
+
+    @Benchmark
+    public SortedCollection<Float> addLimited() {
+        SortedCollection<Float> collection = new SortedCollection<Float>(capacity, capacity, null);
+        for (Float value : values)
+            collection.add(value);
+        return collection;
+    }
+
+    @Benchmark
+    public SortedCollection<Float> addUnlimited() {
+        SortedCollection<Float> collection = new SortedCollection<Float>(capacity);
+        for (Float value : values)
+            collection.add(value);
+        return collection;
+    }
+}
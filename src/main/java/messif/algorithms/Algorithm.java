@@ -19,7 +19,6 @@ package messif.algorithms;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -50,6 +49,8 @@ import static messif.algorithms.NavigationProcessors.getNavigationProcessor;
 import messif.executor.MethodClassExecutor;
 import messif.executor.MethodExecutor;
 import messif.objects.LocalAbstractObject;
+import messif.objects.nio.SnapshotObjectInputStream;
+import messif.objects.nio.SnapshotObjectOutputStream;
 import messif.operations.AbstractOperation;
 import messif.operations.QueryOperation;
 import messif.operations.RankingQueryOperation;
@@ -58,6 +59,7 @@ import messif.statistics.FutureWithStatistics;
 import messif.statistics.FutureWithStatisticsImpl;
 import messif.statistics.OperationStatistics;
 import messif.statistics.StatisticCounter;
+import messif.statistics.StatisticHistogram;
 import messif.statistics.StatisticObject;
 import messif.statistics.StatisticTimer;
 import messif.statistics.Statistics;
@@ -91,6 +93,9 @@ public abstract class Algorithm implements Serializable {
     /** Logger */
     protected static final Logger log = Logger.getLogger("messif.algorithm");
 
+    /** Prefix of the global {@link StatisticHistogram latency histograms} (in microseconds) of the executed operations, the name is suffixed by the simple name of the operation class */
+    public static final String OPERATION_LATENCY_STATISTICS_PREFIX = "OperationLatency.";
+
     /** Maximal number of currently executed operations */
     protected static final int maximalConcurrentOperations = 1024;
 
@@ -250,6 +255,8 @@ public abstract class Algorithm implements Serializable {
 
     /**
      * Load the algorithm from the specified file and return it.
+     * Both the {@link SnapshotObjectInputStream snapshot} files written by {@link #storeToFile}
+     * and the plain serialized algorithms are supported.
      *
      * @param <T> class of the stored algorithm
      * @param algorithmClass class of the stored algorithm
@@ -262,7 +269,8 @@ public abstract class Algorithm implements Serializable {
      * @throws ClassCastException if the filename doesn't contain serialized algorithm
      */
     public static <T extends Algorithm> T restoreFromFile(String filepath, Class<T> algorithmClass) throws IOException, NullPointerException, ClassNotFoundException, ClassCastException {
-        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(filepath)));
+        File file = new File(filepath);
+        ObjectInputStream in = SnapshotObjectInputStream.isSnapshot(file) ? new SnapshotObjectInputStream(file) : new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
         try {
             T rtv = algorithmClass.cast(in.readObject());
             log.log(Level.INFO, "Algorithm restored from: {0}", filepath);
@@ -289,6 +297,8 @@ public abstract class Algorithm implements Serializable {
 
     /**
      * Store the algorithm to the specified file.
+     * The algorithm is written as a {@link SnapshotObjectOutputStream snapshot}, so that
+     * the bulk data of the indexes are stored in separate sections that are mapped on restore.
      *
      * @param filepath the path to a file where the algorithm should be stored. If this path is a directory,
      *        the algorithm name (all non alphanumeric characters are replaced by underscore) with <tt>.bin</tt>
@@ -309,7 +319,7 @@ public abstract class Algorithm implements Serializable {
         
             beforeStoreToFile(filepath);
             
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+            ObjectOutputStream out = new SnapshotObjectOutputStream(file);
             try {
                 out.writeObject(this);
                 log.log(Level.INFO, "Algorithm stored to: {0}", file.getAbsolutePath());
@@ -528,6 +538,7 @@ public abstract class Algorithm implements Serializable {
         }
         // log the operation processing information 
         long startTimeStamp = System.currentTimeMillis();
+        long startNanoTime = System.nanoTime();
         try {
             StatisticTimer operationTime = null;
             // Measure time of execution (as an operation statistic)
@@ -539,6 +550,7 @@ public abstract class Algorithm implements Serializable {
                 operationExecutor.execute(params);
             if (statisticsOn) {
                 operationTime.stop();
+                StatisticHistogram.getStatistics(OPERATION_LATENCY_STATISTICS_PREFIX + params[0].getClass().getSimpleName()).addValue((System.nanoTime() - startNanoTime) / 1000);
             }
         } catch (CloneNotSupportedException e) {
             throw new AlgorithmMethodException(e);
@@ -16,7 +16,11 @@
  */
 package messif.algorithms;
 
+import java.io.IOException;
 import messif.network.ReplyMessage;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 import messif.operations.AbstractOperation;
 
 
@@ -50,6 +54,17 @@ public class DistAlgReplyMessage extends ReplyMessage {
         this.operation = request.getOperation();
     }
 
+    /**
+     * Creates a new instance of DistAlgReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the DistAlgReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected DistAlgReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.operation = serializator.readObject(input, AbstractOperation.class);
+    }
+
     /**
      * Returns the operation processed by the algorithm.
      * @return the operation processed by the algorithm
@@ -59,6 +74,19 @@ public class DistAlgReplyMessage extends ReplyMessage {
     }
 
 
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) + serializator.write(output, operation);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) + serializator.getBinarySize(operation);
+    }
+
+
     //****************** String representation ******************//
 
     @Override
@@ -28,6 +28,19 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.logging.Level;
+import messif.netbucket.BucketCreateReplyMessage;
+import messif.netbucket.BucketCreateRequestMessage;
+import messif.netbucket.BucketCursorReplyMessage;
+import messif.netbucket.BucketCursorRequestMessage;
+import messif.netbucket.BucketExceptionReplyMessage;
+import messif.netbucket.BucketManipulationReplyMessage;
+import messif.netbucket.BucketManipulationRequestMessage;
+import messif.netbucket.BucketProcessQueryReplyMessage;
+import messif.netbucket.BucketProcessQueryRequestMessage;
+import messif.netbucket.BucketRemoveReplyMessage;
+import messif.netbucket.BucketRemoveRequestMessage;
+import messif.netbucket.BucketSplitReplyMessage;
+import messif.netbucket.BucketSplitRequestMessage;
 import messif.netcreator.Startable;
 import messif.network.Message;
 import messif.network.MessageDispatcher;
@@ -61,6 +74,23 @@ public abstract class DistributedAlgorithm extends Algorithm implements Startabl
     /** class id for serialization */
     private static final long serialVersionUID = 5L;
 
+    //****************** Constants ******************//
+
+    /**
+     * Classes cached by the binary serialization of the {@link messif.network.SocketSelectorTCP non-blocking TCP transport}.
+     * Note that the list can be only appended, since it must be the same on all the communicating nodes.
+     */
+    protected static final Class<?>[] BINARY_CACHED_CLASSES = {
+        NetworkNode.class, NavigationElement.class, DistAlgRequestMessage.class, DistAlgReplyMessage.class,
+        BucketCreateRequestMessage.class, BucketCreateReplyMessage.class, BucketExceptionReplyMessage.class,
+        BucketCursorRequestMessage.class, BucketCursorReplyMessage.class,
+        BucketManipulationRequestMessage.class, BucketManipulationReplyMessage.class,
+        BucketProcessQueryRequestMessage.class, BucketProcessQueryReplyMessage.class,
+        BucketRemoveRequestMessage.class, BucketRemoveReplyMessage.class,
+        BucketSplitRequestMessage.class, BucketSplitReplyMessage.class
+    };
+
+
     //****************** Attributes ******************//
 
     /** Message dispatcher for this distributed algorithm */
@@ -78,11 +108,26 @@ public abstract class DistributedAlgorithm extends Algorithm implements Startabl
      *      has no items or there was a problem starting message dispatcher
      */
     public DistributedAlgorithm(String algorithmName, int port, int broadcastPort) throws IllegalArgumentException {
+        this(algorithmName, port, broadcastPort, false);
+    }
+
+    /**
+     * Creates a new instance of DistributedAlgorithm.
+     * @param algorithmName the name of this algorithm
+     * @param port the TCP/UDP port on which this distributed algorithm communicates
+     * @param broadcastPort the UDP multicast port that this distributed algorithm uses for broadcast
+     * @param nonBlockingTransport flag whether the message dispatcher uses the
+     *          {@link messif.network.SocketSelectorTCP non-blocking TCP transport} with a fixed number of threads;
+     *          the transport binary-serializes the messages with the {@link #BINARY_CACHED_CLASSES} cached
+     * @throws IllegalArgumentException if the prototype returned by {@link #getExecutorParamClasses getExecutorParamClasses}
+     *      has no items or there was a problem starting message dispatcher
+     */
+    public DistributedAlgorithm(String algorithmName, int port, int broadcastPort, boolean nonBlockingTransport) throws IllegalArgumentException {
         super(algorithmName);
         
         try {
             // Start Message dispatcher
-            this.messageDisp = new MessageDispatcher(port, broadcastPort);
+            this.messageDisp = new MessageDispatcher(port, broadcastPort, nonBlockingTransport, nonBlockingTransport ? BINARY_CACHED_CLASSES : null);
         } catch (IOException e) {
             log.log(Level.SEVERE, e.getClass().toString(), e);
             throw new IllegalArgumentException("Can't start message dispatcher: " + e.getMessage());
@@ -16,6 +16,8 @@
  */
 package messif.algorithms.impl;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -29,9 +31,11 @@ import messif.buckets.BucketStorageException;
 import messif.buckets.StorageInsertFailureException;
 import messif.buckets.index.LocalAbstractObjectOrder;
 import messif.buckets.index.SearchAbstractObjectIterator;
+import messif.buckets.index.impl.LongStorageFrontCodedIndex;
 import messif.buckets.storage.StorageIndexed;
 import messif.buckets.storage.StorageSearch;
 import messif.buckets.storage.impl.DatabaseStorage;
+import messif.buckets.storage.impl.DiskStorage;
 import messif.objects.LocalAbstractObject;
 import messif.objects.MetaObject;
 import messif.objects.nio.CachingSerializator;
@@ -144,6 +148,46 @@ public class LocatorStorageAlgorithm extends Algorithm {
         this(encapsulatedAlgorithm, null, dbConnUrl, tableName, cacheClasses);
     }
 
+    /**
+     * Creates a new locator-disk-storage algorithm wrapper for the given algorithm.
+     * The objects are stored in the {@link DiskStorage} in the given file and their locators
+     * are kept in memory in the compact {@link LongStorageFrontCodedIndex}.
+     *
+     * <p>
+     * Note that the locator-storage stores the objects as-is while the
+     * algorithm can index only one of the encapsulated objects if the
+     * {@code metaobjectName} parameter is set.
+     * </p>
+     *
+     * @param encapsulatedAlgorithm the algorithm to wrap
+     * @param metaobjectName the name of the {@link MetaObject} encapsulated object to index in the algorithm (if <tt>null</tt> the whole object is indexed)
+     * @param storageFile the file in which to store the data
+     * @param cacheClasses the classes for the binary serialization
+     * @throws IllegalArgumentException if the prototype returned by {@link #getExecutorParamClasses getExecutorParamClasses} has no items
+     * @throws IOException if there was an error opening the storage file
+     * @throws InstantiationException if the disk storage parameters are invalid
+     */
+    @AlgorithmConstructor(description = "creates locator-storage wrapper for the given algorithm", arguments = {"algorithm to encapsulate", "metaobject sub-object name to index", "disk storage file", "serialization cache classes"})
+    public LocatorStorageAlgorithm(Algorithm encapsulatedAlgorithm, String metaobjectName, File storageFile, Class<?>[] cacheClasses) throws IllegalArgumentException, IOException, InstantiationException {
+        this(encapsulatedAlgorithm, metaobjectName, new LongStorageFrontCodedIndex<LocalAbstractObject>(
+                DiskStorage.create(LocalAbstractObject.class, getDiskStorageParameters(storageFile, cacheClasses)),
+                LocalAbstractObjectOrder.locatorToLocalObjectComparator
+        ));
+    }
+
+    /**
+     * Creates parameters for the disk storage.
+     * @param storageFile the file in which to store the data
+     * @param cacheClasses the classes for the binary serialization
+     * @return parameters for the {@link DiskStorage#create} factory method
+     */
+    private static Map<String, Object> getDiskStorageParameters(File storageFile, Class<?>[] cacheClasses) {
+        Map<String, Object> ret = new HashMap<String, Object>();
+        ret.put("file", storageFile);
+        ret.put("cacheClasses", cacheClasses);
+        return ret;
+    }
+
     /**
      * Creates column convertor mappings for the database storage.
      * @param cacheClasses the classes for the binary serialization
@@ -24,7 +24,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import messif.algorithms.Algorithm;
 import messif.algorithms.AsynchronousNavigationProcessor;
 import messif.algorithms.NavigationDirectory;
@@ -42,6 +45,7 @@ import messif.operations.data.DeleteByLocatorOperation;
 import messif.operations.data.DeleteOperation;
 import messif.operations.data.InsertOperation;
 import messif.operations.QueryOperation;
+import messif.operations.SharedScanEvaluator;
 import messif.operations.query.GetObjectCountOperation;
 
 /**
@@ -49,6 +53,8 @@ import messif.operations.query.GetObjectCountOperation;
  * Several buckets are used to store data in a round-robin fashion
  * using the {@link InsertOperation}. Then, each {@link messif.operations.QueryOperation}
  * is executed on each of the buckets in parallel.
+ * A {@link messif.operations.query.BatchKNNQueryOperation} is evaluated
+ * in a single pass over each bucket, see {@link SharedScanEvaluator}.
  *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
@@ -274,6 +280,36 @@ public class ParallelSequentialScan extends Algorithm implements NavigationDirec
     }
 
 
+    /**
+     * Evaluates the given query operations in a single pass over the stored objects.
+     * Each bucket is scanned in parallel and all the operations are evaluated on every
+     * block of the bucket's objects, see {@link SharedScanEvaluator}.
+     * Note that the answers of the operations must be synchronized, which is
+     * the case for the standard {@link messif.operations.RankingQueryOperation}s.
+     * The operations are not {@link QueryOperation#endOperation() ended}.
+     * @param operations the query operations to evaluate
+     * @return the number of objects added to the answers of all the operations
+     * @throws InterruptedException if the processing thread was interrupted while waiting for the scans
+     * @throws ExecutionException if there was an error evaluating the operations
+     */
+    public int sharedScanSearch(final Collection<? extends QueryOperation<?>> operations) throws InterruptedException, ExecutionException {
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(buckets.size());
+        for (final LocalBucket bucket : buckets) {
+            futures.add(getOperationsThreadPool().submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return SharedScanEvaluator.evaluate(bucket.getAllObjects(), operations);
+                }
+            }));
+        }
+
+        int count = 0;
+        for (Future<Integer> future : futures)
+            count += future.get();
+        return count;
+    }
+
+
     //****************** Deserialization ******************//
 
     /**
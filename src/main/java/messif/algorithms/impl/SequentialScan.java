@@ -16,6 +16,7 @@
  */
 package messif.algorithms.impl;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import messif.algorithms.Algorithm;
@@ -36,6 +37,9 @@ import messif.operations.data.DeleteOperation;
 import messif.operations.data.InsertOperation;
 import messif.operations.QueryOperation;
 import messif.operations.RankingSingleQueryOperation;
+import messif.operations.SharedScanEvaluator;
+import messif.operations.query.BatchKNNQueryOperation;
+import messif.operations.query.KNNQueryOperation;
 import messif.operations.query.GetObjectCountOperation;
 
 /**
@@ -61,6 +65,9 @@ public class SequentialScan extends Algorithm {
     /** Flag controlling the usage of PrecomputedDistancesFixedArrayFilter -- whether distances are set or appended (see the constructor below for details) */
     protected final boolean pivotDistsValidIfGiven;
 
+    /** Flag whether the distances to pivots of the stored objects are kept only by the bucket, i.e. no filter is attached to the stored objects */
+    private final boolean pivotDistsStoredInBucket;
+
     /**
      * Creates a new instance of SequantialScan access structure with the given bucket and filtering pivots.
      *
@@ -85,6 +92,14 @@ public class SequentialScan extends Algorithm {
         // Precomputed distances already associated with newly inserted objects are valid or not.
         // If there are no precomputed distances stored at new objects, they are computed, of course.
         this.pivotDistsValidIfGiven = pivotDistsValidIfGiven;
+
+        // The memory bucket keeps the distances of the stored objects to pivots in its table
+        if (pivots != null && bucket instanceof MemoryStorageBucket) {
+            ((MemoryStorageBucket)bucket).setPrecomputedDistancesPivots(pivots.toArray(new LocalAbstractObject[pivots.size()]), pivotDistsValidIfGiven);
+            pivotDistsStoredInBucket = true;
+        } else {
+            pivotDistsStoredInBucket = false;
+        }
     }
 
     /**
@@ -186,6 +201,8 @@ public class SequentialScan extends Algorithm {
     /**
      * Add precomputed distances to a given object.
      * Distance to all pivots is measured and stored into {@link PrecomputedDistancesFixedArrayFilter}.
+     * Note that this method is not used for the objects stored in a {@link MemoryStorageBucket},
+     * which keeps the distances to pivots only in its {@link messif.objects.PrecomputedDistancesTable table}.
      *
      * @param object the object to add the distances to
      */
@@ -194,7 +211,7 @@ public class SequentialScan extends Algorithm {
         if (precompDist == null || !pivotDistsValidIfGiven) {
             // No precomputed distance associated or we are requested to add the distances to pivot on our own.
             if (precompDist == null)
-                precompDist = new PrecomputedDistancesFixedArrayFilter(object);
+                precompDist = new PrecomputedDistancesFixedArrayFilter(object, pivots.size());
             precompDist.addPrecompDist(pivots, object);
         }
     }
@@ -248,8 +265,8 @@ public class SequentialScan extends Algorithm {
      * @throws CapacityFullException if the hard capacity of the bucket is exceeded
      */
     public void insert(InsertOperation operation) throws CapacityFullException {
-        // If pivot-based filtering is required, store the distances from pivots.
-        if (pivots != null)
+        // If pivot-based filtering is required, store the distances from pivots (unless the bucket keeps them)
+        if (pivots != null && !pivotDistsStoredInBucket)
             addPrecompDist(operation.getInsertedObject());
 
         // Add the new object
@@ -263,8 +280,8 @@ public class SequentialScan extends Algorithm {
      * @throws BucketStorageException if the hard capacity of the bucket is exceeded
      */
     public void bulkInsert(BulkInsertOperation operation) throws BucketStorageException {
-        // If pivot-based filtering is required, store the distances from pivots.
-        if (pivots != null)
+        // If pivot-based filtering is required, store the distances from pivots (unless the bucket keeps them)
+        if (pivots != null && !pivotDistsStoredInBucket)
             for (LocalAbstractObject obj : operation.getInsertedObjects())
                 addPrecompDist(obj);
 
@@ -331,6 +348,34 @@ public class SequentialScan extends Algorithm {
         operation.endOperation();
     }
 
+    /**
+     * Evaluates a batch of k-nearest neighbors queries on this algorithm.
+     * All the queries are evaluated in a single pass over the stored objects,
+     * see {@link SharedScanEvaluator}.
+     * @param operation the batch operation to evaluate
+     */
+    public void batchQuerySearch(BatchKNNQueryOperation operation) {
+        if (pivots != null)
+            for (KNNQueryOperation knnOperation : operation.getKnnOperations())
+                addPrecompDist(knnOperation.getQueryObject());
+        bucket.processQuery(operation);
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates the given query operations in a single pass over the stored objects.
+     * This can be used to process several independent operations,
+     * e.g. {@link messif.operations.query.KNNMultiQueryOperation}s, at once,
+     * see {@link SharedScanEvaluator}.
+     * Note that this method cannot provide precomputed distances and
+     * the operations are not {@link QueryOperation#endOperation() ended}.
+     * @param operations the query operations to evaluate
+     * @return the number of objects added to the answers of all the operations
+     */
+    public int sharedScanSearch(Collection<? extends QueryOperation<?>> operations) {
+        return SharedScanEvaluator.evaluate(bucket.getAllObjects(), operations);
+    }
+
     /**
      * Performs a generic query operation.
      * Note that this method cannot provide precomputed distances.
@@ -0,0 +1,40 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets;
+
+import java.util.Collection;
+
+/**
+ * Interface for classes that supports addition of a batch of objects
+ * more efficiently than adding the objects one by one.
+ * 
+ * @param <T> the type of added objects
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public interface BatchAddible<T> extends Addible<T> {
+
+    /**
+     * Adds all the specified objects to this instance.
+     * Note that if an exception is thrown, some of the objects may have been added already.
+     * @param objects the objects to be added
+     * @return the number of added objects
+     * @throws BucketStorageException if there was an error adding the objects
+     */
+    public int addAll(Collection<? extends T> objects) throws BucketStorageException;
+}
@@ -684,6 +684,38 @@ public class BucketDispatcher implements Serializable, TemporaryCloseable {
         return createBucket(defaultBucketClass, defaultBucketClassParams, capacity, softCapacity, lowOccupation);
     }
 
+    /**
+     * Create new local bucket with the default storage class and default storage capacity
+     * that is not maintained by this dispatcher yet, i.e. it has no ID and it is not among {@link #getAllBuckets() buckets}.
+     * The automatic pivot chooser is associated with the bucket immediately, so it observes all the objects added to it.
+     * The bucket is either made visible by {@link #addBucket(LocalBucket)} or discarded by {@link #discardStandaloneBucket(LocalBucket)}.
+     *
+     * @return a new instance of the default bucket class
+     * @throws IllegalArgumentException if the default bucket class cannot be instantiated (see {@link #createBucket()})
+     */
+    public LocalBucket createStandaloneBucket() throws IllegalArgumentException {
+        LocalBucket bucket = createBucket(defaultBucketClass, bucketCapacity, bucketSoftCapacity, bucketLowOccupation, getBucketOccupationAsBytes(), defaultBucketClassParams);
+        createAutoPivotChooser(bucket);
+        return bucket;
+    }
+
+    /**
+     * Destroys a bucket {@link #createStandaloneBucket() created} by this dispatcher that was not added to it.
+     * @param bucket the standalone bucket to discard
+     * @throws IllegalStateException if the bucket is maintained by a dispatcher
+     */
+    public void discardStandaloneBucket(LocalBucket bucket) throws IllegalStateException {
+        if (!bucket.isBucketStandalone())
+            throw new IllegalStateException("Bucket " + bucket + " can't be discarded, because it is maintained by a dispatcher");
+        createdPivotChoosers.remove(bucket);
+        try {
+            bucket.destroy();
+        } catch (Throwable e) {
+            // Log the exception but continue cleanly
+            log.log(Level.WARNING, "Error during bucket clean-up, continuing", e);
+        }
+    }
+
     /**
      * Add an existing bucket to this dispatcher.
      * A new unique ID is assigned to the bucket.
@@ -709,8 +741,9 @@ public class BucketDispatcher implements Serializable, TemporaryCloseable {
         bucket.setBucketID(nextBucketID.getAndIncrement());
         buckets.put(bucket.getBucketID(), bucket);
         
-        // Create pivot chooser for the bucket
-        createAutoPivotChooser(bucket);
+        // Create pivot chooser for the bucket (unless it was created with the standalone bucket)
+        if (!createdPivotChoosers.containsKey(bucket))
+            createAutoPivotChooser(bucket);
 
         return bucket;
     }
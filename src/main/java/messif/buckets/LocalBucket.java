@@ -16,14 +16,27 @@
  */
 package messif.buckets;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import messif.buckets.index.Index;
 import messif.buckets.index.LocalAbstractObjectOrder;
 import messif.buckets.index.ModifiableIndex;
 import messif.buckets.index.ModifiableSearch;
 import messif.buckets.index.Search;
 import messif.buckets.index.SearchAbstractObjectIterator;
+import messif.buckets.split.SplitPolicy;
 import messif.objects.LocalAbstractObject;
 import messif.objects.keys.AbstractObjectKey;
 import messif.objects.util.AbstractObjectIterator;
@@ -41,6 +54,9 @@ import messif.utility.Convert;
  * the methods of the iterator. More effective implementations can override other methods as well.
  * For deletion, you need to override method iterator:removeInternal().
  *
+ * The access to the objects is guarded by a {@link #getObjectsLock() read-write lock},
+ * so the retrievals of objects can run concurrently while the modifications are exclusive.
+ *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
@@ -53,7 +69,7 @@ public abstract class LocalBucket extends Bucket implements Serializable {
 
     // TODO: change to weakref counters
     /** Number of bucket reads statistic per bucket */
-    protected static final StatisticRefCounter counterBucketRead = StatisticRefCounter.getStatistics("BucketRead");
+    protected static final StatisticRefCounter counterBucketRead = StatisticRefCounter.getStatistics("BucketRead", true);
     /** Number of object inserts statistic per bucket */
     protected static final StatisticRefCounter counterBucketAddObject = StatisticRefCounter.getStatistics("BucketAddObject");
     /** Number of object deletions statistic per bucket */
@@ -74,7 +90,9 @@ public abstract class LocalBucket extends Bucket implements Serializable {
     /** Flag if the occupation is stored as bytes or object count */
     private final boolean occupationAsBytes;
     /** Actual bucket occupation in either bytes or object count (see occupationAsBytes flag) */
-    private long occupation;
+    private volatile long occupation;
+    /** Lock that guards the objects of this bucket - the reads are shared while the modifications are exclusive */
+    private transient ReentrantReadWriteLock objectsLock;
 
 
     //****************** Filter attributes ******************//
@@ -109,6 +127,19 @@ public abstract class LocalBucket extends Bucket implements Serializable {
         
         // Set flag
         this.occupationAsBytes = occupationAsBytes;
+
+        this.objectsLock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Java native serialization method.
+     * @param in the stream to deserialize this object from
+     * @throws IOException if there was an error reading from stream {@code in}
+     * @throws ClassNotFoundException if the class of a serialized object cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        objectsLock = new ReentrantReadWriteLock();
     }
 
     /**
@@ -266,6 +297,19 @@ public abstract class LocalBucket extends Bucket implements Serializable {
      */
     protected abstract ModifiableIndex<LocalAbstractObject> getModifiableIndex();
 
+    /**
+     * Returns the lock that guards the objects of this bucket.
+     * The read lock is held while an object is retrieved by {@link #getObject(String)} or {@link #getObject(AbstractObjectKey)}
+     * and the write lock is held during the insertions, deletions and splits.
+     * Note that the searches returned by {@link #getIndex()} or {@link #getAllObjects()} do not hold the lock,
+     * so the read lock can be acquired explicitly to access the objects consistently.
+     * The read lock must not be held while the objects are modified by the same thread.
+     * @return the lock that guards the objects of this bucket
+     */
+    public ReadWriteLock getObjectsLock() {
+        return objectsLock;
+    }
+
     /**
      * Returns the index defined on this bucket that can be used for searching.
      * @return the index for this bucket
@@ -285,30 +329,40 @@ public abstract class LocalBucket extends Bucket implements Serializable {
      * Append a new filter to the filter chain.
      * @param filter the new filter to append
      */
-    public synchronized void registerFilter(BucketFilter filter) {
-        if (filter instanceof BucketFilterBeforeAdd)
-            beforeAddFilters = Convert.addToArray(beforeAddFilters, BucketFilterBeforeAdd.class, (BucketFilterBeforeAdd)filter);
-        if (filter instanceof BucketFilterAfterAdd)
-            afterAddFilters = Convert.addToArray(afterAddFilters, BucketFilterAfterAdd.class, (BucketFilterAfterAdd)filter);
-        if (filter instanceof BucketFilterBeforeRemove)
-            beforeRemoveFilters = Convert.addToArray(beforeRemoveFilters, BucketFilterBeforeRemove.class, (BucketFilterBeforeRemove)filter);
-        if (filter instanceof BucketFilterAfterRemove)
-            afterRemoveFilters = Convert.addToArray(afterRemoveFilters, BucketFilterAfterRemove.class, (BucketFilterAfterRemove)filter);
+    public void registerFilter(BucketFilter filter) {
+        objectsLock.writeLock().lock();
+        try {
+            if (filter instanceof BucketFilterBeforeAdd)
+                beforeAddFilters = Convert.addToArray(beforeAddFilters, BucketFilterBeforeAdd.class, (BucketFilterBeforeAdd)filter);
+            if (filter instanceof BucketFilterAfterAdd)
+                afterAddFilters = Convert.addToArray(afterAddFilters, BucketFilterAfterAdd.class, (BucketFilterAfterAdd)filter);
+            if (filter instanceof BucketFilterBeforeRemove)
+                beforeRemoveFilters = Convert.addToArray(beforeRemoveFilters, BucketFilterBeforeRemove.class, (BucketFilterBeforeRemove)filter);
+            if (filter instanceof BucketFilterAfterRemove)
+                afterRemoveFilters = Convert.addToArray(afterRemoveFilters, BucketFilterAfterRemove.class, (BucketFilterAfterRemove)filter);
+        } finally {
+            objectsLock.writeLock().unlock();
+        }
     }
     
     /**
      * Remove a filter from the filter chain
      * @param filter the filter to remove
      */
-    public synchronized void deregisterFilter(BucketFilter filter) {
-        if (filter instanceof BucketFilterBeforeAdd)
-            beforeAddFilters = Convert.removeFromArray(beforeAddFilters, (BucketFilterBeforeAdd)filter);
-        if (filter instanceof BucketFilterAfterAdd)
-            afterAddFilters = Convert.removeFromArray(afterAddFilters, (BucketFilterAfterAdd)filter);
-        if (filter instanceof BucketFilterBeforeRemove)
-            beforeRemoveFilters = Convert.removeFromArray(beforeRemoveFilters, (BucketFilterBeforeRemove)filter);
-        if (filter instanceof BucketFilterAfterRemove)
-            afterRemoveFilters = Convert.removeFromArray(afterRemoveFilters, (BucketFilterAfterRemove)filter);
+    public void deregisterFilter(BucketFilter filter) {
+        objectsLock.writeLock().lock();
+        try {
+            if (filter instanceof BucketFilterBeforeAdd)
+                beforeAddFilters = Convert.removeFromArray(beforeAddFilters, (BucketFilterBeforeAdd)filter);
+            if (filter instanceof BucketFilterAfterAdd)
+                afterAddFilters = Convert.removeFromArray(afterAddFilters, (BucketFilterAfterAdd)filter);
+            if (filter instanceof BucketFilterBeforeRemove)
+                beforeRemoveFilters = Convert.removeFromArray(beforeRemoveFilters, (BucketFilterBeforeRemove)filter);
+            if (filter instanceof BucketFilterAfterRemove)
+                afterRemoveFilters = Convert.removeFromArray(afterRemoveFilters, (BucketFilterAfterRemove)filter);
+        } finally {
+            objectsLock.writeLock().unlock();
+        }
     }
 
     /**
@@ -318,19 +372,24 @@ public abstract class LocalBucket extends Bucket implements Serializable {
      * @throws NoSuchElementException if there was no filter with the specified class
      * @return the first registered filter that has the specified class
      */
-    public synchronized <T extends BucketFilter> T getFilter(Class<T> filterClass) throws NoSuchElementException {
-        for (BucketFilter filter : beforeAddFilters)
-            if (filterClass.isInstance(filter))
-                return filterClass.cast(filter);
-        for (BucketFilter filter : afterAddFilters)
-            if (filterClass.isInstance(filter))
-                return filterClass.cast(filter);
-        for (BucketFilter filter : beforeRemoveFilters)
-            if (filterClass.isInstance(filter))
-                return filterClass.cast(filter);
-        for (BucketFilter filter : afterRemoveFilters)
-            if (filterClass.isInstance(filter))
-                return filterClass.cast(filter);
+    public <T extends BucketFilter> T getFilter(Class<T> filterClass) throws NoSuchElementException {
+        objectsLock.readLock().lock();
+        try {
+            for (BucketFilter filter : beforeAddFilters)
+                if (filterClass.isInstance(filter))
+                    return filterClass.cast(filter);
+            for (BucketFilter filter : afterAddFilters)
+                if (filterClass.isInstance(filter))
+                    return filterClass.cast(filter);
+            for (BucketFilter filter : beforeRemoveFilters)
+                if (filterClass.isInstance(filter))
+                    return filterClass.cast(filter);
+            for (BucketFilter filter : afterRemoveFilters)
+                if (filterClass.isInstance(filter))
+                    return filterClass.cast(filter);
+        } finally {
+            objectsLock.readLock().unlock();
+        }
         
         throw new NoSuchElementException("Filter with specified class not found");
     }
@@ -344,32 +403,41 @@ public abstract class LocalBucket extends Bucket implements Serializable {
      * @param addible the {@link Addible} that actually stores the object
      * @throws BucketStorageException if there was an error adding the object
      */
-    protected synchronized void addObject(LocalAbstractObject object, Addible<LocalAbstractObject> addible) throws BucketStorageException {
-        // Execute before add filters
-        if (beforeAddFilters != null)
-            for (BucketFilterBeforeAdd filter : beforeAddFilters)
-                filter.filterBeforeAdd(object, this);
+    protected void addObject(LocalAbstractObject object, Addible<LocalAbstractObject> addible) throws BucketStorageException {
+        objectsLock.writeLock().lock();
+        try {
+            // Execute before add filters
+            if (beforeAddFilters != null)
+                for (BucketFilterBeforeAdd filter : beforeAddFilters)
+                    filter.filterBeforeAdd(object, this);
 
-        // Get object size either in bytes or number of objects
-        long size = occupationAsBytes?object.getSize():1;
+            // Get object size either in bytes or number of objects
+            long size = occupationAsBytes?object.getSize():1;
         
-        if (occupation + size > capacity)
-            throw new CapacityFullException();
+            if (occupation + size > capacity)
+                throw new CapacityFullException();
 
-        // Pass the object to the lower layer for inserting
-        addible.add(object);
+            // Pass the object to the lower layer for inserting
+            addible.add(object);
         
-        // Update occupation
-        occupation += size;
-
-        // Increase statistics
-        if (StatisticRefCounter.isEnabledGlobally())
-            counterBucketAddObject.add(this);
-
-        // Execute after add filters
-        if (afterAddFilters != null)
-            for (BucketFilterAfterAdd filter : afterAddFilters)
-                filter.filterAfterAdd(object, this);
+            // Update occupation
+            occupation += size;
+
+            // Record the change for the running asynchronous split
+            if (splitDeltaLog != null)
+                splitDeltaLog.add(new SplitDeltaLogEntry(object, true));
+
+            // Increase statistics
+            if (StatisticRefCounter.isEnabledGlobally())
+                counterBucketAddObject.add(this);
+
+            // Execute after add filters
+            if (afterAddFilters != null)
+                for (BucketFilterAfterAdd filter : afterAddFilters)
+                    filter.filterAfterAdd(object, this);
+        } finally {
+            objectsLock.writeLock().unlock();
+        }
     }
 
     /**
@@ -379,40 +447,129 @@ public abstract class LocalBucket extends Bucket implements Serializable {
      * @param removable the object that is going to be removed
      * @throws BucketStorageException if the object cannot be removed (reason is stored in the exception)
      */
-    protected synchronized void deleteObject(Removable<LocalAbstractObject> removable) throws BucketStorageException {
-        // Execute before remove filters
-        if (beforeRemoveFilters != null)
-            for (BucketFilterBeforeRemove filter : beforeRemoveFilters)
-                filter.filterBeforeRemove(removable.getCurrentObject(), this);
+    protected void deleteObject(Removable<LocalAbstractObject> removable) throws BucketStorageException {
+        objectsLock.writeLock().lock();
+        try {
+            // Execute before remove filters
+            if (beforeRemoveFilters != null)
+                for (BucketFilterBeforeRemove filter : beforeRemoveFilters)
+                    filter.filterBeforeRemove(removable.getCurrentObject(), this);
+
+            // Get object size either in bytes or number of objects
+            long size = occupationAsBytes?removable.getCurrentObject().getSize():1;
+
+            // Test occupation
+            if (occupation - size < lowOccupation)
+                throw new OccupationLowException();
+
+            // Call the lower layer removal
+            removable.remove();
+
+            // Update occupation
+            occupation -= size;
+
+            // Record the change for the running asynchronous split
+            if (splitDeltaLog != null)
+                splitDeltaLog.add(new SplitDeltaLogEntry(removable.getCurrentObject(), false));
+
+            // Update statistics
+            if (StatisticRefCounter.isEnabledGlobally())
+                counterBucketDelObject.add(this);
+
+            // Execute after add filters
+            if (afterRemoveFilters != null)
+                for (BucketFilterAfterRemove filter : afterRemoveFilters)
+                    filter.filterAfterRemove(removable.getCurrentObject(), this);
+        } finally {
+            objectsLock.writeLock().unlock();
+        }
+    }
 
-        // Get object size either in bytes or number of objects
-        long size = occupationAsBytes?removable.getCurrentObject().getSize():1;
+    //****************** Bucket methods overrides ******************//
 
-        // Test occupation
-        if (occupation - size < lowOccupation)
-            throw new OccupationLowException();
+    @Override
+    public void addObject(LocalAbstractObject object) throws BucketStorageException {
+        addObject(object, getModifiableIndex());
+    }
 
-        // Call the lower layer removal
-        removable.remove();
+    /**
+     * Insert several new objects to this bucket.
+     * If the index of this bucket supports the {@link BatchAddible batch addition}
+     * (e.g. the {@link messif.buckets.storage.impl.DiskStorage disk storage}), the objects
+     * are checked by the filters and the capacity first and then passed to the index at once.
+     * The checks stop at the first object that cannot be added, the objects before it are added.
+     * Otherwise, the objects are added one by one.
+     *
+     * @param objects iterator that provides the new objects to insert
+     * @return number of objects actually added to bucket
+     * @throws BucketStorageException if there was an object that cannot be inserted into the bucket
+     */
+    @Override
+    public int addObjects(Iterator<? extends LocalAbstractObject> objects) throws BucketStorageException {
+        ModifiableIndex<LocalAbstractObject> index = getModifiableIndex();
+        if (objects == null || !(index instanceof BatchAddible))
+            return super.addObjects(objects);
 
-        // Update occupation
-        occupation -= size;
+        objectsLock.writeLock().lock();
+        try {
+            // Check the objects that are going to be added
+            List<LocalAbstractObject> batch = new ArrayList<LocalAbstractObject>();
+            long batchSize = 0;
+            BucketStorageException exception = null;
+            try {
+                while (objects.hasNext()) {
+                    LocalAbstractObject object = objects.next();
+
+                    // Execute before add filters
+                    if (beforeAddFilters != null)
+                        for (BucketFilterBeforeAdd filter : beforeAddFilters)
+                            filter.filterBeforeAdd(object, this);
+
+                    // Get object size either in bytes or number of objects
+                    long size = occupationAsBytes?object.getSize():1;
+
+                    if (occupation + batchSize + size > capacity)
+                        throw new CapacityFullException();
+
+                    batch.add(object);
+                    batchSize += size;
+                }
+            } catch (BucketStorageException e) {
+                exception = e;
+            }
 
-        // Update statistics
-        if (StatisticRefCounter.isEnabledGlobally())
-            counterBucketDelObject.add(this);
+            if (!batch.isEmpty()) {
+                // Pass the objects to the lower layer for inserting at once
+                ((BatchAddible<LocalAbstractObject>)index).addAll(batch);
 
-        // Execute after add filters
-        if (afterRemoveFilters != null)
-            for (BucketFilterAfterRemove filter : afterRemoveFilters)
-                filter.filterAfterRemove(removable.getCurrentObject(), this);
-    }
+                // Update occupation
+                occupation += batchSize;
 
-    //****************** Bucket methods overrides ******************//
+                for (LocalAbstractObject object : batch) {
+                    // Record the change for the running asynchronous split
+                    if (splitDeltaLog != null)
+                        splitDeltaLog.add(new SplitDeltaLogEntry(object, true));
 
-    @Override
-    public void addObject(LocalAbstractObject object) throws BucketStorageException {
-        addObject(object, getModifiableIndex());
+                    // Increase statistics
+                    if (StatisticRefCounter.isEnabledGlobally())
+                        counterBucketAddObject.add(this);
+
+                    // Execute after add filters
+                    if (afterAddFilters != null)
+                        for (BucketFilterAfterAdd filter : afterAddFilters)
+                            filter.filterAfterAdd(object, this);
+                }
+            }
+
+            if (exception != null) {
+                if (exception instanceof CapacityFullException)
+                    ((CapacityFullException)exception).setNumberOfInsertedObjects(batch.size());
+                throw exception;
+            }
+            return batch.size();
+        } finally {
+            objectsLock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -426,12 +583,12 @@ public abstract class LocalBucket extends Bucket implements Serializable {
     }
 
     @Override
-    public synchronized int deleteObject(LocalAbstractObject object, int deleteLimit) throws BucketStorageException {
+    public int deleteObject(LocalAbstractObject object, int deleteLimit) throws BucketStorageException {
         return deleteObjects(getModifiableIndex().search(LocalAbstractObjectOrder.DATA, object), deleteLimit);
     }
 
     @Override
-    public synchronized int deleteObject(String locatorURI, int deleteLimit) throws BucketStorageException {
+    public int deleteObject(String locatorURI, int deleteLimit) throws BucketStorageException {
         return deleteObjects(getModifiableIndex().search(LocalAbstractObjectOrder.locatorToLocalObjectComparator, locatorURI), deleteLimit);
     }
 
@@ -442,64 +599,97 @@ public abstract class LocalBucket extends Bucket implements Serializable {
      * @return the number of deleted objects
      * @throws BucketStorageException if there was an object that cannot be deleted from the bucket
      */
-    protected synchronized int deleteObjects(ModifiableSearch<LocalAbstractObject> search, int deleteLimit) throws BucketStorageException {
-        int count = 0;
+    protected int deleteObjects(ModifiableSearch<LocalAbstractObject> search, int deleteLimit) throws BucketStorageException {
+        objectsLock.writeLock().lock();
         try {
-            // If there is another object found by the search
-            while ((deleteLimit <= 0 || count < deleteLimit) && search.next()) {
-                // Delete it
-                deleteObject(search);
-                count++;
+            int count = 0;
+            try {
+                // If there is another object found by the search
+                while ((deleteLimit <= 0 || count < deleteLimit) && search.next()) {
+                    // Delete it
+                    deleteObject(search);
+                    count++;
+                }
+            } catch (NoSuchElementException ignore) {
+                // The iterator's getObjectByData has thrown NoSuchElementException to indicate end-of-search
             }
-        } catch (NoSuchElementException ignore) {
-            // The iterator's getObjectByData has thrown NoSuchElementException to indicate end-of-search
-        }
         
-        // Call the implementation method
-        return count;
+            // Call the implementation method
+            return count;
+        } finally {
+            objectsLock.writeLock().unlock();
+        }
     }
 
     @Override
     public int deleteAllObjects() throws BucketStorageException {
-        ModifiableSearch<LocalAbstractObject> search = getModifiableIndex().search();
-        int count = 0;
-        while (search.next()) {
-            deleteObject(search);
-            count++;
+        objectsLock.writeLock().lock();
+        try {
+            ModifiableSearch<LocalAbstractObject> search = getModifiableIndex().search();
+            int count = 0;
+            while (search.next()) {
+                deleteObject(search);
+                count++;
+            }
+            return count;
+        } finally {
+            objectsLock.writeLock().unlock();
         }
-        return count;
     }
 
     @Override
-    public synchronized LocalAbstractObject getObject(String locator) throws NoSuchElementException {
-        // Search for objects with the specified ID
-        Search<LocalAbstractObject> search = getModifiableIndex().search(LocalAbstractObjectOrder.locatorToLocalObjectComparator, locator);
+    public LocalAbstractObject getObject(String locator) throws NoSuchElementException {
+        objectsLock.readLock().lock();
+        try {
+            // Search for objects with the specified ID
+            Search<LocalAbstractObject> search = getModifiableIndex().search(LocalAbstractObjectOrder.locatorToLocalObjectComparator, locator);
 
-        // If object is found, delete and return it
-        if (!search.next())
-            throw new NoSuchElementException("There is no object with locator: " + locator);
+            // If object is found, delete and return it
+            if (!search.next())
+                throw new NoSuchElementException("There is no object with locator: " + locator);
 
-        // Update statistics
-        if (StatisticRefCounter.isEnabledGlobally())
-            counterBucketRead.add(this);
+            // Update statistics
+            if (StatisticRefCounter.isEnabledGlobally())
+                counterBucketRead.add(this);
 
-        return search.getCurrentObject();
+            return search.getCurrentObject();
+        } finally {
+            objectsLock.readLock().unlock();
+        }
     }
 
     @Override
-    public synchronized LocalAbstractObject getObject(AbstractObjectKey key) throws NoSuchElementException {
-        // Search for objects with the specified ID
-        Search<LocalAbstractObject> search = getModifiableIndex().search(LocalAbstractObjectOrder.keyToLocalObjectComparator, key);
+    public LocalAbstractObject getObject(AbstractObjectKey key) throws NoSuchElementException {
+        objectsLock.readLock().lock();
+        try {
+            // Search for objects with the specified ID
+            Search<LocalAbstractObject> search = getModifiableIndex().search(LocalAbstractObjectOrder.keyToLocalObjectComparator, key);
 
-        // If object is found, delete and return it
-        if (!search.next())
-            throw new NoSuchElementException("There is no object with key: " + key);
+            // If object is found, delete and return it
+            if (!search.next())
+                throw new NoSuchElementException("There is no object with key: " + key);
 
-        // Update statistics
-        if (StatisticRefCounter.isEnabledGlobally())
-            counterBucketRead.add(this);
+            // Update statistics
+            if (StatisticRefCounter.isEnabledGlobally())
+                counterBucketRead.add(this);
 
-        return search.getCurrentObject();
+            return search.getCurrentObject();
+        } finally {
+            objectsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The split is executed in the calling thread in the same phases as the {@link #splitAsync asynchronous split},
+     * so the queries and modifications of this bucket are blocked only while the split is committed.
+     * The buckets created by the {@code bucketCreator} are added to it when the split is committed.
+     * Note that this method must not be called while holding the {@link #getObjectsLock() objects lock}.
+     * @throws IllegalStateException if there is an asynchronous split of this bucket running
+     */
+    @Override
+    public synchronized int split(SplitPolicy policy, List<Bucket> targetBuckets, BucketDispatcher bucketCreator, int whoStays) throws IllegalArgumentException, IllegalStateException, BucketStorageException {
+        return splitFromSnapshot(startSplit(policy, targetBuckets, bucketCreator), policy, targetBuckets, bucketCreator, whoStays);
     }
 
     @Override
@@ -523,6 +713,324 @@ public abstract class LocalBucket extends Bucket implements Serializable {
     }
 
 
+    //****************** Asynchronous splitting ******************//
+
+    /** Log of the objects added to or deleted from this bucket during an asynchronous split, <tt>null</tt> if there is no split running */
+    private transient List<SplitDeltaLogEntry> splitDeltaLog;
+
+    /** Entry of the {@link #splitDeltaLog} */
+    private static class SplitDeltaLogEntry {
+        /** Object that was added or deleted */
+        private final LocalAbstractObject object;
+        /** Flag whether the object was added (<tt>true</tt>) or deleted (<tt>false</tt>) */
+        private final boolean added;
+
+        /**
+         * Creates a new entry of the split delta log.
+         * @param object the object that was added or deleted
+         * @param added flag whether the object was added (<tt>true</tt>) or deleted (<tt>false</tt>)
+         */
+        private SplitDeltaLogEntry(LocalAbstractObject object, boolean added) {
+            this.object = object;
+            this.added = added;
+        }
+    }
+
+    /**
+     * Returns whether an {@link #splitAsync asynchronous split} of this bucket is running.
+     * @return <tt>true</tt> if an asynchronous split is running
+     */
+    public boolean isSplitRunning() {
+        objectsLock.readLock().lock();
+        try {
+            return splitDeltaLog != null;
+        } finally {
+            objectsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits this bucket according to the specified policy without blocking the access to this bucket.
+     * The semantics of the parameters and the result is the same as for the {@link #split(SplitPolicy, List, BucketDispatcher, int) split}
+     * method, but the split is executed in three phases:
+     * <ol>
+     *   <li>the snapshot of the current objects is taken and the objects added to or deleted from this bucket since then are logged
+     *       (only the read lock is held while the snapshot is taken, so the queries are not blocked);</li>
+     *   <li>the target buckets are filled from the snapshot in a background thread,
+     *       while this bucket still contains all the objects and serves the queries, inserts and deletes;</li>
+     *   <li>the logged changes are applied to the target buckets and the moved objects
+     *       are removed from this bucket in one step that is atomic with respect to the other operations on this bucket;
+     *       the partitions computed in the second phase are reused, so the policy is evaluated only for the logged additions
+     *       and for the objects that share a locator with an object from a different partition.</li>
+     * </ol>
+     * The buckets created by the {@code bucketCreator} are {@link BucketDispatcher#createStandaloneBucket() standalone}
+     * until the split is committed, then they are {@link BucketDispatcher#addBucket(LocalBucket) added} to the dispatcher,
+     * so they are not visible before. If the split fails, they are discarded.
+     * Note that the given target buckets must not be accessed until the split is finished.
+     * Note also that the snapshot holds all the objects of this bucket until they are moved,
+     * which, for the disk-based buckets, means that all the objects are read into the memory.
+     * The blocking {@link #split(SplitPolicy, List, BucketDispatcher, int) split} executes the same phases in the calling thread.
+     *
+     * @param policy the split policy used to split this bucket
+     * @param targetBuckets the list of target buckets to split the objects to
+     * @param bucketCreator the bucket dispatcher to use when creating target buckets; can be <tt>null</tt> if the <code>targetBuckets</code> has enough buckets
+     * @param whoStays identification of a partition whose objects stay in this bucket; if lower than zero, no objects are to 
+     *  stay in this bucket and, due to efficiency, the objects are not removed from this bucket!
+     * @return the future that returns the number of objects moved or throws the exception of the split
+     *          (see {@link #split(SplitPolicy, List, BucketDispatcher, int) split} method)
+     * @throws IllegalArgumentException if there are too few target buckets
+     * @throws IllegalStateException if there is another asynchronous split of this bucket running
+     */
+    public Future<Integer> splitAsync(final SplitPolicy policy, final List<Bucket> targetBuckets, final BucketDispatcher bucketCreator, final int whoStays) throws IllegalArgumentException, IllegalStateException {
+        final List<LocalAbstractObject> snapshot = startSplit(policy, targetBuckets, bucketCreator);
+        FutureTask<Integer> future = new FutureTask<Integer>(new Callable<Integer>() {
+            @Override
+            public Integer call() throws BucketStorageException {
+                return splitFromSnapshot(snapshot, policy, targetBuckets, bucketCreator, whoStays);
+            }
+        });
+        Thread thread = new Thread(future, "Split of bucket " + getBucketID());
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Executes the first phase of the split, i.e. starts logging the changes and takes the snapshot of the objects.
+     * @param policy the split policy used to split this bucket
+     * @param targetBuckets the list of target buckets to split the objects to
+     * @param bucketCreator the bucket dispatcher to use when creating target buckets
+     * @return the snapshot of the objects of this bucket
+     * @throws IllegalArgumentException if there are too few target buckets
+     * @throws IllegalStateException if there is another split of this bucket running
+     */
+    private List<LocalAbstractObject> startSplit(SplitPolicy policy, List<Bucket> targetBuckets, BucketDispatcher bucketCreator) throws IllegalArgumentException, IllegalStateException {
+        // Sanity checks
+        if (targetBuckets == null)
+            throw new IllegalArgumentException("Target buckets for split must be set");
+        if (bucketCreator == null && (targetBuckets.size() < policy.getPartitionsCount()))
+            throw new IllegalArgumentException("Not enough buckets for split, policy " + policy + " requires at least " + (policy.getPartitionsCount() - 1) + " buckets");
+        // Fill target buckets list with nulls to match the policy's partition count
+        while (targetBuckets.size() < policy.getPartitionsCount())
+            targetBuckets.add(null);
+
+        // Start logging the changes and take the snapshot
+        objectsLock.writeLock().lock();
+        try {
+            if (splitDeltaLog != null)
+                throw new IllegalStateException("Split of bucket " + getBucketID() + " is already running");
+            splitDeltaLog = new ArrayList<SplitDeltaLogEntry>();
+            // Downgrade to the read lock, so that the queries are not blocked while the snapshot is taken
+            objectsLock.readLock().lock();
+        } finally {
+            objectsLock.writeLock().unlock();
+        }
+        boolean snapshotTaken = false;
+        try {
+            List<LocalAbstractObject> snapshot = new ArrayList<LocalAbstractObject>(getObjectCount());
+            Search<LocalAbstractObject> search = getModifiableIndex().search();
+            try {
+                while (search.next())
+                    snapshot.add(search.getCurrentObject());
+            } finally {
+                search.close();
+            }
+            snapshotTaken = true;
+            return snapshot;
+        } finally {
+            objectsLock.readLock().unlock();
+            if (!snapshotTaken)
+                clearSplitDeltaLog();
+        }
+    }
+
+    /**
+     * Stops logging the changes for the split that has failed.
+     */
+    private void clearSplitDeltaLog() {
+        objectsLock.writeLock().lock();
+        try {
+            splitDeltaLog = null;
+        } finally {
+            objectsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Executes the second and the third phase of the split.
+     * The partitions of the snapshot objects are computed in the second phase only, the third phase
+     * evaluates the policy just for the objects added during the split. The buckets created by the
+     * {@code bucketCreator} are added to it and the moved objects are removed from this bucket
+     * by a single pass that stops as soon as all of them are found.
+     * If the split fails before it is committed, the created buckets are discarded.
+     * @param snapshot the objects of this bucket at the time the split has started, the list is cleared while the objects are moved
+     * @param policy the split policy used to split this bucket
+     * @param targetBuckets the list of target buckets to split the objects to
+     * @param bucketCreator the bucket dispatcher to use when creating target buckets
+     * @param whoStays identification of a partition whose objects stay in this bucket
+     * @return the number of objects moved
+     * @throws BucketStorageException if there was a storage error during objects move
+     */
+    private int splitFromSnapshot(List<LocalAbstractObject> snapshot, SplitPolicy policy, List<Bucket> targetBuckets, BucketDispatcher bucketCreator, int whoStays) throws BucketStorageException {
+        // Partitions of the objects identified by their locators (if they have ones) or instances
+        Map<Object, Integer> partitions = new HashMap<Object, Integer>(snapshot.size());
+        // Buckets created for the split that are not visible until the split is committed
+        List<LocalBucket> createdBuckets = new ArrayList<LocalBucket>(policy.getPartitionsCount());
+        boolean logCleared = false;
+        boolean committed = false;
+
+        try {
+            // Fill the target buckets without locking this bucket
+            int count = 0;
+            for (int i = 0; i < snapshot.size(); i++) {
+                LocalAbstractObject object = snapshot.set(i, null); // The moved objects are not needed any more
+                int partId = matchSplitPartition(policy, object, partitions);
+                if (partId != whoStays) {
+                    addSplitObject(policy, targetBuckets, bucketCreator, createdBuckets, partId, object);
+                    count++;
+                }
+            }
+            snapshot.clear();
+
+            objectsLock.writeLock().lock();
+            try {
+                // Apply the changes made during the background phase
+                for (SplitDeltaLogEntry entry : splitDeltaLog) {
+                    int partId = entry.added ? matchSplitPartition(policy, entry.object, partitions) : getSplitPartition(policy, entry.object, partitions);
+                    if (partId == whoStays)
+                        continue;
+                    if (entry.added) {
+                        addSplitObject(policy, targetBuckets, bucketCreator, createdBuckets, partId, entry.object);
+                        count++;
+                    } else {
+                        Bucket bucket = targetBuckets.get(partId);
+                        if (bucket != null && bucket.deleteObject(entry.object, 1) > 0)
+                            count--;
+                    }
+                }
+
+                // Commit the split by making the created buckets visible
+                for (LocalBucket bucket : createdBuckets)
+                    bucketCreator.addBucket(bucket);
+                committed = true;
+
+                // Remove the moved objects from this bucket
+                if (whoStays >= 0 && count > 0) {
+                    int remaining = count;
+                    ModifiableSearch<LocalAbstractObject> search = getModifiableIndex().search();
+                    try {
+                        while (remaining > 0 && search.next()) {
+                            if (getSplitPartition(policy, search.getCurrentObject(), partitions) != whoStays) {
+                                deleteObject(search); // WARNING, if this method throws OccupationLowException, the object will be in both buckets!
+                                remaining--;
+                            }
+                        }
+                    } finally {
+                        search.close();
+                    }
+                }
+            } finally {
+                splitDeltaLog = null;
+                logCleared = true;
+                objectsLock.writeLock().unlock();
+            }
+
+            return count;
+        } finally {
+            if (!logCleared)
+                clearSplitDeltaLog();
+            if (!committed)
+                discardSplitBuckets(targetBuckets, bucketCreator, createdBuckets);
+        }
+    }
+
+    /**
+     * Removes the buckets created for a failed split.
+     * The buckets that were already added to the {@code bucketCreator} are removed from it.
+     * @param targetBuckets the list of target buckets of the split, the entries of the removed buckets are reset to <tt>null</tt>
+     * @param bucketCreator the bucket dispatcher used when creating the target buckets
+     * @param createdBuckets the buckets created for the split
+     */
+    private static void discardSplitBuckets(List<Bucket> targetBuckets, BucketDispatcher bucketCreator, List<LocalBucket> createdBuckets) {
+        for (LocalBucket bucket : createdBuckets) {
+            targetBuckets.set(targetBuckets.indexOf(bucket), null);
+            if (bucket.isBucketStandalone())
+                bucketCreator.discardStandaloneBucket(bucket);
+            else
+                bucketCreator.removeBucket(bucket.getBucketID(), true);
+        }
+    }
+
+    /**
+     * Returns the key under which the partition of the object is cached during the {@link #splitAsync asynchronous split}.
+     * The objects are identified by their locators or instances if they have no locator.
+     * @param object the object for which to get the key
+     * @return the partition cache key
+     */
+    private static Object getSplitPartitionKey(LocalAbstractObject object) {
+        String locator = object.getLocatorURI();
+        return (locator == null) ? object : locator;
+    }
+
+    /**
+     * Computes the partition of the object using the policy and stores it in the cache.
+     * @param policy the split policy used to split this bucket
+     * @param object the object the partition of which to compute
+     * @param partitions the cache of the already computed partitions
+     * @return the partition of the object
+     */
+    private static int matchSplitPartition(SplitPolicy policy, LocalAbstractObject object, Map<Object, Integer> partitions) {
+        int partId = policy.match(object);
+        Integer previousPartId = partitions.put(getSplitPartitionKey(object), partId);
+        // Objects with the same locator can have different partitions, such locators are marked as not cached
+        if (previousPartId != null && previousPartId != partId)
+            partitions.put(getSplitPartitionKey(object), -1);
+        return partId;
+    }
+
+    /**
+     * Returns the partition of the object from the cache or computes it using the policy
+     * if it is not cached.
+     * @param policy the split policy used to split this bucket
+     * @param object the object the partition of which to get
+     * @param partitions the cache of the already computed partitions
+     * @return the partition of the object
+     */
+    private static int getSplitPartition(SplitPolicy policy, LocalAbstractObject object, Map<Object, Integer> partitions) {
+        Integer partId = partitions.get(getSplitPartitionKey(object));
+        return (partId != null && partId >= 0) ? partId : policy.match(object);
+    }
+
+    /**
+     * Adds the object to the target bucket of the split.
+     * If the target bucket does not exist, a {@link BucketDispatcher#createStandaloneBucket() standalone}
+     * bucket is created, which is added to the dispatcher when the split is committed.
+     * @param policy the split policy used to split this bucket
+     * @param targetBuckets the list of target buckets to split the objects to
+     * @param bucketCreator the bucket dispatcher to use when creating target buckets
+     * @param createdBuckets the list of buckets created by the split so far
+     * @param partId the partition of the object
+     * @param object the object to add
+     * @throws BucketStorageException if the object cannot be added to the target bucket
+     */
+    private static void addSplitObject(SplitPolicy policy, List<Bucket> targetBuckets, BucketDispatcher bucketCreator, List<LocalBucket> createdBuckets, int partId, LocalAbstractObject object) throws BucketStorageException {
+        try {
+            // Add object to target bucket
+            Bucket bucket = targetBuckets.get(partId);
+            if (bucket == null) { // The bucket was not initialized, use bucket creator to create a new one
+                LocalBucket createdBucket = bucketCreator.createStandaloneBucket();
+                createdBuckets.add(createdBucket);
+                targetBuckets.set(partId, bucket = createdBucket);
+            }
+            bucket.addObject(object);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Wrong partition ID '" + partId + "' in policy " + policy);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Can't create bucket", e);
+        }
+    }
+
+
     //****************** String representation ******************//
 
     /**
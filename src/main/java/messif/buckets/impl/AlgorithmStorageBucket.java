@@ -297,20 +297,25 @@ public class AlgorithmStorageBucket extends LocalBucket implements ModifiableInd
      * @throws BucketStorageException if the algorithm does not support delete operation or there was an error deleting the object
      */
     @Override
-    public synchronized int deleteObject(String locatorURI, int deleteLimit) throws BucketStorageException {
-        DeleteByLocatorOperation operation;
+    public int deleteObject(String locatorURI, int deleteLimit) throws BucketStorageException {
+        getObjectsLock().writeLock().lock();
         try {
-            operation = algorithm.executeOperation(new DeleteByLocatorOperation(Collections.singleton(locatorURI), deleteLimit));
-        } catch (NoSuchMethodException e) {
-            throw new StorageFailureException("Cannot delete object from algorithm, because DeleteOperation is not supported", e);
-        } catch (AlgorithmMethodException e) {
-            throw new StorageFailureException("DeleteOperation executed on " + algorithm.getName() + " failed", e.getCause());
-        }
+            DeleteByLocatorOperation operation;
+            try {
+                operation = algorithm.executeOperation(new DeleteByLocatorOperation(Collections.singleton(locatorURI), deleteLimit));
+            } catch (NoSuchMethodException e) {
+                throw new StorageFailureException("Cannot delete object from algorithm, because DeleteOperation is not supported", e);
+            } catch (AlgorithmMethodException e) {
+                throw new StorageFailureException("DeleteOperation executed on " + algorithm.getName() + " failed", e.getCause());
+            }
 
-        // Update object count
-        if (operation.wasSuccessful())
-            objectCount -= operation.getObjects().size();
-        return operation.getObjects().size();
+            // Update object count
+            if (operation.wasSuccessful())
+                objectCount -= operation.getObjects().size();
+            return operation.getObjects().size();
+        } finally {
+            getObjectsLock().writeLock().unlock();
+        }
     }
 
     @Override
@@ -559,7 +564,7 @@ public class AlgorithmStorageBucket extends LocalBucket implements ModifiableInd
     /**
      * Splits this bucket according to the specified policy.
      * If the encapsulated algorithm implements the {@link SplittableAlgorithm} interface and the bucketCreator is provided,
-     * the split method of the algorithm will be called to perform the split. Otherwise, the standard Bucket's {@link Bucket#split}
+     * the split method of the algorithm will be called to perform the split. Otherwise, the standard {@link LocalBucket#split}
      * is executed.
      * 
      * @param policy the split policy used to split this bucket
@@ -571,21 +576,27 @@ public class AlgorithmStorageBucket extends LocalBucket implements ModifiableInd
      * @throws BucketStorageException if there was a storage error (capacity overflow/underflow or filter reject) during split
      */
     @Override
-    public synchronized int split(SplitPolicy policy, final List<Bucket> targetBuckets, final BucketDispatcher bucketCreator, int whoStays) throws IllegalArgumentException, BucketStorageException {
+    public int split(SplitPolicy policy, final List<Bucket> targetBuckets, final BucketDispatcher bucketCreator, int whoStays) throws IllegalArgumentException, BucketStorageException {
+        // The standard split locks this bucket only while it is committed
         if (!(algorithm instanceof SplittableAlgorithm) || bucketCreator == null)
             return super.split(policy, targetBuckets, bucketCreator, whoStays);
 
-        // Prepare the split result object
-        SplitResult result = new SplitResult(bucketCreator);
+        getObjectsLock().writeLock().lock();
+        try {
+            // Prepare the split result object
+            SplitResult result = new SplitResult(bucketCreator);
 
-        // Execute the split
-        ((SplittableAlgorithm)algorithm).split(policy, result, whoStays);
+            // Execute the split
+            ((SplittableAlgorithm)algorithm).split(policy, result, whoStays);
 
-        // Add created buckets
-        if (targetBuckets != null)
-            targetBuckets.addAll(result.getCreatedBuckets());
+            // Add created buckets
+            if (targetBuckets != null)
+                targetBuckets.addAll(result.getCreatedBuckets());
 
-        return result.getObjectsMoved();
+            return result.getObjectsMoved();
+        } finally {
+            getObjectsLock().writeLock().unlock();
+        }
     }
 
 }
@@ -25,11 +25,13 @@ import messif.buckets.LocalBucket;
 import messif.buckets.OrderedLocalBucket;
 import messif.buckets.index.LocalAbstractObjectOrder;
 import messif.buckets.index.ModifiableOrderedIndex;
+import messif.buckets.index.impl.LongStorageFrontCodedIndex;
 import messif.buckets.index.impl.LongStorageIndex;
 import messif.buckets.storage.impl.DiskStorage;
 import messif.objects.LocalAbstractObject;
 import messif.objects.nio.BinarySerializator;
 import messif.objects.nio.MultiClassSerializator;
+import messif.utility.Convert;
 
 /**
  * A disk-oriented implementation of {@link LocalBucket} with an indexed access using locators.
@@ -92,7 +94,7 @@ public class DiskBlockLocatorBucket extends OrderedLocalBucket<String> implement
         this(capacity, softCapacity, lowOccupation, true, new DiskStorage<>(
                 LocalAbstractObject.class, file, false, bufferSize, directBuffers, asyncThreads, 0, capacity,
                 serializator
-        ));
+        ), false);
     }
 
     /**
@@ -104,10 +106,15 @@ public class DiskBlockLocatorBucket extends OrderedLocalBucket<String> implement
      * @param lowOccupation a minimal occupation for deleting objects - cannot be lowered
      * @param occupationAsBytes flag whether the occupation (and thus all the limits) are in bytes or number of objects
      * @param diskStorage the object storage for this bucket
+     * @param frontCodedIndex flag whether the locators are kept in memory in the {@link LongStorageFrontCodedIndex}
+     *          (otherwise the locators are read from the storage by the {@link LongStorageIndex})
      */
-    private DiskBlockLocatorBucket(long capacity, long softCapacity, long lowOccupation, boolean occupationAsBytes, DiskStorage<LocalAbstractObject> diskStorage) {
+    private DiskBlockLocatorBucket(long capacity, long softCapacity, long lowOccupation, boolean occupationAsBytes, DiskStorage<LocalAbstractObject> diskStorage, boolean frontCodedIndex) {
         super(capacity, softCapacity, lowOccupation, occupationAsBytes, 0);
-        objects = new LongStorageIndex<String, LocalAbstractObject>(diskStorage, LocalAbstractObjectOrder.locatorToLocalObjectComparator);
+        if (frontCodedIndex)
+            objects = new LongStorageFrontCodedIndex<LocalAbstractObject>(diskStorage, LocalAbstractObjectOrder.locatorToLocalObjectComparator);
+        else
+            objects = new LongStorageIndex<String, LocalAbstractObject>(diskStorage, LocalAbstractObjectOrder.locatorToLocalObjectComparator);
     }
 
     @Override
@@ -128,6 +135,8 @@ public class DiskBlockLocatorBucket extends OrderedLocalBucket<String> implement
     /**
      * Creates a bucket. For the description of additional parameters that
      * can be specified in the parameters map see {@link DiskStorage#create}.
+     * Additionally, the <em>frontCodedIndex</em> flag controls whether the locators
+     * are kept in memory in the compact {@link LongStorageFrontCodedIndex}.
      * 
      * @param capacity maximal capacity of the bucket - cannot be exceeded
      * @param softCapacity maximal soft capacity of the bucket
@@ -140,7 +149,8 @@ public class DiskBlockLocatorBucket extends OrderedLocalBucket<String> implement
      * @throws ClassNotFoundException if the parameter <em>class</em> could not be resolved or is not a descendant of LocalAbstractObject
      */
     public static DiskBlockLocatorBucket getBucket(long capacity, long softCapacity, long lowOccupation, boolean occupationAsBytes, Map<String, Object> parameters) throws IOException, InstantiationException, ClassNotFoundException {
-        return new DiskBlockLocatorBucket(capacity, softCapacity, lowOccupation, occupationAsBytes, DiskStorage.create(LocalAbstractObject.class, parameters));
+        boolean frontCodedIndex = Convert.getParameterValue(parameters, "frontCodedIndex", Boolean.class, false);
+        return new DiskBlockLocatorBucket(capacity, softCapacity, lowOccupation, occupationAsBytes, DiskStorage.create(LocalAbstractObject.class, parameters), frontCodedIndex);
     }
 
 
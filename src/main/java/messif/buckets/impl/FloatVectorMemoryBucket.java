@@ -0,0 +1,151 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.impl;
+
+import java.io.Serializable;
+import java.util.Map;
+import messif.buckets.BucketDispatcher;
+import messif.buckets.BucketStorageException;
+import messif.buckets.LocalBucket;
+import messif.buckets.index.ModifiableIndex;
+import messif.buckets.storage.impl.FloatVectorMemoryStorage;
+import messif.objects.LocalAbstractObject;
+import messif.operations.QueryOperation;
+import messif.operations.RankingSingleQueryOperation;
+import messif.operations.query.KNNQueryOperation;
+import messif.operations.query.RangeQueryOperation;
+import messif.statistics.StatisticRefCounter;
+
+
+/**
+ * A volatile implementation of {@link LocalBucket} for fixed-dimension float vectors.
+ * It stores all objects in a {@link FloatVectorMemoryStorage}, i.e. the coordinates
+ * of the vectors are kept contiguously in off-heap memory and the objects are
+ * materialized only when they are retrieved. No index is provided for the objects.
+ *
+ * <p>
+ * The {@link KNNQueryOperation} and {@link RangeQueryOperation} with a query object
+ * of the same class as the stored objects are evaluated directly on the stored
+ * vectors, so only the answer objects are created. All other queries are evaluated
+ * on the materialized objects.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ * @see BucketDispatcher
+ * @see LocalBucket
+ */
+public class FloatVectorMemoryBucket extends LocalBucket implements Serializable {
+    /** class serial id for serialization */
+    private static final long serialVersionUID = 1L;
+
+    //****************** Data storage ******************//
+
+    /** Object storage */
+    protected final FloatVectorMemoryStorage objects;
+
+
+    /****************** Constructors ******************/
+
+    /**
+     * Constructs a new FloatVectorMemoryBucket instance.
+     * The class and dimensionality of the stored vectors is taken from the first inserted object.
+     * @param capacity maximal capacity of the bucket - cannot be exceeded
+     * @param softCapacity maximal soft capacity of the bucket
+     * @param lowOccupation a minimal occupation for deleting objects - cannot be lowered
+     * @param occupationAsBytes flag whether the occupation (and thus all the limits) are in bytes or number of objects
+     */
+    public FloatVectorMemoryBucket(long capacity, long softCapacity, long lowOccupation, boolean occupationAsBytes) {
+        this(capacity, softCapacity, lowOccupation, occupationAsBytes, new FloatVectorMemoryStorage());
+    }
+
+    /**
+     * Constructs a new FloatVectorMemoryBucket instance.
+     * This constructor is intended to be used from the factory method.
+     * @param capacity maximal capacity of the bucket - cannot be exceeded
+     * @param softCapacity maximal soft capacity of the bucket
+     * @param lowOccupation a minimal occupation for deleting objects - cannot be lowered
+     * @param occupationAsBytes flag whether the occupation (and thus all the limits) are in bytes or number of objects
+     * @param storage the object storage for this bucket
+     */
+    private FloatVectorMemoryBucket(long capacity, long softCapacity, long lowOccupation, boolean occupationAsBytes, FloatVectorMemoryStorage storage) {
+        super(capacity, softCapacity, lowOccupation, occupationAsBytes, 0);
+        this.objects = storage;
+    }
+
+    @Override
+    public void finalize() throws Throwable {
+        objects.finalize();
+        super.finalize();
+    }
+
+    @Override
+    public void destroy() throws Throwable {
+        objects.destroy();
+        super.destroy();
+    }
+
+
+    //****************** Factory method ******************//
+
+    /**
+     * Creates a bucket. For the description of additional parameters that
+     * can be specified in the parameters map see {@link FloatVectorMemoryStorage#create}.
+     *
+     * @param capacity maximal capacity of the bucket - cannot be exceeded
+     * @param softCapacity maximal soft capacity of the bucket
+     * @param lowOccupation a minimal occupation for deleting objects - cannot be lowered
+     * @param occupationAsBytes flag whether the occupation (and thus all the limits) are in bytes or number of objects
+     * @param parameters list of named parameters (see above)
+     * @return a new FloatVectorMemoryBucket instance
+     * @throws IllegalArgumentException if the parameters specified are invalid
+     * @throws ClassCastException if the parameter <em>class</em> is not a descendant of {@link messif.objects.impl.ObjectFloatVector}
+     */
+    public static FloatVectorMemoryBucket getBucket(long capacity, long softCapacity, long lowOccupation, boolean occupationAsBytes, Map<String, Object> parameters) throws IllegalArgumentException, ClassCastException {
+        return new FloatVectorMemoryBucket(capacity, softCapacity, lowOccupation, occupationAsBytes, FloatVectorMemoryStorage.create(parameters));
+    }
+
+
+    //****************** Overrides ******************//
+
+    @Override
+    protected ModifiableIndex<LocalAbstractObject> getModifiableIndex() {
+        return objects;
+    }
+
+    @Override
+    public int processQuery(QueryOperation<?> query) {
+        // Only the operations whose evaluation is known are processed directly on the stored vectors
+        if (query.getClass() == KNNQueryOperation.class || query.getClass() == RangeQueryOperation.class) {
+            RankingSingleQueryOperation operation = (RankingSingleQueryOperation)query;
+            if (operation.getQueryObject().getClass() == objects.getStoredObjectsClass()) {
+                // Update statistics
+                if (StatisticRefCounter.isEnabledGlobally())
+                    counterBucketRead.add(this);
+                try {
+                    return objects.evaluate(operation, operation.getQueryObject());
+                } catch (BucketStorageException e) {
+                    throw new IllegalStateException("Cannot evaluate " + query + " on " + this, e);
+                }
+            }
+        }
+
+        return super.processQuery(query);
+    }
+
+}
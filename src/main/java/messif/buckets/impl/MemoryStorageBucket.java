@@ -22,6 +22,12 @@ import messif.buckets.BucketDispatcher;
 import messif.buckets.LocalBucket;
 import messif.buckets.index.ModifiableIndex;
 import messif.buckets.storage.impl.MemoryStorage;
+import messif.operations.QueryOperation;
+import messif.operations.RankingSingleQueryOperation;
+import messif.operations.query.BatchKNNQueryOperation;
+import messif.operations.query.KNNQueryOperation;
+import messif.operations.query.RangeQueryOperation;
+import messif.statistics.StatisticRefCounter;
 
 
 /**
@@ -29,6 +35,16 @@ import messif.buckets.storage.impl.MemoryStorage;
  * It stores all objects in a {@link messif.buckets.storage.impl.MemoryStorage memory storage}
  * and no index is provided for the objects.
  *
+ * <p>
+ * The {@link KNNQueryOperation} and {@link RangeQueryOperation} are evaluated directly
+ * on the memory storage, which filters the stored objects by blocks using its
+ * {@link messif.objects.PrecomputedDistancesTable table of precomputed distances}.
+ * If the {@link #setPrecomputedDistancesPivots pivots} are set, the distances to pivots
+ * are kept only in the table and the {@link BatchKNNQueryOperation} is evaluated
+ * on the storage query by query as well.
+ * All other queries are evaluated on the iterator over all objects.
+ * </p>
+ *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
@@ -61,6 +77,25 @@ public class MemoryStorageBucket extends LocalBucket implements Serializable {
     }
 
 
+    //****************** Precomputed distances ******************//
+
+    /**
+     * Sets the pivots the distances to which are kept by the storage of this bucket.
+     * The distances are stored only in the storage's {@link messif.objects.PrecomputedDistancesTable table},
+     * no {@link messif.objects.PrecomputedDistancesFixedArrayFilter} is attached to the stored objects.
+     * @param pivots the pivots to measure the distances to (<tt>null</tt> or empty array disables the pivots)
+     * @param pivotDistancesValidIfGiven flag whether the distances in the filter
+     *          already associated with a stored object are valid; if so, they are used without measuring them again
+     * @throws UnsupportedOperationException if the objects of this bucket are not stored in a {@link MemoryStorage}
+     * @see MemoryStorage#setPrecomputedDistancesPivots(LocalAbstractObject[], boolean)
+     */
+    public void setPrecomputedDistancesPivots(LocalAbstractObject[] pivots, boolean pivotDistancesValidIfGiven) throws UnsupportedOperationException {
+        if (!(objects instanceof MemoryStorage))
+            throw new UnsupportedOperationException("Objects of bucket " + getBucketID() + " are not stored in memory storage");
+        ((MemoryStorage<?>)objects).setPrecomputedDistancesPivots(pivots, pivotDistancesValidIfGiven);
+    }
+
+
     //****************** Overrides ******************//
 
     @Override
@@ -68,6 +103,29 @@ public class MemoryStorageBucket extends LocalBucket implements Serializable {
         return objects;
     }
 
+    @Override
+    public int processQuery(QueryOperation<?> query) {
+        // Only the operations whose evaluation is known are processed directly on the storage
+        if (objects instanceof MemoryStorage && (query.getClass() == KNNQueryOperation.class || query.getClass() == RangeQueryOperation.class)) {
+            // Update statistics
+            if (StatisticRefCounter.isEnabledGlobally())
+                counterBucketRead.add(this);
+            return ((MemoryStorage<?>)objects).evaluate((RankingSingleQueryOperation)query);
+        }
+
+        // The batch is evaluated query by query only if the distances to pivots are not available in the objects
+        if (objects instanceof MemoryStorage && query.getClass() == BatchKNNQueryOperation.class && ((MemoryStorage<?>)objects).hasPrecomputedDistancesPivots()) {
+            if (StatisticRefCounter.isEnabledGlobally())
+                counterBucketRead.add(this);
+            int count = 0;
+            for (KNNQueryOperation knnOperation : ((BatchKNNQueryOperation)query).getKnnOperations())
+                count += ((MemoryStorage<?>)objects).evaluate(knnOperation);
+            return count;
+        }
+
+        return super.processQuery(query);
+    }
+
     @Override
     public void finalize() throws Throwable {
         objects.finalize();
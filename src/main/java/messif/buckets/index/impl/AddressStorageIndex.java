@@ -45,8 +45,8 @@ public class AddressStorageIndex<K, T> extends AbstractArrayIndex<K, T> implemen
     /** Storage associated with this index */
     private final Storage<T> storage;
 
-    /** Index of addresses into the storage */
-    private Address<T>[] index;
+    /** Index of addresses into the storage; a new array is created on each modification, so the searches need not be synchronized */
+    private volatile Address<T>[] index;
 
     /** Comparator imposing natural order of this index */
     private final IndexComparator<K, T> comparator;
@@ -118,7 +118,7 @@ public class AddressStorageIndex<K, T> extends AbstractArrayIndex<K, T> implemen
     }
 
     @Override
-    public boolean add(T object) throws BucketStorageException {
+    public synchronized boolean add(T object) throws BucketStorageException {
         // Search for the position where the object is added into index
         int pos = insertionPoint(object);
 
@@ -135,7 +135,7 @@ public class AddressStorageIndex<K, T> extends AbstractArrayIndex<K, T> implemen
     }
 
     @Override
-    protected boolean remove(int i) {
+    protected synchronized boolean remove(int i) {
         if (i < 0 || i >= index.length)
             return false;
         
@@ -44,8 +44,8 @@ public class IntStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements S
     /** Storage associated with this index */
     private final IntStorage<T> storage;
 
-    /** Index of addresses into the storage */
-    private int[] index;
+    /** Index of addresses into the storage; a new array is created on each modification, so the searches need not be synchronized */
+    private volatile int[] index;
 
     /** Comparator imposing natural order of this index */
     private final IndexComparator<K, T> comparator;
@@ -107,7 +107,7 @@ public class IntStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements S
     }
 
     @Override
-    public boolean add(T object) throws BucketStorageException {
+    public synchronized boolean add(T object) throws BucketStorageException {
         // Search for the position where the object is added into index
         int pos = insertionPoint(object);
 
@@ -124,7 +124,7 @@ public class IntStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements S
     }
 
     @Override
-    protected boolean remove(int i) {
+    protected synchronized boolean remove(int i) {
         if (i < 0 || i >= index.length)
             return false;
         
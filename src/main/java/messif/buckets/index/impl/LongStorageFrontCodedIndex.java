@@ -0,0 +1,1116 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.index.impl;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import messif.buckets.BatchAddible;
+import messif.buckets.BucketStorageException;
+import messif.buckets.index.IndexComparator;
+import messif.buckets.index.Lock;
+import messif.buckets.index.Lockable;
+import messif.buckets.index.ModifiableOrderedIndex;
+import messif.buckets.storage.LongAddress;
+import messif.buckets.storage.LongAddressRemapping;
+import messif.buckets.storage.LongAddressRemappingListener;
+import messif.buckets.storage.LongStorage;
+import messif.buckets.storage.LongStorageRemappable;
+import messif.buckets.storage.StorageIndexed;
+import messif.buckets.storage.StorageSearch;
+import messif.objects.nio.SnapshotObjectInputStream;
+import messif.objects.nio.SnapshotObjectOutputStream;
+
+/**
+ * Implementation of an index over a {@link LongStorage storage with long addresses}
+ * that keeps the string keys (e.g. the locators) of the stored objects in memory in a compact form.
+ * The sorted keys are split into blocks of at most {@link #BLOCK_SIZE} keys.
+ * Each block keeps its keys front-coded, i.e. every key stores only the suffix that differs
+ * from the preceding key, in an off-heap {@link ByteBuffer#allocateDirect direct buffer}
+ * and the respective addresses into the storage in a primitive array.
+ * 
+ * <p>
+ * All search methods on the keys are implemented using the binary search on
+ * the first keys of the blocks followed by a sequential scan of the block.
+ * The objects are read from the storage only when they are returned by the search.
+ * </p>
+ * 
+ * <p>
+ * If the storage is {@link LongStorageRemappable remappable}, the addresses
+ * are updated whenever the storage changes them (e.g. when it is compacted).
+ * </p>
+ * 
+ * <p>
+ * When restored from a {@link SnapshotObjectInputStream snapshot}, the front-coded
+ * keys of the blocks are used directly from the mapped snapshot section
+ * and a block gets its own buffer only when it is modified.
+ * </p>
+ * 
+ * <p>
+ * The modifications of the index are synchronized. The blocks are never modified in place,
+ * a modified block is encoded into a new buffer and a new list of blocks is published
+ * with a single reference swap. Thus the searches need not be synchronized, each search
+ * works with the list of blocks that was current when it was created.
+ * </p>
+ * 
+ * @param <T> the type of objects stored in this collection
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class LongStorageFrontCodedIndex<T> implements ModifiableOrderedIndex<String, T>, StorageIndexed<T>, BatchAddible<T>, LongAddressRemappingListener, Serializable {
+    /** class serial id for serialization */
+    private static final long serialVersionUID = 1L;
+
+    //****************** Constants ******************//
+
+    /** Maximal number of keys in one block */
+    private static final int BLOCK_SIZE = 64;
+
+    /** Charset used to encode the keys */
+    private static final Charset KEY_CHARSET = Charset.forName("UTF-8");
+
+    /** Name of the snapshot section with the front-coded keys */
+    private static final String SNAPSHOT_KEYS_SECTION = "LongStorageFrontCodedIndex.keys";
+
+    /** Name of the snapshot section with the addresses */
+    private static final String SNAPSHOT_ADDRESSES_SECTION = "LongStorageFrontCodedIndex.addresses";
+
+
+    //****************** Attributes ******************//
+
+    /** Storage associated with this index */
+    private final LongStorage<T> storage;
+    /** Comparator imposing natural order of this index */
+    private final IndexComparator<String, T> comparator;
+    /** Blocks of the sorted keys and addresses, the list is never modified once it is published */
+    private transient volatile List<Block> blocks;
+    /** Number of keys in this index */
+    private transient volatile int size;
+    /** Lock that guards the addresses in the index against the changes made by the storage */
+    private transient ReadWriteLock addressLock;
+    /** Open searches, the addresses of the blocks they search are remapped as well */
+    private transient Set<BlockSearch> openSearches;
+
+
+    //****************** Constructor ******************//
+
+    /**
+     * Creates a new instance of LongStorageFrontCodedIndex for the specified storage.
+     * @param storage the storage to associate with this index
+     * @param comparator the comparator imposing natural order of this index
+     */
+    public LongStorageFrontCodedIndex(LongStorage<T> storage, IndexComparator<String, T> comparator) {
+        this.storage = storage;
+        this.comparator = comparator;
+        this.blocks = new ArrayList<Block>();
+        registerAddressRemapping();
+    }
+
+    @Override
+    public void finalize() throws Throwable {
+        unregisterAddressRemapping();
+        storage.finalize();
+        super.finalize();
+    }
+
+    @Override
+    public synchronized void destroy() throws Throwable {
+        unregisterAddressRemapping();
+        storage.destroy();
+        blocks = new ArrayList<Block>();
+        size = 0;
+    }
+
+
+    //****************** Comparator methods ******************//
+
+    @Override
+    public IndexComparator<String, T> comparator() {
+        return comparator;
+    }
+
+
+    //****************** Address remapping ******************//
+
+    /**
+     * Registers this index as the remapping listener of the storage if it is {@link LongStorageRemappable remappable}.
+     * The storage's address lock is used to guard the addresses then, otherwise a private lock is created.
+     */
+    private void registerAddressRemapping() {
+        openSearches = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<BlockSearch, Boolean>()));
+        if (storage instanceof LongStorageRemappable) {
+            LongStorageRemappable<T> remappableStorage = (LongStorageRemappable<T>)storage;
+            addressLock = remappableStorage.getAddressLock();
+            remappableStorage.addRemappingListener(this);
+        } else {
+            addressLock = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Unregisters this index from the remapping listeners of the storage if it is {@link LongStorageRemappable remappable}.
+     */
+    private void unregisterAddressRemapping() {
+        if (storage instanceof LongStorageRemappable)
+            ((LongStorageRemappable<T>)storage).removeRemappingListener(this);
+    }
+
+    @Override
+    public void addressesRemapped(LongStorage<?> storage, LongAddressRemapping remapping) {
+        // The blocks replaced by a modification can still be read by the open searches
+        Set<Block> remappedBlocks = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+        remapBlocks(blocks, remapping, remappedBlocks);
+        synchronized (openSearches) {
+            for (BlockSearch search : openSearches)
+                remapBlocks(search.searchBlocks, remapping, remappedBlocks);
+        }
+    }
+
+    /**
+     * Updates the addresses of the given blocks that were not remapped yet.
+     * @param blockList the blocks to remap
+     * @param remapping the remapping of the addresses
+     * @param remappedBlocks the blocks that were already remapped, the newly remapped blocks are added
+     */
+    private static void remapBlocks(List<Block> blockList, LongAddressRemapping remapping, Set<Block> remappedBlocks) {
+        for (Block block : blockList)
+            if (remappedBlocks.add(block))
+                for (int i = 0; i < block.count; i++)
+                    block.addresses[i] = remapping.getNewAddress(block.addresses[i]);
+    }
+
+
+    //****************** Serialization ******************//
+
+    /**
+     * Java native serialization method.
+     * The blocks are written as the front-coded bytes followed by the addresses.
+     * If the stream is a {@link SnapshotObjectOutputStream}, the bytes and the addresses
+     * of all the blocks are written into two separate sections.
+     * @param out the stream to serialize this object to
+     * @throws IOException if there was an error writing to stream {@code out}
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        addressLock.readLock().lock();
+        try {
+            out.defaultWriteObject();
+            out.writeInt(size);
+            out.writeInt(blocks.size());
+            if (out instanceof SnapshotObjectOutputStream) {
+                writeSnapshotBlocks(out, (SnapshotObjectOutputStream)out);
+            } else {
+                for (Block block : blocks) {
+                    byte[] keys = new byte[block.keys.limit()];
+                    block.keys.duplicate().get(keys);
+                    out.writeInt(block.count);
+                    out.writeInt(keys.length);
+                    out.write(keys);
+                    for (int i = 0; i < block.count; i++)
+                        out.writeLong(block.addresses[i]);
+                }
+            }
+        } finally {
+            addressLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the blocks into the snapshot sections.
+     * The number of keys and the number of bytes of every block is written to the object stream.
+     * @param out the object stream to serialize this object to
+     * @param snapshot the snapshot stream where the sections are written (the same instance as {@code out})
+     * @throws IOException if there was an error writing to stream {@code out}
+     */
+    private void writeSnapshotBlocks(ObjectOutputStream out, SnapshotObjectOutputStream snapshot) throws IOException {
+        for (Block block : blocks) {
+            out.writeInt(block.count);
+            out.writeInt(block.keys.limit());
+        }
+        DataOutputStream keysSection = snapshot.startSection(SNAPSHOT_KEYS_SECTION);
+        for (Block block : blocks) {
+            byte[] keys = new byte[block.keys.limit()];
+            block.keys.duplicate().get(keys);
+            keysSection.write(keys);
+        }
+        out.writeInt(snapshot.finishSection());
+        DataOutputStream addressesSection = snapshot.startSection(SNAPSHOT_ADDRESSES_SECTION);
+        for (Block block : blocks)
+            for (int i = 0; i < block.count; i++)
+                addressesSection.writeLong(block.addresses[i]);
+        out.writeInt(snapshot.finishSection());
+    }
+
+    /**
+     * Java native deserialization method.
+     * @param in the stream to deserialize this object from
+     * @throws IOException if there was an error reading from stream {@code in}
+     * @throws ClassNotFoundException if an unknown class was encountered in the stream
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        size = in.readInt();
+        int blockCount = in.readInt();
+        blocks = new ArrayList<Block>(blockCount);
+        if (in instanceof SnapshotObjectInputStream) {
+            readSnapshotBlocks(in, (SnapshotObjectInputStream)in, blockCount);
+        } else {
+            for (int b = 0; b < blockCount; b++) {
+                int count = in.readInt();
+                byte[] keys = new byte[in.readInt()];
+                in.readFully(keys);
+                ByteBuffer keysBuffer = ByteBuffer.allocateDirect(keys.length);
+                keysBuffer.put(keys).flip();
+                long[] addresses = new long[count];
+                for (int i = 0; i < count; i++)
+                    addresses[i] = in.readLong();
+                blocks.add(new Block(keysBuffer, addresses, count));
+            }
+        }
+        registerAddressRemapping();
+    }
+
+    /**
+     * Reads the blocks from the snapshot sections.
+     * The keys of the blocks are slices of the mapped section.
+     * @param in the object stream to deserialize this object from
+     * @param snapshot the snapshot stream with the sections (the same instance as {@code in})
+     * @param blockCount the number of blocks to read
+     * @throws IOException if there was an error reading from stream {@code in}
+     */
+    private void readSnapshotBlocks(ObjectInputStream in, SnapshotObjectInputStream snapshot, int blockCount) throws IOException {
+        int[] counts = new int[blockCount];
+        int[] keysLengths = new int[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            counts[b] = in.readInt();
+            keysLengths[b] = in.readInt();
+        }
+        ByteBuffer keysSection = snapshot.getSection(in.readInt(), SNAPSHOT_KEYS_SECTION);
+        LongBuffer addressesSection = snapshot.getSection(in.readInt(), SNAPSHOT_ADDRESSES_SECTION).asLongBuffer();
+        for (int b = 0; b < blockCount; b++) {
+            keysSection.limit(keysSection.position() + keysLengths[b]);
+            ByteBuffer keys = keysSection.slice();
+            keysSection.position(keysSection.limit());
+            long[] addresses = new long[counts[b]];
+            addressesSection.get(addresses);
+            blocks.add(new Block(keys, addresses, counts[b]));
+        }
+    }
+
+
+    //****************** Index access methods ******************//
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes occupied by the front-coded keys outside of the heap.
+     * @return the number of bytes occupied by the keys
+     */
+    public long getKeysSize() {
+        long keysSize = 0;
+        for (Block block : blocks)
+            keysSize += block.keys.capacity();
+        return keysSize;
+    }
+
+    @Override
+    public synchronized LongAddress<T> store(T object) throws BucketStorageException {
+        String key = comparator.extractKey(object);
+        byte[] keyBytes = key.getBytes(KEY_CHARSET);
+        addressLock.readLock().lock();
+        try {
+            LongAddress<T> address = storage.store(object);
+            List<Block> newBlocks = new ArrayList<Block>(blocks);
+            insert(newBlocks, key, keyBytes, address.getAddress());
+            blocks = newBlocks;
+            return address;
+        } finally {
+            addressLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean add(T object) throws BucketStorageException {
+        store(object);
+        return true;
+    }
+
+    /**
+     * Adds all the specified objects.
+     * The objects are stored using the {@link LongStorage#store(java.util.Collection) batched store}
+     * of the storage and their keys are inserted afterwards.
+     * Note that if an exception is thrown, some of the objects may have been stored, but none of them is indexed.
+     * @param objects the objects to be added
+     * @return the number of added objects
+     * @throws BucketStorageException if there was an error storing the objects
+     */
+    @Override
+    public synchronized int addAll(Collection<? extends T> objects) throws BucketStorageException {
+        addressLock.readLock().lock();
+        try {
+            List<LongAddress<T>> addresses = storage.store(objects);
+            Iterator<LongAddress<T>> addressIterator = addresses.iterator();
+            List<Block> newBlocks = new ArrayList<Block>(blocks);
+            for (T object : objects) {
+                String key = comparator.extractKey(object);
+                insert(newBlocks, key, key.getBytes(KEY_CHARSET), addressIterator.next().getAddress());
+            }
+            blocks = newBlocks;
+            return addresses.size();
+        } finally {
+            addressLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the object at the given position of the given block from the storage.
+     * The address is retrieved and read while holding the address lock.
+     * @param block the block with the object's key
+     * @param offset the offset of the key within the block
+     * @return the object read from the storage
+     * @throws IllegalStateException if there was an error reading the object
+     */
+    private T getObject(Block block, int offset) throws IllegalStateException {
+        addressLock.readLock().lock();
+        try {
+            return storage.read(block.addresses[offset]);
+        } catch (BucketStorageException ex) {
+            throw new IllegalStateException("Cannot read object from storage", ex);
+        } finally {
+            addressLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the index of the block that can contain the given key.
+     * @param blockList the list of blocks to search
+     * @param key the key to search for
+     * @param after flag whether the block for the position after all the keys equal to {@code key}
+     *          is searched (otherwise the position before them is searched)
+     * @return the index of the last block with the first key smaller than {@code key}
+     *          (or smaller or equal if {@code after} is set) or -1 if there is no such block
+     */
+    private int findBlock(List<Block> blockList, String key, boolean after) {
+        int low = 0;
+        int high = blockList.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparator.compare(blockList.get(mid).getFirstKey(), key);
+            if (cmp < 0 || (after && cmp == 0))
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+
+    /**
+     * Inserts a key with the address into the given list of blocks.
+     * The block is split if it exceeds the {@link #BLOCK_SIZE}.
+     * The caller must hold the lock of this index and the list must not be published yet.
+     * @param blockList the list of blocks to modify
+     * @param key the key to insert
+     * @param keyBytes the encoded key
+     * @param address the address of the object in the storage
+     */
+    private void insert(List<Block> blockList, String key, byte[] keyBytes, long address) {
+        int blockIndex = findBlock(blockList, key, true);
+        if (blockIndex < 0)
+            blockIndex = 0;
+        Block block = blockList.isEmpty() ? Block.EMPTY : blockList.get(blockIndex);
+        int offset = block.find(key, true, comparator);
+
+        // Appending to the full last block starts a new block so that the sorted loading fills the blocks
+        if (offset == BLOCK_SIZE && blockIndex == blockList.size() - 1) {
+            block = Block.EMPTY;
+            blockIndex++;
+            offset = 0;
+        }
+
+        byte[][] keys = block.decodeKeys(block.count + 1);
+        System.arraycopy(keys, offset, keys, offset + 1, block.count - offset);
+        keys[offset] = keyBytes;
+        long[] addresses = new long[block.count + 1];
+        System.arraycopy(block.addresses, 0, addresses, 0, offset);
+        System.arraycopy(block.addresses, offset, addresses, offset + 1, block.count - offset);
+        addresses[offset] = address;
+        int count = block.count + 1;
+
+        if (block == Block.EMPTY) {
+            blockList.add(blockIndex, Block.encode(keys, addresses, 0, count));
+        } else if (count > BLOCK_SIZE) {
+            int half = count / 2;
+            blockList.set(blockIndex, Block.encode(keys, Arrays.copyOf(addresses, half), 0, half));
+            blockList.add(blockIndex + 1, Block.encode(keys, Arrays.copyOfRange(addresses, half, count), half, count));
+        } else {
+            blockList.set(blockIndex, Block.encode(keys, addresses, 0, count));
+        }
+        size++;
+    }
+
+    /**
+     * Removes the key at the given position from both this index and the storage.
+     * @param blockIndex the index of the block
+     * @param block the block at the given index, which the offset refers to
+     * @param offset the offset of the key within the block
+     * @return <tt>true</tt> if the whole block was removed, because it became empty
+     * @throws IllegalStateException if the block was modified since it was read
+     * @throws BucketStorageException if there was an error removing the object from the storage
+     */
+    private synchronized boolean remove(int blockIndex, Block block, int offset) throws IllegalStateException, BucketStorageException {
+        addressLock.readLock().lock();
+        try {
+            if (blockIndex >= blocks.size() || blocks.get(blockIndex) != block)
+                throw new IllegalStateException("The index was modified concurrently, the key cannot be removed");
+            storage.remove(block.addresses[offset]);
+            size--;
+            List<Block> newBlocks = new ArrayList<Block>(blocks);
+            if (block.count == 1) {
+                newBlocks.remove(blockIndex);
+            } else {
+                byte[][] keys = block.decodeKeys(block.count);
+                System.arraycopy(keys, offset + 1, keys, offset, block.count - offset - 1);
+                long[] addresses = new long[block.count - 1];
+                System.arraycopy(block.addresses, 0, addresses, 0, offset);
+                System.arraycopy(block.addresses, offset + 1, addresses, offset, block.count - offset - 1);
+                newBlocks.set(blockIndex, Block.encode(keys, addresses, 0, block.count - 1));
+            }
+            blocks = newBlocks;
+            return block.count == 1;
+        } finally {
+            addressLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Locks this index and returns a lock object if it is supported.
+     * A <tt>null</tt> is returned otherwise.
+     * The called must call the {@link Lock#unlock()} method if this method has returned non-null.
+     * @return a lock on this index or <tt>null</tt>
+     */
+    protected Lock lock() {
+        if (storage instanceof Lockable)
+            return ((Lockable)storage).lock(true);
+        else
+            return null;
+    }
+
+
+    //****************** Search methods ******************//
+
+    @Override
+    public StorageSearch<T> search() throws IllegalStateException {
+        return new KeyRangeSearch(null, null, null, lock());
+    }
+
+    @Override
+    public StorageSearch<T> search(String key, boolean restrictEqual) throws IllegalStateException {
+        return search(key, restrictEqual?key:null, restrictEqual?key:null);
+    }
+
+    @Override
+    public StorageSearch<T> search(String from, String to) throws IllegalStateException {
+        return search(from, from, to);
+    }
+
+    @Override
+    public StorageSearch<T> search(String startKey, String from, String to) throws IllegalStateException {
+        return new KeyRangeSearch(startKey, from, to, lock());
+    }
+
+    @Override
+    public StorageSearch<T> search(Collection<? extends String> keys) throws IllegalStateException {
+        return new KeyCollectionSearch(keys, lock());
+    }
+
+    @Override
+    public <C> StorageSearch<T> search(IndexComparator<? super C, ? super T> comparator, C key) throws IllegalStateException {
+        return search(comparator, Collections.singletonList(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <C> StorageSearch<T> search(IndexComparator<? super C, ? super T> comparator, C from, C to) throws IllegalStateException {
+        if (comparator.equals(comparator()))
+            return search((String)from, (String)from, (String)to); // This cast IS checked, because the comparators are equal
+        else
+            return new FullScanSearch<C>(lock(), comparator, from, to);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <C> StorageSearch<T> search(IndexComparator<? super C, ? super T> comparator, Collection<? extends C> keys) throws IllegalStateException {
+        if (comparator.equals(comparator()))
+            return search((Collection<? extends String>)keys); // This cast IS checked, because the comparators are equal
+        else
+            return new FullScanSearch<C>(lock(), comparator, keys);
+    }
+
+    @Override
+    public String toString() {
+        return "LongStorageFrontCodedIndex{size=" + size + ", blocks=" + blocks.size() + ", storage=" + storage + "}";
+    }
+
+
+    //****************** Search implementation ******************//
+
+    /**
+     * Internal class that implements the search on the blocks.
+     * The cursor is a position between two keys, i.e. the {@link #next()} returns
+     * the key at the cursor and the {@link #previous()} returns the key before the cursor.
+     */
+    private abstract class BlockSearch implements StorageSearch<T> {
+        /** Blocks searched by this search, i.e. the list of blocks current when the search was created or when it removed a key */
+        private volatile List<Block> searchBlocks = blocks;
+        /** Index of the block of the cursor */
+        protected int blockIndex;
+        /** Offset of the cursor within the block */
+        protected int offset;
+        /** Index of the block of the key returned by the most recent call to next or previous, -1 if there is none */
+        private int lastBlockIndex = -1;
+        /** Offset of the key returned by the most recent call to next or previous */
+        private int lastOffset;
+        /** Object found by the last search */
+        private T currentObject;
+        /** Lock object for this search */
+        private final Lock searchLock;
+
+        /**
+         * Creates a new search on the blocks.
+         * @param searchLock the lock object for the search - its {@link Lock#unlock()}
+         *          method is called when this search is closed
+         */
+        protected BlockSearch(Lock searchLock) {
+            this.searchLock = searchLock;
+            openSearches.add(this);
+        }
+
+        @Override
+        protected void finalize() throws Throwable {
+            close();
+            super.finalize();
+        }
+
+        /**
+         * Moves the cursor before the first key equal to the given key
+         * or after the last key equal to the given key.
+         * @param key the key to search for
+         * @param after flag whether to move the cursor after all the keys equal to {@code key}
+         */
+        protected final void locate(String key, boolean after) {
+            int index = findBlock(searchBlocks, key, after);
+            if (index < 0) {
+                blockIndex = 0;
+                offset = 0;
+            } else {
+                blockIndex = index;
+                offset = searchBlocks.get(index).find(key, after, comparator);
+            }
+        }
+
+        /**
+         * Returns the key at the cursor.
+         * @return the key at the cursor or <tt>null</tt> if the cursor is at the end
+         */
+        protected final String getNextKey() {
+            while (blockIndex < searchBlocks.size() && offset >= searchBlocks.get(blockIndex).count) {
+                blockIndex++;
+                offset = 0;
+            }
+            return blockIndex < searchBlocks.size() ? searchBlocks.get(blockIndex).getKey(offset) : null;
+        }
+
+        /**
+         * Returns the key before the cursor.
+         * @return the key before the cursor or <tt>null</tt> if the cursor is at the beginning
+         */
+        protected final String getPreviousKey() {
+            while (offset == 0 && blockIndex > 0) {
+                blockIndex--;
+                offset = searchBlocks.get(blockIndex).count;
+            }
+            return offset > 0 ? searchBlocks.get(blockIndex).getKey(offset - 1) : null;
+        }
+
+        /**
+         * Reads the object at the cursor and moves the cursor forward.
+         * @return <tt>true</tt>
+         */
+        protected final boolean readNext() {
+            currentObject = getObject(searchBlocks.get(blockIndex), offset);
+            lastBlockIndex = blockIndex;
+            lastOffset = offset++;
+            return true;
+        }
+
+        /**
+         * Reads the object before the cursor and moves the cursor backward.
+         * @return <tt>true</tt>
+         */
+        protected final boolean readPrevious() {
+            currentObject = getObject(searchBlocks.get(blockIndex), offset - 1);
+            lastBlockIndex = blockIndex;
+            lastOffset = --offset;
+            return true;
+        }
+
+        @Override
+        public T getCurrentObject() {
+            return currentObject;
+        }
+
+        @Override
+        public LongAddress<T> getCurrentObjectAddress() throws IllegalStateException {
+            if (lastBlockIndex == -1)
+                throw new IllegalStateException();
+            addressLock.readLock().lock();
+            try {
+                return new LongAddress<T>(storage, searchBlocks.get(lastBlockIndex).addresses[lastOffset]);
+            } finally {
+                addressLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean skip(int count) throws IllegalStateException {
+            while (count < 0 && previous())
+                count++;
+            while (count > 0 && next())
+                count--;
+            return count == 0;
+        }
+
+        @Override
+        public void remove() throws IllegalStateException, BucketStorageException {
+            if (lastBlockIndex == -1)
+                throw new IllegalStateException();
+            boolean blockRemoved = LongStorageFrontCodedIndex.this.remove(lastBlockIndex, searchBlocks.get(lastBlockIndex), lastOffset);
+            searchBlocks = blocks;
+            blockIndex = lastBlockIndex;
+            offset = blockRemoved ? 0 : lastOffset;
+            lastBlockIndex = -1;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public BlockSearch clone() throws CloneNotSupportedException {
+            BlockSearch clone = (BlockSearch)super.clone();
+            openSearches.add(clone);
+            return clone;
+        }
+
+        @Override
+        public void close() {
+            openSearches.remove(this);
+            if (searchLock != null)
+                searchLock.unlock();
+        }
+    }
+
+    /** Internal class that implements the search for the keys within the given bounds */
+    private class KeyRangeSearch extends BlockSearch {
+        /** The lower bound on the searched keys (<tt>null</tt> if not restricted) */
+        private final String from;
+        /** The upper bound on the searched keys (<tt>null</tt> if not restricted) */
+        private final String to;
+
+        /**
+         * Creates a new search for the keys within the given bounds.
+         * @param startKey the key before which the search starts (if <tt>null</tt>, the search starts at the {@code from} key)
+         * @param from the lower bound on the searched keys (<tt>null</tt> if not restricted)
+         * @param to the upper bound on the searched keys (<tt>null</tt> if not restricted)
+         * @param searchLock the lock object for the search - its {@link Lock#unlock()}
+         *          method is called when this search is closed
+         */
+        private KeyRangeSearch(String startKey, String from, String to, Lock searchLock) {
+            super(searchLock);
+            this.from = from;
+            this.to = to;
+            if (startKey == null || (from != null && comparator.compare(startKey, from) < 0))
+                startKey = from;
+            if (startKey != null)
+                locate(startKey, false);
+        }
+
+        @Override
+        public boolean next() throws IllegalStateException {
+            String key = getNextKey();
+            if (key == null || (to != null && comparator.compare(key, to) > 0))
+                return false;
+            return readNext();
+        }
+
+        @Override
+        public boolean previous() throws IllegalStateException {
+            String key = getPreviousKey();
+            if (key == null || (from != null && comparator.compare(key, from) < 0))
+                return false;
+            return readPrevious();
+        }
+    }
+
+    /** Internal class that implements the search for the keys equal to any of the given keys */
+    private class KeyCollectionSearch extends BlockSearch {
+        /** The sorted distinct keys to search for */
+        private final String[] keys;
+        /** Index of the currently searched key */
+        private int keyIndex;
+
+        /**
+         * Creates a new search for the keys equal to any of the given keys.
+         * @param keys the keys to search for
+         * @param searchLock the lock object for the search - its {@link Lock#unlock()}
+         *          method is called when this search is closed
+         */
+        private KeyCollectionSearch(Collection<? extends String> keys, Lock searchLock) {
+            super(searchLock);
+            String[] sortedKeys = keys.toArray(new String[keys.size()]);
+            Arrays.sort(sortedKeys, comparator);
+            int count = 0;
+            for (int i = 0; i < sortedKeys.length; i++)
+                if (count == 0 || comparator.compare(sortedKeys[count - 1], sortedKeys[i]) != 0)
+                    sortedKeys[count++] = sortedKeys[i];
+            this.keys = Arrays.copyOf(sortedKeys, count);
+            if (count > 0)
+                locate(this.keys[0], false);
+        }
+
+        @Override
+        public boolean next() throws IllegalStateException {
+            if (keyIndex < 0 && keys.length > 0)
+                locate(keys[++keyIndex], false);
+            while (keyIndex < keys.length) {
+                String key = getNextKey();
+                if (key != null && comparator.compare(key, keys[keyIndex]) == 0)
+                    return readNext();
+                if (++keyIndex < keys.length)
+                    locate(keys[keyIndex], false);
+            }
+            return false;
+        }
+
+        @Override
+        public boolean previous() throws IllegalStateException {
+            if (keyIndex >= keys.length && keys.length > 0)
+                locate(keys[--keyIndex], true);
+            while (keyIndex >= 0) {
+                String key = getPreviousKey();
+                if (key != null && comparator.compare(key, keys[keyIndex]) == 0)
+                    return readPrevious();
+                if (--keyIndex >= 0)
+                    locate(keys[keyIndex], true);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Internal class that implements full-scan search for this index.
+     * @param <C> type of boundaries used while comparing objects
+     */
+    private class FullScanSearch<C> extends AbstractSearch<C, T> implements StorageSearch<T> {
+        /** Search over all the keys that provides the objects */
+        private final KeyRangeSearch search;
+
+        /**
+         * Creates a new instance of FullScanSearch for the specified search comparator and keys to search.
+         * @param searchLock the lock object for the search - its {@link Lock#unlock()}
+         *          method is called when this search is closed
+         * @param comparator the comparator that compares the <code>keys</code> with the stored objects
+         * @param keys list of keys to search for
+         */
+        public FullScanSearch(Lock searchLock, IndexComparator<? super C, ? super T> comparator, Collection<? extends C> keys) {
+            super(comparator, keys);
+            this.search = new KeyRangeSearch(null, null, null, searchLock);
+        }
+
+        /**
+         * Creates a new instance of FullScanSearch for the specified search comparator and [from,to] bounds.
+         * @param searchLock the lock object for the search - its {@link Lock#unlock()}
+         *          method is called when this search is closed
+         * @param comparator the comparator that compares the <code>keys</code> with the stored objects
+         * @param fromKey the lower bound on the searched keys
+         * @param toKey the upper bound on the searched keys
+         */
+        public FullScanSearch(Lock searchLock, IndexComparator<? super C, ? super T> comparator, C fromKey, C toKey) {
+            super(comparator, fromKey, toKey);
+            this.search = new KeyRangeSearch(null, null, null, searchLock);
+        }
+
+        @Override
+        protected T readNext() throws BucketStorageException {
+            return search.next() ? search.getCurrentObject() : null;
+        }
+
+        @Override
+        protected T readPrevious() throws BucketStorageException {
+            return search.previous() ? search.getCurrentObject() : null;
+        }
+
+        @Override
+        public LongAddress<T> getCurrentObjectAddress() throws IllegalStateException {
+            return search.getCurrentObjectAddress();
+        }
+
+        @Override
+        public void remove() throws IllegalStateException, BucketStorageException {
+            search.remove();
+        }
+
+        @Override
+        public void close() {
+            search.close();
+        }
+    }
+
+
+    //****************** Block of keys ******************//
+
+    /**
+     * Block of the sorted keys that are front-coded in an off-heap buffer.
+     * Every key is encoded as the length of the prefix shared with the previous key,
+     * the length of the remaining suffix (both as variable-length integers) and the suffix bytes.
+     */
+    private static final class Block {
+        /** Block without any keys */
+        private static final Block EMPTY = new Block(ByteBuffer.allocate(0), new long[0], 0);
+
+        /** Front-coded keys, the limit of the buffer is the number of used bytes; the buffer is never modified */
+        private final ByteBuffer keys;
+        /** Addresses of the objects in the storage, they are modified only when remapped */
+        private final long[] addresses;
+        /** Number of keys in this block */
+        private final int count;
+
+        /**
+         * Creates a new block.
+         * @param keys the front-coded keys
+         * @param addresses the addresses of the objects in the storage
+         * @param count the number of keys
+         */
+        private Block(ByteBuffer keys, long[] addresses, int count) {
+            this.keys = keys;
+            this.addresses = addresses;
+            this.count = count;
+        }
+
+        /**
+         * Creates a new block with the given keys encoded into a new buffer.
+         * @param keys the array of the sorted encoded keys
+         * @param addresses the addresses of the stored keys (the first one corresponds to {@code keys[from]})
+         * @param from the index of the first key to store (inclusive)
+         * @param to the index of the last key to store (exclusive)
+         * @return the new block
+         */
+        private static Block encode(byte[][] keys, long[] addresses, int from, int to) {
+            int length = 0;
+            for (int i = from; i < to; i++) {
+                int shared = i == from ? 0 : getSharedPrefix(keys[i - 1], keys[i]);
+                length += getVarIntSize(shared) + getVarIntSize(keys[i].length - shared) + keys[i].length - shared;
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            for (int i = from; i < to; i++) {
+                int shared = i == from ? 0 : getSharedPrefix(keys[i - 1], keys[i]);
+                putVarInt(buffer, shared);
+                putVarInt(buffer, keys[i].length - shared);
+                buffer.put(keys[i], shared, keys[i].length - shared);
+            }
+            buffer.flip();
+            return new Block(buffer, addresses, to - from);
+        }
+
+        /**
+         * Decodes all the keys of this block.
+         * @param arraySize the size of the returned array (at least {@link #count})
+         * @return the array of the encoded keys
+         */
+        private byte[][] decodeKeys(int arraySize) {
+            byte[][] ret = new byte[arraySize][];
+            KeyReader reader = new KeyReader(keys);
+            for (int i = 0; i < count && reader.next(); i++)
+                ret[i] = reader.getKeyBytes();
+            return ret;
+        }
+
+        /**
+         * Returns the first key of this block.
+         * @return the first key of this block
+         */
+        private String getFirstKey() {
+            return getKey(0);
+        }
+
+        /**
+         * Returns the key at the given offset of this block.
+         * @param offset the offset of the key
+         * @return the key at the given offset
+         */
+        private String getKey(int offset) {
+            KeyReader reader = new KeyReader(keys);
+            for (int i = 0; i <= offset; i++)
+                reader.next();
+            return reader.getKey();
+        }
+
+        /**
+         * Returns the offset of the first key that is bigger or equal
+         * (or strictly bigger if {@code after} is set) than the given key.
+         * @param key the key to search for
+         * @param after flag whether the keys equal to {@code key} are skipped
+         * @param comparator the comparator of the keys
+         * @return the offset of the found key or {@link #count} if there is no such key
+         */
+        private int find(String key, boolean after, IndexComparator<String, ?> comparator) {
+            KeyReader reader = new KeyReader(keys);
+            for (int i = 0; i < count && reader.next(); i++) {
+                int cmp = comparator.compare(reader.getKey(), key);
+                if (cmp > 0 || (!after && cmp == 0))
+                    return i;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Sequential reader of the front-coded keys.
+     * The buffer is accessed using absolute positions, so the concurrent readers do not interfere.
+     */
+    private static final class KeyReader {
+        /** Buffer with the front-coded keys */
+        private final ByteBuffer buffer;
+        /** Position of the next key in the buffer */
+        private int position;
+        /** Bytes of the current key */
+        private byte[] key = new byte[64];
+        /** Length of the current key */
+        private int keyLength;
+
+        /**
+         * Creates a new reader of the front-coded keys.
+         * @param buffer the buffer with the front-coded keys
+         */
+        private KeyReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Reads a variable-length integer at the current position.
+         * @return the read integer
+         */
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = buffer.get(position++);
+                value |= (b & 0x7f) << shift;
+                if (b >= 0)
+                    return value;
+            }
+        }
+
+        /**
+         * Decodes the next key.
+         * @return <tt>false</tt> if there are no more keys
+         */
+        private boolean next() {
+            if (position >= buffer.limit())
+                return false;
+            int shared = readVarInt();
+            int suffix = readVarInt();
+            keyLength = shared + suffix;
+            if (key.length < keyLength)
+                key = Arrays.copyOf(key, Math.max(keyLength, key.length * 2));
+            for (int i = shared; i < keyLength; i++)
+                key[i] = buffer.get(position++);
+            return true;
+        }
+
+        /**
+         * Returns the current key.
+         * @return the current key
+         */
+        private String getKey() {
+            return new String(key, 0, keyLength, KEY_CHARSET);
+        }
+
+        /**
+         * Returns a copy of the bytes of the current key.
+         * @return the bytes of the current key
+         */
+        private byte[] getKeyBytes() {
+            return Arrays.copyOf(key, keyLength);
+        }
+    }
+
+    /**
+     * Returns the length of the common prefix of the two byte arrays.
+     * @param a the first array
+     * @param b the second array
+     * @return the length of the common prefix
+     */
+    private static int getSharedPrefix(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++)
+            if (a[i] != b[i])
+                return i;
+        return length;
+    }
+
+    /**
+     * Returns the number of bytes of the variable-length encoded integer.
+     * @param value the non-negative integer to encode
+     * @return the number of bytes of the encoded integer
+     */
+    private static int getVarIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    /**
+     * Writes the variable-length encoded integer to the buffer.
+     * @param buffer the buffer to write to
+     * @param value the non-negative integer to encode
+     */
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+}
@@ -17,19 +17,38 @@
 package messif.buckets.index.impl;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import messif.buckets.BatchAddible;
 import messif.buckets.BucketStorageException;
 import messif.buckets.index.IndexComparator;
 import messif.buckets.index.Lock;
 import messif.buckets.index.Lockable;
+import messif.buckets.storage.LongAddress;
+import messif.buckets.storage.LongAddressRemapping;
+import messif.buckets.storage.LongAddressRemappingListener;
 import messif.buckets.storage.LongStorage;
+import messif.buckets.storage.LongStorageRemappable;
+import messif.objects.nio.SnapshotObjectInputStream;
+import messif.objects.nio.SnapshotObjectOutputStream;
 
 /**
  * Implementation of a single index over a {@link LongStorage storage with long addresses}.
  * The addresses provided by the storage are kept in internal sorted array
  * that allows fast access to data in the storage. Objects are indexed
  * according to the given {@link IndexComparator}.
+ * If the storage is {@link LongStorageRemappable remappable}, the addresses
+ * are updated whenever the storage changes them (e.g. when it is compacted).
+ * When restored from a {@link SnapshotObjectInputStream snapshot}, the addresses
+ * are copied from the mapped snapshot section on the first access.
  * 
  * @param <K> the type of keys this index is ordered by
  * @param <T> the type of objects stored in this collection
@@ -37,7 +56,7 @@ import messif.buckets.storage.LongStorage;
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
  */
-public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements Serializable {
+public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements BatchAddible<T>, LongAddressRemappingListener, Serializable {
     /** class serial id for serialization */
     private static final long serialVersionUID = 2L;
 
@@ -47,13 +66,17 @@ public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements
     private static final int POSTPONED_SORT_SIZE = 10000;
     /** Number of items to allocate for one increment of the unsorted array part */
     private static final int POSTPONED_INCREMENT_SIZE = 1000;
+    /** Name of the snapshot section with the addresses */
+    private static final String SNAPSHOT_SECTION = "LongStorageIndex";
 
     //****************** Attributes ******************//
 
     /** Storage associated with this index */
     private final LongStorage<T> storage;
-    /** Index of addresses into the storage */
-    private long[] index;
+    /** Index of addresses into the storage; the modifications are synchronized, while the searches only wait for the postponed sorting; <tt>null</tt> until the {@link #snapshotIndex} is loaded */
+    private volatile long[] index;
+    /** Mapped snapshot section with the addresses that is not loaded yet */
+    private transient ByteBuffer snapshotIndex;
     /** Comparator imposing natural order of this index */
     private final IndexComparator<K, T> comparator;
     /** Size of the used unsorted part of the array */
@@ -62,6 +85,8 @@ public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements
     private transient int unsortedSizeTotal;
     /** Flag to avoid repetitive sorting when binary searching */
     private transient boolean beingSorted;
+    /** Lock that guards the addresses in the index against the changes made by the storage */
+    private transient ReadWriteLock addressLock;
 
 
     //****************** Constructor ******************//
@@ -75,16 +100,19 @@ public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements
         this.storage = storage;
         this.comparator = comparator;
         this.index = new long[0];
+        registerAddressRemapping();
     }
 
     @Override
     public void finalize() throws Throwable {
+        unregisterAddressRemapping();
         storage.finalize();
         super.finalize();
     }
 
     @Override
     public void destroy() throws Throwable {
+        unregisterAddressRemapping();
         storage.destroy();
     }
 
@@ -106,7 +134,7 @@ public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements
 
     @Override
     public int size() {
-        return index.length - unsortedSizeTotal + unsortedSizeUsed;
+        return getIndex().length - unsortedSizeTotal + unsortedSizeUsed;
     }
 
     /**
@@ -119,35 +147,107 @@ public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements
      * @throws BucketStorageException if there was a problem determining the point
      */
     protected int insertionPoint(T object) throws BucketStorageException {
-        return binarySearch(comparator.extractKey(object), 0, index.length - unsortedSizeTotal - 1, false);
+        return binarySearch(comparator.extractKey(object), 0, getIndex().length - unsortedSizeTotal - 1, false);
     }
 
     @Override
     public boolean add(T object) throws BucketStorageException {
+        addressLock.readLock().lock();
+        try {
+            return addAddress(object);
+        } finally {
+            addressLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds all the specified objects.
+     * The objects are stored using the {@link LongStorage#store(java.util.Collection) batched store}
+     * of the storage and their addresses are inserted into the index afterwards.
+     * Note that if an exception is thrown, some of the objects may have been stored, but none of them is indexed.
+     * @param objects the objects to be added
+     * @return the number of added objects
+     * @throws BucketStorageException if there was an error storing the objects
+     */
+    @Override
+    public int addAll(Collection<? extends T> objects) throws BucketStorageException {
+        addressLock.readLock().lock();
+        try {
+            return addAddresses(objects);
+        } finally {
+            addressLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the object into the storage and its address into the index.
+     * Note that the address read lock must be held when calling this method.
+     * @param object the object to add
+     * @return always <tt>true</tt>
+     * @throws BucketStorageException if there was a problem storing the object
+     */
+    private synchronized boolean addAddress(T object) throws BucketStorageException {
         if (size() > POSTPONED_SORT_SIZE) {
-            if (unsortedSizeTotal == unsortedSizeUsed) {
-                long[] newIndex = new long[index.length + POSTPONED_INCREMENT_SIZE];
-                System.arraycopy(index, 0, newIndex, 0, index.length);
-                index = newIndex;
-                unsortedSizeTotal += POSTPONED_INCREMENT_SIZE;
-            }
-            index[size()] = storage.store(object).getAddress();
-            unsortedSizeUsed++;
+            appendAddress(storage.store(object));
         } else {
             // Search for the position where the object is added into index
             int pos = insertionPoint(object);
 
-            // Make place for the address in the index at pos
-            long[] newIndex = new long[index.length + 1];
-            System.arraycopy(index, 0, newIndex, 0, pos);
-            System.arraycopy(index, pos, newIndex, pos + 1, index.length - pos);
+            // Store the object into storage and its address into the index
+            insertAddress(pos, storage.store(object));
+        }
+
+        return true;
+    }
+
+    /**
+     * Stores the objects into the storage using the batched store and their addresses into the index.
+     * Note that the address read lock must be held when calling this method.
+     * @param objects the objects to add
+     * @return the number of added objects
+     * @throws BucketStorageException if there was a problem storing the objects
+     */
+    private synchronized int addAddresses(Collection<? extends T> objects) throws BucketStorageException {
+        List<LongAddress<T>> addresses = storage.store(objects);
+        Iterator<LongAddress<T>> addressIterator = addresses.iterator();
+        for (T object : objects) {
+            if (size() > POSTPONED_SORT_SIZE)
+                appendAddress(addressIterator.next());
+            else
+                insertAddress(insertionPoint(object), addressIterator.next());
+        }
+        return addresses.size();
+    }
 
-            // Store the object into storage and its address into the index and commit the changes
-            newIndex[pos] = storage.store(object).getAddress();
+    /**
+     * Appends the address to the unsorted part of the index.
+     * @param address the address of the object in the storage
+     */
+    private void appendAddress(LongAddress<T> address) {
+        if (unsortedSizeTotal == unsortedSizeUsed) {
+            long[] newIndex = new long[index.length + POSTPONED_INCREMENT_SIZE];
+            System.arraycopy(index, 0, newIndex, 0, index.length);
             index = newIndex;
+            unsortedSizeTotal += POSTPONED_INCREMENT_SIZE;
         }
+        index[size()] = address.getAddress();
+        unsortedSizeUsed++;
+    }
 
-        return true;
+    /**
+     * Inserts the address into the sorted part of the index at the given position.
+     * @param pos the position in the index where to put the address
+     * @param address the address of the object in the storage
+     */
+    private void insertAddress(int pos, LongAddress<T> address) {
+        // Make place for the address in the index at pos
+        long[] newIndex = new long[index.length + 1];
+        System.arraycopy(index, 0, newIndex, 0, pos);
+        System.arraycopy(index, pos, newIndex, pos + 1, index.length - pos);
+
+        // Put the address into the index and commit the changes
+        newIndex[pos] = address.getAddress();
+        index = newIndex;
     }
 
     /**
@@ -178,6 +278,21 @@ public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements
 
     @Override
     protected boolean remove(int i) {
+        addressLock.readLock().lock();
+        try {
+            return removeAddress(i);
+        } finally {
+            addressLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the object at the given index from both the storage and the index.
+     * Note that the address read lock must be held when calling this method.
+     * @param i the index of the object to remove
+     * @return <tt>false</tt> if the object was not removed (e.g. because there is no object with this index)
+     */
+    private synchronized boolean removeAddress(int i) {
         if (i < 0 || i >= size())
             return false;
         
@@ -200,6 +315,7 @@ public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements
 
     @Override
     protected T get(int i) throws IndexOutOfBoundsException, IllegalStateException {
+        addressLock.readLock().lock();
         try {
             if (unsortedSizeUsed > 0) {
                 synchronized (this) { // This is necessary to block other read operations until the array is sorted
@@ -208,9 +324,11 @@ public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements
                 }
             }
 
-            return storage.read(index[i]);
+            return storage.read(getIndex()[i]);
         } catch (BucketStorageException e) {
             throw new IllegalStateException("Cannot read object from storage", e);
+        } finally {
+            addressLock.readLock().unlock();
         }
     }
 
@@ -220,29 +338,116 @@ public class LongStorageIndex<K, T> extends AbstractArrayIndex<K, T> implements
     }
 
 
+    //****************** Address remapping ******************//
+
+    /**
+     * Registers this index as the remapping listener of the storage if it is {@link LongStorageRemappable remappable}.
+     * The storage's address lock is used to guard the addresses then, otherwise a private lock is created.
+     */
+    private void registerAddressRemapping() {
+        if (storage instanceof LongStorageRemappable) {
+            LongStorageRemappable<T> remappableStorage = (LongStorageRemappable<T>)storage;
+            addressLock = remappableStorage.getAddressLock();
+            remappableStorage.addRemappingListener(this);
+        } else {
+            addressLock = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Unregisters this index from the remapping listeners of the storage if it is {@link LongStorageRemappable remappable}.
+     */
+    private void unregisterAddressRemapping() {
+        if (storage instanceof LongStorageRemappable)
+            ((LongStorageRemappable<T>)storage).removeRemappingListener(this);
+    }
+
+    @Override
+    public synchronized void addressesRemapped(LongStorage<?> storage, LongAddressRemapping remapping) {
+        index = remapping.getNewAddresses(getIndex());
+    }
+
+
+    //****************** Snapshot loading ******************//
+
+    /**
+     * Returns the index of addresses.
+     * If this index was restored from a snapshot, the addresses are loaded from the mapped section first.
+     * @return the index of addresses
+     */
+    private long[] getIndex() {
+        long[] ret = index;
+        return ret != null ? ret : loadSnapshotIndex();
+    }
+
+    /**
+     * Loads the index of addresses from the mapped snapshot section.
+     * @return the loaded index of addresses
+     */
+    private synchronized long[] loadSnapshotIndex() {
+        if (index == null) {
+            LongBuffer buffer = snapshotIndex.asLongBuffer();
+            long[] loadedIndex = new long[buffer.remaining()];
+            buffer.get(loadedIndex);
+            index = loadedIndex;
+            snapshotIndex = null;
+        }
+        return index;
+    }
+
+
     //****************** Serialization ******************//
 
     /**
      * Java native serialization method.
+     * If the stream is a {@link SnapshotObjectOutputStream}, the addresses are written into a separate section.
      * @param out the stream to serialize this object to
      * @throws IOException if there was an error writing to stream {@code out}
      */
     private void writeObject(ObjectOutputStream out) throws IOException {
-        // Sort array if needed
+        addressLock.readLock().lock();
         try {
-            sort();
-        } catch (BucketStorageException e) {
-            throw new IOException(e);
-        }
+            // Sort array if needed
+            try {
+                sort();
+            } catch (BucketStorageException e) {
+                throw new IOException(e);
+            }
 
-        // Shrink array
-        if (unsortedSizeTotal > 0) {
-            long[] newIndex = new long[index.length - unsortedSizeTotal];
-            System.arraycopy(index, 0, newIndex, 0, newIndex.length);
-            index = newIndex;
+            // Load the addresses from snapshot if needed and shrink array
+            getIndex();
+            if (unsortedSizeTotal > 0) {
+                long[] newIndex = new long[index.length - unsortedSizeTotal];
+                System.arraycopy(index, 0, newIndex, 0, newIndex.length);
+                index = newIndex;
+            }
+
+            if (out instanceof SnapshotObjectOutputStream) {
+                ObjectOutputStream.PutField fields = out.putFields();
+                fields.put("storage", storage);
+                fields.put("comparator", comparator);
+                fields.put("index", null);
+                out.writeFields();
+                out.writeInt(((SnapshotObjectOutputStream)out).writeSection(SNAPSHOT_SECTION, index, index.length));
+            } else {
+                out.defaultWriteObject();
+            }
+        } finally {
+            addressLock.readLock().unlock();
         }
+    }
 
-        out.defaultWriteObject();
+    /**
+     * Java native deserialization method.
+     * @param in the stream to deserialize this object from
+     * @throws IOException if there was an error reading from stream {@code in}
+     * @throws ClassNotFoundException if an unknown class was encountered in the stream
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (in instanceof SnapshotObjectInputStream)
+            snapshotIndex = ((SnapshotObjectInputStream)in).getSection(in.readInt(), SNAPSHOT_SECTION);
+        registerAddressRemapping();
     }
 
 }
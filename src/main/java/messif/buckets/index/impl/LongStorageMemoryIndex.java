@@ -16,13 +16,21 @@
  */
 package messif.buckets.index.impl;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import messif.buckets.BatchAddible;
 import messif.buckets.BucketStorageException;
 import messif.buckets.index.IndexComparator;
 import messif.buckets.index.ModifiableOrderedIndex;
@@ -31,7 +39,13 @@ import messif.buckets.index.impl.LongStorageMemoryIndex.KeyAddressPair;
 import messif.buckets.index.Lock;
 import messif.buckets.index.Lockable;
 import messif.buckets.storage.LongAddress;
+import messif.buckets.storage.LongAddressRemapping;
+import messif.buckets.storage.LongAddressRemappingListener;
+import messif.buckets.storage.LongStorage;
 import messif.buckets.storage.impl.DiskStorage;
+import messif.objects.nio.BufferInputStream;
+import messif.objects.nio.SnapshotObjectInputStream;
+import messif.objects.nio.SnapshotObjectOutputStream;
 import messif.utility.SortedArrayData;
 
 /**
@@ -43,16 +57,29 @@ import messif.utility.SortedArrayData;
  * the array whenever possible.
  * </p>
  * 
+ * <p>
+ * The positions are updated whenever the storage is {@link DiskStorage#compactDataAsync() compacted}.
+ * </p>
+ * 
+ * <p>
+ * When written to a {@link SnapshotObjectOutputStream snapshot}, the keys and the positions
+ * are stored in separate sections that are parsed on the first access to the restored index.
+ * </p>
+ * 
  * @param <K> the type of keys this index is ordered by
  * @param <T> the type of objects stored in this collection
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
  */
-public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressPair<K>> implements ModifiableOrderedIndex<K, T>, Serializable {
+public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressPair<K>> implements ModifiableOrderedIndex<K, T>, BatchAddible<T>, LongAddressRemappingListener, Serializable {
 
     /** Class serial id for serialization. */
     private static final long serialVersionUID = 102303L;
+    /** Name of the snapshot section with the keys */
+    private static final String SNAPSHOT_KEYS_SECTION = "LongStorageMemoryIndex.keys";
+    /** Name of the snapshot section with the positions */
+    private static final String SNAPSHOT_POSITIONS_SECTION = "LongStorageMemoryIndex.positions";
 
 
     //****************** Attributes ******************//
@@ -60,8 +87,14 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
     /** Storage associated with this index */
     private DiskStorage<T> storage;
 
-    /** Index of addresses into the storage */
-    private ArrayList<KeyAddressPair<K>> index;
+    /** Index of addresses into the storage; <tt>null</tt> until the snapshot sections are loaded */
+    private volatile ArrayList<KeyAddressPair<K>> index;
+
+    /** Mapped snapshot section with the keys that is not loaded yet */
+    private transient ByteBuffer snapshotKeys;
+
+    /** Mapped snapshot section with the positions that is not loaded yet */
+    private transient ByteBuffer snapshotPositions;
 
     /** Comparator imposing natural order of this index */
     private final IndexComparator<K, T> comparator;
@@ -78,6 +111,7 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
         this.storage = storage;
         this.comparator = comparator;
         this.index = new ArrayList<KeyAddressPair<K>>();
+        storage.addRemappingListener(this);
     }
 
     @Override
@@ -108,17 +142,30 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
 
     
     // **********************    (De)serialization methods     ************************** //
-    private void writeObject(java.io.ObjectOutputStream out) throws IOException {
+    private void writeObject(ObjectOutputStream out) throws IOException {
         out.writeObject(storage);
         out.writeObject(comparator);
-        out.writeInt(index.size());
-        for (KeyAddressPair<K> keyAddressPair : index) {
-            out.writeObject(keyAddressPair.key);
-            out.writeLong(keyAddressPair.position);
+        if (out instanceof SnapshotObjectOutputStream) {
+            SnapshotObjectOutputStream snapshot = (SnapshotObjectOutputStream)out;
+            ObjectOutputStream keys = new ObjectOutputStream(snapshot.startSection(SNAPSHOT_KEYS_SECTION));
+            for (KeyAddressPair<K> keyAddressPair : getIndex())
+                keys.writeObject(keyAddressPair.key);
+            keys.flush();
+            out.writeInt(snapshot.finishSection());
+            DataOutputStream positions = snapshot.startSection(SNAPSHOT_POSITIONS_SECTION);
+            for (KeyAddressPair<K> keyAddressPair : getIndex())
+                positions.writeLong(keyAddressPair.position);
+            out.writeInt(snapshot.finishSection());
+        } else {
+            out.writeInt(getIndex().size());
+            for (KeyAddressPair<K> keyAddressPair : getIndex()) {
+                out.writeObject(keyAddressPair.key);
+                out.writeLong(keyAddressPair.position);
+            }
         }
     }
 
-    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         storage = (DiskStorage<T>) in.readObject();
         Field comparatorField;
         try {
@@ -132,11 +179,52 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
         } catch (IllegalAccessException ex) {
             throw new IOException(ex);
         }
-        int indexSize = in.readInt();
-        index = new ArrayList<KeyAddressPair<K>>(indexSize);
-        for (int i = 0; i < indexSize; i++) {
-            index.add(new KeyAddressPair<K>((K) in.readObject(), in.readLong()));
+        if (in instanceof SnapshotObjectInputStream) {
+            SnapshotObjectInputStream snapshot = (SnapshotObjectInputStream)in;
+            snapshotKeys = snapshot.getSection(in.readInt(), SNAPSHOT_KEYS_SECTION);
+            snapshotPositions = snapshot.getSection(in.readInt(), SNAPSHOT_POSITIONS_SECTION);
+        } else {
+            int indexSize = in.readInt();
+            index = new ArrayList<KeyAddressPair<K>>(indexSize);
+            for (int i = 0; i < indexSize; i++) {
+                index.add(new KeyAddressPair<K>((K) in.readObject(), in.readLong()));
+            }
         }
+        storage.addRemappingListener(this);
+    }
+
+    /**
+     * Returns the index of addresses.
+     * If this index was restored from a snapshot, the keys and positions are loaded from the mapped sections first.
+     * @return the index of addresses
+     */
+    private ArrayList<KeyAddressPair<K>> getIndex() {
+        ArrayList<KeyAddressPair<K>> ret = index;
+        return ret != null ? ret : loadSnapshotIndex();
+    }
+
+    /**
+     * Loads the index of addresses from the mapped snapshot sections.
+     * @return the loaded index of addresses
+     * @throws IllegalStateException if the keys cannot be deserialized from the snapshot
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized ArrayList<KeyAddressPair<K>> loadSnapshotIndex() throws IllegalStateException {
+        if (index == null) {
+            try {
+                ObjectInputStream keys = new ObjectInputStream(new BufferInputStream(snapshotKeys));
+                LongBuffer positions = snapshotPositions.asLongBuffer();
+                ArrayList<KeyAddressPair<K>> loadedIndex = new ArrayList<KeyAddressPair<K>>(positions.remaining());
+                while (positions.hasRemaining())
+                    loadedIndex.add(new KeyAddressPair<K>((K)keys.readObject(), positions.get()));
+                index = loadedIndex;
+                snapshotKeys = null;
+                snapshotPositions = null;
+            } catch (IOException | ClassNotFoundException e) {
+                throw new IllegalStateException("Cannot load index from snapshot", e);
+            }
+        }
+        return index;
     }
 
     // ******************     Comparator methods      ****************** //
@@ -168,34 +256,49 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
 
         synchronized (storage) {
             // Copy data to the new storage
-            for (KeyAddressPair<K> indexPair : index)
+            for (KeyAddressPair<K> indexPair : getIndex())
                 newIndex.add(new KeyAddressPair<K>(indexPair.key, newStorage.store(storage.read(indexPair.position)).getAddress()));
 
             // Switch to new storage
+            storage.removeRemappingListener(this);
+            newStorage.addRemappingListener(this);
             this.storage = newStorage;
             this.index = newIndex;
         }
     }
 
+    @Override
+    public void addressesRemapped(LongStorage<?> storage, LongAddressRemapping remapping) {
+        ArrayList<KeyAddressPair<K>> pairs = getIndex();
+        for (int i = 0; i < pairs.size(); i++) {
+            KeyAddressPair<K> pair = pairs.get(i);
+            pairs.set(i, new KeyAddressPair<K>(pair.key, remapping.getNewAddress(pair.position)));
+        }
+    }
+
 
     // ******************     Index access methods     ****************** //
 
     /**
-     * Given a storage position, this method simply returns object on given position in the storeage.
-     * @param position storage position
-     * @return object on given position in the storeage
+     * Given an index, this method simply returns object on the respective position in the storage.
+     * The position is retrieved and read while holding the storage's address lock.
+     * @param i index of the element to read
+     * @return object on the respective position in the storage
      */
-    private T getObject(long position) {
+    private T getObject(int i) {
+        storage.getAddressLock().readLock().lock();
         try {
-            return storage.read(position);
+            return storage.read(get(i).position);
         } catch (BucketStorageException ex) {
             throw new IllegalStateException("Cannot read object from storage", ex);
+        } finally {
+            storage.getAddressLock().readLock().unlock();
         }
     }
 
     @Override
     public int size() {
-        return index.size();
+        return getIndex().size();
     }
 
     /**
@@ -205,7 +308,7 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
      * @throws BucketStorageException if there was a problem determining the point
      */
     protected int insertionPoint(K key) throws BucketStorageException {
-        return binarySearch(key, 0, index.size() - 1, false);
+        return binarySearch(key, 0, getIndex().size() - 1, false);
     }
 
     @Override
@@ -214,36 +317,69 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
         K key = comparator.extractKey(object);
         int pos = insertionPoint(key);
 
-        index.add(pos, new KeyAddressPair<K>(key, storage.store(object).getAddress()));
+        storage.getAddressLock().readLock().lock();
+        try {
+            getIndex().add(pos, new KeyAddressPair<K>(key, storage.store(object).getAddress()));
+        } finally {
+            storage.getAddressLock().readLock().unlock();
+        }
 
         return true;
     }
 
+    /**
+     * Adds all the specified objects.
+     * The objects are stored using the {@link DiskStorage#store(java.util.Collection) batched store}
+     * of the storage and their keys are inserted into the index afterwards.
+     * Note that if an exception is thrown, some of the objects may have been stored, but none of them is indexed.
+     * @param objects the objects to be added
+     * @return the number of added objects
+     * @throws BucketStorageException if there was an error storing the objects
+     */
+    @Override
+    public int addAll(Collection<? extends T> objects) throws BucketStorageException {
+        storage.getAddressLock().readLock().lock();
+        try {
+            List<LongAddress<T>> addresses = storage.store(objects);
+            Iterator<LongAddress<T>> addressIterator = addresses.iterator();
+            for (T object : objects) {
+                K key = comparator.extractKey(object);
+                getIndex().add(insertionPoint(key), new KeyAddressPair<K>(key, addressIterator.next().getAddress()));
+            }
+            return addresses.size();
+        } finally {
+            storage.getAddressLock().readLock().unlock();
+        }
+    }
+
     /**
      * Removes the element at the specified position in this collection - from both index and storage.
      * @param i index of the element to remove
      * @return <tt>false</tt> if the object was not removed (e.g. because there is no object with this index)
      */
     protected boolean remove(int i) {
-        if (i < 0 || i >= index.size())
+        if (i < 0 || i >= getIndex().size())
             return false;
 
+        storage.getAddressLock().readLock().lock();
         try {
             // remove the object from the storage
-            storage.remove(index.get(i).position);
+            storage.remove(getIndex().get(i).position);
 
             // remove the key from the index
-            index.remove(i);
+            getIndex().remove(i);
 
             return true;
         } catch (BucketStorageException e) {
             throw new IllegalStateException("Cannot remove object from storage", e);
+        } finally {
+            storage.getAddressLock().readLock().unlock();
         }
     }
 
     @Override
     protected KeyAddressPair<K> get(int i) throws IndexOutOfBoundsException, IllegalStateException {
-        return index.get(i);
+        return getIndex().get(i);
     }
 
     /**
@@ -413,7 +549,7 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
         public LongAddress<T> getCurrentObjectAddress() throws IllegalStateException {
             if (lastRet == -1)
                 throw new IllegalStateException();
-            return new LongAddress<T>(storage, index.get(lastRet).position);
+            return new LongAddress<T>(storage, getIndex().get(lastRet).position);
         }
 
         @Override
@@ -421,7 +557,7 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
             if (cursor > maxIndex) {
                 return false;
             }
-            currentObject = getObject(get(cursor).position);
+            currentObject = getObject(cursor);
             lastRet = cursor++;
             return true;
         }
@@ -431,7 +567,7 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
             if (cursor <= minIndex) {
                 return false;
             }
-            currentObject = getObject(get(cursor - 1).position);
+            currentObject = getObject(cursor - 1);
             lastRet = --cursor;
             return true;
         }
@@ -440,14 +576,14 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
         public boolean skip(int count) throws IllegalStateException {
             if (count < 0 && cursor + count >= minIndex) {
                 cursor += count + 1;
-                currentObject = getObject(get(cursor - 1).position);
+                currentObject = getObject(cursor - 1);
                 lastRet = --cursor;
                 return true;
             }
 
             if (count > 0 && cursor + count - 1 <= maxIndex) {
                 cursor += count - 1;
-                currentObject = getObject(get(cursor).position);
+                currentObject = getObject(cursor);
                 lastRet = cursor++;
                 return true;
             }
@@ -534,7 +670,7 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
             if (cursor >= size()) {
                 return null;
             }
-            return getObject(get(lastRet = cursor++).position);
+            return getObject(lastRet = cursor++);
         }
 
         @Override
@@ -542,14 +678,14 @@ public class LongStorageMemoryIndex<K, T> extends SortedArrayData<K, KeyAddressP
             if (cursor <= 0) {
                 return null;
             }
-            return getObject(get(lastRet = --cursor).position);
+            return getObject(lastRet = --cursor);
         }
 
         @Override
         public LongAddress<T> getCurrentObjectAddress() throws IllegalStateException {
             if (lastRet == -1)
                 throw new IllegalStateException();
-            return new LongAddress<T>(storage, index.get(lastRet).position);
+            return new LongAddress<T>(storage, getIndex().get(lastRet).position);
         }
 
         @Override
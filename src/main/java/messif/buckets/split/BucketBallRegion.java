@@ -154,7 +154,8 @@ public class BucketBallRegion extends BallRegion implements BucketFilterAfterAdd
      * Adjust the radius according to objects in the underlying bucket.
      */
     public void adjustRadius() {
-        synchronized (bucket) {
+        bucket.getObjectsLock().readLock().lock();
+        try {
             synchronized (this) {
                 if (pivot != null) {
                     radius = LocalAbstractObject.MIN_DISTANCE;
@@ -169,6 +170,8 @@ public class BucketBallRegion extends BallRegion implements BucketFilterAfterAdd
                 }
                 needsAdjusting = false;
             }
+        } finally {
+            bucket.getObjectsLock().readLock().unlock();
         }
     }
 
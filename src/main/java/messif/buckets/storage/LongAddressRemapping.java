@@ -0,0 +1,113 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.storage;
+
+import java.util.Arrays;
+
+/**
+ * Mapping of the old addresses of a {@link LongStorage} to the new ones.
+ * The mapping is produced when a storage moves its objects, e.g. when
+ * the deleted fragments of the storage are compacted. The addresses of the moved
+ * objects are kept in two sorted parallel arrays, the addresses from the given tail
+ * position onwards are shifted by a constant offset.
+ *
+ * @see LongStorageRemappable
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class LongAddressRemapping {
+
+    //****************** Attributes ******************//
+
+    /** Sorted old addresses of the moved objects */
+    private final long[] oldAddresses;
+    /** New addresses of the moved objects (negative value means that the object was removed) */
+    private final long[] newAddresses;
+    /** Number of items used in the {@link #oldAddresses} and {@link #newAddresses} arrays */
+    private final int count;
+    /** The old address from which all the addresses are shifted by {@link #tailShift} */
+    private final long tailAddress;
+    /** The shift of the old addresses greater or equal to {@link #tailAddress} */
+    private final long tailShift;
+
+
+    //****************** Constructor ******************//
+
+    /**
+     * Creates a new instance of LongAddressRemapping.
+     * Note that the arrays are not copied.
+     * @param oldAddresses the old addresses of the moved objects sorted in ascending order
+     * @param newAddresses the new addresses of the moved objects (negative value means that the object was removed)
+     * @param count the number of items used in the {@code oldAddresses} and {@code newAddresses} arrays
+     * @param tailAddress the old address from which all the addresses are shifted by {@code tailShift}
+     * @param tailShift the shift of the old addresses greater or equal to {@code tailAddress}
+     * @throws IllegalArgumentException if the arrays are smaller than {@code count}
+     */
+    public LongAddressRemapping(long[] oldAddresses, long[] newAddresses, int count, long tailAddress, long tailShift) throws IllegalArgumentException {
+        if (oldAddresses.length < count || newAddresses.length < count)
+            throw new IllegalArgumentException("Address arrays must have at least " + count + " items");
+        this.oldAddresses = oldAddresses;
+        this.newAddresses = newAddresses;
+        this.count = count;
+        this.tailAddress = tailAddress;
+        this.tailShift = tailShift;
+    }
+
+
+    //****************** Attribute access ******************//
+
+    /**
+     * Returns the new address of the object that was stored at the given old address.
+     * @param oldAddress the old address of the object
+     * @return the new address of the object or -1 if there was no object at the old address
+     */
+    public long getNewAddress(long oldAddress) {
+        if (oldAddress >= tailAddress)
+            return oldAddress + tailShift;
+        int index = Arrays.binarySearch(oldAddresses, 0, count, oldAddress);
+        if (index < 0 || newAddresses[index] < 0)
+            return -1;
+        return newAddresses[index];
+    }
+
+    /**
+     * Returns the new addresses of the objects that were stored at the given old addresses.
+     * @param oldAddresses the old addresses of the objects
+     * @return a new array with the new addresses of the objects (-1 for the old addresses without object)
+     */
+    public long[] getNewAddresses(long[] oldAddresses) {
+        long[] ret = new long[oldAddresses.length];
+        for (int i = 0; i < oldAddresses.length; i++)
+            ret[i] = getNewAddress(oldAddresses[i]);
+        return ret;
+    }
+
+    /**
+     * Returns the number of objects moved by this mapping (excluding the shifted tail).
+     * @return the number of moved objects
+     */
+    public int getMovedCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "LongAddressRemapping{moved=" + count + ", tail=" + tailAddress + ", shift=" + tailShift + "}";
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.storage;
+
+/**
+ * Listener that is notified whenever a {@link LongStorageRemappable} storage
+ * changes the addresses of its objects.
+ *
+ * @see LongStorageRemappable#addRemappingListener
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public interface LongAddressRemappingListener {
+    /**
+     * Notifies this listener that the addresses in the storage have been changed.
+     * The method is called while the {@link LongStorageRemappable#getAddressLock() address write lock}
+     * is held, so that the listener can safely replace all the addresses it keeps.
+     * @param storage the storage in which the addresses have changed
+     * @param remapping the mapping of the old addresses to the new ones
+     */
+    public void addressesRemapped(LongStorage<?> storage, LongAddressRemapping remapping);
+}
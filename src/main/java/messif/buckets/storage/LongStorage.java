@@ -16,6 +16,8 @@
  */
 package messif.buckets.storage;
 
+import java.util.Collection;
+import java.util.List;
 import messif.buckets.BucketStorageException;
 
 /**
@@ -34,6 +36,16 @@ public interface LongStorage<T> extends Storage<T> {
     @Override
     public LongAddress<T> store(T object) throws BucketStorageException;
 
+    /**
+     * Stores the given objects into this storage.
+     * Note that the storage can store the objects more efficiently
+     * than the respective number of calls to {@link #store(java.lang.Object)}.
+     * @param objects the objects to store
+     * @return the addresses of the stored objects in the order of the given collection
+     * @throws BucketStorageException if there was an error storing the objects
+     */
+    public List<LongAddress<T>> store(Collection<? extends T> objects) throws BucketStorageException;
+
     /**
      * Reads the object stored at the specified address in this storage.
      * @param address the address of the object to read
@@ -0,0 +1,62 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.storage;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * Interface of a long storage that can change the addresses of the stored objects,
+ * e.g. when the storage is compacted.
+ * Whenever the addresses are changed, the registered {@link LongAddressRemappingListener listeners}
+ * are notified with the {@link LongAddressRemapping mapping} of the old addresses to the new ones.
+ *
+ * <p>
+ * The addresses are changed only while the {@link #getAddressLock() address write lock} is held.
+ * Therefore, anybody who keeps the addresses (e.g. an index) should hold the read lock
+ * between retrieving an address and using it, i.e. between the {@link #store}
+ * and recording the returned address or between loading an address and
+ * the subsequent {@link #read(long) read} or {@link #remove(long) remove}.
+ * Note that the read lock must be acquired before any other lock (monitor) that
+ * can be requested by the listener.
+ * </p>
+ *
+ * @param <T> the class of objects stored in this storage
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public interface LongStorageRemappable<T> extends LongStorage<T> {
+    /**
+     * Returns the lock that guards the addresses of this storage.
+     * The write lock is held by the storage while the addresses are changed.
+     * @return the lock that guards the addresses of this storage
+     */
+    public ReadWriteLock getAddressLock();
+
+    /**
+     * Registers a listener that is notified whenever the addresses of this storage change.
+     * @param listener the listener to register
+     */
+    public void addRemappingListener(LongAddressRemappingListener listener);
+
+    /**
+     * Removes a previously registered remapping listener.
+     * @param listener the listener to remove
+     * @return <tt>true</tt> if the listener was removed
+     */
+    public boolean removeRemappingListener(LongAddressRemappingListener listener);
+}
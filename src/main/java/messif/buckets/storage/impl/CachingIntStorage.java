@@ -0,0 +1,163 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.storage.impl;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import messif.buckets.BucketStorageException;
+import messif.buckets.storage.IntAddress;
+import messif.buckets.storage.IntStorage;
+import messif.objects.nio.BinarySerializator;
+
+/**
+ * Storage that keeps the recently read objects of an encapsulated {@link IntStorage} in memory.
+ * The objects are cached by the {@link ObjectCache} that is bounded by
+ * the total binary size of the cached objects.
+ * The objects removed through this storage are discarded from the cache, thus
+ * the encapsulated storage should not be modified directly.
+ * Note that the {@link #read(int) read} returns clones of the cached {@link messif.objects.LocalAbstractObject}s,
+ * but the other cached objects are shared, thus they should not be modified.
+ *
+ * @param <T> the class of objects stored in this storage
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class CachingIntStorage<T> implements IntStorage<T> {
+    /** class serial id for serialization */
+    private static final long serialVersionUID = 1L;
+
+    //****************** Attributes ******************//
+
+    /** Encapsulated storage */
+    private final IntStorage<T> storage;
+    /** Serializator used to compute the binary sizes of the cached objects */
+    private final BinarySerializator serializator;
+    /** Maximal total binary size (in bytes) of the cached objects */
+    private final long cacheSize;
+    /** Cache of the recently read objects */
+    private transient ObjectCache<T> objectCache;
+    /** Loader of the objects that are not found in the cache */
+    private transient ObjectCache.Loader<T> objectCacheLoader;
+
+
+    //****************** Constructor ******************//
+
+    /**
+     * Creates a new caching storage.
+     * @param storage the encapsulated storage
+     * @param serializator the serializator used to compute the binary sizes of the cached objects
+     * @param cacheSize the maximal total binary size (in bytes) of the cached objects
+     * @throws IllegalArgumentException if the cache size is not positive
+     */
+    public CachingIntStorage(IntStorage<T> storage, BinarySerializator serializator, long cacheSize) throws IllegalArgumentException {
+        this.storage = storage;
+        this.serializator = serializator;
+        this.cacheSize = cacheSize;
+        initCache();
+    }
+
+    /**
+     * Initializes the transient cache.
+     */
+    private void initCache() {
+        this.objectCache = new ObjectCache<>(cacheSize);
+        this.objectCacheLoader = new ObjectCache.Loader<T>() {
+            @Override
+            public T load(long address) throws BucketStorageException {
+                return storage.read((int)address);
+            }
+            @Override
+            public int getWeight(T object) {
+                return serializator.getBinarySize(object);
+            }
+        };
+    }
+
+    @Override
+    public void finalize() throws Throwable {
+        storage.finalize();
+        super.finalize();
+    }
+
+    @Override
+    public void destroy() throws Throwable {
+        objectCache.clear();
+        storage.destroy();
+    }
+
+
+    //****************** Serialization ******************//
+
+    /**
+     * Read the serialized caching storage from an object stream.
+     * @param in the object stream from which to read the storage
+     * @throws IOException if there was an I/O error during deserialization
+     * @throws ClassNotFoundException if there was an unknown object in the stream
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initCache();
+    }
+
+
+    //****************** Attribute access ******************//
+
+    /**
+     * Returns the encapsulated storage.
+     * @return the encapsulated storage
+     */
+    public IntStorage<T> getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns the cache of the recently read objects.
+     * @return the object cache
+     */
+    public ObjectCache<T> getObjectCache() {
+        return objectCache;
+    }
+
+
+    //****************** Storage methods ******************//
+
+    @Override
+    public IntAddress<T> store(T object) throws BucketStorageException {
+        IntAddress<T> address = storage.store(object);
+        // The address of a removed object can be reused by the encapsulated storage
+        objectCache.invalidate(address.getAddress());
+        return new IntAddress<>(this, address.getAddress());
+    }
+
+    @Override
+    public T read(int address) throws BucketStorageException {
+        return objectCache.get(address, objectCacheLoader);
+    }
+
+    @Override
+    public void remove(int address) throws BucketStorageException, UnsupportedOperationException {
+        storage.remove(address);
+        objectCache.invalidate(address);
+    }
+
+    @Override
+    public String toString() {
+        return "CachingIntStorage{" + objectCache + ", storage=" + storage + "}";
+    }
+
+}
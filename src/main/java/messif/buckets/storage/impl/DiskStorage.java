@@ -16,11 +16,13 @@
  */
 package messif.buckets.storage.impl;
 
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
@@ -28,24 +30,39 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import messif.buckets.BatchAddible;
 import messif.buckets.BucketStorageException;
 import messif.buckets.CapacityFullException;
 import messif.buckets.StorageFailureException;
@@ -53,16 +70,24 @@ import messif.buckets.TemporaryCloseable;
 import messif.buckets.index.IndexComparator;
 import messif.buckets.index.impl.AbstractSearch;
 import messif.buckets.storage.LongAddress;
+import messif.buckets.storage.LongAddressRemapping;
+import messif.buckets.storage.LongAddressRemappingListener;
 import messif.buckets.storage.LongStorageIndexed;
+import messif.buckets.storage.LongStorageRemappable;
 import messif.buckets.storage.LongStorageSearch;
 import messif.buckets.storage.ReadonlyStorageException;
 import messif.objects.nio.AsynchronousFileChannelInputStream;
 import messif.objects.nio.AsynchronousFileChannelOutputStream;
 import messif.objects.nio.BinarySerializator;
 import messif.objects.nio.BufferInputStream;
+import messif.objects.nio.BufferOutputStream;
 import messif.objects.nio.CachingSerializator;
+import messif.objects.nio.MappedFileChannelInputStream;
 import messif.objects.nio.MultiClassSerializator;
+import messif.objects.nio.SnapshotObjectInputStream;
+import messif.objects.nio.SnapshotObjectOutputStream;
 import messif.utility.Convert;
+import messif.utility.SharedForkJoinPool;
 
 /**
  * Disk based storage.
@@ -75,7 +100,7 @@ import messif.utility.Convert;
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
  */
-public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, TemporaryCloseable {
+public class DiskStorage<T> implements LongStorageIndexed<T>, LongStorageRemappable<T>, BatchAddible<T>, Serializable, TemporaryCloseable {
     /** class serial id for serialization */
     private static final long serialVersionUID = 1L;
 
@@ -91,6 +116,8 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     public static final String FILENAME_PREFIX = "disk_storage_";
     /** The suffix for auto-generated filenames */
     public static final String FILENAME_SUFFIX = ".ds";
+    /** Number of milliseconds after which the compaction swap checks again the {@link #openIterators} that were not closed */
+    private static final long OPEN_ITERATORS_CHECK_INTERVAL = 1000;
     /** Ratio of {@link #deletedFragments} to {@link #objectCount} when the {@link #compactData()} is executed */
     protected static final float COMPACTING_FRAGMENTATION_RATIO = 0.5f;
     /** Header flag constant for indication whether the file was correctly closed */
@@ -99,6 +126,14 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     protected static final int DEFAULT_ASYNC_THREADS = 128;
     /** Default size of the reading buffer */
     protected static final int DEFAULT_BUFFER_SIZE = 16*1024;
+    /** Number of bytes of the file covered by one memory-mapped segment */
+    protected static final long MAPPED_SEGMENT_SIZE = 1L << 30;
+    /** Number of bytes by which the consecutive memory-mapped segments overlap (objects bigger than this may need to be read without the mapping) */
+    protected static final int MAPPED_SEGMENT_OVERLAP = 16*1024*1024;
+    /** Number of objects of a stored batch up to which the objects are serialized by a single thread */
+    protected static final int PARALLEL_BATCH_SIZE = 64;
+    /** Maximal number of bytes of the serialized objects that are written to the file by a single write */
+    protected static final int MAXIMAL_BATCH_BYTES = 64*1024*1024;
 
 
     //****************** Attributes ******************//
@@ -107,6 +142,12 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     private final int bufferSize;
     /** Allocate the buffers for read/write operations as {@link ByteBuffer#allocateDirect direct} */
     private final boolean bufferDirect;
+    /** Read the objects from the memory-mapped segments of the file instead of the buffered streams */
+    private final boolean mmap;
+    /** Time window (in milliseconds) in which the concurrent physical flushes are grouped into one, zero means no grouping */
+    private long groupCommitLatency;
+    /** Maximal total binary size (in bytes) of the objects kept in the {@link #objectCache}, zero means no caching */
+    private long cacheSize;
     /** The number of objects currently stored in the file */
     private transient int objectCount;
     /** The number of bytes currently stored in the file (excluding headers) */
@@ -133,6 +174,10 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     private transient BlockingDeque<SoftReference<AsynchronousFileChannelInputStream>> inputStreams;
     /** Stream for writing data */
     private transient AsynchronousFileChannelOutputStream outputStream;
+    /** The read-only channel on the file with data used for the memory mapping */
+    private transient FileChannel mappedChannel;
+    /** Memory-mapped segments of the file (if {@link #mmap} is set) */
+    private transient volatile MappedFileChannelInputStream[] mappedSegments;
     /** Counter for number of accesses (reads or writes) of this storage */
     private transient volatile int accessCounter;
     /** Flag whether the file is modified */
@@ -141,6 +186,24 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     private transient boolean readonly;
     /** Finalize thread that writes a modified header */
     private transient Thread modifiedThread;
+    /** Lock that guards the positions of the objects - the write lock is held while the compacted data are swapped in */
+    private transient ReentrantReadWriteLock addressLock;
+    /** Listeners notified whenever the positions of the objects are changed by the compaction */
+    private transient List<LongAddressRemappingListener> remappingListeners;
+    /** Searches and multiple-read iterators that keep the positions of the objects - the compaction swap is deferred until they are finished */
+    private transient Set<Object> openIterators;
+    /** Positions of the objects removed while the compaction is running (<tt>null</tt> if there is no compaction running) */
+    private transient List<Long> compactRemovedPositions;
+    /** Group of the physical flushes that is waiting for the {@link #groupCommitLatency} window to pass (<tt>null</tt> if there is none) */
+    private transient GroupCommit groupCommit;
+    /** Cache of the recently read objects (<tt>null</tt> if the caching is disabled) */
+    private transient volatile ObjectCache<T> objectCache;
+    /** Loader of the objects that are not found in the {@link #objectCache} */
+    private transient ObjectCache.Loader<T> objectCacheLoader;
+    /** Header values restored from a snapshot that are used instead of the header reconstruction if the file was not changed */
+    private transient ByteBuffer snapshotHeader;
+    /** Stamp of the snapshot stored in the flags of the pending-close header in the file, zero if the header was not written by a snapshot */
+    private transient int headerSnapshotStamp;
 
 
     //****************** Constructors ******************//
@@ -160,12 +223,33 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
      * @throws IOException if there was an error opening the bucket file
      */
     public DiskStorage(Class<? extends T> storedObjectsClass, File file, boolean readonly, int bufferSize, boolean bufferDirect, int asyncThreads, long startPosition, long maximalLength, BinarySerializator serializator) throws IOException {
+        this(storedObjectsClass, file, readonly, bufferSize, bufferDirect, false, asyncThreads, startPosition, maximalLength, serializator);
+    }
+
+    /**
+     * Creates a new DiskStreamStorage instance.
+     *
+     * @param storedObjectsClass the class of objects that the new storage will work with
+     * @param file the file in which to create the bucket
+     * @param readonly if <tt>true</tt>, the storage will be opened in read-only mode (e.g. the store method will throw an exception)
+     * @param bufferSize the size of the buffer used for reading/writing
+     * @param bufferDirect the bucket is either direct (<tt>true</tt>) or array-backed (<tt>false</tt>)
+     * @param mmap if <tt>true</tt>, the objects are read from the memory-mapped segments of the file
+     *          instead of the buffered streams
+     * @param asyncThreads the maximal number of threads to use (for asynchronous reading)
+     * @param startPosition the position in the file where this storage starts
+     * @param maximalLength the maximal length of the file
+     * @param serializator the object responsible for storing (and restoring) binary objects
+     * @throws IOException if there was an error opening the bucket file
+     */
+    public DiskStorage(Class<? extends T> storedObjectsClass, File file, boolean readonly, int bufferSize, boolean bufferDirect, boolean mmap, int asyncThreads, long startPosition, long maximalLength, BinarySerializator serializator) throws IOException {
         this.storedObjectsClass = storedObjectsClass;
         this.file = file;
         if (bufferSize < 0)
             throw new IllegalArgumentException("Bufer size must positive");
         this.bufferSize = bufferSize == 0 ? DEFAULT_BUFFER_SIZE : bufferSize;
         this.bufferDirect = bufferDirect;
+        this.mmap = mmap;
         if (asyncThreads < 0)
             throw new IllegalArgumentException("Number of asynchronous threads must positive");
         this.inputStreamCount = asyncThreads == 0 ? DEFAULT_ASYNC_THREADS : asyncThreads;
@@ -173,6 +257,9 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         this.maximalLength = maximalLength;
         this.serializator = serializator;
         this.readonly = readonly;
+        this.addressLock = new ReentrantReadWriteLock();
+        this.remappingListeners = new CopyOnWriteArrayList<>();
+        this.openIterators = Collections.newSetFromMap(new WeakHashMap<Object, Boolean>());
     }
 
     /**
@@ -190,11 +277,17 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         this.file = file;
         this.bufferSize = copyAttributesDiskStorage.bufferSize;
         this.bufferDirect = copyAttributesDiskStorage.bufferDirect;
+        this.mmap = copyAttributesDiskStorage.mmap;
+        this.groupCommitLatency = copyAttributesDiskStorage.groupCommitLatency;
+        setCacheSize(copyAttributesDiskStorage.cacheSize);
         this.inputStreamCount = copyAttributesDiskStorage.inputStreamCount;
         this.startPosition = copyAttributesDiskStorage.startPosition;
         this.maximalLength = copyAttributesDiskStorage.maximalLength;
         this.serializator = copyAttributesDiskStorage.serializator;
         this.readonly = copyAttributesDiskStorage.readonly;
+        this.addressLock = new ReentrantReadWriteLock();
+        this.remappingListeners = new CopyOnWriteArrayList<>();
+        this.openIterators = Collections.newSetFromMap(new WeakHashMap<Object, Boolean>());
     }
 
     @Override
@@ -231,12 +324,18 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
      *   <li><em>cacheClasses</em> - comma-separated list of classes that will be cached for fast serialization</li>
      *   <li><em>bufferSize</em> - the size of the buffers used for I/O operations</li>
      *   <li><em>directBuffer</em> - flag controlling whether to use faster direct buffers for I/O operations</li>
+     *   <li><em>mmap</em> - flag controlling whether to read the objects directly from the memory-mapped file
+     *              (suitable for read-mostly storages)</li>
      *   <li><em>readOnly</em> - if <tt>true</tt>, the storage file must be a valid storage file and the storage will support only read operations</li>
      *   <li><em>startPosition</em> - the position (in bytes) of the first block of the data within the <em>file</em></li>
      *   <li><em>maximalLength</em> - the maximal length (in bytes) of the data written to <em>file</em> by this storage</li>
      *   <li><em>oneStorage</em> - if <tt>true</tt>, the storage is created only once
      *              and this created instance is used in subsequent calls</li>
      *   <li><em>serializator</em> - instance of the serializator that is used (overrides any cacheClasses settings)</li>
+     *   <li><em>groupCommitLatency</em> - the time window (in milliseconds) in which the concurrent physical
+     *              {@link #flush(boolean) flushes} are grouped into one (see {@link #setGroupCommitLatency})</li>
+     *   <li><em>cacheSize</em> - the maximal total binary size (in bytes) of the recently read objects
+     *              that are kept in memory (see {@link #setCacheSize})</li>
      * </ul>
      *
      * @param <T> the class of objects that the new storage will work with
@@ -262,10 +361,13 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         Class<?>[] cacheClasses = Convert.getParameterValue(parameters, "cacheClasses", Class[].class, null);
         int bufferSize = Convert.getParameterValue(parameters, "bufferSize", Integer.class, DEFAULT_BUFFER_SIZE);
         boolean directBuffer = Convert.getParameterValue(parameters, "directBuffer", Boolean.class, false);
+        boolean mmap = Convert.getParameterValue(parameters, "mmap", Boolean.class, false);
         int asyncThreads = Convert.getParameterValue(parameters, "asyncThreads", Integer.class, DEFAULT_ASYNC_THREADS);
         boolean readOnly = Convert.getParameterValue(parameters, "readOnly", Boolean.class, false);
         long startPosition = Convert.getParameterValue(parameters, "startPosition", Long.class, 0L);
         long maximalLength = Convert.getParameterValue(parameters, "maximalLength", Long.class, Long.MAX_VALUE);
+        long groupCommitLatency = Convert.getParameterValue(parameters, "groupCommitLatency", Long.class, 0L);
+        long cacheSize = Convert.getParameterValue(parameters, "cacheSize", Long.class, 0L);
 
         // If a file was not specified - create a new file in given directory
         if (file == null) {
@@ -294,7 +396,9 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
             parameters.put("serializator", serializator);
 
         // Finally, create the storage
-        DiskStorage<T> storage = new DiskStorage<>(storedObjectsClass, file, readOnly, bufferSize, directBuffer, asyncThreads, startPosition, maximalLength, serializator);
+        DiskStorage<T> storage = new DiskStorage<>(storedObjectsClass, file, readOnly, bufferSize, directBuffer, mmap, asyncThreads, startPosition, maximalLength, serializator);
+        storage.setGroupCommitLatency(groupCommitLatency);
+        storage.setCacheSize(cacheSize);
 
         // Save the created storage for subsequent calls
         if (oneStorage && parameters != null)
@@ -386,6 +490,9 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     /** The size of the header - must match the {@link #writeHeader} and {@link #readHeader} methods */
     private static final int headerSize = (3*Long.SIZE + 4*Integer.SIZE)/8;
 
+    /** Name of the snapshot section with the header values - must match the {@link #writeObject} and {@link #readSnapshotHeader} methods */
+    private static final String SNAPSHOT_HEADER_SECTION = "DiskStorage.header";
+
     /**
      * Write header information to the file.
      * The {@link #objectCount}, {@link #fileOccupation} and {@link #deletedFragments}
@@ -394,7 +501,8 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
      * @param fileChannel the file channel to write the header to
      * @param position the position in the file channel to write the header to
      * @param flags the flags accompanied with the bucket;
-     *          currently only "opened/closed" flag is used to resolve validity of the header
+     *          the "opened/closed" flag is used to resolve validity of the header and
+     *          the remaining bits of a pending-close header hold the stamp of the snapshot that wrote it (see {@link #writeObject})
      * @throws IOException if something goes wrong when working with the filesystem
      */
     protected synchronized void writeHeader(AsynchronousFileChannel fileChannel, long position, int flags) throws IOException {
@@ -408,6 +516,7 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         buffer.putInt(deletedFragments);
         buffer.flip();
         writeToFileChannel(fileChannel, buffer, position);
+        headerSnapshotStamp = ((flags & FLAG_CLOSED) == FLAG_CLOSED) ? 0 : flags;
         if ((flags & FLAG_CLOSED) == FLAG_CLOSED) {
             // Replace flag with closed bit
             buffer.putInt(20, flags); // !!!! WARNING !!!! Don't forget to change the position here !!!!
@@ -483,8 +592,10 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
                 deletedFragments = buffer.getInt();
                 modified = false;
             } else {
-                // Header indicates pending close, so it is probably incorrect - reconstruct it from the file
-                reconstructHeader(fileChannel, position + headerSize);
+                // Header indicates pending close, so it is probably incorrect - use the snapshot values or reconstruct it from the file
+                headerSnapshotStamp = flags;
+                if (!readSnapshotHeader(fileChannel, flags))
+                    reconstructHeader(fileChannel, position + headerSize);
                 modified = !readonly;
             }
 
@@ -499,6 +610,35 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         }
     }
 
+    /**
+     * Read header information from the values stored in the snapshot.
+     * The values are used only if the pending-close header of the file was written
+     * by the same snapshot, i.e. the header flags hold the stamp stored in the snapshot,
+     * and the size of the file is the same as when the snapshot was written.
+     * Any modification after the snapshot rewrites the header without the stamp
+     * (see {@link #getOutputStream()}), so the in-place changes of the file are detected as well.
+     * The snapshot values are discarded afterwards, since they are valid only for the first opening of the file.
+     *
+     * @param fileChannel the file channel to check the size of
+     * @param flags the flags read from the header of the file
+     * @return <tt>true</tt> if the header values were restored from the snapshot
+     * @throws IOException if something goes wrong when working with the filesystem
+     */
+    private boolean readSnapshotHeader(AsynchronousFileChannel fileChannel, int flags) throws IOException {
+        ByteBuffer buffer = snapshotHeader;
+        if (buffer == null)
+            return false;
+        snapshotHeader = null;
+        int stamp = buffer.getInt(8);
+        if (stamp == 0 || stamp != flags || buffer.getLong(0) != fileChannel.size())
+            return false;
+        fileOccupation = buffer.getLong(12);
+        objectCount = buffer.getInt(20);
+        deletedFragments = buffer.getInt(24);
+        log.log(Level.INFO, "Header of disk storage in file {0} restored from snapshot", file.getAbsolutePath());
+        return true;
+    }
+
     /**
      * Reconstruct header information by seeking through the whole file.
      * The {@link #objectCount}, {@link #fileOccupation} and {@link #deletedFragments}
@@ -533,75 +673,312 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         }
     }
 
+    /**
+     * Returns the file space fragmentation, i.e. the ratio between the free and occupied disk space.
+     * @return the file space fragmentation
+     */
+    public float getFragmentation() {
+        return (float)deletedFragments / (objectCount + deletedFragments);
+    }
+
+
+    //****************** Compaction ******************//
+
+    @Override
+    public ReadWriteLock getAddressLock() {
+        return addressLock;
+    }
+
+    @Override
+    public void addRemappingListener(LongAddressRemappingListener listener) {
+        remappingListeners.add(listener);
+    }
+
+    @Override
+    public boolean removeRemappingListener(LongAddressRemappingListener listener) {
+        return remappingListeners.remove(listener);
+    }
+
     /**
      * Compacts the deleted fragments of the disk storage.
-     * All objects are read from the original file and written
-     * to a new temporary file. The new file is then renamed to the original one.
-     * Note that this operation is thread safe and it is also compatible with multiple
-     * searches running on the file concurrently.
+     * The {@link #compactDataAsync() online compaction} is started and
+     * this method waits until it is finished.
+     * Note that this method must not be called while holding the monitor
+     * of this storage or the {@link #getAddressLock() address lock} or while
+     * a {@link #search() search} or a {@link #read(long[]) multiple read} is open.
      *
      * @throws IOException if there was a problem with reading or writing the data
      */
-    // FIXME: this operation WILL break indexes built on this storage
-    protected synchronized void compactData() throws IOException {
-        if (readonly || deletedFragments == 0)
-            return;
-        if (startPosition != 0) // Compacting is not yet implemented on one-storage, sorry
+    protected void compactData() throws IOException {
+        Future<LongAddressRemapping> compaction = compactDataAsync();
+        if (compaction == null)
             return;
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
 
-        File compactFile = new File(file.getParentFile(), file.getName() + ".compact");
-        log.log(Level.INFO, "Compacting disk storage in file {0}", file.getAbsolutePath());
+    /**
+     * Starts the online compaction of the deleted fragments of the disk storage.
+     * All live objects are copied in a background thread to a new temporary file
+     * while the storage remains fully accessible. The objects stored in the meantime
+     * are appended to the compacted data and the objects removed in the meantime
+     * are removed from the compacted data afterwards. Then the compacted data
+     * replace the original ones while the {@link #getAddressLock() address write lock}
+     * is held, i.e. the readers and writers are blocked only during this final swap.
+     * The {@link LongAddressRemapping mapping} of the old positions to the new ones is
+     * passed to all the registered {@link #addRemappingListener remapping listeners}.
+     *
+     * <p>
+     * The {@link #search() searches} and {@link #read(long[]) multiple reads} keep the positions
+     * without the address lock, so the swap is deferred until all of them are finished or closed.
+     * If this storage occupies only a part of the file (i.e. the start position is not zero),
+     * the compaction is not supported, since the compacted data could not replace the original
+     * ones in a crash-safe way.
+     * </p>
+     *
+     * @return the future that provides the mapping of the old positions to the new ones,
+     *          or <tt>null</tt> if there is nothing to compact, a compaction is already running or
+     *          this storage does not start at the beginning of the file
+     * @throws IOException if there was a problem opening the storage file
+     */
+    public Future<LongAddressRemapping> compactDataAsync() throws IOException {
+        final File compactFile = new File(file.getParentFile(), file.getName() + ".compact");
+        final AsynchronousFileChannel channel;
+        final long compactedLength;
+        synchronized (this) {
+            channel = getFileChannel();
+            if (readonly || deletedFragments == 0 || compactRemovedPositions != null)
+                return null;
+            if (startPosition != 0) // Compacting is not implemented on one-storage, the data cannot be replaced by a rename
+                return null;
+            if (compactFile.exists()) {
+                log.log(Level.WARNING, "Cannot compact disk storage - the file {0} already exists", compactFile);
+                return null;
+            }
 
-        if (compactFile.exists()) {
-            log.log(Level.WARNING, "Cannot compact disk storage - the file {0} already exists", compactFile);
-            return;
+            // Only the data stored so far are copied in the background, the rest is appended during the swap
+            flushOutputStream();
+            compactedLength = fileOccupation;
+            compactRemovedPositions = new ArrayList<>();
         }
+        log.log(Level.INFO, "Compacting disk storage in file {0}", file.getAbsolutePath());
+
+        FutureTask<LongAddressRemapping> future = new FutureTask<>(new Callable<LongAddressRemapping>() {
+            @Override
+            public LongAddressRemapping call() throws IOException {
+                try {
+                    return compactData(channel, compactFile, compactedLength);
+                } catch (IOException | RuntimeException e) {
+                    log.log(Level.WARNING, "Cannot compact disk storage in file {0}: {1}", new Object[] {file.getAbsolutePath(), e});
+                    throw e;
+                } finally {
+                    synchronized (DiskStorage.this) {
+                        compactRemovedPositions = null;
+                    }
+                    compactFile.delete();
+                }
+            }
+        });
+        Thread thread = new Thread(future, "Compaction of disk storage " + file.getName());
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Copies the live objects into the compact file and swaps the compacted data in.
+     * @param channel the file channel opened when the compaction has started
+     * @param compactFile the temporary file for the compacted data
+     * @param compactedLength the number of bytes of the data to copy without the address lock
+     * @return the mapping of the old positions to the new ones
+     * @throws IOException if there was a problem with reading or writing the data
+     */
+    private LongAddressRemapping compactData(AsynchronousFileChannel channel, File compactFile, long compactedLength) throws IOException {
+        long dataPosition = startPosition + headerSize;
+        long[] oldPositions = new long[Math.max(objectCount, 16)];
+        long[] newPositions = new long[oldPositions.length];
+        int count = 0;
 
-        // Open compact file
         AsynchronousFileChannel compactChan = openFileChannel(compactFile, false, 0);
-        long position;
         try {
-            try (BufferInputStream reader = openInputStream()) {
-                writeHeader(compactChan, startPosition, 0);
-                position = headerSize;
-
-                // Read all objects and write them to the compact channel
+            // Read all objects and write them to the compact channel (the storage is fully accessible meanwhile)
+            long position = headerSize;
+            try (BufferInputStream reader = new AsynchronousFileChannelInputStream(bufferSize, bufferDirect, channel, dataPosition, compactedLength)) {
                 ByteBuffer writeBuffer = bufferDirect ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
                 for (int objectSize = serializator.objectToBuffer(reader, writeBuffer, bufferSize); objectSize != 0; objectSize = serializator.objectToBuffer(reader, writeBuffer, bufferSize)) {
+                    if (count == oldPositions.length) {
+                        oldPositions = Arrays.copyOf(oldPositions, count * 2);
+                        newPositions = Arrays.copyOf(newPositions, count * 2);
+                    }
+                    oldPositions[count] = reader.getPosition() - objectSize;
+                    newPositions[count++] = dataPosition + position - headerSize + writeBuffer.position() - objectSize;
                     writeBuffer.flip();
                     position += writeToFileChannel(compactChan, writeBuffer, position);
                     writeBuffer.compact();
                 }
-                // Write remaining data if any (this should never happen, since these are file channels)
+                // Write remaining data if any
                 writeBuffer.flip();
                 while (writeBuffer.remaining() > 0)
                     position += writeToFileChannel(compactChan, writeBuffer, position);
             }
+
+            // Swap the compacted data while the readers and writers are blocked
+            LongAddressRemapping remapping;
+            lockAddressesForSwap();
+            try {
+                synchronized (this) {
+                    if (fileChannel != channel)
+                        throw new ClosedChannelException();
+                    flushOutputStream();
+
+                    // Append the objects stored during the compaction
+                    long tailPosition = dataPosition + compactedLength;
+                    long tailShift = dataPosition + position - headerSize - tailPosition;
+                    position += copyFileChannel(channel, tailPosition, compactChan, position, fileOccupation - compactedLength);
+
+                    // Mark the objects removed during the compaction as deleted
+                    int removedCount = 0;
+                    ByteBuffer sizeBuffer = ByteBuffer.allocate(4);
+                    for (long removedPosition : compactRemovedPositions) {
+                        if (removedPosition >= tailPosition) {
+                            removedCount++; // The deleted object is already in the appended data
+                            continue;
+                        }
+                        int index = Arrays.binarySearch(oldPositions, 0, count, removedPosition);
+                        if (index >= 0 && newPositions[index] >= 0) {
+                            long compactPosition = newPositions[index] - dataPosition + headerSize;
+                            sizeBuffer.clear();
+                            readFromFileChannel(compactChan, sizeBuffer, compactPosition);
+                            sizeBuffer.putInt(0, -sizeBuffer.getInt(0));
+                            sizeBuffer.rewind();
+                            writeToFileChannel(compactChan, sizeBuffer, compactPosition);
+                            newPositions[index] = -1;
+                            removedCount++;
+                        }
+                    }
+
+                    // Replace the data
+                    long compactOccupation = position - headerSize;
+                    closeMappedChannel();
+                    writeHeader(compactChan, 0, 0);
+                    compactChan.close();
+                    if (!compactFile.renameTo(file))
+                        throw new IOException("Cannot replace original disk storage file " + file.getAbsolutePath() + " with compacted data in " + compactFile.getAbsolutePath());
+                    channel.close();
+                    fileChannel = openFileChannel(file, readonly, 0);
+
+                    // Update file statistics and reset the streams
+                    fileOccupation = compactOccupation;
+                    deletedFragments = removedCount;
+                    outputStream = null;
+                    for (SoftReference<?> inputStreamRef : inputStreams)
+                        inputStreamRef.clear();
+                    writeHeader(fileChannel, startPosition, 0);
+                    ObjectCache<T> cache = objectCache;
+                    if (cache != null)
+                        cache.clear();
+                    remapping = new LongAddressRemapping(oldPositions, newPositions, count, tailPosition, tailShift);
+                }
+
+                // Notify the listeners outside of the monitor (but still under the address lock)
+                for (LongAddressRemappingListener listener : remappingListeners)
+                    listener.addressesRemapped(this, remapping);
+            } finally {
+                addressLock.writeLock().unlock();
+            }
+
+            log.log(Level.INFO, "Compacting disk storage in file {0} finished", file.getAbsolutePath());
+            return remapping;
         } finally {
             compactChan.close();
         }
+    }
 
-        if (!compactFile.renameTo(file)) {
-            log.log(Level.WARNING, "Cannot replace original disk storage file {0} with compacted data in {1}", new Object[] {file.getAbsolutePath(), compactFile.getAbsolutePath()});
-            return;
-        } else {
-            // Update file statistics
-            fileOccupation = position - headerSize;
-            deletedFragments = 0;
-            modified = true;
+    /**
+     * Acquires the {@link #getAddressLock() address write lock} for the compaction swap.
+     * The lock is acquired only when there are no {@link #openIterators open iterators},
+     * otherwise the swap is deferred until they are finished.
+     * @throws InterruptedIOException if the thread was interrupted while waiting for the iterators
+     */
+    private void lockAddressesForSwap() throws InterruptedIOException {
+        for (;;) {
+            addressLock.writeLock().lock();
+            synchronized (openIterators) {
+                if (openIterators.isEmpty())
+                    return;
+            }
+            addressLock.writeLock().unlock();
+            synchronized (openIterators) {
+                try {
+                    // The iterators that were not closed are removed from the weak set after they are garbage collected
+                    if (!openIterators.isEmpty())
+                        openIterators.wait(OPEN_ITERATORS_CHECK_INTERVAL);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while waiting for the searches of disk storage " + file.getAbsolutePath());
+                }
+            }
         }
+    }
 
-        // Reopen file channel
-        fileChannel.close();
-        fileChannel = openFileChannel(file, readonly, 0);
+    /**
+     * Registers an iterator that keeps the positions of the objects.
+     * The compaction swap is deferred until the iterator is {@link #unregisterIterator unregistered}.
+     * @param iterator the iterator to register
+     */
+    private void registerIterator(Object iterator) {
+        // The read lock ensures that the iterator is not registered during the swap
+        addressLock.readLock().lock();
+        try {
+            synchronized (openIterators) {
+                openIterators.add(iterator);
+            }
+        } finally {
+            addressLock.readLock().unlock();
+        }
     }
 
     /**
-     * Returns the file space fragmentation, i.e. the ratio between the free and occupied disk space.
-     * @return the file space fragmentation
+     * Unregisters a finished iterator that keeps the positions of the objects.
+     * @param iterator the iterator to unregister
      */
-    public float getFragmentation() {
-        return (float)deletedFragments / (objectCount + deletedFragments);
+    private void unregisterIterator(Object iterator) {
+        synchronized (openIterators) {
+            if (openIterators.remove(iterator))
+                openIterators.notifyAll();
+        }
+    }
+
+    /**
+     * Copies the given number of bytes from one file channel to another.
+     * @param source the file channel to read the data from
+     * @param sourcePosition the position in the source file channel
+     * @param target the file channel to write the data to
+     * @param targetPosition the position in the target file channel
+     * @param length the number of bytes to copy
+     * @return the number of bytes copied
+     * @throws IOException if there was a problem with reading or writing the data
+     */
+    private long copyFileChannel(AsynchronousFileChannel source, long sourcePosition, AsynchronousFileChannel target, long targetPosition, long length) throws IOException {
+        ByteBuffer buffer = bufferDirect ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        long copied = 0;
+        while (copied < length) {
+            buffer.clear();
+            if (length - copied < buffer.capacity())
+                buffer.limit((int)(length - copied));
+            if (readFromFileChannel(source, buffer, sourcePosition + copied) <= 0)
+                throw new EOFException("Unexpected end of file while copying " + length + " bytes from position " + sourcePosition);
+            buffer.flip();
+            while (buffer.hasRemaining())
+                copied += writeToFileChannel(target, buffer, targetPosition + copied);
+        }
+        return copied;
     }
 
 
@@ -680,6 +1057,119 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         }
     }
 
+    /**
+     * Retrieves an input stream that reads the memory-mapped segment of this storage's file.
+     * The segment contains the given position and the returned stream is set to it.
+     * Every call returns a new stream, but the mapping itself is shared.
+     * Note that the objects starting near the end of the segment may not be completely
+     * mapped in this segment, i.e. reading them throws {@link EOFException} while the position
+     * is still less than {@link #getMappedDataEndPosition()}.
+     * @param position the position on which to set the input stream
+     * @return the prepared input stream
+     * @throws IOException if something goes wrong when working with the filesystem
+     */
+    protected MappedFileChannelInputStream takeMappedInputStream(long position) throws IOException {
+        // Need to store all objects currently in the store buffer, so that they are visible in the mapping
+        flushOutputStream();
+        getFileChannel(); // Open file channel if not opened yet (so that header is read)
+        accessCounter++;
+
+        long dataPosition = startPosition + headerSize;
+        int segmentIndex = (int)((position - dataPosition) / MAPPED_SEGMENT_SIZE);
+        long segmentStart = dataPosition + segmentIndex * MAPPED_SEGMENT_SIZE;
+        long segmentEnd = Math.min(segmentStart + MAPPED_SEGMENT_SIZE + MAPPED_SEGMENT_OVERLAP, getMappedDataEndPosition());
+
+        // Map the segment if it was not mapped yet or the file has grown since
+        MappedFileChannelInputStream[] segments = mappedSegments;
+        MappedFileChannelInputStream segment = segments != null && segmentIndex < segments.length ? segments[segmentIndex] : null;
+        if (segment == null || segment.getEndPosition() < segmentEnd)
+            segment = mapSegment(segmentIndex, segmentStart, segmentEnd);
+
+        MappedFileChannelInputStream stream = segment.duplicate();
+        stream.setPosition(position);
+        return stream;
+    }
+
+    /**
+     * Maps the given segment of this storage's file to memory.
+     * @param segmentIndex the index of the mapped segment
+     * @param segmentStart the position in the file where the segment starts
+     * @param segmentEnd the position in the file where the segment ends
+     * @return the stream on the mapped segment
+     * @throws IOException if something goes wrong when working with the filesystem
+     */
+    private synchronized MappedFileChannelInputStream mapSegment(int segmentIndex, long segmentStart, long segmentEnd) throws IOException {
+        MappedFileChannelInputStream[] segments = mappedSegments;
+        if (segments == null) {
+            segments = new MappedFileChannelInputStream[segmentIndex + 1];
+        } else if (segmentIndex >= segments.length) {
+            segments = Arrays.copyOf(segments, segmentIndex + 1);
+        } else if (segments[segmentIndex] != null && segments[segmentIndex].getEndPosition() >= segmentEnd) {
+            return segments[segmentIndex]; // Mapped concurrently by another thread
+        } else {
+            segments = segments.clone();
+        }
+
+        if (mappedChannel == null)
+            mappedChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        segments[segmentIndex] = new MappedFileChannelInputStream(mappedChannel, segmentStart, segmentEnd - segmentStart, false);
+        mappedSegments = segments;
+        return segments[segmentIndex];
+    }
+
+    /**
+     * Returns the position in the file right after the last stored object.
+     * @return the position in the file right after the last stored object
+     */
+    private long getMappedDataEndPosition() {
+        return startPosition + headerSize + fileOccupation;
+    }
+
+    /**
+     * Releases the memory-mapped segments and closes the channel used for the mapping.
+     * Note that the segments are unmapped once they are garbage collected.
+     * @throws IOException if there was a problem closing the channel
+     */
+    private synchronized void closeMappedChannel() throws IOException {
+        mappedSegments = null;
+        if (mappedChannel != null) {
+            mappedChannel.close();
+            mappedChannel = null;
+        }
+    }
+
+    /**
+     * Reads the object stored at the given position from the memory-mapped segments of the file.
+     * If the object is not completely mapped in the segment, it is read using the standard input stream.
+     * @param position the position of the object in the file
+     * @param nextPosition if not <tt>null</tt>, the position right after the read object is stored in its first element
+     * @return the object read or <tt>null</tt> if the end of the data was reached
+     * @throws IOException if there was an error reading the object
+     */
+    private T readMapped(long position, long[] nextPosition) throws IOException {
+        MappedFileChannelInputStream stream = takeMappedInputStream(position);
+        try {
+            T object = serializator.readObject(stream, storedObjectsClass);
+            if (nextPosition != null)
+                nextPosition[0] = stream.getPosition();
+            return object;
+        } catch (EOFException e) {
+            if (stream.getEndPosition() >= getMappedDataEndPosition())
+                throw e;
+        }
+
+        // The object continues after the end of the mapped segment
+        AsynchronousFileChannelInputStream fileStream = takeInputStream(position);
+        try {
+            T object = serializator.readObject(fileStream, storedObjectsClass);
+            if (nextPosition != null)
+                nextPosition[0] = fileStream.getPosition();
+            return object;
+        } finally {
+            returnInputStream(fileStream);
+        }
+    }
+
     /**
      * Returns the currently opened output stream over the current file channel.
      * Opens the output stream over the current file channel.
@@ -705,6 +1195,8 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     private synchronized AsynchronousFileChannelOutputStream getOutputStream() throws IOException {
         if (outputStream == null)
             openOutputStream();
+        if (headerSnapshotStamp != 0) // The file is going to be modified, so the header written by the snapshot is no longer valid
+            writeHeader(getFileChannel(), startPosition, 0);
         accessCounter++;
         return outputStream;
     }
@@ -758,7 +1250,7 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
             if (fileExists) {
                 readHeader(fileChannel, startPosition);
                 if (deletedFragments > COMPACTING_FRAGMENTATION_RATIO * objectCount)
-                    compactData();
+                    compactDataAsync();
                 // If the header was rebuilt, flush the header so that next open does not need to rebuild it again
                 if (modified)
                     writeHeader(fileChannel, startPosition, FLAG_CLOSED);
@@ -773,15 +1265,119 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
 
     /**
      * Flushes this storage and forces any buffered data to be written out.
+     * If the {@link #setGroupCommitLatency group commit} is enabled, the physical
+     * flush waits until the latency window passes, so that the physical flushes
+     * requested by the concurrent threads in the window are done only once.
      *
      * @param syncPhysical if <tt>true</tt> then also the file is flushed
      *          to be sure the data are really written to disk
      * @throws IOException if there was an I/O error
      */
-    public synchronized void flush(boolean syncPhysical) throws IOException {
-        flushOutputStream();
-        if (syncPhysical && fileChannel != null)
-            fileChannel.force(false);
+    public void flush(boolean syncPhysical) throws IOException {
+        boolean nested = Thread.holdsLock(this);
+        GroupCommit commit;
+        boolean commitLeader;
+        synchronized (this) {
+            flushOutputStream();
+            if (!syncPhysical || fileChannel == null)
+                return;
+
+            // Flush directly if the group commit is disabled or the caller holds the storage lock (e.g. when closing)
+            if (groupCommitLatency <= 0 || nested) {
+                fileChannel.force(false);
+                return;
+            }
+
+            // Join the current group or start a new one
+            commitLeader = groupCommit == null;
+            if (commitLeader)
+                groupCommit = new GroupCommit();
+            commit = groupCommit;
+        }
+
+        if (commitLeader)
+            commit.execute();
+        else
+            commit.await();
+    }
+
+    /**
+     * Returns the time window in which the concurrent physical flushes are grouped into one.
+     * @return the time window in milliseconds, zero means no grouping
+     */
+    public long getGroupCommitLatency() {
+        return groupCommitLatency;
+    }
+
+    /**
+     * Sets the time window in which the concurrent physical {@link #flush(boolean) flushes} are grouped into one.
+     * The first thread that requests the physical flush waits for the given time
+     * and then forces the data of all the threads that requested the flush meanwhile.
+     * This trades the latency of the flush for the throughput of the concurrent writers.
+     * @param groupCommitLatency the time window in milliseconds, zero means no grouping
+     * @throws IllegalArgumentException if the given latency is negative
+     */
+    public void setGroupCommitLatency(long groupCommitLatency) throws IllegalArgumentException {
+        if (groupCommitLatency < 0)
+            throw new IllegalArgumentException("Group commit latency cannot be negative");
+        this.groupCommitLatency = groupCommitLatency;
+    }
+
+    /**
+     * Group of the physical flushes that are done at once.
+     * The leader of the group waits for the {@link #groupCommitLatency} window,
+     * closes the group and forces the file, the other members wait for the leader.
+     */
+    private class GroupCommit {
+        /** Latch that is released once the file is forced */
+        private final CountDownLatch done = new CountDownLatch(1);
+        /** Error encountered when forcing the file */
+        private volatile IOException exception;
+
+        /**
+         * Waits for the latency window, closes this group and forces the file.
+         * @throws IOException if there was an I/O error forcing the file
+         */
+        private void execute() throws IOException {
+            try {
+                Thread.sleep(groupCommitLatency);
+                AsynchronousFileChannel channel;
+                synchronized (DiskStorage.this) {
+                    if (groupCommit == this)
+                        groupCommit = null;
+                    flushOutputStream();
+                    channel = fileChannel;
+                }
+                if (channel != null)
+                    channel.force(false);
+            } catch (InterruptedException e) {
+                exception = new InterruptedIOException(e.getMessage());
+            } catch (IOException e) {
+                exception = e;
+            } finally {
+                synchronized (DiskStorage.this) {
+                    if (groupCommit == this)
+                        groupCommit = null;
+                }
+                done.countDown();
+            }
+            if (exception != null)
+                throw exception;
+        }
+
+        /**
+         * Waits until the leader of this group forces the file.
+         * @throws IOException if there was an I/O error forcing the file
+         */
+        private void await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.getMessage());
+            }
+            if (exception != null)
+                throw new IOException("Group commit failed: " + exception, exception);
+        }
     }
 
     /**
@@ -819,12 +1415,13 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         }
         outputStream = null;
         inputStreams = null;
+        closeMappedChannel();
         outChan.close();
     }
 
     @Override
     public synchronized boolean closeTemporarilyIfIdle(boolean resetAccessCounter) throws IOException {
-        if (accessCounter > 0) {
+        if (accessCounter > 0 || compactRemovedPositions != null) {
             if (resetAccessCounter)
                 accessCounter = 0;
             return false;
@@ -835,8 +1432,98 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     }
 
 
+    //****************** Object cache ******************//
+
+    /**
+     * Returns the maximal total binary size of the recently read objects that are kept in memory.
+     * @return the maximal total binary size in bytes, zero means no caching
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the maximal total binary size of the recently read objects that are kept in memory.
+     * If the object at the given position was read recently, the {@link #read(long) read} returns
+     * a clone of the cached {@link messif.objects.LocalAbstractObject} (see {@link ObjectCache}),
+     * so the readers never share the returned objects.
+     * The current cache content is discarded.
+     * @param cacheSize the maximal total binary size in bytes, zero means no caching
+     * @throws IllegalArgumentException if the given size is negative
+     */
+    public void setCacheSize(long cacheSize) throws IllegalArgumentException {
+        if (cacheSize < 0)
+            throw new IllegalArgumentException("Cache size cannot be negative");
+        this.cacheSize = cacheSize;
+        if (cacheSize == 0) {
+            objectCache = null;
+        } else {
+            if (objectCacheLoader == null)
+                objectCacheLoader = new ObjectCache.Loader<T>() {
+                    @Override
+                    public T load(long position) throws BucketStorageException {
+                        return readObject(position);
+                    }
+                    @Override
+                    public int getWeight(T object) {
+                        return serializator.getBinarySize(object);
+                    }
+                };
+            objectCache = new ObjectCache<>(cacheSize);
+        }
+    }
+
+    /**
+     * Returns the cache of the recently read objects.
+     * @return the object cache or <tt>null</tt> if the caching is disabled
+     */
+    public ObjectCache<T> getObjectCache() {
+        return objectCache;
+    }
+
+
     //****************** Serialization ******************//
 
+    /**
+     * Write this disk storage to an object stream.
+     * If the stream is a {@link SnapshotObjectOutputStream} and the file is opened,
+     * the storage is flushed and the header values are written into a snapshot section
+     * together with the size of the file and a random stamp. If the file is modified,
+     * the stamp is also written into the pending-close header of the file, so that
+     * the snapshot values are used only if the file was not changed since (see {@link #readSnapshotHeader}).
+     * This allows to avoid the reconstruction of the header when the file is not correctly closed.
+     * @param out the object stream to which to write the disk storage
+     * @throws IOException if there was an I/O error during serialization
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (out instanceof SnapshotObjectOutputStream) {
+            SnapshotObjectOutputStream snapshot = (SnapshotObjectOutputStream)out;
+            synchronized (this) {
+                if (fileChannel == null) {
+                    out.writeInt(-1);
+                    return;
+                }
+                flush(true);
+                // The header of an unmodified file is valid on its own, otherwise mark it by the stamp of this snapshot
+                int stamp = 0;
+                if (modified && !readonly) {
+                    stamp = new Random().nextInt() & ~FLAG_CLOSED;
+                    if (stamp == 0)
+                        stamp = ~FLAG_CLOSED;
+                    writeHeader(fileChannel, startPosition, stamp);
+                }
+                DataOutputStream section = snapshot.startSection(SNAPSHOT_HEADER_SECTION);
+                section.writeLong(fileChannel.size());
+                section.writeInt(stamp);
+                section.writeLong(fileOccupation);
+                section.writeInt(objectCount);
+                section.writeInt(deletedFragments);
+                out.writeInt(snapshot.finishSection());
+            }
+        }
+    }
+
     /**
      * Read the serialized disk storage from an object stream.
      * @param in the object stream from which to read the disk storage
@@ -846,7 +1533,16 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         // Proceed with standard deserialization first
         in.defaultReadObject();
+        if (in instanceof SnapshotObjectInputStream) {
+            int section = in.readInt();
+            if (section >= 0)
+                snapshotHeader = ((SnapshotObjectInputStream)in).getSection(section, SNAPSHOT_HEADER_SECTION);
+        }
 
+        this.addressLock = new ReentrantReadWriteLock();
+        this.remappingListeners = new CopyOnWriteArrayList<>();
+        this.openIterators = Collections.newSetFromMap(new WeakHashMap<Object, Boolean>());
+        setCacheSize(cacheSize);
         this.readonly = !file.canWrite();
         if (readonly) {
             log.log(Level.WARNING, "Cannot write to file {0}", file);
@@ -929,18 +1625,184 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         }
     }
 
+    /**
+     * Stores the given objects into this storage.
+     * The objects are serialized in parallel into a shared buffer, every thread
+     * into its own part of the buffer, and the buffer is then appended to the file
+     * by a single positioned write. The storage is locked only for the final write.
+     * Note that the objects are stored in batches of at most {@link #MAXIMAL_BATCH_BYTES} bytes,
+     * thus if an exception is thrown, some of the batches may have been stored already.
+     *
+     * @param objects the objects to store
+     * @return the addresses of the stored objects in the order of the given collection
+     * @throws BucketStorageException if there was an error storing the objects
+     */
     @Override
-    public synchronized void remove(long position) throws BucketStorageException {
+    public List<LongAddress<T>> store(Collection<? extends T> objects) throws BucketStorageException {
+        if (readonly)
+            throw new ReadonlyStorageException();
+
+        List<T> objectList = new ArrayList<>(objects);
+        List<LongAddress<T>> addresses = new ArrayList<>(objectList.size());
         try {
-            // Remove the object at given position - the size of the object is retrieved by the skip
-            AsynchronousFileChannelInputStream stream = takeInputStream(position);
-            try {
-                remove(position, serializator.skipObject(stream, false));
-            } finally {
-                returnInputStream(stream);
+            // Compute the sizes of the serialized objects
+            int[] sizes = new int[objectList.size()];
+            runBatchTask(new BatchSerializationTask(objectList, sizes, null, 0, null, 0, sizes.length));
+
+            int batchStart = 0;
+            while (batchStart < sizes.length) {
+                // Prepare the offsets of the objects in the batch buffer
+                int batchEnd = batchStart;
+                int[] offsets = new int[sizes.length - batchStart + 1];
+                while (batchEnd < sizes.length && (batchEnd == batchStart || (long)offsets[batchEnd - batchStart] + sizes[batchEnd] <= MAXIMAL_BATCH_BYTES)) {
+                    offsets[batchEnd - batchStart + 1] = offsets[batchEnd - batchStart] + sizes[batchEnd];
+                    batchEnd++;
+                }
+                int batchBytes = offsets[batchEnd - batchStart];
+
+                // Serialize the objects into the batch buffer
+                ByteBuffer buffer = bufferDirect ? ByteBuffer.allocateDirect(batchBytes) : ByteBuffer.allocate(batchBytes);
+                runBatchTask(new BatchSerializationTask(objectList, sizes, offsets, batchStart, buffer, batchStart, batchEnd));
+
+                // Append the batch to the file
+                synchronized (this) {
+                    AsynchronousFileChannelOutputStream outStream = getOutputStream();
+                    long position = outStream.getPosition();
+                    if (maximalLength != Long.MAX_VALUE && position + batchBytes > startPosition + headerSize + maximalLength)
+                        throw new CapacityFullException("Cannot store " + (batchEnd - batchStart) + " objects (" + batchBytes + " bytes) into disk storage " + file);
+                    flushOutputStream();
+                    AsynchronousFileChannel channel = getFileChannel();
+                    while (buffer.hasRemaining())
+                        writeToFileChannel(channel, buffer, position + buffer.position());
+                    outStream.setPosition(position + batchBytes);
+                    for (SoftReference<?> inputStreamRef : inputStreams)
+                        inputStreamRef.clear();
+
+                    // Update internal counters
+                    fileOccupation += batchBytes;
+                    objectCount += batchEnd - batchStart;
+                    for (int i = batchStart; i < batchEnd; i++)
+                        addresses.add(new LongAddress<>(this, position + offsets[i - batchStart]));
+                }
+                batchStart = batchEnd;
+            }
+
+            return addresses;
+        } catch (EOFException e) {
+            throw new CapacityFullException(e.getMessage());
+        } catch (IOException e) {
+            throw new StorageFailureException("Cannot store objects into disk storage", e);
+        }
+    }
+
+    /**
+     * Executes the given batch task either directly (for small batches) or in the {@link SharedForkJoinPool shared fork-join pool}.
+     * @param task the task to execute
+     * @throws IOException if there was an error serializing the objects
+     */
+    private void runBatchTask(BatchSerializationTask task) throws IOException {
+        try {
+            if (task.to - task.from <= PARALLEL_BATCH_SIZE)
+                task.compute();
+            else
+                SharedForkJoinPool.getInstance().invoke(task);
+        } catch (IllegalStateException e) {
+            // The fork-join pool can wrap the exception thrown by the task once more
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause())
+                if (cause instanceof IOException)
+                    throw (IOException)cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Task that computes the serialized sizes of a part of the stored batch
+     * or serializes the part into the respective slice of the batch buffer.
+     */
+    private class BatchSerializationTask extends RecursiveAction {
+        /** class serial id for serialization */
+        private static final long serialVersionUID = 1L;
+
+        /** Objects of the stored batch */
+        private final List<T> objects;
+        /** Serialized sizes of the objects */
+        private final int[] sizes;
+        /** Offsets of the objects in the {@link #buffer} relative to {@link #offsetsStart}, or <tt>null</tt> if the sizes are computed */
+        private final int[] offsets;
+        /** Index of the object the offset of which is stored at index zero of the {@link #offsets} */
+        private final int offsetsStart;
+        /** Buffer for the serialized batch, or <tt>null</tt> if the sizes are computed */
+        private final ByteBuffer buffer;
+        /** Index of the first object processed by this task */
+        private final int from;
+        /** Index after the last object processed by this task */
+        private final int to;
+
+        /**
+         * Creates a new batch task.
+         * @param objects the objects of the stored batch
+         * @param sizes the serialized sizes of the objects
+         * @param offsets the offsets of the objects in the {@code buffer} relative to {@code offsetsStart}, or <tt>null</tt> if the sizes are computed
+         * @param offsetsStart the index of the object the offset of which is stored at index zero of the {@code offsets}
+         * @param buffer the buffer for the serialized batch, or <tt>null</tt> if the sizes are computed
+         * @param from the index of the first object processed by this task
+         * @param to the index after the last object processed by this task
+         */
+        private BatchSerializationTask(List<T> objects, int[] sizes, int[] offsets, int offsetsStart, ByteBuffer buffer, int from, int to) {
+            this.objects = objects;
+            this.sizes = sizes;
+            this.offsets = offsets;
+            this.offsetsStart = offsetsStart;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new BatchSerializationTask(objects, sizes, offsets, offsetsStart, buffer, from, middle),
+                        new BatchSerializationTask(objects, sizes, offsets, offsetsStart, buffer, middle, to)
+                );
+            } else if (buffer == null) {
+                for (int i = from; i < to; i++)
+                    sizes[i] = serializator.getBinarySize(objects.get(i));
+            } else {
+                // Serialize the objects into this task's slice of the buffer
+                ByteBuffer slice = buffer.duplicate();
+                slice.limit(offsets[to - offsetsStart]);
+                slice.position(offsets[from - offsetsStart]);
+                BufferOutputStream output = new BufferOutputStream(slice.slice());
+                try {
+                    for (int i = from; i < to; i++)
+                        if (serializator.write(output, objects.get(i)) != sizes[i])
+                            throw new IOException("Serialized size of " + objects.get(i) + " does not match its binary size");
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void remove(long position) throws BucketStorageException {
+        addressLock.readLock().lock();
+        try {
+            synchronized (this) {
+                // Remove the object at given position - the size of the object is retrieved by the skip
+                AsynchronousFileChannelInputStream stream = takeInputStream(position);
+                try {
+                    remove(position, serializator.skipObject(stream, false));
+                } finally {
+                    returnInputStream(stream);
+                }
             }
         } catch (IOException e) {
             throw new StorageFailureException("Disk storage cannot remove object from position " + position, e);
+        } finally {
+            addressLock.readLock().unlock();
         }
     }
 
@@ -971,6 +1833,11 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
             // Update internal counters
             objectCount--;
             deletedFragments++;
+            if (compactRemovedPositions != null)
+                compactRemovedPositions.add(position);
+            ObjectCache<T> cache = objectCache;
+            if (cache != null)
+                cache.invalidate(position);
         } catch (IOException e) {
             throw new StorageFailureException("Disk storage cannot remove object from position " + position, e);
         }
@@ -978,7 +1845,28 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
 
     @Override
     public T read(long position) throws BucketStorageException {
+        addressLock.readLock().lock();
+        try {
+            ObjectCache<T> cache = objectCache;
+            if (cache != null)
+                return cache.get(position, objectCacheLoader);
+            return readObject(position);
+        } finally {
+            addressLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the object stored at the given position bypassing the {@link #objectCache}.
+     * The address lock must be held by the caller.
+     * @param position the absolute position in the file
+     * @return the object stored at the given position
+     * @throws BucketStorageException if there was an error reading the file
+     */
+    private T readObject(long position) throws BucketStorageException {
         try {
+            if (mmap)
+                return readMapped(position, null);
             AsynchronousFileChannelInputStream stream = takeInputStream(position);
             try {
                 return serializator.readObject(stream, storedObjectsClass);
@@ -997,14 +1885,64 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
      * The objects in the iterator <em>will not</em> be necessarily returned in the order
      * of the given positions. If there is an I/O error during the asynchronous read,
      * the iterator will thrown {@link IllegalStateException} exception with the encapsulated error.
+     * The {@link #compactDataAsync() compaction} swap is deferred until all the objects are read.
      *
      * @param positions the addresses of the objects to read
      * @return a blocking iterator of the objects retrieved
      */
     public Iterator<T> read(long... positions) {
+        if (mmap)
+            return new MappedReadIterator(positions);
         return new AsyncReadIterator(positions);
     }
 
+    /**
+     * Internal class implementing the read iterator on the memory-mapped file.
+     * The objects are read from the mapping when requested, thus the
+     * objects are returned in the order of the given positions.
+     * @see #read(long[])
+     */
+    private class MappedReadIterator implements Iterator<T> {
+        /** Array of positions in the storage from which to read the objects */
+        private final long[] positions;
+        /** Number of objects returned by the iterator so far */
+        private int returnedCount;
+
+        /**
+         * Creates a new memory-mapped read iterator.
+         * @param positions the array of positions in the storage from which to read the objects
+         */
+        private MappedReadIterator(long... positions) {
+            this.positions = positions;
+            if (positions.length > 0)
+                registerIterator(this);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return returnedCount < positions.length;
+        }
+
+        @Override
+        public T next() throws IllegalStateException, NoSuchElementException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            try {
+                return readMapped(positions[returnedCount++], null);
+            } catch (IOException e) {
+                throw new IllegalStateException("There was an error in reading: " + e, e);
+            } finally {
+                if (!hasNext())
+                    unregisterIterator(this);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Read iterator cannot remove objects");
+        }
+    }
+
     /**
      * Internal class implementing the asynchronous read iterator.
      * @see #read(long[])
@@ -1018,6 +1956,8 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         private int returnedCount;
         /** Asynchronous operation exception that is returned in nearest call to {@link #next()} */
         private Throwable exc;
+        /** Number of positions the asynchronous read of which has not finished yet */
+        private final AtomicInteger pendingCount;
 
         /**
          * Creates a new asynchronous read iterator.
@@ -1027,9 +1967,22 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         private AsyncReadIterator(long... positions) {
             this.positions = positions;
             this.queue = new ArrayBlockingQueue<>(positions.length);
+            this.pendingCount = new AtomicInteger(positions.length);
+            if (positions.length > 0)
+                registerIterator(this);
             start();
         }
 
+        /**
+         * Marks the given number of asynchronous reads as finished.
+         * When all the reads are finished, the compaction swap is no longer deferred by this iterator.
+         * @param count the number of finished reads
+         */
+        private void finishReads(int count) {
+            if (pendingCount.addAndGet(-count) == 0)
+                unregisterIterator(this);
+        }
+
         @Override
         public boolean hasNext() {
             return returnedCount < positions.length;
@@ -1057,13 +2010,14 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
 
         @Override
         public void run() {
-            for (long position : positions) {
+            for (int i = 0; i < positions.length; i++) {
                 try {
                     // Takend input stream is returned in the complete/fail handler
-                    takeInputStream(position).readAsynchronously(this);
+                    takeInputStream(positions[i]).readAsynchronously(this);
                 } catch (IOException e) {
                     if (this.exc == null)
                         this.exc = e;
+                    finishReads(positions.length - i);
                     break;
                 }
             }
@@ -1078,6 +2032,7 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
                     this.exc = e;
             } finally {
                 returnInputStream(input);
+                finishReads(1);
             }
         }
 
@@ -1086,6 +2041,7 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
             if (this.exc == null)
                 this.exc = exc;
             returnInputStream(input);
+            finishReads(1);
         }
     }
 
@@ -1097,6 +2053,17 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         return store(object) != null;
     }
 
+    /**
+     * Adds all the specified objects using the {@link #store(java.util.Collection) batched store}.
+     * @param objects the objects to be added
+     * @return the number of added objects
+     * @throws BucketStorageException if there was an error adding the objects
+     */
+    @Override
+    public int addAll(Collection<? extends T> objects) throws BucketStorageException {
+        return store(objects).size();
+    }
+
     @Override
     public LongStorageSearch<T> search() throws IllegalStateException {
         return new DiskStorageSearch<>(null, Collections.emptyList());
@@ -1120,12 +2087,13 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
     /**
      * Implements the basic search in the disk storage.
      * All objects in the storage are searched from the first one to the last.
+     * If the storage is memory-mapped, the search walks the mapped segments sequentially.
      *
      * @param <C> the type the boundaries used by the search
      */
     private class DiskStorageSearch<C> extends AbstractSearch<C, T> implements LongStorageSearch<T> {
         /** Internal stream that reads objects in this storage one by one */
-        private final BufferInputStream inputStream;
+        private BufferInputStream inputStream;
         /** Position of the last returned object - used for removal */
         private long lastObjectPosition = -1;
 
@@ -1142,12 +2110,7 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
          */
         private DiskStorageSearch(IndexComparator<? super C, ? super T> comparator, Collection<? extends C> keys) throws IllegalStateException {
             super(comparator, keys);
-            try {
-                flush(false);
-                this.inputStream = openInputStream();
-            } catch (IOException e) {
-                throw new IllegalStateException("Cannot initialize disk storage search: " + e, e);
-            }
+            open();
         }
 
         /**
@@ -1158,10 +2121,21 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
          */
         private DiskStorageSearch(IndexComparator<? super C, ? super T> comparator, C fromKey, C toKey) {
             super(comparator, fromKey, toKey);
+            open();
+        }
+
+        /**
+         * Opens the input stream of this search.
+         * The compaction swap is deferred until this search is finished or closed.
+         * @throws IllegalStateException if there was a problem initializing disk storage
+         */
+        private void open() throws IllegalStateException {
+            registerIterator(this);
             try {
                 flush(false);
-                this.inputStream = openInputStream();
-            } catch (IOException e) {
+                this.inputStream = mmap ? takeMappedInputStream(startPosition + headerSize) : openInputStream();
+            } catch (IOException | RuntimeException e) {
+                unregisterIterator(this);
                 throw new IllegalStateException("Cannot initialize disk storage search: " + e, e);
             }
         }
@@ -1176,17 +2150,44 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
         protected T readNext() throws BucketStorageException {
             try {
                 lastObjectPosition = inputStream.getPosition();
+                if (mmap)
+                    return readNextMapped();
                 return serializator.readObject(inputStream, storedObjectsClass);
             } catch (EOFException e) {
+                unregisterIterator(this);
                 return null;
             } catch (ClosedChannelException e) {
                 log.log(Level.INFO, "Search encountered closed file channel on file {0}", file.getAbsolutePath());
+                unregisterIterator(this);
                 return null;
             } catch (IOException e) {
                 throw new StorageFailureException("Cannot read next object from disk storage: " + e, e);
             }
         }
 
+        /**
+         * Reads the next object from the memory-mapped segment.
+         * If the end of the current segment is reached, the search continues in the next segment.
+         * @return the next object
+         * @throws EOFException if there are no more objects in the storage
+         * @throws IOException if there was an error reading the object
+         */
+        private T readNextMapped() throws EOFException, IOException {
+            long position = inputStream.getPosition();
+            try {
+                return serializator.readObject(inputStream, storedObjectsClass);
+            } catch (EOFException e) {
+                if (position >= getMappedDataEndPosition())
+                    throw e;
+            }
+
+            // The object continues after the end of the current segment
+            long[] nextPosition = new long[1];
+            T object = readMapped(position, nextPosition);
+            inputStream = takeMappedInputStream(nextPosition[0]);
+            return object;
+        }
+
         @Override
         protected T readPrevious() throws BucketStorageException {
             throw new UnsupportedOperationException("This is not supported by the disk storage, use index");
@@ -1212,6 +2213,7 @@ public class DiskStorage<T> implements LongStorageIndexed<T>, Serializable, Temp
 
         @Override
         public void close() {
+            unregisterIterator(this);
             try {
                 inputStream.close();
             } catch (IOException ignored) {
@@ -0,0 +1,637 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.storage.impl;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import messif.buckets.BucketStorageException;
+import messif.buckets.StorageFailureException;
+import messif.buckets.index.IndexComparator;
+import messif.buckets.index.impl.AbstractSearch;
+import messif.buckets.storage.IntAddress;
+import messif.buckets.storage.IntStorageIndexed;
+import messif.buckets.storage.IntStorageSearch;
+import messif.buckets.storage.InvalidAddressException;
+import messif.objects.LocalAbstractObject;
+import messif.objects.PrecomputedDistancesFixedArrayFilter;
+import messif.objects.PrecomputedDistancesTable;
+import messif.objects.impl.ObjectFloatVector;
+import messif.objects.keys.AbstractObjectKey;
+import messif.operations.RankingQueryOperation;
+import messif.utility.Convert;
+
+/**
+ * Memory based storage of fixed-dimension float vectors.
+ * The coordinates of all the stored vectors are kept contiguously in direct
+ * (off-heap) buffers, the object keys are kept in a side array. The objects are
+ * materialized only when they are {@link #read(int) read}, so the stored vectors
+ * do not add to the number of objects on the Java heap. The address is the position
+ * of the vector in the order of insertion.
+ *
+ * <p>
+ * All the stored objects must be instances of the same {@link ObjectFloatVector}
+ * subclass that has a public constructor with a single {@code float[]} argument
+ * and all the vectors must have the same dimensionality.
+ * The class and the dimensionality are either given in the constructor or they
+ * are taken from the first stored object. Note that only the vector data, the
+ * object key and the distances of the {@link PrecomputedDistancesFixedArrayFilter}
+ * are stored, any other information attached to the stored objects is lost.
+ * The precomputed distances are kept in an off-heap {@link PrecomputedDistancesTable}
+ * with one row per address.
+ * </p>
+ *
+ * <p>
+ * The {@link #evaluate} method computes the distances of a query object directly
+ * on the stored vectors using one reusable flyweight object, so only the objects
+ * that are actually added to the answer are materialized. If both the query and
+ * the stored objects have precomputed distances, the stored vectors are filtered
+ * by blocks using the precomputed distances table before the distances are computed.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class FloatVectorMemoryStorage implements IntStorageIndexed<LocalAbstractObject>, Serializable {
+    /** class serial id for serialization */
+    private static final long serialVersionUID = 1L;
+
+    //****************** Constants ******************//
+
+    /** Default size of one direct buffer segment in bytes */
+    private static final int DEFAULT_SEGMENT_SIZE = 64*1024*1024;
+
+    /** Percentage of the capacity that is added when the key array is resized */
+    private static final float SIZE_INCREASE_FACTOR = 0.3f;
+
+    /** Default initial capacity of the key array */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Number of vectors filtered at once using the precomputed distances */
+    private static final int PRECOMPUTED_DISTANCES_BLOCK = 256;
+
+
+    //****************** Attributes ******************//
+
+    /** Class of objects that the this storage works with */
+    private Class<? extends ObjectFloatVector> storedObjectsClass;
+
+    /** Number of coordinates of the stored vectors */
+    private int dimension;
+
+    /** Maximal size of one direct buffer segment in bytes */
+    private final int segmentSize;
+
+    /** Number of vectors stored in one segment */
+    private transient int segmentVectors;
+
+    /** Direct buffers with the coordinates of the stored vectors */
+    private transient FloatBuffer[] segments;
+
+    /** Object keys of the stored vectors */
+    private AbstractObjectKey[] keys;
+
+    /** Flags of the deleted vectors */
+    private final BitSet deletedFlags;
+
+    /** Size of the actually used storage */
+    private int size;
+
+    /** Number of deleted vectors */
+    private int deleted;
+
+    /** Precomputed distances of the stored vectors (<tt>null</tt> until a vector with precomputed distances is stored) */
+    private PrecomputedDistancesTable precomputedDistances;
+
+    /** Constructor of the stored objects that is used to materialize them */
+    private transient Constructor<? extends ObjectFloatVector> storedObjectsConstructor;
+
+
+    //****************** Constructor ******************//
+
+    /**
+     * Constructs an empty float vector memory storage.
+     *
+     * @param storedObjectsClass the class of objects that the storage will work with,
+     *          if <tt>null</tt>, the class of the first stored object is used
+     * @param dimension the number of coordinates of the stored vectors,
+     *          if zero, the dimensionality of the first stored object is used
+     * @param segmentSize the maximal size of one direct buffer segment in bytes
+     * @throws IllegalArgumentException if the specified class does not have a public {@code float[]} constructor or the dimension is invalid
+     */
+    public FloatVectorMemoryStorage(Class<? extends ObjectFloatVector> storedObjectsClass, int dimension, int segmentSize) throws IllegalArgumentException {
+        if (dimension < 0)
+            throw new IllegalArgumentException("Illegal dimension: " + dimension);
+        if (segmentSize < 1)
+            throw new IllegalArgumentException("Illegal segment size: " + segmentSize);
+        this.segmentSize = segmentSize;
+        this.keys = new AbstractObjectKey[INITIAL_CAPACITY];
+        this.deletedFlags = new BitSet();
+        this.segments = new FloatBuffer[0];
+        if (storedObjectsClass != null)
+            setStoredObjectsClass(storedObjectsClass);
+        if (dimension > 0)
+            setDimension(dimension);
+    }
+
+    /**
+     * Constructs an empty float vector memory storage.
+     * The class and the dimensionality of the vectors is taken from the first stored object.
+     */
+    public FloatVectorMemoryStorage() {
+        this(null, 0, DEFAULT_SEGMENT_SIZE);
+    }
+
+    @Override
+    public void finalize() throws Throwable {
+        super.finalize();
+    }
+
+    @Override
+    public void destroy() throws Throwable {
+        this.size = 0;
+        this.deleted = 0;
+        this.segments = null; // This is correct, since this storage is destroyed and no data should be added afterwards
+        this.keys = null;
+        this.precomputedDistances = null;
+    }
+
+
+    //****************** Factory method ******************//
+
+    /**
+     * Creates a new float vector memory storage. The additional parameters are specified in the parameters map with
+     * the following recognized key names:
+     * <ul>
+     *   <li><em>class</em> - the class of the stored vectors (either a {@link Class} or its name)</li>
+     *   <li><em>dimension</em> - the number of coordinates of the stored vectors</li>
+     *   <li><em>segmentSize</em> - the maximal size of one direct buffer segment in bytes</li>
+     * </ul>
+     *
+     * @param parameters list of named parameters (see above)
+     * @return a new float vector memory storage instance
+     * @throws IllegalArgumentException if the parameters specified are invalid (null values, etc.)
+     * @throws ClassCastException if the specified class is not a descendant of {@link ObjectFloatVector}
+     */
+    public static FloatVectorMemoryStorage create(Map<String, Object> parameters) throws IllegalArgumentException, ClassCastException {
+        Class<?> storedObjectsClass = Convert.getParameterValue(parameters, "class", Class.class, null);
+        return new FloatVectorMemoryStorage(
+                storedObjectsClass == null ? null : storedObjectsClass.asSubclass(ObjectFloatVector.class),
+                Convert.getParameterValue(parameters, "dimension", Integer.class, 0),
+                Convert.getParameterValue(parameters, "segmentSize", Integer.class, DEFAULT_SEGMENT_SIZE)
+        );
+    }
+
+
+    //****************** Attribute access methods ******************//
+
+    /**
+     * Returns the class of objects that the this storage works with.
+     * @return the class of objects that the this storage works with or <tt>null</tt> if it was not set yet
+     */
+    public Class<? extends ObjectFloatVector> getStoredObjectsClass() {
+        return storedObjectsClass;
+    }
+
+    /**
+     * Returns the number of coordinates of the stored vectors.
+     * @return the number of coordinates of the stored vectors or zero if it was not set yet
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the number of elements in this storage.
+     * @return the number of elements in this storage
+     */
+    @Override
+    public int size() {
+        return size - deleted;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this storage contains no elements.
+     * @return <tt>true</tt> if this storage contains no elements
+     */
+    public boolean isEmpty() {
+	return size() == 0;
+    }
+
+    /**
+     * Returns the table with the precomputed distances of the stored vectors.
+     * The rows of the table correspond to the addresses of the vectors.
+     * @return the table of precomputed distances or <tt>null</tt> if no vector with precomputed distances was stored yet
+     */
+    public PrecomputedDistancesTable getPrecomputedDistances() {
+        return precomputedDistances;
+    }
+
+    /**
+     * Sets the class of the stored objects and looks up its constructor.
+     * @param storedObjectsClass the class of objects that the storage will work with
+     * @throws IllegalArgumentException if the specified class does not have a public {@code float[]} constructor
+     */
+    private void setStoredObjectsClass(Class<? extends ObjectFloatVector> storedObjectsClass) throws IllegalArgumentException {
+        try {
+            this.storedObjectsConstructor = storedObjectsClass.getConstructor(float[].class);
+            this.storedObjectsClass = storedObjectsClass;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Class " + storedObjectsClass.getName() + " does not have a public float[] constructor", e);
+        }
+    }
+
+    /**
+     * Sets the number of coordinates of the stored vectors and computes the segment size.
+     * @param dimension the number of coordinates of the stored vectors
+     */
+    private void setDimension(int dimension) {
+        this.dimension = dimension;
+        this.segmentVectors = Math.max(1, segmentSize / (dimension * Float.SIZE / 8));
+    }
+
+    /**
+     * Returns a new view on the segment buffer that holds the vector with the given address.
+     * The position of the returned buffer is set to the first coordinate of the vector.
+     * @param address the address of the vector
+     * @return a new view on the segment buffer
+     */
+    private FloatBuffer getVectorBuffer(int address) {
+        FloatBuffer buffer = segments[address / segmentVectors].duplicate();
+        buffer.position((address % segmentVectors) * dimension);
+        return buffer;
+    }
+
+
+    //****************** Storage methods implementation ******************//
+
+    @Override
+    public synchronized IntAddress<LocalAbstractObject> store(LocalAbstractObject object) throws BucketStorageException {
+        if (!(object instanceof ObjectFloatVector))
+            throw new StorageFailureException(new ClassCastException("Float vector storage cannot store " + object.getClass().getName()));
+        ObjectFloatVector vector = (ObjectFloatVector)object;
+        if (storedObjectsClass == null)
+            setStoredObjectsClass(vector.getClass());
+        else if (storedObjectsClass != vector.getClass())
+            throw new StorageFailureException(new ClassCastException("Float vector storage works with " + storedObjectsClass.getName() + " and cannot store " + object.getClass().getName()));
+        if (dimension == 0)
+            setDimension(vector.getDimensionality());
+        else if (dimension != vector.getDimensionality())
+            throw new StorageFailureException(new IllegalArgumentException("Float vector storage works with dimension " + dimension + " and cannot store vector with dimension " + vector.getDimensionality()));
+
+        // Allocate a new segment if the last one is full
+        if (size == segments.length * segmentVectors) {
+            FloatBuffer[] newSegments = new FloatBuffer[segments.length + 1];
+            System.arraycopy(segments, 0, newSegments, 0, segments.length);
+            newSegments[segments.length] = ByteBuffer.allocateDirect(segmentVectors * dimension * Float.SIZE / 8).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            segments = newSegments;
+        }
+
+        // If key array is too small to hold new item
+        if (size == keys.length) {
+            AbstractObjectKey[] oldKeys = keys;
+            keys = new AbstractObjectKey[size + 1 + (int)(size * SIZE_INCREASE_FACTOR)];
+            System.arraycopy(oldKeys, 0, keys, 0, size);
+        }
+
+        // Add precomputed distances (the row must be always set, since it can be reused after a removal)
+        PrecomputedDistancesFixedArrayFilter filter = vector.getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class, false);
+        if (precomputedDistances == null && filter != null && filter.getPrecompDistSize() > 0)
+            precomputedDistances = new PrecomputedDistancesTable(filter.getPrecompDistSize(), true);
+        if (precomputedDistances != null)
+            precomputedDistances.setRow(size, filter);
+
+        // Add vector data and key
+        getVectorBuffer(size).put(vector.getVectorData());
+        keys[size] = vector.getObjectKey();
+        return new IntAddress<LocalAbstractObject>(this, size++);
+    }
+
+    /**
+     * Returns whether the given address is valid and was not deleted.
+     * @param address the address to check
+     * @return <tt>true</tt> if there is a stored vector at the given address
+     */
+    private boolean isStored(int address) {
+        return address >= 0 && address < size && !deletedFlags.get(address);
+    }
+
+    @Override
+    public LocalAbstractObject read(int address) throws BucketStorageException {
+        return read(address, true);
+    }
+
+    /**
+     * Materializes the vector stored at the given address.
+     * @param address the address of the vector
+     * @param addPrecomputedDistances flag whether to attach a {@link PrecomputedDistancesFixedArrayFilter}
+     *          with the distances from the {@link #getPrecomputedDistances() precomputed distances table}
+     * @return the materialized vector or <tt>null</tt> if the vector at the given address was deleted
+     * @throws BucketStorageException if the address is invalid or the vector cannot be created
+     */
+    private LocalAbstractObject read(int address, boolean addPrecomputedDistances) throws BucketStorageException {
+        if (address < 0 || address >= size)
+            throw new InvalidAddressException("Cannot access object on address " + address + " in storage " + super.toString());
+        if (deletedFlags.get(address))
+            return null;
+        float[] data = new float[dimension];
+        getVectorBuffer(address).get(data);
+        try {
+            ObjectFloatVector object = storedObjectsConstructor.newInstance(data);
+            object.setObjectKey(keys[address]);
+            if (addPrecomputedDistances && precomputedDistances != null) {
+                float[] distances = precomputedDistances.getRow(address);
+                if (distances != null)
+                    new PrecomputedDistancesFixedArrayFilter(object).setFixedPivotsPrecompDist(distances);
+            }
+            return object;
+        } catch (InstantiationException e) {
+            throw new StorageFailureException("Cannot create object on address " + address, e);
+        } catch (IllegalAccessException e) {
+            throw new StorageFailureException("Cannot create object on address " + address, e);
+        } catch (InvocationTargetException e) {
+            throw new StorageFailureException("Cannot create object on address " + address, e.getCause());
+        }
+    }
+
+    @Override
+    public synchronized void remove(int address) throws BucketStorageException, UnsupportedOperationException {
+        if (!isStored(address))
+            throw new InvalidAddressException("Cannot access object on address " + address + " in storage " + super.toString());
+        keys[address] = null;
+        if (address == size - 1) {
+            // Deleting last object in the buffer
+            size--;
+            // Check if the end of the array is empty
+            while (size > 0 && deletedFlags.get(size - 1)) {
+                deletedFlags.clear(--size);
+                deleted--;
+            }
+        } else {
+            deletedFlags.set(address);
+            deleted++;
+        }
+    }
+
+
+    //****************** Query evaluation ******************//
+
+    /**
+     * Evaluates a ranking query directly on the stored vectors.
+     * A distance between the {@code queryObject} and every stored vector is computed
+     * using the current {@link RankingQueryOperation#getAnswerThreshold() answer threshold}
+     * of the operation. The vectors within the threshold are materialized (without the precomputed distances filter) and added to the answer.
+     * If the query object has a {@link PrecomputedDistancesFixedArrayFilter}, the vectors
+     * are first filtered by blocks using the {@link #getPrecomputedDistances() precomputed distances}
+     * and the threshold valid at the beginning of each block.
+     * Note that the query object must be an instance of the {@link #getStoredObjectsClass() stored objects class},
+     * since the distances are measured to a reused flyweight instance of the stored objects class.
+     *
+     * @param operation the operation to add the answer objects to
+     * @param queryObject the query object to compute the distances from
+     * @return the number of objects added to the answer
+     * @throws BucketStorageException if there was an error materializing an answer object
+     */
+    public int evaluate(RankingQueryOperation operation, LocalAbstractObject queryObject) throws BucketStorageException {
+        int beforeCount = operation.getAnswerCount();
+        if (storedObjectsConstructor == null)
+            return 0;
+
+        // Create the flyweight object
+        ObjectFloatVector flyweight;
+        try {
+            flyweight = storedObjectsConstructor.newInstance(new float[dimension]);
+        } catch (InstantiationException e) {
+            throw new StorageFailureException("Cannot create flyweight object", e);
+        } catch (IllegalAccessException e) {
+            throw new StorageFailureException("Cannot create flyweight object", e);
+        } catch (InvocationTargetException e) {
+            throw new StorageFailureException("Cannot create flyweight object", e.getCause());
+        }
+
+        // Prepare the filtering using precomputed distances
+        PrecomputedDistancesTable scanDistances = precomputedDistances;
+        float[] queryDistances = null;
+        if (scanDistances != null) {
+            PrecomputedDistancesFixedArrayFilter queryFilter = queryObject.getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class, false);
+            if (queryFilter != null)
+                queryDistances = queryFilter.getPrecompDist();
+        }
+        BitSet excluded = queryDistances == null ? null : new BitSet(PRECOMPUTED_DISTANCES_BLOCK);
+
+        // Scan the segments sequentially (the size and segments are read once, objects added concurrently are ignored)
+        int scanSize = size;
+        FloatBuffer[] scanSegments = segments;
+        for (int segmentIndex = 0, address = 0; address < scanSize; segmentIndex++) {
+            FloatBuffer buffer = scanSegments[segmentIndex].duplicate();
+            for (int end = Math.min(scanSize, address + segmentVectors), blockStart = address, blockEnd = address; address < end; address++) {
+                if (excluded != null && address == blockEnd) {
+                    blockStart = address;
+                    blockEnd = Math.min(end, address + PRECOMPUTED_DISTANCES_BLOCK);
+                    excluded.clear();
+                    scanDistances.excludeUsingPrecompDist(blockStart, blockEnd, queryDistances, operation.getAnswerThreshold(), excluded);
+                }
+                if (deletedFlags.get(address) || (excluded != null && excluded.get(address - blockStart))) {
+                    buffer.position(buffer.position() + dimension);
+                    continue;
+                }
+                flyweight.readVectorData(buffer);
+                flyweight.setObjectKey(keys[address]);
+                float threshold = operation.getAnswerThreshold();
+                float distance = queryObject.getDistance(flyweight, threshold);
+                if (distance <= threshold) {
+                    LocalAbstractObject object = read(address, false);
+                    if (object != null)
+                        operation.addToAnswer(object, distance, null);
+                }
+            }
+        }
+
+        return operation.getAnswerCount() - beforeCount;
+    }
+
+
+    //****************** Serialization ******************//
+
+    /**
+     * Stores this storage into the object output stream.
+     * The coordinates of the stored vectors are written after the default serialized fields.
+     * @param out the object output stream
+     * @throws IOException if there was an I/O error during serialization
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        synchronized (this) {
+            out.defaultWriteObject();
+            float[] data = new float[dimension];
+            for (int i = 0; i < size; i++) {
+                getVectorBuffer(i).get(data);
+                for (int j = 0; j < dimension; j++)
+                    out.writeFloat(data[j]);
+            }
+        }
+    }
+
+    /**
+     * Reads this storage from the object input stream.
+     * The direct buffers are allocated and filled with the serialized coordinates.
+     * @param in the object input stream
+     * @throws IOException if there was an I/O error during deserialization
+     * @throws ClassNotFoundException if there was an unknown object in the stream
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (storedObjectsClass != null)
+            setStoredObjectsClass(storedObjectsClass);
+        segments = new FloatBuffer[0];
+        if (dimension == 0)
+            return;
+        setDimension(dimension);
+        int segmentCount = (size + segmentVectors - 1) / segmentVectors;
+        segments = new FloatBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+            segments[i] = ByteBuffer.allocateDirect(segmentVectors * dimension * Float.SIZE / 8).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        float[] data = new float[dimension];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < dimension; j++)
+                data[j] = in.readFloat();
+            getVectorBuffer(i).put(data);
+        }
+    }
+
+
+    //****************** String conversion ******************//
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " of " + size() + " " + (storedObjectsClass == null ? "vectors" : storedObjectsClass.getSimpleName()) + " (dimension " + dimension + ")";
+    }
+
+
+    //****************** Default index implementation ******************//
+
+    @Override
+    public boolean add(LocalAbstractObject object) throws BucketStorageException {
+        return store(object) != null;
+    }
+
+    @Override
+    public IntStorageSearch<LocalAbstractObject> search() throws IllegalStateException {
+        return new FloatVectorMemoryStorageSearch<Object>(null, Collections.emptyList());
+    }
+
+    @Override
+    public <C> IntStorageSearch<LocalAbstractObject> search(IndexComparator<? super C, ? super LocalAbstractObject> comparator, C key) throws IllegalStateException {
+        return new FloatVectorMemoryStorageSearch<C>(comparator, Collections.singletonList(key));
+    }
+
+    @Override
+    public <C> IntStorageSearch<LocalAbstractObject> search(IndexComparator<? super C, ? super LocalAbstractObject> comparator, Collection<? extends C> keys) throws IllegalStateException {
+        return new FloatVectorMemoryStorageSearch<C>(comparator, keys);
+    }
+
+    @Override
+    public <C> IntStorageSearch<LocalAbstractObject> search(IndexComparator<? super C, ? super LocalAbstractObject> comparator, C from, C to) throws IllegalStateException {
+        return new FloatVectorMemoryStorageSearch<C>(comparator, from, to);
+    }
+
+    /**
+     * Implements the basic search in the float vector memory storage.
+     * All objects in the storage are materialized and searched from the first one to the last.
+     *
+     * @param <C> the type the boundaries used by the search
+     */
+    private class FloatVectorMemoryStorageSearch<C> extends AbstractSearch<C, LocalAbstractObject> implements IntStorageSearch<LocalAbstractObject> {
+        /** Current position in the storage */
+        private int currentIndexPosition = -1;
+
+        /**
+         * Creates a new instance of FloatVectorMemoryStorageSearch.
+         * @param comparator the comparator that is used to compare the keys
+         * @param keys list of keys to search for
+         */
+        private FloatVectorMemoryStorageSearch(IndexComparator<? super C, ? super LocalAbstractObject> comparator, Collection<? extends C> keys) {
+            super(comparator, keys);
+        }
+
+        /**
+         * Creates a new instance of FloatVectorMemoryStorageSearch for the specified search comparator and [from,to] bounds.
+         * @param comparator the comparator that compares the <code>keys</code> with the stored objects
+         * @param fromKey the lower bound on the searched keys
+         * @param toKey the upper bound on the searched keys
+         */
+        private FloatVectorMemoryStorageSearch(IndexComparator<? super C, ? super LocalAbstractObject> comparator, C fromKey, C toKey) {
+            super(comparator, fromKey, toKey);
+        }
+
+        @Override
+        protected LocalAbstractObject readNext() throws BucketStorageException {
+            LocalAbstractObject object;
+            do {
+                if (currentIndexPosition >= size - 1)
+                    return null;
+                object = read(++currentIndexPosition);
+            } while (object == null); // skip null objects, since they are deleted
+
+            return object;
+        }
+
+        @Override
+        protected LocalAbstractObject readPrevious() throws BucketStorageException {
+            LocalAbstractObject object;
+            do {
+                if (currentIndexPosition <= 0)
+                    return null;
+                object = read(--currentIndexPosition);
+            } while (object == null); // skip null objects, since they are deleted
+
+            return object;
+        }
+
+        @Override
+        public IntAddress<LocalAbstractObject> getCurrentObjectAddress() throws IllegalStateException {
+            return new IntAddress<LocalAbstractObject>(FloatVectorMemoryStorage.this, getCurrentObjectIntAddress());
+        }
+
+        @Override
+        public int getCurrentObjectIntAddress() throws IllegalStateException {
+            if (currentIndexPosition < 0 || currentIndexPosition > size - 1)
+                throw new IllegalStateException("There is no current object");
+            return currentIndexPosition;
+        }
+
+        @Override
+        public void remove() throws IllegalStateException, BucketStorageException {
+            FloatVectorMemoryStorage.this.remove(getCurrentObjectIntAddress());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -17,6 +17,7 @@
 package messif.buckets.storage.impl;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
@@ -27,6 +28,11 @@ import messif.buckets.storage.IntAddress;
 import messif.buckets.storage.IntStorageIndexed;
 import messif.buckets.storage.IntStorageSearch;
 import messif.buckets.storage.InvalidAddressException;
+import messif.objects.LocalAbstractObject;
+import messif.objects.PrecomputedDistancesFixedArrayFilter;
+import messif.objects.PrecomputedDistancesTable;
+import messif.operations.RankingQueryOperation;
+import messif.operations.RankingSingleQueryOperation;
 import messif.utility.Convert;
 
 /**
@@ -34,6 +40,15 @@ import messif.utility.Convert;
  * The objects in this storage are stored in an internal array in the order
  * of insertion. The address is the position within the internal array.
  * 
+ * <p>
+ * If the {@link #setPrecomputedDistancesPivots pivots} are set, the distances between every stored
+ * {@link LocalAbstractObject} and the pivots are kept in a {@link PrecomputedDistancesTable} with one row per address
+ * and no filter is attached to the stored objects. Otherwise, if the stored objects have
+ * a {@link PrecomputedDistancesFixedArrayFilter}, their precomputed distances are copied into the table.
+ * The {@link #evaluate(RankingSingleQueryOperation) ranking queries} use the table to filter
+ * the stored objects by blocks, so the filters of the individual objects are not touched during the scan.
+ * </p>
+ *
  * @param <T> the class of objects stored in this storage
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
@@ -51,6 +66,9 @@ public class MemoryStorage<T> implements IntStorageIndexed<T>, Serializable {
     /** Default initial capacity */
     private static final int INITIAL_CAPACITY = 16;
 
+    /** Number of objects filtered at once using the precomputed distances */
+    private static final int PRECOMPUTED_DISTANCES_BLOCK = 256;
+
 
     //****************** Attributes ******************//
 
@@ -66,6 +84,15 @@ public class MemoryStorage<T> implements IntStorageIndexed<T>, Serializable {
     /** Number of deleted objects, i.e. "nulled" items */
     private int deleted;
 
+    /** Precomputed distances of the stored objects (<tt>null</tt> if the stored objects have no precomputed distances) */
+    private PrecomputedDistancesTable precomputedDistances;
+
+    /** Pivots the distances to which are stored in the {@link #precomputedDistances} table (<tt>null</tt> if the distances are copied from the objects' filters) */
+    private LocalAbstractObject[] pivots;
+
+    /** Flag whether the distances in the {@link PrecomputedDistancesFixedArrayFilter} of a stored object are used instead of measuring the distances to {@link #pivots} */
+    private boolean pivotDistancesValidIfGiven;
+
 
     //****************** Constructor ******************//
 
@@ -106,6 +133,8 @@ public class MemoryStorage<T> implements IntStorageIndexed<T>, Serializable {
         this.size = 0;
         this.deleted = 0;
         this.items = null; // This is correct, since this storage is destroyed and no data should be added afterwards
+        this.precomputedDistances = null;
+        this.pivots = null;
     }
 
 
@@ -191,22 +220,112 @@ public class MemoryStorage<T> implements IntStorageIndexed<T>, Serializable {
 	return size() == 0;
     }
 
+    /**
+     * Returns the table of precomputed distances of the stored objects.
+     * The row of the table is the address of the respective object.
+     * @return the table of precomputed distances or <tt>null</tt> if the stored objects have no precomputed distances
+     */
+    public PrecomputedDistancesTable getPrecomputedDistances() {
+        return precomputedDistances;
+    }
+
+    /**
+     * Sets the pivots the distances to which are kept in the {@link #getPrecomputedDistances() table of precomputed distances}.
+     * The distances between every stored object and the pivots are measured when the object is stored
+     * and they are kept only in the table, i.e. no {@link PrecomputedDistancesFixedArrayFilter} is attached to the object.
+     * The table is recomputed for the objects that are already stored.
+     *
+     * @param pivots the pivots to measure the distances to (<tt>null</tt> or empty array means
+     *          that the distances are copied from the {@link PrecomputedDistancesFixedArrayFilter}s of the stored objects)
+     * @param pivotDistancesValidIfGiven flag whether the distances in the {@link PrecomputedDistancesFixedArrayFilter}
+     *          already associated with a stored object are valid; if so, they are used without measuring them again
+     */
+    public synchronized void setPrecomputedDistancesPivots(LocalAbstractObject[] pivots, boolean pivotDistancesValidIfGiven) {
+        this.pivots = pivots == null || pivots.length == 0 ? null : pivots.clone();
+        this.pivotDistancesValidIfGiven = pivotDistancesValidIfGiven;
+        this.precomputedDistances = this.pivots == null ? null : new PrecomputedDistancesTable(this.pivots.length);
+        for (int address = 0; address < size; address++) {
+            if (items[address] instanceof LocalAbstractObject) {
+                LocalAbstractObject object = (LocalAbstractObject)items[address];
+                setPrecomputedDistances(address, object, getPivotDistances(object));
+            } else if (precomputedDistances != null) {
+                precomputedDistances.setRow(address, null, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the {@link #setPrecomputedDistancesPivots pivots} are set for this storage.
+     * @return <tt>true</tt> if the distances to pivots are kept in the {@link #getPrecomputedDistances() table}
+     */
+    public boolean hasPrecomputedDistancesPivots() {
+        return pivots != null;
+    }
+
+    /**
+     * Returns the distances between the given object and the {@link #pivots}.
+     * @param object the object for which to measure the distances
+     * @return the distances to pivots or <tt>null</tt> if the distances should be taken from the object's filter
+     */
+    private float[] getPivotDistances(Object object) {
+        LocalAbstractObject[] currentPivots = pivots;
+        if (currentPivots == null || !(object instanceof LocalAbstractObject))
+            return null;
+        LocalAbstractObject localObject = (LocalAbstractObject)object;
+        if (pivotDistancesValidIfGiven) {
+            PrecomputedDistancesFixedArrayFilter filter = localObject.getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class, false);
+            if (filter != null && filter.getPrecompDistSize() >= currentPivots.length)
+                return null;
+        }
+        float[] distances = new float[currentPivots.length];
+        for (int i = 0; i < currentPivots.length; i++)
+            distances[i] = currentPivots[i].getDistance(localObject);
+        return distances;
+    }
+
+    /**
+     * Sets the row of the {@link #precomputedDistances} table for the object stored at the given address.
+     * @param address the address of the stored object
+     * @param object the stored object
+     * @param pivotDistances the distances to {@link #pivots} or <tt>null</tt> if the distances should be taken from the object's filter
+     */
+    private void setPrecomputedDistances(int address, LocalAbstractObject object, float[] pivotDistances) {
+        if (pivotDistances != null) {
+            precomputedDistances.setRow(address, pivotDistances, pivotDistances.length);
+        } else {
+            PrecomputedDistancesFixedArrayFilter filter = object.getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class, false);
+            if (precomputedDistances == null && filter != null && filter.getPrecompDistSize() > 0)
+                precomputedDistances = new PrecomputedDistancesTable(filter.getPrecompDistSize());
+            if (precomputedDistances != null)
+                precomputedDistances.setRow(address, filter);
+        }
+    }
+
 
     //****************** Storage methods implementation ******************//
 
     @Override
-    public synchronized IntAddress<T> store(T object) {
-        // If array is too small to hold new item
-        if (size == items.length) {
-            // Create new array and copy the old data to it
-            Object[] oldItems = items;
-            items = new Object[size + 1 + (int)(size * SIZE_INCREASE_FACTOR)];
-            System.arraycopy(oldItems, 0, items, 0, size);
-        }
+    public IntAddress<T> store(T object) {
+        // Measure the distances to pivots before the storage is locked
+        float[] pivotDistances = getPivotDistances(object);
+
+        synchronized (this) {
+            // If array is too small to hold new item
+            if (size == items.length) {
+                // Create new array and copy the old data to it
+                Object[] oldItems = items;
+                items = new Object[size + 1 + (int)(size * SIZE_INCREASE_FACTOR)];
+                System.arraycopy(oldItems, 0, items, 0, size);
+            }
 
-        // Add object
-        items[size] = object;
-        return new IntAddress<T>(this, size++);
+            // Add precomputed distances (the row must be always set, since it can be reused after a removal)
+            if (object instanceof LocalAbstractObject)
+                setPrecomputedDistances(size, (LocalAbstractObject)object, pivots == null ? null : pivotDistances);
+
+            // Add object
+            items[size] = object;
+            return new IntAddress<T>(this, size++);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -242,6 +361,58 @@ public class MemoryStorage<T> implements IntStorageIndexed<T>, Serializable {
     }
 
 
+    //****************** Query evaluation ******************//
+
+    /**
+     * Evaluates a ranking query on the stored objects.
+     * Every stored object is {@link RankingSingleQueryOperation#addToAnswer(LocalAbstractObject, float) added}
+     * to the answer using the current {@link RankingQueryOperation#getAnswerThreshold() answer threshold}
+     * of the operation. If the query object has a {@link PrecomputedDistancesFixedArrayFilter}, the objects
+     * are first filtered by blocks using the {@link #getPrecomputedDistances() precomputed distances}
+     * and the threshold valid at the beginning of each block. Otherwise, the objects are filtered one by one using
+     * {@link LocalAbstractObject#excludeUsingPrecompDist(LocalAbstractObject, float) the filters} of the query and the object.
+     *
+     * @param operation the operation to evaluate
+     * @return the number of objects added to the answer
+     * @throws ClassCastException if the stored objects are not {@link LocalAbstractObject}s
+     */
+    public int evaluate(RankingSingleQueryOperation operation) throws ClassCastException {
+        int beforeCount = operation.getAnswerCount();
+
+        // Prepare the filtering using precomputed distances
+        PrecomputedDistancesTable scanDistances = precomputedDistances;
+        float[] queryDistances = null;
+        if (scanDistances != null) {
+            PrecomputedDistancesFixedArrayFilter queryFilter = operation.getQueryObject().getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class, false);
+            if (queryFilter != null)
+                queryDistances = queryFilter.getPrecompDist();
+        }
+        BitSet excluded = queryDistances == null ? null : new BitSet(PRECOMPUTED_DISTANCES_BLOCK);
+
+        // Scan the items sequentially (the size and items are read once, objects added concurrently are ignored)
+        int scanSize = size;
+        Object[] scanItems = items;
+        for (int address = 0, blockStart = 0, blockEnd = 0; address < scanSize; address++) {
+            if (excluded != null && address == blockEnd) {
+                blockStart = address;
+                blockEnd = Math.min(scanSize, address + PRECOMPUTED_DISTANCES_BLOCK);
+                excluded.clear();
+                scanDistances.excludeUsingPrecompDist(blockStart, blockEnd, queryDistances, operation.getAnswerThreshold(), excluded);
+            }
+            LocalAbstractObject object = (LocalAbstractObject)scanItems[address];
+            if (excluded != null) {
+                if (excluded.get(address - blockStart))
+                    continue;
+            } else if (object != null && operation.getQueryObject().excludeUsingPrecompDist(object, operation.getAnswerThreshold())) {
+                continue;
+            }
+            operation.addToAnswer(object, operation.getAnswerThreshold()); // Deleted objects are null and thus ignored
+        }
+
+        return operation.getAnswerCount() - beforeCount;
+    }
+
+
     //****************** String conversion ******************//
 
     /**
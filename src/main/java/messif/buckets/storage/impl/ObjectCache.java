@@ -0,0 +1,327 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.buckets.storage.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import messif.buckets.BucketStorageException;
+import messif.buckets.StorageFailureException;
+import messif.objects.LocalAbstractObject;
+import messif.statistics.StatisticCounter;
+
+/**
+ * Size-bounded cache of objects read from a storage.
+ * The objects are identified by their addresses in the storage and weighed by
+ * their binary size. Once the total weight of the cached objects exceeds the
+ * maximal weight, the least recently used objects are evicted.
+ * The cache is split into independently locked segments, so that concurrent
+ * readers do not block each other; the least recently used order is kept per segment.
+ *
+ * <p>
+ * The objects are loaded by the {@link Loader} provided to the {@link #get get} method.
+ * Note that the loading is done outside of the segment lock, and the loaded
+ * object is cached only if its address was not {@link #invalidate invalidated} meanwhile.
+ * The cached {@link LocalAbstractObject}s are never handed out directly, each reader gets
+ * its own {@link LocalAbstractObject#clone() clone}, so it can safely modify the returned object
+ * (e.g. chain a distance filter). Other cached objects are returned as they are, thus they should not be modified.
+ * </p>
+ *
+ * <p>
+ * The hits and misses of all the caches are counted in the global statistics
+ * <em>StorageCache.Hits</em> and <em>StorageCache.Misses</em>.
+ * </p>
+ *
+ * @param <T> the class of objects stored in this cache
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class ObjectCache<T> {
+
+    //****************** Constants ******************//
+
+    /** Number of independently locked segments of the cache */
+    private static final int SEGMENT_COUNT = 16;
+
+
+    //****************** Statistics ******************//
+
+    /** Global counter of the objects found in the caches */
+    protected static final StatisticCounter counterCacheHits = StatisticCounter.getStatistics("StorageCache.Hits", true);
+    /** Global counter of the objects not found in the caches */
+    protected static final StatisticCounter counterCacheMisses = StatisticCounter.getStatistics("StorageCache.Misses", true);
+
+
+    //****************** Attributes ******************//
+
+    /** Maximal total weight of the cached objects */
+    private final long maximalWeight;
+    /** Segments of the cache */
+    private final Segment<T>[] segments;
+
+
+    //****************** Constructor ******************//
+
+    /**
+     * Creates a new object cache.
+     * @param maximalWeight the maximal total weight (binary size in bytes) of the cached objects
+     * @throws IllegalArgumentException if the maximal weight is not positive
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ObjectCache(long maximalWeight) throws IllegalArgumentException {
+        if (maximalWeight <= 0)
+            throw new IllegalArgumentException("Maximal weight of the cache must be positive");
+        this.maximalWeight = maximalWeight;
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = new Segment<T>((maximalWeight + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+    }
+
+
+    //****************** Attribute access ******************//
+
+    /**
+     * Returns the maximal total weight of the cached objects.
+     * @return the maximal total weight of the cached objects
+     */
+    public long getMaximalWeight() {
+        return maximalWeight;
+    }
+
+    /**
+     * Returns the current total weight of the cached objects.
+     * @return the current total weight of the cached objects
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the number of the cached objects.
+     * @return the number of the cached objects
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the segment responsible for the given address.
+     * @param address the address of the object
+     * @return the segment responsible for the given address
+     */
+    private Segment<T> getSegment(long address) {
+        int hash = (int)(address ^ (address >>> 32));
+        hash ^= (hash >>> 16) ^ (hash >>> 8);
+        return segments[hash & (SEGMENT_COUNT - 1)];
+    }
+
+
+    //****************** Cache access ******************//
+
+    /**
+     * Returns the object stored at the given address.
+     * If the object is not cached, it is loaded by the given loader and cached.
+     * A {@link LocalAbstractObject} is returned as a clone of the cached instance.
+     * @param address the address of the object
+     * @param loader the loader used to retrieve the object if it is not cached
+     * @return the object stored at the given address
+     * @throws BucketStorageException if there was an error loading the object
+     */
+    public T get(long address, Loader<T> loader) throws BucketStorageException {
+        Segment<T> segment = getSegment(address);
+        long invalidations;
+        synchronized (segment) {
+            CacheEntry<T> entry = segment.get(address);
+            if (entry != null) {
+                counterCacheHits.add();
+                return copy(entry.object);
+            }
+            invalidations = segment.invalidations;
+        }
+        counterCacheMisses.add();
+
+        // Load the object outside of the lock
+        T object = loader.load(address);
+        if (object == null)
+            return null;
+        int weight = loader.getWeight(object);
+        if (weight > segment.maximalWeight)
+            return object;
+
+        synchronized (segment) {
+            // Do not cache the object if its address was invalidated during the load
+            if (segment.invalidations == invalidations) {
+                CacheEntry<T> previous = segment.put(address, new CacheEntry<T>(object, weight));
+                if (previous != null)
+                    segment.weight -= previous.weight;
+                segment.weight += weight;
+                segment.evict();
+            }
+        }
+        return copy(object);
+    }
+
+    /**
+     * Returns the copy of the cached object that is handed to a reader.
+     * The {@link LocalAbstractObject}s are cloned including their filters, other objects are returned as they are.
+     * @param <T> the class of the object
+     * @param object the cached object
+     * @return the copy of the cached object
+     * @throws BucketStorageException if the object cannot be cloned
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T object) throws BucketStorageException {
+        if (!(object instanceof LocalAbstractObject))
+            return object;
+        try {
+            return (T)((LocalAbstractObject)object).clone();
+        } catch (CloneNotSupportedException e) {
+            throw new StorageFailureException("Cannot clone the cached object " + object, e);
+        }
+    }
+
+    /**
+     * Removes the object stored at the given address from the cache.
+     * This method must be called whenever the object at the given address is removed or replaced.
+     * @param address the address of the object
+     */
+    public void invalidate(long address) {
+        Segment<T> segment = getSegment(address);
+        synchronized (segment) {
+            segment.invalidations++;
+            CacheEntry<T> entry = segment.remove(address);
+            if (entry != null)
+                segment.weight -= entry.weight;
+        }
+    }
+
+    /**
+     * Removes all the objects from the cache.
+     */
+    public void clear() {
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                segment.invalidations++;
+                segment.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectCache{objects=" + size() + ", weight=" + getWeight() + ", maximalWeight=" + maximalWeight + "}";
+    }
+
+
+    //****************** Loader interface ******************//
+
+    /**
+     * Interface for loading the objects that are not cached.
+     * @param <T> the class of the loaded objects
+     */
+    public static interface Loader<T> {
+        /**
+         * Loads the object stored at the given address.
+         * @param address the address of the object
+         * @return the loaded object
+         * @throws BucketStorageException if there was an error loading the object
+         */
+        public T load(long address) throws BucketStorageException;
+
+        /**
+         * Returns the weight of the given object, usually its binary size.
+         * @param object the object to weigh
+         * @return the weight of the object
+         */
+        public int getWeight(T object);
+    }
+
+
+    //****************** Internal classes ******************//
+
+    /**
+     * Cached object with its weight.
+     * @param <T> the class of the cached object
+     */
+    private static class CacheEntry<T> {
+        /** Cached object */
+        private final T object;
+        /** Weight of the cached object */
+        private final int weight;
+
+        /**
+         * Creates a new cache entry.
+         * @param object the cached object
+         * @param weight the weight of the cached object
+         */
+        private CacheEntry(T object, int weight) {
+            this.object = object;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Segment of the cache with the least recently used ordering.
+     * All the accesses must be synchronized on the segment.
+     * @param <T> the class of the cached objects
+     */
+    private static class Segment<T> extends LinkedHashMap<Long, CacheEntry<T>> {
+        /** class serial id for serialization */
+        private static final long serialVersionUID = 1L;
+
+        /** Maximal total weight of the objects in this segment */
+        private final long maximalWeight;
+        /** Current total weight of the objects in this segment */
+        private long weight;
+        /** Number of invalidations in this segment, used to detect the invalidations during the loading */
+        private long invalidations;
+
+        /**
+         * Creates a new cache segment.
+         * @param maximalWeight the maximal total weight of the objects in this segment
+         */
+        private Segment(long maximalWeight) {
+            super(16, 0.75f, true);
+            this.maximalWeight = maximalWeight;
+        }
+
+        /**
+         * Removes the least recently used objects until the weight of this segment is within the limit.
+         */
+        private void evict() {
+            Iterator<CacheEntry<T>> iterator = values().iterator();
+            while (weight > maximalWeight && iterator.hasNext()) {
+                weight -= iterator.next().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+}
@@ -16,7 +16,11 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import messif.buckets.CapacityFullException;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 
 /**
  * Message for returning results of a remote bucket creation.
@@ -51,6 +55,17 @@ public class BucketCreateReplyMessage extends BucketReplyMessage {
         this.capacity = capacity;
     }
 
+    /**
+     * Creates a new instance of BucketCreateReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketCreateReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketCreateReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.bucketID = serializator.readInt(input);
+        this.capacity = serializator.readLong(input);
+    }
 
     //****************** Attribute access methods ******************//
 
@@ -66,4 +81,20 @@ public class BucketCreateReplyMessage extends BucketReplyMessage {
         return new RemoteBucket(netbucketDisp, bucketID, getSender(), capacity);
     }
 
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, bucketID) +
+               serializator.write(output, capacity);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(bucketID) +
+               serializator.getBinarySize(capacity);
+    }
+
 }
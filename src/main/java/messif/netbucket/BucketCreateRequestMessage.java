@@ -16,11 +16,16 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import java.util.Map;
 import messif.buckets.BucketDispatcher;
 import messif.buckets.BucketStorageException;
 import messif.buckets.CapacityFullException;
 import messif.buckets.LocalBucket;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
+import messif.utility.Convert;
 
 /**
  * Message for requesting creation of a remote bucket.
@@ -83,6 +88,26 @@ public class BucketCreateRequestMessage extends BucketRequestMessage<BucketCreat
         this.softCapacity = softCapacity;
     }        
 
+    /**
+     * Creates a new instance of BucketCreateRequestMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketCreateRequestMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketCreateRequestMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.useParameters = serializator.readBoolean(input);
+        String storageClassName = serializator.readString(input);
+        try {
+            this.storageClass = storageClassName == null ? null : Convert.getClassForName(storageClassName, LocalBucket.class);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot read storage class: " + e.getMessage());
+        }
+        this.storageClassParams = Convert.safeGenericCastMap(serializator.readObject(input, Map.class), String.class, Object.class);
+        this.capacity = serializator.readLong(input);
+        this.softCapacity = serializator.readLong(input);
+    }
+
     //****************** Executing the request ******************//
 
     @Override
@@ -109,4 +134,26 @@ public class BucketCreateRequestMessage extends BucketRequestMessage<BucketCreat
         return BucketCreateReplyMessage.class;
     }
 
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, useParameters) +
+               serializator.write(output, storageClass == null ? null : storageClass.getName()) +
+               serializator.write(output, storageClassParams) +
+               serializator.write(output, capacity) +
+               serializator.write(output, softCapacity);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(useParameters) +
+               serializator.getBinarySize(storageClass == null ? null : storageClass.getName()) +
+               serializator.getBinarySize(storageClassParams) +
+               serializator.getBinarySize(capacity) +
+               serializator.getBinarySize(softCapacity);
+    }
+
 }
@@ -0,0 +1,126 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.netbucket;
+
+import java.io.IOException;
+import messif.objects.LocalAbstractObject;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
+import messif.objects.util.AbstractObjectList;
+
+
+/**
+ * Message for returning a chunk of objects read by a cursor from a remote bucket.
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ * @see BucketCursorRequestMessage
+ */
+public class BucketCursorReplyMessage extends BucketReplyMessage {
+    /** Class serial id for serialization */
+    private static final long serialVersionUID = 1L;
+
+    //****************** Attributes ******************//
+
+    /** Identifier of the cursor on the remote node */
+    private final int cursorID;
+
+    /** The chunk of objects */
+    private final AbstractObjectList<LocalAbstractObject> objects;
+
+    /** Flag whether the cursor has more objects (i.e. it was not closed) */
+    private final boolean hasMoreObjects;
+
+
+    //****************** Constructors ******************//
+
+    /**
+     * Creates a new instance of BucketCursorReplyMessage.
+     * @param message the original message this message is response to
+     * @param cursorID the identifier of the cursor on the remote node
+     * @param objects the chunk of objects (can be <tt>null</tt> if the cursor was closed)
+     * @param hasMoreObjects flag whether the cursor has more objects
+     */
+    public BucketCursorReplyMessage(BucketCursorRequestMessage message, int cursorID, AbstractObjectList<LocalAbstractObject> objects, boolean hasMoreObjects) {
+        super(message);
+        this.cursorID = cursorID;
+        this.objects = objects;
+        this.hasMoreObjects = hasMoreObjects;
+    }
+
+    /**
+     * Creates a new instance of BucketCursorReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketCursorReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketCursorReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.cursorID = serializator.readInt(input);
+        this.objects = BucketManipulationRequestMessage.readObjectList(input, serializator);
+        this.hasMoreObjects = serializator.readBoolean(input);
+    }
+
+
+    //****************** Attribute access ******************//
+
+    /**
+     * Returns the identifier of the cursor on the remote node.
+     * @return the identifier of the cursor
+     */
+    public int getCursorID() {
+        return cursorID;
+    }
+
+    /**
+     * Returns the chunk of objects.
+     * @return the chunk of objects or <tt>null</tt> if the cursor was closed
+     */
+    public AbstractObjectList<LocalAbstractObject> getObjects() {
+        return objects;
+    }
+
+    /**
+     * Returns whether the cursor has more objects.
+     * If <tt>false</tt> is returned, the cursor was closed on the remote node.
+     * @return <tt>true</tt> if the cursor has more objects
+     */
+    public boolean hasMoreObjects() {
+        return hasMoreObjects;
+    }
+
+
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, cursorID) +
+               BucketManipulationRequestMessage.writeObjectList(output, serializator, objects) +
+               serializator.write(output, hasMoreObjects);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(cursorID) +
+               BucketManipulationRequestMessage.getObjectListBinarySize(serializator, objects) +
+               serializator.getBinarySize(hasMoreObjects);
+    }
+
+}
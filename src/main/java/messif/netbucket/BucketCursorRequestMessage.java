@@ -0,0 +1,137 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.netbucket;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import messif.buckets.BucketDispatcher;
+import messif.objects.LocalAbstractObject;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
+import messif.objects.util.AbstractObjectList;
+
+
+/**
+ * Message for requesting the next chunk of objects of a remote bucket.
+ * The objects are read by a cursor that is kept open on the remote node
+ * between the requests. The first request opens the cursor, the following
+ * requests continue from the position where the previous chunk ended.
+ * The cursor is closed automatically when all objects have been returned
+ * or explicitly by a request with zero objects.
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ * @see RemoteBucket#getAllObjects(int)
+ */
+public class BucketCursorRequestMessage extends BucketRequestMessage<BucketCursorReplyMessage> {
+    /** Class serial id for serialization */
+    private static final long serialVersionUID = 1L;
+
+    /** Logger */
+    private static final Logger log = Logger.getLogger("netnode.creator");
+
+    /** Cursor identifier that requests opening of a new cursor */
+    public static final int NEW_CURSOR = -1;
+
+    //****************** Attributes ******************//
+
+    /** Identifier of the cursor on the remote node or {@link #NEW_CURSOR} */
+    private final int cursorID;
+
+    /** Maximal number of objects to return, zero means close the cursor */
+    private final int maxObjects;
+
+
+    //****************** Constructors ******************//
+
+    /**
+     * Creates a new instance of BucketCursorRequestMessage.
+     * @param bucketID the ID of a remote bucket to read the objects from
+     * @param cursorID the identifier of the cursor on the remote node or {@link #NEW_CURSOR} to open a new one
+     * @param maxObjects the maximal number of objects to return, zero closes the cursor
+     */
+    public BucketCursorRequestMessage(int bucketID, int cursorID, int maxObjects) {
+        super(bucketID);
+        this.cursorID = cursorID;
+        this.maxObjects = maxObjects;
+    }
+
+    /**
+     * Creates a new instance of BucketCursorRequestMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketCursorRequestMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketCursorRequestMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.cursorID = serializator.readInt(input);
+        this.maxObjects = serializator.readInt(input);
+    }
+
+
+    //****************** Executing the request ******************//
+
+    @Override
+    public BucketCursorReplyMessage execute(BucketDispatcher bucketDispatcher) throws UnsupportedOperationException {
+        if (!(bucketDispatcher instanceof NetworkBucketDispatcher))
+            throw new UnsupportedOperationException("Cursors are supported only by the network bucket dispatcher");
+        NetworkBucketDispatcher netbucketDisp = (NetworkBucketDispatcher)bucketDispatcher;
+
+        if (maxObjects <= 0) {
+            netbucketDisp.closeCursor(cursorID);
+            return new BucketCursorReplyMessage(this, cursorID, null, false);
+        }
+
+        int id = cursorID;
+        if (id == NEW_CURSOR) {
+            id = netbucketDisp.openCursor(bucketID);
+            log.log(Level.INFO, "Opened cursor {0} on bucket ID {1} (request from {2})", new Object[]{id, bucketID, getSender()});
+        }
+        NetworkBucketDispatcher.BucketCursor cursor = netbucketDisp.getCursor(id);
+        AbstractObjectList<LocalAbstractObject> objects = cursor.nextObjects(maxObjects);
+        boolean hasMoreObjects = cursor.hasNext();
+        if (!hasMoreObjects)
+            netbucketDisp.closeCursor(id);
+        return new BucketCursorReplyMessage(this, id, objects, hasMoreObjects);
+    }
+
+    @Override
+    public Class<BucketCursorReplyMessage> replyMessageClass() {
+        return BucketCursorReplyMessage.class;
+    }
+
+
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, cursorID) +
+               serializator.write(output, maxObjects);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(cursorID) +
+               serializator.getBinarySize(maxObjects);
+    }
+
+}
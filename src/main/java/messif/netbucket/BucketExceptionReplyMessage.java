@@ -16,7 +16,11 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import messif.buckets.BucketStorageException;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 
 /**
  * Message for returning exception thrown while manipulating objects on a remote bucket.
@@ -66,6 +70,17 @@ public class BucketExceptionReplyMessage extends BucketReplyMessage {
         this.runtimeException = runtimeException;
     }
 
+    /**
+     * Creates a new instance of BucketExceptionReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketExceptionReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketExceptionReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.bucketException = serializator.readObject(input, BucketStorageException.class);
+        this.runtimeException = serializator.readObject(input, RuntimeException.class);
+    }
 
     //****************** Attribute access methods ******************//
 
@@ -82,4 +97,20 @@ public class BucketExceptionReplyMessage extends BucketReplyMessage {
         return bucketException;
     }
 
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, bucketException) +
+               serializator.write(output, runtimeException);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(bucketException) +
+               serializator.getBinarySize(runtimeException);
+    }
+
 }
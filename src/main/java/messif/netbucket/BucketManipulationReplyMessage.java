@@ -16,9 +16,13 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import java.util.Collection;
 import messif.buckets.BucketErrorCode;
 import messif.objects.LocalAbstractObject;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 import messif.objects.util.AbstractObjectIterator;
 import messif.objects.util.AbstractObjectList;
 import messif.operations.QueryOperation;
@@ -115,4 +119,39 @@ public class BucketManipulationReplyMessage extends BucketReplyMessage {
         this.objects = new AbstractObjectList<LocalAbstractObject>(objects);
         this.query = query;
     }
+
+    /**
+     * Creates a new instance of BucketManipulationReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketManipulationReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketManipulationReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.errorCode = serializator.readObject(input, BucketErrorCode.class);
+        this.object = serializator.readObject(input, LocalAbstractObject.class);
+        this.objects = BucketManipulationRequestMessage.readObjectList(input, serializator);
+        this.query = serializator.readObject(input, QueryOperation.class);
+    }
+
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, errorCode) +
+               serializator.write(output, object) +
+               BucketManipulationRequestMessage.writeObjectList(output, serializator, objects) +
+               serializator.write(output, query);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(errorCode) +
+               serializator.getBinarySize(object) +
+               BucketManipulationRequestMessage.getObjectListBinarySize(serializator, objects) +
+               serializator.getBinarySize(query);
+    }
+
 }
@@ -16,6 +16,7 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -25,6 +26,9 @@ import messif.buckets.BucketStorageException;
 import messif.buckets.LocalBucket;
 import messif.objects.LocalAbstractObject;
 import messif.objects.keys.AbstractObjectKey;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 import messif.objects.util.AbstractObjectList;
 
 
@@ -85,6 +89,14 @@ public class BucketManipulationRequestMessage extends BucketRequestMessage<Bucke
      * Creates a new instance of BucketManipulationRequestMessage that requests addition of list of objects to a remote bucket
      */
     public BucketManipulationRequestMessage(Iterator<? extends LocalAbstractObject> objects, int remoteBucketID) {
+        this(objects, Integer.MAX_VALUE, remoteBucketID);
+    }
+
+    /**
+     * Creates a new instance of BucketManipulationRequestMessage that requests addition of a chunk of objects to a remote bucket.
+     * At most {@code maxObjects} are taken from the iterator, the remaining objects can be sent by another message.
+     */
+    public BucketManipulationRequestMessage(Iterator<? extends LocalAbstractObject> objects, int maxObjects, int remoteBucketID) {
         super(remoteBucketID);
         this.object = null;
         this.objects = new AbstractObjectList<LocalAbstractObject>();
@@ -94,7 +106,7 @@ public class BucketManipulationRequestMessage extends BucketRequestMessage<Bucke
         this.addResultToOperation = false;
         this.sourceBucketID = BucketDispatcher.UNASSIGNED_BUCKET_ID;
 
-        while (objects.hasNext())
+        while (this.objects.size() < maxObjects && objects.hasNext())
             this.objects.add(objects.next());
     }
 
@@ -154,6 +166,22 @@ public class BucketManipulationRequestMessage extends BucketRequestMessage<Bucke
         this.sourceBucketID = sourceBucketID;
     }
 
+    /**
+     * Creates a new instance of BucketManipulationRequestMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketManipulationRequestMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketManipulationRequestMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.object = serializator.readObject(input, LocalAbstractObject.class);
+        this.objects = readObjectList(input, serializator);
+        this.objectLocator = serializator.readString(input);
+        this.objectKey = serializator.readObject(input, AbstractObjectKey.class);
+        this.deleteObjects = serializator.readInt(input);
+        this.addResultToOperation = serializator.readBoolean(input);
+        this.sourceBucketID = serializator.readInt(input);
+    }
 
     //****************** Perform operation ******************//
 
@@ -202,4 +230,79 @@ public class BucketManipulationRequestMessage extends BucketRequestMessage<Bucke
         return BucketManipulationReplyMessage.class;
     }
 
+    //****************** BinarySerializable interface ******************//
+
+    /**
+     * Binary-serialize a list of objects into the <code>output</code>.
+     * The objects are written one by one, so that they are binary-serialized as well.
+     * @param output the output that the list is binary-serialized into
+     * @param serializator the serializator used to write objects
+     * @param objects the list of objects to write (can be <tt>null</tt>)
+     * @return the number of bytes actually written
+     * @throws IOException if there was an I/O error during serialization
+     */
+    static int writeObjectList(BinaryOutput output, BinarySerializator serializator, AbstractObjectList<LocalAbstractObject> objects) throws IOException {
+        if (objects == null)
+            return serializator.write(output, -1);
+        int size = serializator.write(output, objects.size());
+        for (LocalAbstractObject listObject : objects)
+            size += serializator.write(output, listObject);
+        return size;
+    }
+
+    /**
+     * Returns the exact size of the binary-serialized list of objects in bytes.
+     * @param serializator the serializator used to write objects
+     * @param objects the list of objects (can be <tt>null</tt>)
+     * @return size of the binary-serialized list of objects
+     */
+    static int getObjectListBinarySize(BinarySerializator serializator, AbstractObjectList<LocalAbstractObject> objects) {
+        int size = serializator.getBinarySize(objects == null ? -1 : objects.size());
+        if (objects != null)
+            for (LocalAbstractObject listObject : objects)
+                size += serializator.getBinarySize(listObject);
+        return size;
+    }
+
+    /**
+     * Reads a list of objects written by {@link #writeObjectList} from the binary input buffer.
+     * @param input the buffer to read the list from
+     * @param serializator the serializator used to write objects
+     * @return the list of objects or <tt>null</tt>
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    static AbstractObjectList<LocalAbstractObject> readObjectList(BinaryInput input, BinarySerializator serializator) throws IOException {
+        int count = serializator.readInt(input);
+        if (count < 0)
+            return null;
+        AbstractObjectList<LocalAbstractObject> objects = new AbstractObjectList<LocalAbstractObject>(count);
+        for (int i = 0; i < count; i++)
+            objects.add(serializator.readObject(input, LocalAbstractObject.class));
+        return objects;
+    }
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, object) +
+               writeObjectList(output, serializator, objects) +
+               serializator.write(output, objectLocator) +
+               serializator.write(output, objectKey) +
+               serializator.write(output, deleteObjects) +
+               serializator.write(output, addResultToOperation) +
+               serializator.write(output, sourceBucketID);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(object) +
+               getObjectListBinarySize(serializator, objects) +
+               serializator.getBinarySize(objectLocator) +
+               serializator.getBinarySize(objectKey) +
+               serializator.getBinarySize(deleteObjects) +
+               serializator.getBinarySize(addResultToOperation) +
+               serializator.getBinarySize(sourceBucketID);
+    }
+
 }
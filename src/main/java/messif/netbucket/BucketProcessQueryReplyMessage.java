@@ -16,6 +16,10 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 import messif.operations.QueryOperation;
 
 /**
@@ -51,6 +55,17 @@ public class BucketProcessQueryReplyMessage extends BucketReplyMessage {
         this.count = count;
     }
 
+    /**
+     * Creates a new instance of BucketProcessQueryReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketProcessQueryReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketProcessQueryReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.query = serializator.readObject(input, QueryOperation.class);
+        this.count = serializator.readInt(input);
+    }
 
     //****************** Attribute access methods ******************//
 
@@ -69,4 +84,21 @@ public class BucketProcessQueryReplyMessage extends BucketReplyMessage {
     public int getCount() {
         return count;
     }
+
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, query) +
+               serializator.write(output, count);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(query) +
+               serializator.getBinarySize(count);
+    }
+
 }
@@ -16,8 +16,12 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import messif.buckets.BucketDispatcher;
 import messif.buckets.BucketStorageException;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 import messif.operations.QueryOperation;
 
 /**
@@ -50,6 +54,16 @@ public class BucketProcessQueryRequestMessage extends BucketRequestMessage<Bucke
         this.query = query;
     }
 
+    /**
+     * Creates a new instance of BucketProcessQueryRequestMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketProcessQueryRequestMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketProcessQueryRequestMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.query = serializator.readObject(input, QueryOperation.class);
+    }
 
     //****************** Executing the request ******************//
 
@@ -64,4 +78,18 @@ public class BucketProcessQueryRequestMessage extends BucketRequestMessage<Bucke
         return BucketProcessQueryReplyMessage.class;
     }
 
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, query);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(query);
+    }
+
 }
@@ -16,6 +16,11 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
+
 /**
  * Message for returning results of a remote bucket removal.
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
@@ -45,4 +50,30 @@ public class BucketRemoveReplyMessage extends BucketReplyMessage {
     public boolean getRemoved() {
         return removed;
     }
+
+    /**
+     * Creates a new instance of BucketRemoveReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketRemoveReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketRemoveReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.removed = serializator.readBoolean(input);
+    }
+
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, removed);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(removed);
+    }
+
 }
@@ -16,10 +16,13 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import messif.buckets.BucketDispatcher;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinarySerializator;
 
 /**
  *
@@ -62,4 +65,14 @@ public class BucketRemoveRequestMessage extends BucketRequestMessage<BucketRemov
         return BucketRemoveReplyMessage.class;
     }
 
+    /**
+     * Creates a new instance of BucketRemoveRequestMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketRemoveRequestMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketRemoveRequestMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+    }
+
 }
@@ -16,7 +16,10 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import messif.network.ReplyMessage;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinarySerializator;
 
 /**
  * Generic message for returning results of an object manipulation on a remote bucket.
@@ -38,4 +41,14 @@ public class BucketReplyMessage extends ReplyMessage {
         super(message);
     }
 
+    /**
+     * Creates a new instance of BucketReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+    }
+
 }
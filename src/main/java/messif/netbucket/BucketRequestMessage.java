@@ -16,9 +16,13 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import messif.buckets.BucketDispatcher;
 import messif.buckets.BucketStorageException;
 import messif.network.Message;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 
 
 /**
@@ -49,6 +53,16 @@ public abstract class BucketRequestMessage<T extends BucketReplyMessage> extends
         this.bucketID = bucketID;
     }
 
+    /**
+     * Creates a new instance of BucketRequestMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketRequestMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketRequestMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.bucketID = serializator.readInt(input);
+    }
 
     //****************** Executing the request ******************//
 
@@ -67,4 +81,19 @@ public abstract class BucketRequestMessage<T extends BucketReplyMessage> extends
      * @return the class of the reply message that is received as a response to this request message
      */
     public abstract Class<T> replyMessageClass();
+
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, bucketID);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(bucketID);
+    }
+
 }
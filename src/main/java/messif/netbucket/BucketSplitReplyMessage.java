@@ -16,6 +16,7 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import messif.buckets.Bucket;
@@ -24,6 +25,9 @@ import messif.buckets.CapacityFullException;
 import messif.buckets.LocalBucket;
 import messif.buckets.split.SplitPolicy;
 import messif.buckets.split.SplitResult;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 
 /**
  * Message for returning results of a remote bucket split.
@@ -74,6 +78,19 @@ public class BucketSplitReplyMessage extends BucketReplyMessage implements Split
         }
     }
 
+    /**
+     * Creates a new instance of BucketSplitReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketSplitReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketSplitReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.splitPolicy = serializator.readObject(input, SplitPolicy.class);
+        this.bucketIDs = serializator.readIntArray(input);
+        this.capacities = serializator.readLongArray(input);
+        this.objectsMoved = serializator.readInt(input);
+    }
 
     //****************** Attribute access methods ******************//
 
@@ -117,4 +134,25 @@ public class BucketSplitReplyMessage extends BucketReplyMessage implements Split
         return objectsMoved;
     }
     
+
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, splitPolicy) +
+               serializator.write(output, bucketIDs) +
+               serializator.write(output, capacities) +
+               serializator.write(output, objectsMoved);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(splitPolicy) +
+               serializator.getBinarySize(bucketIDs) +
+               serializator.getBinarySize(capacities) +
+               serializator.getBinarySize(objectsMoved);
+    }
+
 }
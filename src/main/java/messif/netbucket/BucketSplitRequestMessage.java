@@ -16,6 +16,7 @@
  */
 package messif.netbucket;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -25,6 +26,9 @@ import messif.buckets.BucketDispatcher;
 import messif.buckets.BucketStorageException;
 import messif.buckets.LocalBucket;
 import messif.buckets.split.SplitPolicy;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
 
 /**
  * Message requesting to split a bucket creating new ones.
@@ -76,6 +80,17 @@ public class BucketSplitRequestMessage extends BucketRequestMessage<BucketSplitR
         this.whoStays = whoStays;
     }
 
+    /**
+     * Creates a new instance of BucketSplitRequestMessage loaded from binary input buffer.
+     * @param input the buffer to read the BucketSplitRequestMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected BucketSplitRequestMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+        this.splitPolicy = serializator.readObject(input, SplitPolicy.class);
+        this.whoStays = serializator.readInt(input);
+    }
 
     //****************** Executing the request ******************//
 
@@ -95,4 +110,20 @@ public class BucketSplitRequestMessage extends BucketRequestMessage<BucketSplitR
         return BucketSplitReplyMessage.class;
     }
 
+    //****************** BinarySerializable interface ******************//
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        return super.binarySerialize(output, serializator) +
+               serializator.write(output, splitPolicy) +
+               serializator.write(output, whoStays);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        return super.getBinarySize(serializator) +
+               serializator.getBinarySize(splitPolicy) +
+               serializator.getBinarySize(whoStays);
+    }
+
 }
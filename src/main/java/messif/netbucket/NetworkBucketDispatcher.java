@@ -17,8 +17,12 @@
 package messif.netbucket;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import messif.buckets.BucketDispatcher;
 import messif.buckets.BucketErrorCode;
 import messif.buckets.BucketStorageException;
@@ -26,11 +30,14 @@ import messif.buckets.BucketDispatcher;
 import messif.buckets.BucketErrorCode;
 import messif.buckets.LocalBucket;
 import messif.buckets.impl.MemoryStorageBucket;
+import messif.buckets.index.Search;
 import messif.buckets.split.SplitPolicy;
 import messif.buckets.split.SplitResult;
 import messif.network.MessageDispatcher;
 import messif.network.NetworkNode;
 import messif.network.ThreadInvokingReceiver;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectList;
 
 /**
  *
@@ -49,6 +56,10 @@ public class NetworkBucketDispatcher extends BucketDispatcher {
     private final MessageDispatcher messageDisp;
     /** Receiver for receiving bucket request messages */
     private transient ThreadInvokingReceiver receiver;
+    /** Open cursors for the {@link BucketCursorRequestMessage streaming} of the bucket objects */
+    private transient Map<Integer, BucketCursor> cursors;
+    /** Identifier of the next opened cursor */
+    private transient AtomicInteger nextCursorID;
 
 
     //****************** Constructors ******************//
@@ -68,6 +79,8 @@ public class NetworkBucketDispatcher extends BucketDispatcher {
     public NetworkBucketDispatcher(MessageDispatcher messageDisp, int maxBuckets, long bucketCapacity, long bucketSoftCapacity, long bucketLowOccupation, boolean bucketOccupationAsBytes, Class<? extends LocalBucket> defaultBucketClass, Map<String, Object> defaultBucketClassParams) {
         super(maxBuckets, bucketCapacity, bucketSoftCapacity, bucketLowOccupation, bucketOccupationAsBytes, defaultBucketClass, defaultBucketClassParams);
         this.messageDisp = messageDisp;
+        this.cursors = new ConcurrentHashMap<Integer, BucketCursor>();
+        this.nextCursorID = new AtomicInteger();
         startReceiving();
     }
 
@@ -86,6 +99,8 @@ public class NetworkBucketDispatcher extends BucketDispatcher {
     public NetworkBucketDispatcher(MessageDispatcher messageDisp, int maxBuckets, long bucketCapacity, long bucketSoftCapacity, long bucketLowOccupation, boolean bucketOccupationAsBytes, Class<? extends LocalBucket> defaultBucketClass) {
         super(maxBuckets, bucketCapacity, bucketSoftCapacity, bucketLowOccupation, bucketOccupationAsBytes, defaultBucketClass);
         this.messageDisp = messageDisp;
+        this.cursors = new ConcurrentHashMap<Integer, BucketCursor>();
+        this.nextCursorID = new AtomicInteger();
         startReceiving();
     }
 
@@ -102,6 +117,8 @@ public class NetworkBucketDispatcher extends BucketDispatcher {
     public NetworkBucketDispatcher(MessageDispatcher messageDisp, int maxBuckets, long bucketCapacity, Class<? extends LocalBucket> defaultBucketClass) {
         super(maxBuckets, bucketCapacity, defaultBucketClass);
         this.messageDisp = messageDisp;
+        this.cursors = new ConcurrentHashMap<Integer, BucketCursor>();
+        this.nextCursorID = new AtomicInteger();
         startReceiving();
     }
 
@@ -110,15 +127,24 @@ public class NetworkBucketDispatcher extends BucketDispatcher {
      */
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
+        this.cursors = new ConcurrentHashMap<Integer, BucketCursor>();
+        this.nextCursorID = new AtomicInteger();
         startReceiving();
     }
     
     @Override
     public void finalize() throws Throwable {
         stopReceiving();
+        closeAllCursors();
         super.finalize();
     }
 
+    @Override
+    public void destroy() throws Throwable {
+        closeAllCursors();
+        super.destroy();
+    }
+
     
     //****************** Messaging inicialization methods ******************//
 
@@ -196,6 +222,209 @@ public class NetworkBucketDispatcher extends BucketDispatcher {
     }
 
 
+    /**
+     * Sending method for bucket request messages with a limited waiting for the reply.
+     * The message is send to <code>networkNode</code> and the returned
+     * reply message of class <code>T</code> is returned. Unlike {@link #send(BucketRequestMessage, NetworkNode)},
+     * the waiting for the reply can be interrupted.
+     * @param <T> the class of the reply message that is returned
+     * @param msg the bucket request message to process
+     * @param networkNode the destination node where the message is sent
+     * @param timeout the number of milliseconds to wait for the reply, zero means wait until the reply arrives
+     * @return the returned message
+     * @throws IOException if there was an error processing the message
+     * @throws InterruptedException if the reply did not arrive within the timeout or the waiting thread was interrupted
+     * @throws RuntimeException if there was a {@link RuntimeException} when processing the bucket request
+     * @throws BucketStorageException if there was a storage error when processing the bucket request
+     */
+    protected <T extends BucketReplyMessage> T send(BucketRequestMessage<T> msg, NetworkNode networkNode, long timeout) throws IOException, InterruptedException, RuntimeException, BucketStorageException {
+        BucketReplyMessage reply = messageDisp.sendMessageWaitSingleReply(msg, BucketReplyMessage.class, networkNode, timeout);
+        if (reply instanceof BucketExceptionReplyMessage)
+            throw ((BucketExceptionReplyMessage)reply).getException();
+        else
+            return msg.replyMessageClass().cast(reply);
+    }
+
+
+    //****************** Cursors ******************//
+
+    /** Time (in milliseconds) after which an unused cursor is closed */
+    public static final long CURSOR_IDLE_TIMEOUT = 600000;
+
+    /**
+     * Cursor that reads the objects of a local bucket in chunks.
+     * The cursor is kept open between the {@link BucketCursorRequestMessage requests}
+     * of a remote node and it is closed as soon as all the objects are read.
+     *
+     * <p>
+     * Each chunk is read while holding the {@link LocalBucket#getObjectsLock() read lock}
+     * of the bucket, so a chunk never interleaves with a modification of the bucket.
+     * The bucket can be modified between the chunks though. The cursor is weakly consistent,
+     * i.e. the objects that were not modified are returned exactly once, while the objects
+     * added or deleted while the cursor is open may or may not be returned.
+     * </p>
+     */
+    static class BucketCursor {
+        /** Bucket the objects of which are read */
+        private final LocalBucket bucket;
+        /** Search over the objects of the bucket (<tt>null</tt> if the cursor is closed) */
+        private Search<LocalAbstractObject> search;
+        /** Flag whether the current object of the search was not returned yet */
+        private boolean pending;
+        /** Time of the last access to this cursor */
+        private volatile long lastAccessTime;
+
+        /**
+         * Creates a new cursor over all objects of the given bucket.
+         * @param bucket the bucket the objects of which to read
+         */
+        private BucketCursor(LocalBucket bucket) {
+            this.bucket = bucket;
+            this.search = bucket.getIndex().search();
+            this.lastAccessTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Moves the search to the next object that was not returned yet.
+         * The cursor is closed if there are no more objects.
+         * @return <tt>true</tt> if there is an object that was not returned yet
+         */
+        private boolean advance() {
+            if (pending)
+                return true;
+            if (search == null)
+                return false;
+            if (search.next())
+                return pending = true;
+            close();
+            return false;
+        }
+
+        /**
+         * Reads the next chunk of objects.
+         * @param maxObjects the maximal number of objects to read
+         * @return the list of objects
+         */
+        synchronized AbstractObjectList<LocalAbstractObject> nextObjects(int maxObjects) {
+            lastAccessTime = System.currentTimeMillis();
+            AbstractObjectList<LocalAbstractObject> objects = new AbstractObjectList<LocalAbstractObject>(maxObjects);
+            Lock lock = bucket.getObjectsLock().readLock();
+            lock.lock();
+            try {
+                while (objects.size() < maxObjects && advance()) {
+                    objects.add(search.getCurrentObject());
+                    pending = false;
+                }
+                advance(); // Look ahead so that the exhausted cursor is closed immediately
+            } finally {
+                lock.unlock();
+            }
+            return objects;
+        }
+
+        /**
+         * Returns whether this cursor has more objects to read.
+         * @return <tt>true</tt> if this cursor has more objects to read
+         */
+        synchronized boolean hasNext() {
+            return pending;
+        }
+
+        /**
+         * Closes this cursor and releases the search over the bucket.
+         */
+        synchronized void close() {
+            pending = false;
+            if (search != null) {
+                search.close();
+                search = null;
+            }
+        }
+
+        /**
+         * Returns whether this cursor was not used for {@link #CURSOR_IDLE_TIMEOUT}.
+         * @param now the current time in milliseconds
+         * @return <tt>true</tt> if this cursor has expired
+         */
+        boolean isExpired(long now) {
+            return lastAccessTime < now - CURSOR_IDLE_TIMEOUT;
+        }
+    }
+
+    /**
+     * Closes the cursors that were not used for {@link #CURSOR_IDLE_TIMEOUT}.
+     * This method is called on every cursor request.
+     */
+    private void closeExpiredCursors() {
+        long now = System.currentTimeMillis();
+        Iterator<BucketCursor> iterator = cursors.values().iterator();
+        while (iterator.hasNext()) {
+            BucketCursor cursor = iterator.next();
+            if (cursor.isExpired(now)) {
+                iterator.remove();
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Closes all the open cursors.
+     * This method is called when this dispatcher is finalized or destroyed.
+     */
+    private void closeAllCursors() {
+        Iterator<BucketCursor> iterator = cursors.values().iterator();
+        while (iterator.hasNext()) {
+            BucketCursor cursor = iterator.next();
+            iterator.remove();
+            cursor.close();
+        }
+    }
+
+    /**
+     * Opens a new cursor over all objects of the bucket with the given ID.
+     * The cursors that were not used for {@link #CURSOR_IDLE_TIMEOUT} are closed.
+     * @param bucketID the ID of the bucket the objects of which to read
+     * @return the identifier of the new cursor
+     * @throws NoSuchElementException if there is no bucket with the specified ID in this dispatcher
+     */
+    int openCursor(int bucketID) throws NoSuchElementException {
+        closeExpiredCursors();
+        int cursorID = nextCursorID.getAndIncrement();
+        cursors.put(cursorID, new BucketCursor(getBucket(bucketID)));
+        return cursorID;
+    }
+
+    /**
+     * Returns the open cursor with the given identifier.
+     * The cursors that were not used for {@link #CURSOR_IDLE_TIMEOUT} are closed.
+     * @param cursorID the identifier of the cursor
+     * @return the cursor
+     * @throws NoSuchElementException if there is no open cursor with the given identifier
+     */
+    BucketCursor getCursor(int cursorID) throws NoSuchElementException {
+        closeExpiredCursors();
+        BucketCursor cursor = cursors.get(cursorID);
+        if (cursor == null)
+            throw new NoSuchElementException("There is no open cursor with ID " + cursorID);
+        return cursor;
+    }
+
+    /**
+     * Closes the cursor with the given identifier.
+     * The cursors that were not used for {@link #CURSOR_IDLE_TIMEOUT} are closed as well.
+     * @param cursorID the identifier of the cursor
+     * @return <tt>true</tt> if the cursor was open
+     */
+    boolean closeCursor(int cursorID) {
+        closeExpiredCursors();
+        BucketCursor cursor = cursors.remove(cursorID);
+        if (cursor == null)
+            return false;
+        cursor.close();
+        return true;
+    }
+
+
     //****************** Bucket creation/removal/manipulation ******************//
 
     /**
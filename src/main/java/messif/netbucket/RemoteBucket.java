@@ -52,6 +52,9 @@ public class RemoteBucket extends Bucket implements Serializable {
 
     /** Class serial id for serialization */
     private static final long serialVersionUID = 1L;
+
+    /** Default maximal number of objects transferred in one message */
+    public static final int DEFAULT_TRANSFER_CHUNK_SIZE = 1000;
     
     //****************** Bucket info ******************//
 
@@ -185,25 +188,31 @@ public class RemoteBucket extends Bucket implements Serializable {
 
     /**
      * Returns iterator over all objects from the remote bucket.
+     * The objects are transferred lazily in chunks of {@link #DEFAULT_TRANSFER_CHUNK_SIZE} objects.
      * @return iterator over all objects from the remote bucket
      * @throws IllegalStateException if there was an error communicating with the remote bucket dispatcher
      */
     @Override
     public AbstractObjectIterator<LocalAbstractObject> getAllObjects() throws IllegalStateException {
+        return getAllObjects(DEFAULT_TRANSFER_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns iterator over all objects from the remote bucket.
+     * The objects are transferred lazily in chunks of the given size,
+     * see {@link RemoteBucketObjectIterator} for details.
+     * @param chunkSize the maximal number of objects transferred in one message
+     * @return iterator over all objects from the remote bucket
+     * @throws IllegalArgumentException if the chunk size is not positive
+     * @throws IllegalStateException if there was an error communicating with the remote bucket dispatcher
+     */
+    public AbstractObjectIterator<LocalAbstractObject> getAllObjects(int chunkSize) throws IllegalArgumentException, IllegalStateException {
         // If this remote bucket points is current node, use local bucket
         if (isLocalBucket())
             return netbucketDisp.getBucket(bucketID).getAllObjects();
         
-        // Otherwise, send message to remote netnode
-        try {
-            return netbucketDisp.send(new BucketManipulationRequestMessage(bucketID), remoteNetworkNode).getObjects().iterator();
-        } catch (IOException e) {
-            throw new IllegalStateException("Network error while getting all objects from " + toString(), e);
-        } catch (NoSuchElementException e) {
-            throw new IllegalStateException(e.getMessage());
-        } catch (BucketStorageException e) {
-            throw new IllegalStateException(e);
-        }
+        // Otherwise, pull the objects from the remote netnode
+        return new RemoteBucketObjectIterator(this, chunkSize);
     }
 
     @Override
@@ -229,10 +238,14 @@ public class RemoteBucket extends Bucket implements Serializable {
         if (isLocalBucket())
             return netbucketDisp.getBucket(bucketID).addObjects(objects);
         
-        // Otherwise, send message to remote netnode
+        // Otherwise, send messages with chunks of objects to remote netnode
         try {
-            BucketManipulationReplyMessage msg = netbucketDisp.send(new BucketManipulationRequestMessage(objects, bucketID), remoteNetworkNode);
-            return msg.getChangesCount();
+            int changesCount = 0;
+            while (objects.hasNext()) {
+                BucketManipulationReplyMessage msg = netbucketDisp.send(new BucketManipulationRequestMessage(objects, DEFAULT_TRANSFER_CHUNK_SIZE, bucketID), remoteNetworkNode);
+                changesCount += msg.getChangesCount();
+            }
+            return changesCount;
         } catch (IOException e) {
             throw new IllegalStateException("Network error while adding " + objects + " to " + toString(), e);
         } catch (NoSuchElementException e) {
@@ -301,6 +314,36 @@ public class RemoteBucket extends Bucket implements Serializable {
     }
 
 
+    /**
+     * Process a query operation on objects from the remote bucket with a limited waiting for the reply.
+     * The query operation's answer is updated with objects from the bucket
+     * that satisfy the query. Unlike {@link #processQuery(QueryOperation)},
+     * the waiting for the remote node can be interrupted.
+     * 
+     * @param query query operation that is to be processed on the bucket
+     * @param timeout the number of milliseconds to wait for the remote reply, zero means wait until the reply arrives
+     * @return the number of objects that were added to answer
+     * @throws IllegalStateException if there was an error communicating with the remote bucket dispatcher
+     * @throws InterruptedException if the reply did not arrive within the timeout or the waiting thread was interrupted
+     */      
+    public int processQuery(QueryOperation<?> query, long timeout) throws IllegalStateException, InterruptedException {
+        // If this remote bucket points is current node, use local bucket
+        if (isLocalBucket())
+            return netbucketDisp.getBucket(bucketID).processQuery(query);
+        
+        // Otherwise, send message to remote netnode
+        try {
+            BucketProcessQueryReplyMessage msg = netbucketDisp.send(new BucketProcessQueryRequestMessage(bucketID, query), remoteNetworkNode, timeout);
+            query.updateFrom(msg.getQuery());
+            return msg.getCount();
+        } catch (IOException e) {
+            throw new IllegalStateException("Network error while executing query (" + query + ") from " + toString(), e);
+        } catch (BucketStorageException e) {
+            throw new IllegalStateException("This should never happen: " + e, e);
+        }
+    }
+
+
     //****************** Comparing ******************//
 
     /**
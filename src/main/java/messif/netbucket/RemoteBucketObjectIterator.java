@@ -0,0 +1,179 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.netbucket;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import messif.buckets.BucketStorageException;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectIterator;
+
+
+/**
+ * Iterator over all objects of a {@link RemoteBucket} that transfers the objects lazily.
+ * The objects are pulled from the remote node in chunks of a bounded size
+ * using a {@link BucketCursorRequestMessage cursor}. The next chunk is requested
+ * only when all objects of the current chunk were consumed, thus at most one
+ * chunk is held in memory and the remote node never sends more objects than
+ * the iterator can process.
+ *
+ * <p>
+ * If the iteration is not finished, the iterator should be {@link #close() closed}
+ * so that the remote node can release the cursor. Otherwise, the cursor is closed
+ * on the remote node after {@link NetworkBucketDispatcher#CURSOR_IDLE_TIMEOUT}.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ * @see RemoteBucket#getAllObjects(int)
+ */
+public class RemoteBucketObjectIterator extends AbstractObjectIterator<LocalAbstractObject> {
+
+    //****************** Attributes ******************//
+
+    /** Remote bucket the objects of which are iterated */
+    private final RemoteBucket remoteBucket;
+
+    /** Maximal number of objects transferred in one chunk */
+    private final int chunkSize;
+
+    /** Identifier of the cursor on the remote node */
+    private int cursorID = BucketCursorRequestMessage.NEW_CURSOR;
+
+    /** Flag whether the cursor on the remote node has more objects */
+    private boolean hasMoreChunks = true;
+
+    /** Iterator over the current chunk of objects */
+    private Iterator<LocalAbstractObject> chunkIterator;
+
+    /** Object returned by the last call to {@link #next()} */
+    private LocalAbstractObject currentObject;
+
+
+    //****************** Constructor ******************//
+
+    /**
+     * Creates a new iterator over all objects of the given remote bucket.
+     * The first chunk of objects is requested immediately.
+     * @param remoteBucket the remote bucket the objects of which to iterate
+     * @param chunkSize the maximal number of objects transferred in one chunk
+     * @throws IllegalArgumentException if the chunk size is not positive
+     * @throws IllegalStateException if there was an error communicating with the remote bucket dispatcher
+     */
+    RemoteBucketObjectIterator(RemoteBucket remoteBucket, int chunkSize) throws IllegalArgumentException, IllegalStateException {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.remoteBucket = remoteBucket;
+        this.chunkSize = chunkSize;
+        fetchChunk();
+    }
+
+
+    //****************** Chunk transfer ******************//
+
+    /**
+     * Requests the next chunk of objects from the remote node.
+     * @throws IllegalStateException if there was an error communicating with the remote bucket dispatcher
+     */
+    private void fetchChunk() throws IllegalStateException {
+        BucketCursorReplyMessage reply = sendCursorRequest(chunkSize);
+        cursorID = reply.getCursorID();
+        hasMoreChunks = reply.hasMoreObjects();
+        chunkIterator = reply.getObjects().iterator();
+    }
+
+    /**
+     * Sends a request for the given number of objects to the cursor on the remote node.
+     * @param maxObjects the maximal number of objects to get, zero closes the cursor
+     * @return the reply message
+     * @throws IllegalStateException if there was an error communicating with the remote bucket dispatcher
+     */
+    private BucketCursorReplyMessage sendCursorRequest(int maxObjects) throws IllegalStateException {
+        try {
+            return remoteBucket.netbucketDisp.send(new BucketCursorRequestMessage(remoteBucket.getBucketID(), cursorID, maxObjects), remoteBucket.getRemoteNetworkNode());
+        } catch (IOException e) {
+            throw new IllegalStateException("Network error while getting objects from " + remoteBucket, e);
+        } catch (NoSuchElementException e) {
+            throw new IllegalStateException(e.getMessage());
+        } catch (BucketStorageException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Closes the cursor on the remote node.
+     * This method should be called if the iteration is finished prematurely.
+     * @throws IllegalStateException if there was an error communicating with the remote bucket dispatcher
+     */
+    public void close() throws IllegalStateException {
+        if (hasMoreChunks) {
+            hasMoreChunks = false;
+            chunkIterator = null;
+            sendCursorRequest(0);
+        }
+    }
+
+
+    //****************** Iterator implementation ******************//
+
+    @Override
+    public boolean hasNext() throws IllegalStateException {
+        while (chunkIterator != null && !chunkIterator.hasNext()) {
+            if (hasMoreChunks)
+                fetchChunk();
+            else
+                chunkIterator = null;
+        }
+        return chunkIterator != null;
+    }
+
+    @Override
+    public LocalAbstractObject next() throws NoSuchElementException, IllegalStateException {
+        if (!hasNext())
+            throw new NoSuchElementException("There are no more objects in " + remoteBucket);
+        return currentObject = chunkIterator.next();
+    }
+
+    @Override
+    public LocalAbstractObject getCurrentObject() throws NoSuchElementException {
+        if (currentObject == null)
+            throw new NoSuchElementException("Method next() has not been called yet");
+        return currentObject;
+    }
+
+    /**
+     * Removes the object returned by the last call to {@link #next()} from the remote bucket.
+     * The object is deleted by a separate {@link RemoteBucket#deleteObject(LocalAbstractObject, int) delete request},
+     * thus if the bucket contains several objects with the same data, any one of them is deleted.
+     * @throws IllegalStateException if the {@link #next()} has not been called yet, the object was already removed,
+     *          or there was an error communicating with the remote bucket dispatcher
+     */
+    @Override
+    public void remove() throws IllegalStateException {
+        if (currentObject == null)
+            throw new IllegalStateException("Method next() has not been called yet or the object was already removed");
+        try {
+            remoteBucket.deleteObject(currentObject, 1);
+        } catch (BucketStorageException e) {
+            throw new IllegalStateException("Cannot remove " + currentObject + " from " + remoteBucket, e);
+        }
+        currentObject = null;
+    }
+
+}
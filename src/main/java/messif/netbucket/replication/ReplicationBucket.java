@@ -17,13 +17,23 @@
 package messif.netbucket.replication;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -37,10 +47,21 @@ import messif.objects.LocalAbstractObject;
 import messif.objects.keys.AbstractObjectKey;
 import messif.objects.util.AbstractObjectIterator;
 import messif.operations.QueryOperation;
+import messif.operations.RankingQueryOperation;
 import messif.statistics.OperationStatistics;
 import messif.statistics.StatisticCounter;
 
 /**
+ * Bucket that encapsulates a local bucket and maintains its replicas on remote nodes.
+ * All modifications are applied to the encapsulated bucket and all the replicas.
+ *
+ * <p>
+ * Queries are processed by the bucket or replica with the lowest expected cost,
+ * i.e. the moving average of its query latency multiplied by the number of queries
+ * it is currently processing (plus one). If the {@link ReplicationNetworkBucketDispatcher#setHedgedQueryDelay
+ * hedged query delay} is set and the selected replica does not answer within the delay,
+ * a copy of the query is sent to the next best replica and the first answer is used.
+ * </p>
  *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
@@ -57,6 +78,8 @@ public class ReplicationBucket extends LocalBucket {
     protected final LocalBucket encapsulatedBucket;
     protected final List<RemoteBucket> replicas = new ArrayList<RemoteBucket>();
     protected final AtomicInteger nextReplicaForGet = new AtomicInteger(0); // zero means access local bucket
+    /** Load of the encapsulated bucket (index zero) and the replicas (index of the replica plus one) */
+    protected final List<ReplicaLoad> replicaLoads = new ArrayList<ReplicaLoad>();
     protected final ReadWriteLock replicaManipulationLock = new ReentrantReadWriteLock(true);
 
     /** Creates a new instance of ReplicationBucket */
@@ -64,6 +87,7 @@ public class ReplicationBucket extends LocalBucket {
         super(Long.MAX_VALUE, Long.MAX_VALUE, 0, false, encapsulatedBucket.getObjectCount());
         this.encapsulatedBucket = encapsulatedBucket;
         this.bucketDispatcher = bucketDispatcher;
+        this.replicaLoads.add(new ReplicaLoad());
     }
 
 
@@ -81,6 +105,7 @@ public class ReplicationBucket extends LocalBucket {
             
             // Add new replica to the internal replicas list
             replicas.add(replica);
+            replicaLoads.add(new ReplicaLoad());
         } catch (IOException e) {
             throw new IllegalStateException(e);
         } finally {
@@ -95,12 +120,12 @@ public class ReplicationBucket extends LocalBucket {
         
         try {
             // Search for replicas at specified node
-            Iterator<RemoteBucket> iterator = replicas.iterator();
-            while (iterator.hasNext()) {
-                RemoteBucket replica = iterator.next();
+            for (int i = 0; i < replicas.size(); i++) {
+                RemoteBucket replica = replicas.get(i);
                 if (atNetworkNode.equals(replica.getRemoteNetworkNode())) {
                     // Found the replica, delete it...
-                    iterator.remove();
+                    replicas.remove(i);
+                    replicaLoads.remove(i + 1);
                     return bucketDispatcher.removeRemoteBucket(replica);
                 }
             }
@@ -227,37 +252,312 @@ public class ReplicationBucket extends LocalBucket {
     }
 
 
-    //****************** Overrides for all getter methods of LocalBucket ******************//    
+    //****************** Replica selection ******************//
 
-    protected Bucket getOperatingBucket() {
-        // Get next replica index (thread safe)
-        int index;
-        synchronized (nextReplicaForGet) {
-            if (nextReplicaForGet.get() > replicas.size())
-                nextReplicaForGet.set(0);
-            index = nextReplicaForGet.getAndIncrement();
+    /**
+     * Load of a replica, i.e. the number of queries being processed and the moving average of the query latency.
+     */
+    public static class ReplicaLoad implements Serializable {
+        /** class serial id for serialization */
+        private static final long serialVersionUID = 1L;
+
+        /** Weight of the latest latency in the moving average */
+        private static final double LATENCY_SMOOTHING = 0.2;
+
+        /** Number of queries being processed */
+        private final AtomicInteger inFlight = new AtomicInteger();
+        /** Moving average of the query latency in milliseconds */
+        private volatile double averageLatency = 0;
+        /** Number of processed queries */
+        private volatile long processedCount = 0;
+
+        /**
+         * Returns the number of queries being processed by the replica.
+         * @return the number of queries being processed
+         */
+        public int getInFlight() {
+            return inFlight.get();
         }
-        
+
+        /**
+         * Returns the moving average of the query latency.
+         * @return the moving average of the query latency in milliseconds
+         */
+        public double getAverageLatency() {
+            return averageLatency;
+        }
+
+        /**
+         * Returns the number of queries processed by the replica.
+         * @return the number of processed queries
+         */
+        public long getProcessedCount() {
+            return processedCount;
+        }
+
+        /**
+         * Returns the expected cost of processing a query by the replica.
+         * A replica without any processed query has zero cost so that it is tried first.
+         * @return the expected cost of processing a query
+         */
+        public double getCost() {
+            return averageLatency * (inFlight.get() + 1);
+        }
+
+        /**
+         * Marks the start of processing of a query by the replica.
+         */
+        void queryStarted() {
+            inFlight.incrementAndGet();
+        }
+
+        /**
+         * Marks the end of processing of a query by the replica.
+         * @param latency the latency of the query in nanoseconds
+         */
+        synchronized void queryFinished(long latency) {
+            double latencyMillis = latency / 1000000.0;
+            averageLatency = (processedCount == 0) ? latencyMillis : averageLatency + LATENCY_SMOOTHING * (latencyMillis - averageLatency);
+            processedCount++;
+            inFlight.decrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return "inFlight: " + inFlight + ", latency: " + averageLatency + "ms";
+        }
+    }
+
+    /**
+     * Returns the loads of the encapsulated bucket (index zero) and the replicas (index of the replica plus one).
+     * @return the loads of the encapsulated bucket and the replicas
+     */
+    public List<ReplicaLoad> getReplicaLoads() {
+        return Collections.unmodifiableList(replicaLoads);
+    }
+
+    /**
+     * Returns the encapsulated bucket (index zero) or the replica (index of the replica plus one).
+     * @param index the index of the bucket
+     * @return the bucket with the given index
+     */
+    protected Bucket getReplica(int index) {
         return (index == 0)?encapsulatedBucket:replicas.get(index - 1);
     }
 
+    /**
+     * Returns the index of the bucket with the lowest {@link ReplicaLoad#getCost() cost}.
+     * The ties are resolved in the round-robin fashion.
+     * @param excludeIndex the index of the bucket that should not be selected (or -1)
+     * @return the index of the selected bucket (see {@link #getReplica(int)}) or -1 if there is no bucket to select
+     */
+    protected int selectReplica(int excludeIndex) {
+        int count = replicas.size() + 1;
+        int start = (nextReplicaForGet.getAndIncrement() & Integer.MAX_VALUE) % count;
+        int selected = -1;
+        double selectedCost = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            int index = (start + i) % count;
+            if (index == excludeIndex)
+                continue;
+            double cost = replicaLoads.get(index).getCost();
+            if (cost < selectedCost) {
+                selected = index;
+                selectedCost = cost;
+            }
+        }
+        return selected;
+    }
+
+
+    //****************** Overrides for all getter methods of LocalBucket ******************//    
+
+    protected Bucket getOperatingBucket() {
+        return getReplica(selectReplica(-1));
+    }
+
     @Override
     public int processQuery(QueryOperation<?> query) {
         replicaManipulationLock.readLock().lock();
         try {
-            StatisticCounter threadDistComp = OperationStatistics.getOpStatisticCounter("DistanceComputations");
-            threadDistComp.bindTo(distanceComputations); // Try to bind to global distance computations (if it is not)
-            long currentDistComp = threadDistComp.get();
-            Bucket bucket = getOperatingBucket();
+            int index = selectReplica(-1);
+            long hedgedQueryDelay = bucketDispatcher.getHedgedQueryDelay();
+            if (hedgedQueryDelay >= 0 && !replicas.isEmpty()) {
+                try {
+                    return processQueryHedged(index, query, hedgedQueryDelay);
+                } catch (CloneNotSupportedException ignore) { // Query cannot be copied, process it without hedging
+                }
+            }
+            return processQuery(getReplica(index), replicaLoads.get(index), query);
+        } finally {
+            replicaManipulationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Process the query on the given bucket and update its load.
+     * @param bucket the bucket to process the query on
+     * @param load the load of the bucket
+     * @param query the query to process
+     * @return the number of objects that were added to the answer
+     */
+    private int processQuery(Bucket bucket, ReplicaLoad load, QueryOperation<?> query) {
+        try {
+            return processQuery(bucket, load, query, false);
+        } catch (InterruptedException e) {
+            throw new InternalError("This should never happen - query processing is not interruptible");
+        }
+    }
+
+    /**
+     * Process the query on the given bucket and update its load.
+     * @param bucket the bucket to process the query on
+     * @param load the load of the bucket
+     * @param query the query to process
+     * @param interruptible flag whether the waiting for the reply of a remote bucket can be interrupted
+     * @return the number of objects that were added to the answer
+     * @throws InterruptedException if the waiting for the remote reply was interrupted
+     */
+    private int processQuery(Bucket bucket, ReplicaLoad load, QueryOperation<?> query, boolean interruptible) throws InterruptedException {
+        StatisticCounter threadDistComp = OperationStatistics.getOpStatisticCounter("DistanceComputations");
+        threadDistComp.bindTo(distanceComputations); // Try to bind to global distance computations (if it is not)
+        long currentDistComp = threadDistComp.get();
+        load.queryStarted();
+        long startTime = System.nanoTime();
+        try {
+            if (interruptible && bucket instanceof RemoteBucket)
+                return ((RemoteBucket)bucket).processQuery(query, 0);
+            return bucket.processQuery(query);
+        } finally {
+            load.queryFinished(System.nanoTime() - startTime);
+            if ((bucket == encapsulatedBucket) || ((RemoteBucket) bucket).isLocalBucket())
+                bucketDispatcher.bucketOperationDistcompCounter.add(query.getOperationID(), threadDistComp.get() - currentDistComp);
+            threadDistComp.unbind();
+        }
+    }
+
+    /**
+     * Task that processes a copy of the query on a replica in the hedged query executor.
+     * The waiting for a remote replica is interrupted when the task is cancelled.
+     * The operation statistics gathered by the executor thread are kept
+     * so that they can be merged into the statistics of the calling thread.
+     */
+    private class HedgedQueryTask implements Callable<Integer> {
+        /** Bucket to process the query on */
+        private final Bucket bucket;
+        /** Load of the bucket */
+        private final ReplicaLoad load;
+        /** Copy of the query to process */
+        private final QueryOperation<?> queryCopy;
+        /** Statistics gathered while processing the query */
+        private volatile OperationStatistics statistics;
+
+        /**
+         * Creates a task that processes a copy of the query on the bucket with the given index.
+         * @param index the index of the bucket (see {@link #getReplica(int)})
+         * @param queryCopy the copy of the query to process
+         */
+        private HedgedQueryTask(int index, QueryOperation<?> queryCopy) {
+            this.bucket = getReplica(index);
+            this.load = replicaLoads.get(index);
+            this.queryCopy = queryCopy;
+        }
+
+        @Override
+        public Integer call() throws InterruptedException {
+            OperationStatistics.resetLocalThreadStatistics();
             try {
-                return bucket.processQuery(query);
+                return processQuery(bucket, load, queryCopy, true);
             } finally {
-                if ((bucket == encapsulatedBucket) || ((RemoteBucket) bucket).isLocalBucket())
-                    bucketDispatcher.bucketOperationDistcompCounter.add(query.getOperationID(), threadDistComp.get() - currentDistComp);
-                threadDistComp.unbind();
+                statistics = OperationStatistics.getLocalThreadStatistics();
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of the query with an empty answer.
+     * The answer of a {@link RankingQueryOperation} copy is seeded with the current
+     * answer of the query, so that the copy starts with the current answer threshold.
+     * @param query the query to copy
+     * @return the copy of the query
+     * @throws CloneNotSupportedException if the query cannot be cloned
+     */
+    private static QueryOperation<?> copyQuery(QueryOperation<?> query) throws CloneNotSupportedException {
+        QueryOperation<?> queryCopy = query.clone();
+        queryCopy.resetAnswer();
+        if (query instanceof RankingQueryOperation)
+            queryCopy.updateFrom(query);
+        return queryCopy;
+    }
+
+    /**
+     * Adds the answer of the processed copy to the query.
+     * Since the answer of a {@link RankingQueryOperation} copy contains the
+     * {@link #copyQuery seeded} answer of the query, it replaces the answer of the query.
+     * @param query the query to update
+     * @param queryCopy the processed copy of the query
+     */
+    private static void updateQuery(QueryOperation<?> query, QueryOperation<?> queryCopy) {
+        if (query instanceof RankingQueryOperation)
+            query.resetAnswer();
+        query.updateFrom(queryCopy);
+    }
+
+    /**
+     * Process the query on the bucket with the given index and, if it does not finish
+     * within the given delay, on the next best replica as well. The answer that
+     * comes first is added to the query and the statistics gathered while processing
+     * it are added to the operation statistics of the calling thread.
+     * Each copy of the query starts with the current answer threshold of the query.
+     * The processing of the other copy is cancelled.
+     * @param index the index of the bucket (see {@link #getReplica(int)})
+     * @param query the query to process
+     * @param hedgedQueryDelay the delay in milliseconds after which the hedged query is sent
+     * @return the change of the {@link QueryOperation#getAnswerCount() answer count} of the query
+     * @throws CloneNotSupportedException if the query cannot be cloned
+     * @throws IllegalStateException if the processing was interrupted or failed with a checked exception
+     */
+    private int processQueryHedged(int index, QueryOperation<?> query, long hedgedQueryDelay) throws CloneNotSupportedException, IllegalStateException {
+        CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(bucketDispatcher.getHedgedQueryExecutor());
+        Map<Future<Integer>, HedgedQueryTask> tasks = new HashMap<Future<Integer>, HedgedQueryTask>(4);
+        HedgedQueryTask task = new HedgedQueryTask(index, copyQuery(query));
+        tasks.put(completionService.submit(task), task);
+        try {
+            Future<Integer> finished = completionService.poll(hedgedQueryDelay, TimeUnit.MILLISECONDS);
+            if (finished == null) {
+                int hedgeIndex = selectReplica(index);
+                if (hedgeIndex >= 0) {
+                    task = new HedgedQueryTask(hedgeIndex, copyQuery(query));
+                    tasks.put(completionService.submit(task), task);
+                }
+            }
+            for (int pending = tasks.size(); ; pending--) {
+                if (finished == null)
+                    finished = completionService.take();
+                try {
+                    finished.get();
+                    task = tasks.get(finished);
+                    int answerCount = query.getAnswerCount();
+                    updateQuery(query, task.queryCopy);
+                    OperationStatistics.getLocalThreadStatistics().updateFrom(task.statistics);
+                    return query.getAnswerCount() - answerCount;
+                } catch (ExecutionException e) {
+                    if (pending <= 1) {
+                        if (e.getCause() instanceof RuntimeException)
+                            throw (RuntimeException)e.getCause();
+                        if (e.getCause() instanceof Error)
+                            throw (Error)e.getCause();
+                        throw new IllegalStateException(e.getCause());
+                    }
+                    finished = null;
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for query " + query, e);
         } finally {
-            replicaManipulationLock.readLock().unlock();
+            for (Future<Integer> future : tasks.keySet())
+                future.cancel(true);
         }
     }
 
@@ -19,6 +19,10 @@ package messif.netbucket.replication;
 import java.io.IOException;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import messif.buckets.Bucket;
 import messif.buckets.BucketStorageException;
@@ -45,6 +49,12 @@ public class ReplicationNetworkBucketDispatcher extends NetworkBucketDispatcher
     
     /** If true then automatically replicate all bucket at the same nodes */
     protected final boolean replicateBucketsEqually;
+
+    /** Delay in milliseconds after which a hedged query is sent to another replica, negative value disables hedging */
+    private volatile long hedgedQueryDelay = -1;
+
+    /** Executor for the hedged queries (created on first use) */
+    private transient ExecutorService hedgedQueryExecutor;
     
     /****************** Attributes access ******************/
 
@@ -56,6 +66,67 @@ public class ReplicationNetworkBucketDispatcher extends NetworkBucketDispatcher
         return bucketOperationDistcompCounter;
     }
 
+    /**
+     * Returns the delay after which a hedged query is sent to another replica.
+     * @return the delay in milliseconds or a negative value if hedging is disabled
+     */
+    public long getHedgedQueryDelay() {
+        return hedgedQueryDelay;
+    }
+
+    /**
+     * Sets the delay after which a hedged query is sent to another replica.
+     * If a {@link ReplicationBucket} does not get the answer from the selected
+     * replica within this delay, a copy of the query is sent to the next best
+     * replica and the answer that comes first is used.
+     * @param hedgedQueryDelay the delay in milliseconds, negative value disables hedging
+     */
+    public void setHedgedQueryDelay(long hedgedQueryDelay) {
+        this.hedgedQueryDelay = hedgedQueryDelay;
+    }
+
+    /**
+     * Returns the executor for the hedged queries.
+     * The executor threads are daemons, so they never prevent the virtual machine from exiting.
+     * @return the executor for the hedged queries
+     */
+    synchronized ExecutorService getHedgedQueryExecutor() {
+        if (hedgedQueryExecutor == null)
+            hedgedQueryExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "HedgedQuery-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        return hedgedQueryExecutor;
+    }
+
+    /**
+     * Shuts down the executor for the hedged queries (if it was created).
+     * The running hedged queries are interrupted.
+     */
+    private synchronized void shutdownHedgedQueryExecutor() {
+        if (hedgedQueryExecutor != null) {
+            hedgedQueryExecutor.shutdownNow();
+            hedgedQueryExecutor = null;
+        }
+    }
+
+    @Override
+    public void finalize() throws Throwable {
+        shutdownHedgedQueryExecutor();
+        super.finalize();
+    }
+
+    @Override
+    public void destroy() throws Throwable {
+        shutdownHedgedQueryExecutor();
+        super.destroy();
+    }
+
 
     /****************** Constructors ******************/
 
@@ -24,6 +24,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.concurrent.atomic.AtomicLong;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializable;
+import messif.objects.nio.BinarySerializator;
 import messif.statistics.OperationStatistics;
 import messif.statistics.Statistics;
 
@@ -36,13 +40,21 @@ import messif.statistics.Statistics;
  * An algorithm usually uses descendants of the <code>Message</code> to perform specific tasks.
  * </p>
  *
+ * <p>
+ * Messages can be also {@link BinarySerializable binary-serialized}, which is used
+ * by the {@link SocketSelectorTCP non-blocking transport}. A message subclass is sent
+ * in the binary form only if it declares its own binary-deserializing constructor
+ * and overrides the {@link #binarySerialize} and {@link #getBinarySize} methods
+ * if it adds any attributes.
+ * </p>
+ *
  * @see ReplyMessage
  *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
  */
-public abstract class Message implements Serializable, Cloneable {
+public abstract class Message implements Serializable, Cloneable, BinarySerializable {
 
     /** Class version id for serialization */
     private static final long serialVersionUID = 3L;
@@ -143,6 +155,55 @@ public abstract class Message implements Serializable, Cloneable {
     }
 
 
+    //****************** BinarySerializable interface ******************//
+
+    /**
+     * Creates a new instance of Message loaded from binary input buffer.
+     * As with the standard deserialization, the actual navigation element
+     * is added to the navigation path and a new element is created.
+     *
+     * @param input the buffer to read the Message from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected Message(BinaryInput input, BinarySerializator serializator) throws IOException {
+        messageID = serializator.readLong(input);
+        for (int i = serializator.readInt(input); i > 0; i--)
+            navigationPath.add(serializator.readObject(input, NavigationElement.class));
+
+        // Shift the navigation path actual element, since it is on a new network node
+        navigationPath.add(serializator.readObject(input, NavigationElement.class));
+    }
+
+    /**
+     * Binary-serialize this message into the <code>output</code>.
+     * @param output the output that this message is binary-serialized into
+     * @param serializator the serializator used to write objects
+     * @return the number of bytes actually written
+     * @throws IOException if there was an I/O error during serialization
+     */
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        int size = serializator.write(output, messageID) + serializator.write(output, navigationPath.size());
+        for (NavigationElement element : navigationPath)
+            size += serializator.write(output, element);
+        return size + serializator.write(output, actualNavigationElement);
+    }
+
+    /**
+     * Returns the exact size of the binary-serialized version of this message in bytes.
+     * @param serializator the serializator used to write objects
+     * @return size of the binary-serialized version of this message
+     */
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        int size = serializator.getBinarySize(messageID) + serializator.getBinarySize(navigationPath.size());
+        for (NavigationElement element : navigationPath)
+            size += serializator.getBinarySize(element);
+        return size + serializator.getBinarySize(actualNavigationElement);
+    }
+
+
     //****************** Actual Navigation Element Handling ******************//
     
     /**
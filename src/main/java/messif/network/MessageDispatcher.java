@@ -31,6 +31,7 @@ import java.net.MulticastSocket;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -83,6 +84,14 @@ import java.util.logging.Logger;
  * message, a warning is logged.
  * </p>
  *
+ * <p>
+ * By default, every incoming TCP connection is read by its own thread and the
+ * outgoing connections are kept in a pool of synchronized object streams.
+ * Alternatively, a {@link SocketSelectorTCP non-blocking transport} can be requested
+ * in the constructor, which serves all the TCP connections by a single thread
+ * and is thus suitable for a large number of communicating nodes.
+ * </p>
+ *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
@@ -117,6 +126,9 @@ public class MessageDispatcher implements Receiver, Serializable {
      */
     private static final int tcpConnectionPoolSize = 100;
 
+    /** Classes cached by the binary serialization of the {@link SocketSelectorTCP non-blocking TCP transport} by default */
+    public static final Class<?>[] DEFAULT_BINARY_CACHED_CLASSES = { NetworkNode.class, NavigationElement.class };
+
 
     //****************** Receivers ******************//
 
@@ -138,6 +150,9 @@ public class MessageDispatcher implements Receiver, Serializable {
     /** The pool of opened TCP connections */
     private final transient Map<NetworkNode, ObjectOutputStream> tcpConnectionPool;
 
+    /** Non-blocking TCP transport, <tt>null</tt> if the blocking TCP sockets are used */
+    private final transient SocketSelectorTCP tcpSelector;
+
     /**
      * UDP multicast socket for broadcast communication
      * It is <tt>null</tt> if broadcast is not initialized.
@@ -166,6 +181,14 @@ public class MessageDispatcher implements Receiver, Serializable {
         return ourNetworkNode;
     }
 
+    /**
+     * Returns whether this dispatcher uses the non-blocking TCP transport.
+     * @return <tt>true</tt> if the {@link SocketSelectorTCP non-blocking transport} is used
+     */
+    public final boolean isNonBlockingTransport() {
+        return tcpSelector != null;
+    }
+
 
     //****************** Constructors ******************//
 
@@ -198,6 +221,31 @@ public class MessageDispatcher implements Receiver, Serializable {
         this(new NetworkNode(InetAddress.getLocalHost(), port), broadcastPort);
     }
 
+    /**
+     * Creates a new instance of MessageDispatcher with specified TCP/UDP and broadcast ports.
+     * @param port the TCP/UDP port used for communication
+     * @param broadcastPort the UDP port used for sending and receiving broadcasts
+     * @param nonBlockingTransport flag whether to use the {@link SocketSelectorTCP non-blocking TCP transport}
+     * @throws IOException if there was error when opening communication sockets
+     */
+    public MessageDispatcher(int port, int broadcastPort, boolean nonBlockingTransport) throws IOException {
+        this(new NetworkNode(InetAddress.getLocalHost(), port), broadcastPort, nonBlockingTransport);
+    }
+
+    /**
+     * Creates a new instance of MessageDispatcher with specified TCP/UDP and broadcast ports.
+     * @param port the TCP/UDP port used for communication
+     * @param broadcastPort the UDP port used for sending and receiving broadcasts
+     * @param nonBlockingTransport flag whether to use the {@link SocketSelectorTCP non-blocking TCP transport}
+     * @param binaryCachedClasses the classes cached by the binary serialization of the non-blocking transport
+     *          (if <tt>null</tt>, the Java serialization is used for all messages)
+     * @throws IOException if there was error when opening communication sockets
+     * @throws IllegalArgumentException if the cached classes cannot be used for the binary serialization
+     */
+    public MessageDispatcher(int port, int broadcastPort, boolean nonBlockingTransport, Class<?>[] binaryCachedClasses) throws IOException, IllegalArgumentException {
+        this(new NetworkNode(InetAddress.getLocalHost(), port), broadcastPort, nonBlockingTransport, binaryCachedClasses);
+    }
+
     /**
      * Creates a new instance of MessageDispatcher with specified TCP/UDP port.
      * Broadcast is disabled.
@@ -237,11 +285,48 @@ public class MessageDispatcher implements Receiver, Serializable {
      * @throws IOException if there was error when opening communication sockets
      */
     public MessageDispatcher(NetworkNode localAddress, int broadcastPort) throws IOException {
+        this(localAddress, broadcastPort, false);
+    }
+
+    /**
+     * Creates a new instance of MessageDispatcher with specified TCP/UDP and broadcast ports.
+     * @param localAddress local address to bind the TCP/UDP communication to
+     * @param broadcastPort the UDP port used for sending and receiving broadcasts
+     * @param nonBlockingTransport flag whether to use the {@link SocketSelectorTCP non-blocking TCP transport}
+     *          instead of a thread per incoming connection
+     * @throws IOException if there was error when opening communication sockets
+     */
+    public MessageDispatcher(NetworkNode localAddress, int broadcastPort, boolean nonBlockingTransport) throws IOException {
+        this(localAddress, broadcastPort, nonBlockingTransport, nonBlockingTransport ? DEFAULT_BINARY_CACHED_CLASSES : null);
+    }
+
+    /**
+     * Creates a new instance of MessageDispatcher with specified TCP/UDP and broadcast ports.
+     * If the non-blocking transport is used and the <code>binaryCachedClasses</code> are given,
+     * the messages that support it are sent {@link messif.objects.nio.BinarySerializable binary-serialized}.
+     * @param localAddress local address to bind the TCP/UDP communication to
+     * @param broadcastPort the UDP port used for sending and receiving broadcasts
+     * @param nonBlockingTransport flag whether to use the {@link SocketSelectorTCP non-blocking TCP transport}
+     *          instead of a thread per incoming connection
+     * @param binaryCachedClasses the classes cached by the binary serialization of the non-blocking transport
+     *          (if <tt>null</tt>, the Java serialization is used for all messages)
+     * @throws IOException if there was error when opening communication sockets
+     * @throws IllegalArgumentException if the cached classes cannot be used for the binary serialization
+     */
+    public MessageDispatcher(NetworkNode localAddress, int broadcastPort, boolean nonBlockingTransport, Class<?>[] binaryCachedClasses) throws IOException, IllegalArgumentException {
         // Set network node info
         ourNetworkNode = localAddress;
         
         // Create server TCP socket endpoint
-        tcpSocket = new ServerSocket(localAddress.getPort(), 0, localAddress.getHost());
+        if (nonBlockingTransport) {
+            ServerSocketChannel tcpChannel = ServerSocketChannel.open();
+            tcpChannel.socket().bind(new InetSocketAddress(localAddress.getHost(), localAddress.getPort()));
+            tcpSocket = tcpChannel.socket();
+            tcpSelector = new SocketSelectorTCP(tcpChannel, this, binaryCachedClasses);
+        } else {
+            tcpSocket = new ServerSocket(localAddress.getPort(), 0, localAddress.getHost());
+            tcpSelector = null;
+        }
         
         // Create server UDP socket endpoint
         udpSocket = new DatagramSocket(tcpSocket.getLocalPort(), tcpSocket.getInetAddress());
@@ -250,7 +335,10 @@ public class MessageDispatcher implements Receiver, Serializable {
         tcpConnectionPool = Collections.synchronizedMap(new HashMap<NetworkNode, ObjectOutputStream>(tcpConnectionPoolSize));
         
         // Start socket threads
-        new SocketThreadTCP(tcpSocket, this).start();
+        if (tcpSelector != null)
+            tcpSelector.start();
+        else
+            new SocketThreadTCP(tcpSocket, this).start();
         new SocketThreadUDP(udpSocket, this).start();
         
         if (broadcastPort > 0) {
@@ -285,6 +373,7 @@ public class MessageDispatcher implements Receiver, Serializable {
         
         // Share tcp connection pool among dispatchers
         this.tcpConnectionPool = parentDispatcher.tcpConnectionPool;
+        this.tcpSelector = parentDispatcher.tcpSelector;
         
         // Create subdispatcher network node
         ourNetworkNode = new NetworkNode(parentDispatcher.ourNetworkNode, nodeID);
@@ -309,6 +398,7 @@ public class MessageDispatcher implements Receiver, Serializable {
         if (topMessageDispatcher.equals(this)) {
             udpSocket.close();
             tcpSocket.close();
+            if (tcpSelector != null) tcpSelector.close();
             if (broadcastSocket != null) broadcastSocket.close();
         } else
             topMessageDispatcher.deregisterReceiver(this);
@@ -323,7 +413,7 @@ public class MessageDispatcher implements Receiver, Serializable {
      * @return an alternative object to MessageDispatcher
      */
     private Object writeReplace() {
-        return new Serialized(ourNetworkNode, getBroadcastPort());
+        return new Serialized(ourNetworkNode, getBroadcastPort(), isNonBlockingTransport(), tcpSelector == null ? null : tcpSelector.getBinaryCachedClasses());
     }
 
     /** Wrapper class used when serializing MessageDispatcher */
@@ -334,14 +424,24 @@ public class MessageDispatcher implements Receiver, Serializable {
         /** Serialized broadcast port */
         private final int broadcastPort;
 
+        /** Serialized flag whether the non-blocking TCP transport is used */
+        private final boolean nonBlockingTransport;
+
+        /** Serialized classes cached by the binary serialization of the non-blocking TCP transport */
+        private final Class<?>[] binaryCachedClasses;
+
         /**
          * Creates a new instance of Serialized message dispatcher.
          * @param dispatcherNetworkNode the network node of the serialized message dispatcher
          * @param broadcastPort the broadcast port of the serialized message dispatcher
+         * @param nonBlockingTransport the flag whether the serialized message dispatcher uses the non-blocking TCP transport
+         * @param binaryCachedClasses the classes cached by the binary serialization of the serialized message dispatcher
          */
-        private Serialized(NetworkNode dispatcherNetworkNode, int broadcastPort) {
+        private Serialized(NetworkNode dispatcherNetworkNode, int broadcastPort, boolean nonBlockingTransport, Class<?>[] binaryCachedClasses) {
             super(dispatcherNetworkNode);
             this.broadcastPort = broadcastPort;
+            this.nonBlockingTransport = nonBlockingTransport;
+            this.binaryCachedClasses = binaryCachedClasses;
         }
 
         /**
@@ -359,12 +459,12 @@ public class MessageDispatcher implements Receiver, Serializable {
                     // Get or create parent message dispatcher
                     MessageDispatcher parent = messageDispMappingTable.get(port);
                     if (parent == null) {
-                        parent = new MessageDispatcher(port, broadcastPort);
+                        parent = new MessageDispatcher(port, broadcastPort, nonBlockingTransport, binaryCachedClasses);
                         messageDispMappingTable.put(port, parent);
                     }
                     return new MessageDispatcher(parent, nodeID);
                 } else {
-                    return new MessageDispatcher(port, broadcastPort);
+                    return new MessageDispatcher(port, broadcastPort, nonBlockingTransport, binaryCachedClasses);
                 }
             } catch (InvalidObjectException e) {
                 throw e;
@@ -783,6 +883,12 @@ public class MessageDispatcher implements Receiver, Serializable {
             log.warning("Trying to send message to a NULL node");
             return;
         }
+
+        // Use the non-blocking transport if requested
+        if (tcpSelector != null) {
+            tcpSelector.send(msg, node);
+            return;
+        }
         
         // Try connection from pool
         ObjectOutputStream stream = tcpConnectionPool.get(node);
@@ -16,7 +16,12 @@
  */
 package messif.network;
 
+import java.io.IOException;
 import java.io.Serializable;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializable;
+import messif.objects.nio.BinarySerializator;
 import messif.statistics.OperationStatistics;
 import java.util.HashSet;
 import java.util.Set;
@@ -36,7 +41,7 @@ import java.util.Set;
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
  */
-public class NavigationElement implements Serializable {
+public class NavigationElement implements Serializable, BinarySerializable {
     /** class id for serialization */
     private static final long serialVersionUID = 2L;
 
@@ -204,7 +209,70 @@ public class NavigationElement implements Serializable {
     protected void skipWaiting() {
         skipWaiting = true;
     }
-    
+
+
+    /****************** BinarySerializable interface ******************/
+
+    /**
+     * Creates a new instance of NavigationElement loaded from binary input buffer.
+     *
+     * @param input the buffer to read the NavigationElement from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected NavigationElement(BinaryInput input, BinarySerializator serializator) throws IOException {
+        this.sender = serializator.readObject(input, NetworkNode.class);
+        this.destination = serializator.readObject(input, NetworkNode.class);
+        readNodes(input, serializator, notWaitingDestinations);
+        readNodes(input, serializator, waitingDestinations);
+        this.reply = serializator.readBoolean(input);
+        this.skipWaiting = serializator.readBoolean(input);
+        this.statistics = serializator.readObject(input, OperationStatistics.class);
+    }
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        int size = serializator.write(output, sender) + serializator.write(output, destination);
+        size += serializator.write(output, notWaitingDestinations.size());
+        for (NetworkNode node : notWaitingDestinations)
+            size += serializator.write(output, node);
+        size += serializator.write(output, waitingDestinations.size());
+        for (NetworkNode node : waitingDestinations)
+            size += serializator.write(output, node);
+        return size + serializator.write(output, reply) +
+               serializator.write(output, skipWaiting) +
+               serializator.write(output, statistics);
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        int size = serializator.getBinarySize(sender) + serializator.getBinarySize(destination);
+        size += serializator.getBinarySize(notWaitingDestinations.size());
+        for (NetworkNode node : notWaitingDestinations)
+            size += serializator.getBinarySize(node);
+        size += serializator.getBinarySize(waitingDestinations.size());
+        for (NetworkNode node : waitingDestinations)
+            size += serializator.getBinarySize(node);
+        return size + serializator.getBinarySize(reply) +
+               serializator.getBinarySize(skipWaiting) +
+               serializator.getBinarySize(statistics);
+    }
+
+    /**
+     * Reads a set of network nodes from the binary input buffer.
+     * @param input the buffer to read the network nodes from
+     * @param serializator the serializator used to write objects
+     * @param nodes the set to add the network nodes to
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    private static void readNodes(BinaryInput input, BinarySerializator serializator, Set<NetworkNode> nodes) throws IOException {
+        for (int i = serializator.readInt(input); i > 0; i--)
+            nodes.add(serializator.readObject(input, NetworkNode.class));
+    }
+
+
+    /****************** String representation ******************/
+
     /**
      * Returns the string representation of this navigation element.
      * @return the string representation of this navigation element
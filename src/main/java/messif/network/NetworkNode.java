@@ -26,6 +26,10 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.HashMap;
 import java.util.Map;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializable;
+import messif.objects.nio.BinarySerializator;
 import messif.utility.Convert;
 
 /**
@@ -40,7 +44,7 @@ import messif.utility.Convert;
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
  */
-public class NetworkNode implements Serializable {
+public class NetworkNode implements Serializable, BinarySerializable {
 
     /** class serial id for serialization */     
     private static final long serialVersionUID = 3L;
@@ -349,6 +353,13 @@ public class NetworkNode implements Serializable {
      */
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
+        remapHost();
+    }
+
+    /**
+     * Changes the host (and optionally port) of this network node according to the mapping table.
+     */
+    private void remapHost() {
         if (netnodeMappingTable != null) {
             Map<Integer, NetworkNode> portMap = netnodeMappingTable.get(host);
             NetworkNode newNode;
@@ -367,6 +378,44 @@ public class NetworkNode implements Serializable {
     }
 
 
+    //************ BinarySerializable interface ************//
+
+    /**
+     * Creates a new instance of NetworkNode loaded from binary input buffer.
+     * The host (and optionally port) is changed according to the mapping table.
+     *
+     * @param input the buffer to read the NetworkNode from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected NetworkNode(BinaryInput input, BinarySerializator serializator) throws IOException {
+        this.host = InetAddress.getByAddress(serializator.readByteArray(input));
+        this.port = serializator.readInt(input);
+        this.nodeID = serializator.readBoolean(input) ? serializator.readInt(input) : null;
+        remapHost();
+    }
+
+    @Override
+    public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+        int size = serializator.write(output, host.getAddress()) +
+               serializator.write(output, port) +
+               serializator.write(output, nodeID != null);
+        if (nodeID != null)
+            size += serializator.write(output, nodeID.intValue());
+        return size;
+    }
+
+    @Override
+    public int getBinarySize(BinarySerializator serializator) {
+        int size = serializator.getBinarySize(host.getAddress()) +
+               serializator.getBinarySize(port) +
+               serializator.getBinarySize(nodeID != null);
+        if (nodeID != null)
+            size += serializator.getBinarySize(nodeID.intValue());
+        return size;
+    }
+
+
     /****************** String representation ******************/
     
     /**
@@ -16,6 +16,9 @@
  */
 package messif.network;
 
+import java.io.IOException;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinarySerializator;
 
 /**
  * The ancestor of all reply messages that are returned back during communication with other network nodes.
@@ -44,6 +47,16 @@ public abstract class ReplyMessage extends Message {
         super(message);
     }
 
+    /**
+     * Creates a new instance of ReplyMessage loaded from binary input buffer.
+     * @param input the buffer to read the ReplyMessage from
+     * @param serializator the serializator used to write objects
+     * @throws IOException if there was an I/O error reading from the buffer
+     */
+    protected ReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+        super(input, serializator);
+    }
+
 
     //****************** Cloning ******************//
 
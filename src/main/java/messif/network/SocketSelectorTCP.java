@@ -0,0 +1,632 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinarySerializator;
+import messif.objects.nio.BufferInputStream;
+import messif.objects.nio.BufferOutputStream;
+import messif.objects.nio.CachingSerializator;
+import messif.utility.Convert;
+
+
+/**
+ * Non-blocking TCP transport for the {@link MessageDispatcher}.
+ * A single thread runs a {@link Selector} event loop that accepts the incoming
+ * connections, reads the incoming messages and writes the outgoing messages
+ * for all the connections, so the number of threads does not grow with the
+ * number of peers.
+ *
+ * <p>
+ * Every message is transferred as a frame that consists of a four-byte length,
+ * a one-byte frame type and the serialized message. The messages are serialized by the sending
+ * thread and put into the write queue of the respective peer connection, thus
+ * the senders to different (as well as the same) peers do not block each other.
+ * The connection to a peer is opened (blocking) by the first sender, so the
+ * unreachable peers are reported to the sender by an {@link IOException}.
+ * </p>
+ *
+ * <p>
+ * If the transport is created with a list of cached classes, the messages are
+ * {@link messif.objects.nio.BinarySerializable binary-serialized} using a
+ * {@link CachingSerializator} instead of the Java serialization. The serializator
+ * is negotiated per connection: the first frame of every outgoing connection is
+ * a handshake with the names of the cached classes and the hash of their versions.
+ * The peer creates the same serializator for the connection and confirms the handshake
+ * only if its classes have the same versions. Until the handshake is confirmed
+ * and for the messages that do not declare their own binary-deserializing constructor,
+ * the Java serialization is used.
+ * </p>
+ *
+ * <p>
+ * The received messages are passed to the {@link MessageDispatcher#receiveMessage}
+ * directly from the event loop thread, therefore the receivers should not block
+ * in their {@link Receiver#acceptMessage acceptMessage} method (see for example
+ * {@link ThreadInvokingReceiver} or {@link QueueInvokingReceiver}).
+ * Note that the frames are not compatible with the streams of the {@link SocketThreadTCP},
+ * so all the communicating dispatchers must use the same transport.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ * @see MessageDispatcher#MessageDispatcher(NetworkNode, int, boolean)
+ */
+public class SocketSelectorTCP extends Thread {
+
+    //****************** Constants ******************//
+
+    /** Name of the event loop thread */
+    protected static final String NAME = "SocketSelector";
+
+    /** Size of the frame header, i.e. the length of the message data and the frame type */
+    protected static final int FRAME_HEADER_SIZE = 5;
+
+    /** Frame type of a message serialized by the Java serialization */
+    protected static final byte FRAME_JAVA = 0;
+
+    /** Frame type of a binary-serialized message */
+    protected static final byte FRAME_BINARY = 1;
+
+    /** Frame type of the serializator negotiation */
+    protected static final byte FRAME_HANDSHAKE = 2;
+
+    /** Maximal length of a received message data, longer frames are considered corrupted */
+    protected static final int MAX_FRAME_LENGTH = 1 << 30;
+
+
+    //****************** Data ******************//
+
+    /** Message dispatcher that receives the messages */
+    protected final MessageDispatcher messageDispatcher;
+
+    /** Server channel that accepts the incoming connections */
+    protected final ServerSocketChannel serverChannel;
+
+    /** Selector of the event loop */
+    private final Selector selector;
+
+    /** Opened outgoing connections */
+    private final ConcurrentHashMap<NetworkNode, Connection> connections;
+
+    /** Connections that need to be registered with the selector or that have new data to write */
+    private final Queue<Connection> pendingConnections;
+
+    /** Flag whether this event loop was closed */
+    private volatile boolean closed;
+
+    /** Serializator for the binary-serialized messages, <tt>null</tt> if only the Java serialization is used */
+    private final CachingSerializator<Message> serializator;
+
+    /** Classes cached by the {@link #serializator} */
+    private final Class<?>[] binaryCachedClasses;
+
+    /** Cache of message classes that can be binary-serialized */
+    private final ConcurrentHashMap<Class<?>, Boolean> binaryMessageClasses;
+
+
+    //****************** Constructors ******************//
+
+    /**
+     * Creates a new instance of SocketSelectorTCP that uses the Java serialization.
+     * The server channel is switched to the non-blocking mode.
+     * @param serverChannel the server channel that accepts the incoming connections
+     * @param messageDispatcher the message dispatcher that receives the messages
+     * @throws IOException if there was an error opening the selector
+     */
+    public SocketSelectorTCP(ServerSocketChannel serverChannel, MessageDispatcher messageDispatcher) throws IOException {
+        this(serverChannel, messageDispatcher, null);
+    }
+
+    /**
+     * Creates a new instance of SocketSelectorTCP.
+     * The server channel is switched to the non-blocking mode.
+     * @param serverChannel the server channel that accepts the incoming connections
+     * @param messageDispatcher the message dispatcher that receives the messages
+     * @param binaryCachedClasses the classes cached by the serializator of the binary-serialized messages
+     *          (if <tt>null</tt>, only the Java serialization is used)
+     * @throws IOException if there was an error opening the selector
+     * @throws IllegalArgumentException if the cached classes are not valid for the {@link CachingSerializator}
+     */
+    public SocketSelectorTCP(ServerSocketChannel serverChannel, MessageDispatcher messageDispatcher, Class<?>[] binaryCachedClasses) throws IOException, IllegalArgumentException {
+        super(NAME);
+        this.messageDispatcher = messageDispatcher;
+        this.serverChannel = serverChannel;
+        this.binaryCachedClasses = binaryCachedClasses == null ? null : binaryCachedClasses.clone();
+        this.serializator = binaryCachedClasses == null ? null : new CachingSerializator<Message>(Message.class, binaryCachedClasses);
+        this.binaryMessageClasses = new ConcurrentHashMap<Class<?>, Boolean>();
+        this.selector = Selector.open();
+        this.connections = new ConcurrentHashMap<NetworkNode, Connection>();
+        this.pendingConnections = new ConcurrentLinkedQueue<Connection>();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the classes cached by the serializator of the binary-serialized messages.
+     * @return the cached classes or <tt>null</tt> if only the Java serialization is used
+     */
+    public Class<?>[] getBinaryCachedClasses() {
+        return binaryCachedClasses == null ? null : binaryCachedClasses.clone();
+    }
+
+    /**
+     * Stops the event loop and closes all the connections.
+     * The server channel is closed as well.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+
+    //****************** Sending ******************//
+
+    /**
+     * Sends a message to the given node.
+     * The message is serialized by the calling thread and queued for writing
+     * to the connection of the given node. The connection is opened if there is none yet.
+     * The message is binary-serialized if the connection has negotiated the
+     * serializator and the message class {@link #isBinarySerializable supports it};
+     * otherwise, the {@link MessageDispatcher#putMessageIntoStream} is used.
+     *
+     * @param msg the message to send
+     * @param node the destination network node
+     * @throws IOException if the message cannot be serialized or the connection to the destination node cannot be opened
+     */
+    public void send(Message msg, NetworkNode node) throws IOException {
+        Connection connection = getConnection(node);
+        ByteBuffer frame;
+        if (connection.binaryAccepted && isBinarySerializable(msg.getClass())) {
+            frame = createBinaryFrame(msg);
+        } else {
+            FrameOutputStream stream = new FrameOutputStream();
+            ObjectOutputStream objStream = new ObjectOutputStream(stream);
+            messageDispatcher.putMessageIntoStream(msg, objStream, node);
+            objStream.close();
+            frame = stream.toFrame();
+        }
+        connection.enqueue(frame);
+    }
+
+    /**
+     * Returns whether the given message class can be binary-serialized by this transport.
+     * The class must declare its own binary-deserializing constructor, otherwise
+     * the attributes added by the class would not be transferred.
+     * @param messageClass the message class to check
+     * @return <tt>true</tt> if the message class can be binary-serialized
+     */
+    protected boolean isBinarySerializable(Class<? extends Message> messageClass) {
+        if (serializator == null)
+            return false;
+        Boolean ret = binaryMessageClasses.get(messageClass);
+        if (ret == null) {
+            try {
+                messageClass.getDeclaredConstructor(BinaryInput.class, BinarySerializator.class);
+                ret = Boolean.TRUE;
+            } catch (NoSuchMethodException e) {
+                MessageDispatcher.log.log(Level.FINE, "Message {0} does not support binary serialization", messageClass.getName());
+                ret = Boolean.FALSE;
+            }
+            binaryMessageClasses.put(messageClass, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the connection to the given node.
+     * The connection is opened if there is none yet.
+     * @param node the destination network node
+     * @return the connection to the given node
+     * @throws IOException if the connection to the destination node cannot be opened
+     */
+    private Connection getConnection(NetworkNode node) throws IOException {
+        if (closed)
+            throw new ClosedChannelException();
+        NetworkNode peer = new NetworkNode(node.getHost(), node.getPort());
+        Connection connection = connections.get(peer);
+        if (connection != null && !connection.channel.isOpen()) {
+            connections.remove(peer, connection);
+            connection = null;
+        }
+        if (connection == null) {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().setReuseAddress(true);
+                channel.socket().setTcpNoDelay(true); // The frames are written whole, so there is no need to coalesce them
+                channel.connect(new InetSocketAddress(peer.getHost(), peer.getPort()));
+                channel.configureBlocking(false);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            connection = new Connection(channel, peer);
+            Connection existing = connections.putIfAbsent(peer, connection);
+            if (existing != null) {
+                // Another thread has connected meanwhile
+                channel.close();
+                connection = existing;
+            } else if (serializator != null) {
+                connection.enqueue(createHandshakeFrame());
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Creates a frame for the given message data.
+     * @param data the serialized message data that starts with {@link #FRAME_HEADER_SIZE} reserved bytes for the header
+     * @param length the length of the data including the header
+     * @param type the type of the frame
+     * @return the frame with the header set
+     * @throws IOException if the message data is too long
+     */
+    private static ByteBuffer createFrame(byte[] data, int length, byte type) throws IOException {
+        if (length - FRAME_HEADER_SIZE > MAX_FRAME_LENGTH)
+            throw new IOException("Cannot send message bigger than " + MAX_FRAME_LENGTH + " bytes");
+        ByteBuffer frame = ByteBuffer.wrap(data, 0, length);
+        frame.putInt(0, length - FRAME_HEADER_SIZE);
+        frame.put(4, type);
+        return frame;
+    }
+
+    /**
+     * Creates a frame with the binary-serialized message.
+     * @param msg the message to serialize
+     * @return the frame with the binary-serialized message
+     * @throws IOException if the message cannot be serialized
+     */
+    private ByteBuffer createBinaryFrame(Message msg) throws IOException {
+        int size = serializator.getBinarySize(msg);
+        if (size > MAX_FRAME_LENGTH)
+            throw new IOException("Cannot send message bigger than " + MAX_FRAME_LENGTH + " bytes");
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + size);
+        frame.putInt(size).put(FRAME_BINARY);
+        serializator.write(new BufferOutputStream(frame), msg);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Creates the handshake frame that offers the binary serialization to the peer.
+     * The frame contains the hash of the {@link #serializator} and the names of the cached classes.
+     * @return the handshake frame
+     * @throws IOException if there was an error writing the frame
+     */
+    private ByteBuffer createHandshakeFrame() throws IOException {
+        String[] classNames = new String[binaryCachedClasses.length];
+        for (int i = 0; i < binaryCachedClasses.length; i++)
+            classNames[i] = binaryCachedClasses[i].getName();
+        FrameOutputStream stream = new FrameOutputStream();
+        ObjectOutputStream objStream = new ObjectOutputStream(stream);
+        objStream.writeInt(serializator.hashCode());
+        objStream.writeObject(classNames);
+        objStream.close();
+        return stream.toFrame(FRAME_HANDSHAKE);
+    }
+
+    /**
+     * Creates the frame that answers a handshake.
+     * @param accepted flag whether the binary serialization was accepted
+     * @return the handshake answer frame
+     */
+    private static ByteBuffer createHandshakeReplyFrame(boolean accepted) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + 1);
+        frame.putInt(1).put(FRAME_HANDSHAKE).put(accepted ? (byte)1 : (byte)0);
+        frame.flip();
+        return frame;
+    }
+
+    /** Byte array output stream that reserves the frame header and creates the frame without copying the data */
+    private static class FrameOutputStream extends ByteArrayOutputStream {
+        /** Creates a new instance of FrameOutputStream with the reserved frame header */
+        private FrameOutputStream() {
+            count = FRAME_HEADER_SIZE;
+        }
+
+        /**
+         * Returns the Java-serialized message frame with the data written to this stream.
+         * @return the frame with the data written to this stream
+         * @throws IOException if the data is too long
+         */
+        private ByteBuffer toFrame() throws IOException {
+            return toFrame(FRAME_JAVA);
+        }
+
+        /**
+         * Returns the frame with the data written to this stream.
+         * @param type the type of the frame
+         * @return the frame with the data written to this stream
+         * @throws IOException if the data is too long
+         */
+        private ByteBuffer toFrame(byte type) throws IOException {
+            return createFrame(buf, count, type);
+        }
+    }
+
+
+    //****************** Event loop ******************//
+
+    @Override
+    public void run() {
+        try {
+            while (!closed) {
+                selector.select();
+
+                // Register new connections and update the write interest
+                Connection connection;
+                while ((connection = pendingConnections.poll()) != null)
+                    connection.updateInterest();
+
+                // Process ready channels
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        connection = (Connection)key.attachment();
+                        if (key.isReadable())
+                            connection.read();
+                        if (key.isValid() && key.isWritable())
+                            connection.write();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!closed)
+                MessageDispatcher.log.log(Level.SEVERE, e.getClass().toString(), e);
+        } finally {
+            for (SelectionKey key : selector.keys())
+                try { key.channel().close(); } catch (IOException ignore) {}
+            try { selector.close(); } catch (IOException ignore) {}
+            connections.clear();
+        }
+    }
+
+    /**
+     * Accepts a new incoming connection.
+     * @throws IOException if there was an error accepting the connection
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        new Connection(channel, null).updateInterest();
+    }
+
+
+    //****************** Connection ******************//
+
+    /** Connection to a peer with its read state and write queue */
+    private class Connection {
+        /** Channel of this connection */
+        private final SocketChannel channel;
+        /** Destination network node for the outgoing connections, <tt>null</tt> for the incoming ones */
+        private final NetworkNode peer;
+        /** Queue of frames to write */
+        private final Queue<ByteBuffer> writeQueue;
+        /** Buffer for reading the frame header */
+        private final ByteBuffer headerBuffer;
+        /** Buffer for reading the frame data (<tt>null</tt> if the header is being read) */
+        private ByteBuffer dataBuffer;
+        /** Selection key of this connection (<tt>null</tt> if not registered yet) */
+        private SelectionKey key;
+        /** Type of the frame that is being read */
+        private byte frameType;
+        /** Serializator negotiated by the peer of an incoming connection */
+        private CachingSerializator<Message> peerSerializator;
+        /** Flag whether the peer of an outgoing connection has accepted the binary serialization */
+        private volatile boolean binaryAccepted;
+
+        /**
+         * Creates a new connection.
+         * @param channel the non-blocking channel of this connection
+         * @param peer the destination network node for the outgoing connections
+         */
+        private Connection(SocketChannel channel, NetworkNode peer) {
+            this.channel = channel;
+            this.peer = peer;
+            this.writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+            this.headerBuffer = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        }
+
+        /**
+         * Adds a frame to the write queue of this connection.
+         * @param frame the frame to send
+         */
+        private void enqueue(ByteBuffer frame) {
+            writeQueue.add(frame);
+            pendingConnections.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Registers this connection with the selector or updates its write interest.
+         * Must be called from the event loop thread.
+         */
+        private void updateInterest() {
+            try {
+                int ops = SelectionKey.OP_READ | (writeQueue.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+                if (key == null)
+                    key = channel.register(selector, ops, this);
+                else if (key.isValid())
+                    key.interestOps(ops);
+            } catch (ClosedChannelException e) {
+                close(e);
+            }
+        }
+
+        /**
+         * Reads the available data and passes the completed messages to the dispatcher.
+         * Must be called from the event loop thread.
+         */
+        private void read() {
+            try {
+                for (;;) {
+                    ByteBuffer buffer = dataBuffer == null ? headerBuffer : dataBuffer;
+                    int read = channel.read(buffer);
+                    if (read < 0) {
+                        close(null);
+                        return;
+                    }
+                    if (buffer.hasRemaining())
+                        return;
+                    if (dataBuffer == null) {
+                        int length = headerBuffer.getInt(0);
+                        if (length < 0 || length > MAX_FRAME_LENGTH)
+                            throw new IOException("Received corrupted frame with length " + length);
+                        frameType = headerBuffer.get(4);
+                        headerBuffer.clear();
+                        dataBuffer = ByteBuffer.allocate(length);
+                    } else {
+                        byte[] data = dataBuffer.array();
+                        dataBuffer = null;
+                        if (frameType == FRAME_HANDSHAKE)
+                            handshake(data);
+                        else
+                            receive(data);
+                    }
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        /**
+         * Processes the received handshake frame.
+         * On an incoming connection, the serializator offered by the peer is created
+         * and the handshake is answered. On an outgoing connection, the answer is stored.
+         * @param data the handshake frame data
+         * @throws IOException if the handshake data are corrupted
+         */
+        private void handshake(byte[] data) throws IOException {
+            if (peer != null) {
+                binaryAccepted = data.length == 1 && data[0] != 0;
+                return;
+            }
+
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+            int hash = in.readInt();
+            String[] classNames;
+            try {
+                classNames = (String[])in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e.getMessage());
+            }
+            in.close();
+            try {
+                Class<?>[] classes = new Class<?>[classNames.length];
+                for (int i = 0; i < classNames.length; i++)
+                    classes[i] = Convert.getClassForName(classNames[i], Object.class);
+                peerSerializator = new CachingSerializator<Message>(Message.class, classes);
+                if (peerSerializator.hashCode() != hash) {
+                    MessageDispatcher.log.log(Level.WARNING, "Connection {0} offered different versions of the binary-serialized classes", channel);
+                    peerSerializator = null;
+                }
+            } catch (ClassNotFoundException e) {
+                MessageDispatcher.log.log(Level.WARNING, "Connection {0} offered unknown binary-serialized class: {1}", new Object[]{ channel, e.getMessage() });
+            } catch (IllegalArgumentException e) {
+                MessageDispatcher.log.log(Level.WARNING, "Connection {0} offered invalid binary-serialized class: {1}", new Object[]{ channel, e.getMessage() });
+            }
+            writeQueue.add(createHandshakeReplyFrame(peerSerializator != null));
+            updateInterest();
+        }
+
+        /**
+         * Deserializes a message from the given data and passes it to the dispatcher.
+         * @param data the serialized message
+         */
+        private void receive(byte[] data) {
+            try {
+                if (frameType == FRAME_BINARY) {
+                    if (peerSerializator == null)
+                        throw new IOException("Received binary message without the serializator negotiated");
+                    messageDispatcher.receiveMessage(peerSerializator.readObject(new BufferInputStream(data), Message.class));
+                } else {
+                    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+                    messageDispatcher.receiveMessage(messageDispatcher.getMessageFromStream(in));
+                    in.close();
+                }
+            } catch (Exception e) {
+                // The frame boundaries are kept, so only this message is lost
+                MessageDispatcher.log.log(Level.SEVERE, e.getClass().toString(), e);
+            }
+        }
+
+        /**
+         * Writes the queued frames until the channel accepts the data.
+         * Must be called from the event loop thread.
+         */
+        private void write() {
+            try {
+                ByteBuffer frame;
+                while ((frame = writeQueue.peek()) != null) {
+                    channel.write(frame);
+                    if (frame.hasRemaining())
+                        return;
+                    writeQueue.poll();
+                }
+                // Everything was written, new frames are signalized through the pending connections
+                key.interestOps(SelectionKey.OP_READ);
+                if (!writeQueue.isEmpty())
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        /**
+         * Closes this connection.
+         * @param cause the exception that caused the closing or <tt>null</tt> if the connection was closed by the peer
+         */
+        private void close(IOException cause) {
+            if (peer != null)
+                connections.remove(peer, this);
+            if (key != null)
+                key.cancel();
+            try { channel.close(); } catch (IOException ignore) {}
+            if (cause != null)
+                MessageDispatcher.log.log(Level.WARNING, "Connection to {0} closed: {1}", new Object[]{ peer == null ? channel : peer, cause });
+            if (!writeQueue.isEmpty())
+                MessageDispatcher.log.log(Level.WARNING, "Connection to {0} closed with {1} unsent messages", new Object[]{ peer == null ? channel : peer, writeQueue.size() });
+        }
+    }
+
+}
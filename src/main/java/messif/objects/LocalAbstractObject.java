@@ -81,16 +81,16 @@ public abstract class LocalAbstractObject extends AbstractObject {
     //****************** Statistics ******************//
 
     /** Global counter for distance computations (any purpose) */
-    protected static final StatisticCounter counterDistanceComputations = StatisticCounter.getStatistics("DistanceComputations");
+    protected static final StatisticCounter counterDistanceComputations = StatisticCounter.getStatistics("DistanceComputations", true);
 
     /** Global counter for lower-bound distance computations (any purpose) */
-    protected static final StatisticCounter counterLowerBoundDistanceComputations = StatisticCounter.getStatistics("DistanceComputations.LowerBound");
+    protected static final StatisticCounter counterLowerBoundDistanceComputations = StatisticCounter.getStatistics("DistanceComputations.LowerBound", true);
 
     /** Global counter for upper-bound distance computations (any purpose) */
-    protected static final StatisticCounter counterUpperBoundDistanceComputations = StatisticCounter.getStatistics("DistanceComputations.UpperBound");
+    protected static final StatisticCounter counterUpperBoundDistanceComputations = StatisticCounter.getStatistics("DistanceComputations.UpperBound", true);
 
     /** Global counter for saving distance computations by using precomputed */
-    protected static final StatisticCounter counterPrecomputedDistanceSavings = StatisticCounter.getStatistics("DistanceComputations.Savings");
+    protected static final StatisticCounter counterPrecomputedDistanceSavings = StatisticCounter.getStatistics("DistanceComputations.Savings", true);
 
 
     //****************** Trivial distance function ******************//
@@ -293,7 +293,8 @@ public abstract class LocalAbstractObject extends AbstractObject {
         if (Statistics.isEnabledGlobally())
             counterDistanceComputations.add();
 
-        distance = getDistanceImpl(obj, metaDistances, distThreshold);
+        // The distance stored in the filter must be exact, so the threshold cannot be used to abandon the computation
+        distance = getDistanceImpl(obj, metaDistances, filterFactory == null ? distThreshold : MAX_DISTANCE);
 
         // Add this distance to the distance filter by using the factory
         if (filterFactory != null)
@@ -549,6 +549,59 @@ public abstract class MetaObject extends LocalAbstractObject {
         return o1.getDistanceImpl(o2, distThreshold);
     }
 
+    /**
+     * Returns the priority of the encapsulated object in the lazy evaluation of a monotonous
+     * distance aggregation (e.g. a weighted sum).
+     * The priority is the maximal contribution of the object's distance to the aggregated distance
+     * (i.e. the {@code weight} multiplied by the {@link LocalAbstractObject#getMaxDistance() maximal distance}
+     * if the distance is bounded) divided by the estimated cost of the distance computation, which is the {@link LocalAbstractObject#getSize() size}
+     * of the object. Therefore, the distances that are likely to exceed the threshold soon and
+     * are cheap to compute are evaluated first.
+     *
+     * @param object the encapsulated object for which to get the priority
+     * @param weight the weight of the object's distance in the aggregation
+     * @return the evaluation priority of the object or zero if the object's distance does not contribute to the aggregation
+     */
+    public static float getEvaluationPriority(LocalAbstractObject object, float weight) {
+        if (weight <= 0)
+            return 0;
+        if (object == null) // Missing object is evaluated last
+            return Float.MIN_VALUE;
+        float contribution = object.getMaxDistance();
+        contribution = (contribution >= MAX_DISTANCE) ? weight : weight * contribution; // Unbounded distances are compared by weights only
+        return Math.max(contribution / Math.max(1, object.getSize()), Float.MIN_VALUE);
+    }
+
+    /**
+     * Creates the order of evaluation of the encapsulated objects from their priorities.
+     * The returned array contains the indexes of the positive priorities sorted
+     * from the highest priority to the lowest one. Objects with the same priority
+     * keep their original order.
+     *
+     * @param priorities the evaluation priorities of the encapsulated objects (see {@link #getEvaluationPriority})
+     * @return the array of indexes of the encapsulated objects in the order of evaluation
+     */
+    public static int[] createEvaluationOrder(float[] priorities) {
+        int count = 0;
+        for (int i = 0; i < priorities.length; i++)
+            if (priorities[i] > 0)
+                count++;
+        int[] order = new int[count];
+        count = 0;
+        for (int i = 0; i < priorities.length; i++) {
+            if (priorities[i] <= 0)
+                continue;
+            // Insertion sort, the number of encapsulated objects is small
+            int pos = count++;
+            while (pos > 0 && priorities[order[pos - 1]] < priorities[i]) {
+                order[pos] = order[pos - 1];
+                pos--;
+            }
+            order[pos] = i;
+        }
+        return order;
+    }
+
 
     //****************** Additional overrides ******************//
 
@@ -165,7 +165,7 @@ public class PrecomputedDistancesPivotMapFilter extends PrecomputedDistancesFilt
     public boolean excludeUsingPrecompDist(PrecomputedDistancesPivotMapFilter targetFilter, float radius) {
         for (Map.Entry<LocalAbstractObject, Float> entry : precompDistMapping.entrySet()) {
             Float targetDistance = targetFilter.precompDistMapping.get(entry.getKey());
-            if (targetDistance != null)
+            if (targetDistance == null)
                 continue;
             if (Math.abs(entry.getValue().floatValue() - targetDistance.floatValue()) > radius)
                 return true;
@@ -194,7 +194,7 @@ public class PrecomputedDistancesPivotMapFilter extends PrecomputedDistancesFilt
     public boolean includeUsingPrecompDist(PrecomputedDistancesPivotMapFilter targetFilter, float radius) {
         for (Map.Entry<LocalAbstractObject, Float> entry : precompDistMapping.entrySet()) {
             Float targetDistance = targetFilter.precompDistMapping.get(entry.getKey());
-            if (targetDistance != null)
+            if (targetDistance == null)
                 continue;
             if (entry.getValue().floatValue() + targetDistance.floatValue() <= radius)
                 return true;
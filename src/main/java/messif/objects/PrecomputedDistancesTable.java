@@ -0,0 +1,442 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Matrix of precomputed distances between a block of objects and a fixed set of pivots.
+ * The distances are stored in one contiguous {@code float} array (or in a direct buffer
+ * if the table is off-heap) with one row of {@link #getPivotCount() pivotCount} distances
+ * per object, so the filtering of a whole block of objects does not touch the objects
+ * or their {@link PrecomputedDistancesFixedArrayFilter filters} at all.
+ *
+ * <p>
+ * The unknown distances are stored as {@link Float#NaN}, thus a row with less distances
+ * than the number of pivots is never excluded (nor included) using the missing ones.
+ * The filtering semantics is the same as in the {@link PrecomputedDistancesFixedArrayFilter}.
+ * </p>
+ *
+ * <p>
+ * The table is kept by the storages whose addresses are stable row indexes, namely by the
+ * {@link messif.buckets.storage.impl.MemoryStorage} (and thus by the
+ * {@link messif.buckets.impl.MemoryStorageBucket} used by the {@link messif.algorithms.impl.SequentialScan})
+ * and the {@link messif.buckets.storage.impl.FloatVectorMemoryStorage}. Their ranking query
+ * scans filter the stored objects by blocks using this table instead of the filters of the objects.
+ * </p>
+ *
+ * <p>
+ * The rows can be set only by one thread at a time, but the filtering methods
+ * can be called concurrently with the modifications. In that case, the rows
+ * being modified can be evaluated using either the old or the new distances.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class PrecomputedDistancesTable implements Serializable {
+    /** Class serial id for serialization */
+    private static final long serialVersionUID = 1L;
+
+    //****************** Constants ******************//
+
+    /** Percentage of the capacity that is added when the table is resized */
+    private static final float SIZE_INCREASE_FACTOR = 0.3f;
+
+    /** Default initial number of rows */
+    private static final int INITIAL_CAPACITY = 16;
+
+
+    //****************** Attributes ******************//
+
+    /** Number of pivots, i.e. the number of distances in one row */
+    private final int pivotCount;
+
+    /** Flag whether the distances are stored in a direct buffer instead of the Java heap */
+    private final boolean offHeap;
+
+    /** Number of rows in the table */
+    private int rowCount;
+
+    /** Distances stored on the Java heap (<tt>null</tt> if the table is off-heap) */
+    private transient volatile float[] heapData;
+
+    /** Distances stored in a direct buffer (<tt>null</tt> if the table is on heap) */
+    private transient volatile FloatBuffer directData;
+
+
+    //****************** Constructor ******************//
+
+    /**
+     * Creates a new empty table of precomputed distances.
+     * @param pivotCount the number of pivots, i.e. the number of distances in one row
+     * @param offHeap flag whether the distances are stored in a direct buffer instead of the Java heap
+     * @throws IllegalArgumentException if the number of pivots is not positive
+     */
+    public PrecomputedDistancesTable(int pivotCount, boolean offHeap) throws IllegalArgumentException {
+        if (pivotCount < 1)
+            throw new IllegalArgumentException("Illegal number of pivots: " + pivotCount);
+        this.pivotCount = pivotCount;
+        this.offHeap = offHeap;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty on-heap table of precomputed distances.
+     * @param pivotCount the number of pivots, i.e. the number of distances in one row
+     * @throws IllegalArgumentException if the number of pivots is not positive
+     */
+    public PrecomputedDistancesTable(int pivotCount) throws IllegalArgumentException {
+        this(pivotCount, false);
+    }
+
+
+    //****************** Attribute access methods ******************//
+
+    /**
+     * Returns the number of pivots, i.e. the number of distances in one row.
+     * @return the number of pivots
+     */
+    public int getPivotCount() {
+        return pivotCount;
+    }
+
+    /**
+     * Returns the number of rows in this table.
+     * @return the number of rows in this table
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns whether the distances are stored in a direct buffer instead of the Java heap.
+     * @return <tt>true</tt> if the distances are stored off-heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Returns the precomputed distance of the object in the given row to the given pivot.
+     * @param row the row of the object
+     * @param pivot the index of the pivot
+     * @return the precomputed distance or {@link LocalAbstractObject#UNKNOWN_DISTANCE} if it is not known
+     * @throws IndexOutOfBoundsException if the pivot index is out of the table bounds
+     */
+    public float getDistance(int row, int pivot) throws IndexOutOfBoundsException {
+        if (pivot < 0 || pivot >= pivotCount)
+            throw new IndexOutOfBoundsException("Pivot index " + pivot + " is out of bounds [0, " + pivotCount + ")");
+        if (row < 0 || row >= rowCount)
+            return LocalAbstractObject.UNKNOWN_DISTANCE;
+        float distance = getValue(row * pivotCount + pivot);
+        return Float.isNaN(distance) ? LocalAbstractObject.UNKNOWN_DISTANCE : distance;
+    }
+
+    /**
+     * Returns the known precomputed distances of the object in the given row.
+     * The returned array contains the distances up to the first unknown one.
+     * @param row the row of the object
+     * @return the precomputed distances or <tt>null</tt> if there are no distances known for the row
+     */
+    public float[] getRow(int row) {
+        if (row < 0 || row >= rowCount)
+            return null;
+        float[] distances = new float[pivotCount];
+        int count = 0;
+        for (int index = row * pivotCount; count < pivotCount; count++, index++) {
+            distances[count] = getValue(index);
+            if (Float.isNaN(distances[count]))
+                break;
+        }
+        if (count == 0)
+            return null;
+        return count == pivotCount ? distances : Arrays.copyOf(distances, count);
+    }
+
+
+    //****************** Modification methods ******************//
+
+    /**
+     * Sets the precomputed distances of the object in the given row.
+     * The table is enlarged if the row is beyond its current size.
+     * Only the first {@link #getPivotCount() pivotCount} distances are stored,
+     * the distances that are not provided are set to unknown.
+     *
+     * @param row the row of the object
+     * @param distances the precomputed distances to the pivots (can be <tt>null</tt>)
+     * @param count the number of distances to use from the {@code distances} array
+     * @throws IndexOutOfBoundsException if the row is negative
+     */
+    public synchronized void setRow(int row, float[] distances, int count) throws IndexOutOfBoundsException {
+        if (row < 0)
+            throw new IndexOutOfBoundsException("Negative row: " + row);
+        if (distances == null)
+            count = 0;
+        else if (count > pivotCount)
+            count = pivotCount;
+        if (row >= getCapacity())
+            allocate(row + 1 + (int)(row * SIZE_INCREASE_FACTOR));
+        int index = row * pivotCount;
+        float[] heap = heapData;
+        if (heap != null) {
+            System.arraycopy(distances == null ? heap : distances, 0, heap, index, count);
+            Arrays.fill(heap, index + count, index + pivotCount, Float.NaN);
+        } else {
+            FloatBuffer buffer = directData.duplicate();
+            buffer.position(index);
+            if (count > 0)
+                buffer.put(distances, 0, count);
+            for (int i = count; i < pivotCount; i++)
+                buffer.put(Float.NaN);
+        }
+        if (row >= rowCount)
+            rowCount = row + 1;
+    }
+
+    /**
+     * Sets the precomputed distances of the object in the given row from its precomputed distances filter.
+     * @param row the row of the object
+     * @param filter the filter with the precomputed distances of the object (can be <tt>null</tt>)
+     * @throws IndexOutOfBoundsException if the row is negative
+     * @see #setRow(int, float[], int)
+     */
+    public void setRow(int row, PrecomputedDistancesFixedArrayFilter filter) throws IndexOutOfBoundsException {
+        if (filter == null) {
+            setRow(row, null, 0);
+        } else {
+            synchronized (filter) {
+                setRow(row, filter.precompDist, filter.actualSize);
+            }
+        }
+    }
+
+    /**
+     * Sets the precomputed distances of the given object in the given row.
+     * The distances are taken from the object's {@link PrecomputedDistancesFixedArrayFilter}.
+     * @param row the row of the object
+     * @param object the object the precomputed distances of which to set
+     * @throws IndexOutOfBoundsException if the row is negative
+     */
+    public void setRow(int row, LocalAbstractObject object) throws IndexOutOfBoundsException {
+        setRow(row, object.getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class, false));
+    }
+
+    /**
+     * Removes all the rows from this table.
+     */
+    public synchronized void clear() {
+        rowCount = 0;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of rows that the currently allocated storage can hold.
+     * @return the number of rows that the currently allocated storage can hold
+     */
+    private int getCapacity() {
+        float[] heap = heapData;
+        return (heap != null ? heap.length : directData.capacity()) / pivotCount;
+    }
+
+    /**
+     * Allocates a new storage for the given number of rows.
+     * The existing rows are copied into the new storage and the rest is filled with unknown distances.
+     * @param capacity the number of rows of the new storage
+     */
+    private void allocate(int capacity) {
+        int oldSize = rowCount * pivotCount;
+        if (offHeap) {
+            FloatBuffer buffer = ByteBuffer.allocateDirect(capacity * pivotCount * Float.SIZE / 8).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            if (oldSize > 0) {
+                FloatBuffer oldBuffer = directData.duplicate();
+                oldBuffer.position(0).limit(oldSize);
+                buffer.put(oldBuffer);
+            }
+            while (buffer.hasRemaining())
+                buffer.put(Float.NaN);
+            directData = buffer;
+        } else {
+            float[] data = new float[capacity * pivotCount];
+            if (oldSize > 0)
+                System.arraycopy(heapData, 0, data, 0, oldSize);
+            Arrays.fill(data, oldSize, data.length, Float.NaN);
+            heapData = data;
+        }
+    }
+
+    /**
+     * Returns the value stored in the table at the given index.
+     * @param index the index of the value, i.e. {@code row * pivotCount + pivot}
+     * @return the value stored in the table
+     */
+    private float getValue(int index) {
+        float[] heap = heapData;
+        return heap != null ? heap[index] : directData.get(index);
+    }
+
+
+    //****************** Filtering methods ******************//
+
+    /**
+     * Returns <tt>true</tt> if the object in the given row can be excluded (filtered out)
+     * from the query with the given precomputed distances and radius.
+     * @param row the row of the object
+     * @param queryDistances the precomputed distances of the query object to the pivots
+     * @param radius the radius to check the precomputed distances for
+     * @return <tt>true</tt> if the object in the given row can be excluded
+     * @see PrecomputedDistancesFixedArrayFilter#excludeUsingPrecompDist(PrecomputedDistancesFixedArrayFilter, float)
+     */
+    public boolean excludeUsingPrecompDist(int row, float[] queryDistances, float radius) {
+        BitSet excluded = new BitSet(1);
+        return excludeUsingPrecompDist(row, row + 1, queryDistances, radius, excluded) > 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the object in the given row can be included
+     * in the query with the given precomputed distances and radius without computing the distance.
+     * @param row the row of the object
+     * @param queryDistances the precomputed distances of the query object to the pivots
+     * @param radius the radius to check the precomputed distances for
+     * @return <tt>true</tt> if the object in the given row can be included
+     * @see PrecomputedDistancesFixedArrayFilter#includeUsingPrecompDist(PrecomputedDistancesFixedArrayFilter, float)
+     */
+    public boolean includeUsingPrecompDist(int row, float[] queryDistances, float radius) {
+        BitSet included = new BitSet(1);
+        return includeUsingPrecompDist(row, row + 1, queryDistances, radius, included) > 0;
+    }
+
+    /**
+     * Evaluates the exclusion filtering for a block of rows at once.
+     * For every row in the block that can be excluded (filtered out) from the query with
+     * the given precomputed distances and radius, a bit {@code row - fromRow} is set in the
+     * {@code excluded} bit set. The other bits are not modified.
+     *
+     * @param fromRow the first row of the block (inclusive)
+     * @param toRow the last row of the block (exclusive)
+     * @param queryDistances the precomputed distances of the query object to the pivots
+     * @param radius the radius to check the precomputed distances for
+     * @param excluded the bit set that receives the excluded rows
+     * @return the number of excluded rows
+     */
+    public int excludeUsingPrecompDist(int fromRow, int toRow, float[] queryDistances, float radius, BitSet excluded) {
+        if (queryDistances == null || radius == Float.POSITIVE_INFINITY)
+            return 0;
+        int count = Math.min(queryDistances.length, pivotCount);
+        toRow = Math.min(toRow, Math.min(rowCount, getCapacity()));
+        float[] heap = heapData;
+        FloatBuffer direct = directData;
+        int excludedCount = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            int index = row * pivotCount;
+            for (int i = 0; i < count; i++) {
+                float distance = heap != null ? heap[index + i] : direct.get(index + i);
+                if (Math.abs(distance - queryDistances[i]) > radius) { // Unknown distances are NaN, which never satisfies the condition
+                    excluded.set(row - fromRow);
+                    excludedCount++;
+                    break;
+                }
+            }
+        }
+        if (excludedCount > 0)
+            LocalAbstractObject.counterPrecomputedDistanceSavings.add(excludedCount);
+        return excludedCount;
+    }
+
+    /**
+     * Evaluates the inclusion filtering for a block of rows at once.
+     * For every row in the block that can be included in the query with the given
+     * precomputed distances and radius without computing the distance, a bit
+     * {@code row - fromRow} is set in the {@code included} bit set. The other bits are not modified.
+     *
+     * @param fromRow the first row of the block (inclusive)
+     * @param toRow the last row of the block (exclusive)
+     * @param queryDistances the precomputed distances of the query object to the pivots
+     * @param radius the radius to check the precomputed distances for
+     * @param included the bit set that receives the included rows
+     * @return the number of included rows
+     */
+    public int includeUsingPrecompDist(int fromRow, int toRow, float[] queryDistances, float radius, BitSet included) {
+        if (queryDistances == null)
+            return 0;
+        int count = Math.min(queryDistances.length, pivotCount);
+        toRow = Math.min(toRow, Math.min(rowCount, getCapacity()));
+        float[] heap = heapData;
+        FloatBuffer direct = directData;
+        int includedCount = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            int index = row * pivotCount;
+            for (int i = 0; i < count; i++) {
+                float distance = heap != null ? heap[index + i] : direct.get(index + i);
+                if (distance + queryDistances[i] <= radius) { // Unknown distances are NaN, which never satisfies the condition
+                    included.set(row - fromRow);
+                    includedCount++;
+                    break;
+                }
+            }
+        }
+        if (includedCount > 0)
+            LocalAbstractObject.counterPrecomputedDistanceSavings.add(includedCount);
+        return includedCount;
+    }
+
+
+    //****************** Serialization ******************//
+
+    /**
+     * Stores this table into the object output stream.
+     * The distances are written after the default serialized fields.
+     * @param out the object output stream
+     * @throws IOException if there was an I/O error during serialization
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (int i = 0; i < rowCount * pivotCount; i++)
+            out.writeFloat(getValue(i));
+    }
+
+    /**
+     * Reads this table from the object input stream.
+     * @param in the object input stream
+     * @throws IOException if there was an I/O error during deserialization
+     * @throws ClassNotFoundException if there was an unknown object in the stream
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = rowCount * pivotCount;
+        rowCount = 0;
+        allocate(Math.max(INITIAL_CAPACITY, size / pivotCount));
+        if (heapData != null) {
+            for (int i = 0; i < size; i++)
+                heapData[i] = in.readFloat();
+        } else {
+            for (int i = 0; i < size; i++)
+                directData.put(i, in.readFloat());
+        }
+        rowCount = size / pivotCount;
+    }
+
+}
@@ -145,22 +145,51 @@ public class MetaObjectArrayWeightedSum extends MetaObjectArray {
         return weightSum;
     }
 
+    /**
+     * Returns the order in which the encapsulated objects' distances are evaluated.
+     * The order is computed from the {@link #getEvaluationPriority evaluation priorities}
+     * of the encapsulated objects of this object whenever the distance is evaluated
+     * (the order is not cached, since the encapsulated objects can change). Objects with non-positive weights are not included.
+     * @return the array of the encapsulated object indexes in the order of evaluation
+     */
+    protected int[] getEvaluationOrder() {
+        float[] priorities = new float[getObjectCount()];
+        for (int i = 0; i < priorities.length; i++)
+            priorities[i] = getEvaluationPriority(getObject(i), getWeight(i));
+        return createEvaluationOrder(priorities);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The distances of the encapsulated objects are evaluated lazily in the
+     * {@link #getEvaluationOrder() order of their priorities}. Each distance is
+     * computed with the threshold that remains from the {@code distThreshold}
+     * after the already computed distances are summed and the evaluation stops as soon as
+     * the partial sum or a single distance exceeds its threshold. The {@code metaDistances} of the objects
+     * that were skipped due to the threshold are set to {@link #UNKNOWN_DISTANCE}, the items for the objects
+     * with non-positive weights are not modified.
+     */
     @Override
     protected float getDistanceImpl(LocalAbstractObject obj, float[] metaDistances, float distThreshold) {
         float rtv = 0;
         MetaObjectArray castObj = (MetaObjectArray)obj;
+        int[] order = getEvaluationOrder();
 
-        for (int i = 0; i < getObjectCount(); i++) {
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
             float weight = getWeight(i);
-            if (weight <= 0)
-                continue;
-            float distance = implementationGetDistance(getObject(i), castObj.getObject(i), distThreshold / weight);
+            float objectThreshold = (distThreshold - rtv) / weight;
+            float distance = implementationGetDistance(getObject(i), castObj.getObject(i), objectThreshold);
             if (metaDistances != null)
                 metaDistances[i] = distance;
             if (distance != UNKNOWN_DISTANCE)
                 rtv += distance * weight;
-            if (rtv > distThreshold) // The threshold reached, we are done
-                return rtv;
+            if (rtv > distThreshold || distance > objectThreshold) { // The threshold reached, we are done
+                if (metaDistances != null)
+                    for (k++; k < order.length; k++)
+                        metaDistances[order[k]] = UNKNOWN_DISTANCE;
+                return Math.max(rtv, Math.nextUp(distThreshold));
+            }
         }
 
         return rtv;
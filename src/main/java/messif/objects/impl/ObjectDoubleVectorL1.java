@@ -78,13 +78,8 @@ public class ObjectDoubleVectorL1 extends ObjectDoubleVector {
         double[] objdata = ((ObjectDoubleVector)obj).data;
         if (objdata.length != data.length)
             throw new IllegalArgumentException("Cannot compute distance on different vector dimensions (" + data.length + ", " + objdata.length + ")");
-        
-        // Get sum of absolute difference on all dimensions
-        double rtv = 0;
-        for (int i = 0; i < data.length; i++)
-            rtv += Math.abs(data[i] - objdata[i]);
-        
-        return (float)rtv;
+
+        return VectorDistanceKernel.getInstance().l1(data, objdata, distThreshold);
     }
 
 
@@ -79,13 +79,7 @@ public class ObjectDoubleVectorL2 extends ObjectDoubleVector {
         if (objdata.length != data.length)
             throw new IllegalArgumentException("Cannot compute distance on different vector dimensions (" + data.length + ", " + objdata.length + ")");
 
-        double powSum = 0;
-        for (int i = 0; i < data.length; i++) {
-            double dif = (data[i] - objdata[i]);
-            powSum += dif * dif;
-        }
-
-        return (float)Math.sqrt(powSum);
+        return VectorDistanceKernel.getInstance().l2(data, objdata, distThreshold);
     }
 
 
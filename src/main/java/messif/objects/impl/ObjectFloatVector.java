@@ -20,6 +20,8 @@ import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.Random;
 import messif.objects.LocalAbstractObject;
@@ -204,6 +206,21 @@ public abstract class ObjectFloatVector extends LocalAbstractObject implements B
         return this.data.clone();
     }
 
+    /**
+     * Replaces the vector of float values of this object by the values read from the given buffer.
+     * The {@link #getDimensionality() dimensionality} values are read from the current position
+     * of the buffer directly into the data array of this object, i.e. no memory is allocated.
+     * This method is intended for flyweight objects that are reused to compute distances
+     * to vectors stored outside of the objects, e.g. in a direct buffer. It must never
+     * be called on objects that are stored in buckets or indexes.
+     *
+     * @param buffer the buffer to read the data from
+     * @throws BufferUnderflowException if there are fewer than {@link #getDimensionality() dimensionality} values remaining in the buffer
+     */
+    public void readVectorData(FloatBuffer buffer) throws BufferUnderflowException {
+        buffer.get(this.data);
+    }
+
     @Override
     public int getSize() {
         return this.data.length * Float.SIZE / 8;
@@ -80,15 +80,7 @@ public class ObjectFloatVectorCosine extends ObjectFloatVector {
             throw new IllegalArgumentException("Cannot compute distance on different vector dimensions (" + data.length + ", " + objData.length + ")");
         }
 
-        double productSum = 0f;
-        double powASum = 0f;
-        double powBSum = 0f;
-        for (int i = 0; i < data.length; i++) {
-            productSum += data[i] * objData[i];
-            powASum += data[i] * data[i];
-            powBSum += objData[i] * objData[i];
-        }
-        return 1f - (float) (Math.abs(productSum) / Math.sqrt(powASum * powBSum));
+        return VectorDistanceKernel.getInstance().cosine(data, objData);
     }
 
     //************ BinarySerializable interface ************//
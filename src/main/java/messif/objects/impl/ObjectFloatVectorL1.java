@@ -78,13 +78,8 @@ public class ObjectFloatVectorL1 extends ObjectFloatVector {
         float[] objdata = ((ObjectFloatVector)obj).data;
         if (objdata.length != data.length)
             throw new IllegalArgumentException("Cannot compute distance on different vector dimensions (" + data.length + ", " + objdata.length + ")");
-        
-        // Get sum of absolute difference on all dimensions
-        float rtv = 0;
-        for (int i = 0; i < data.length; i++)
-            rtv += Math.abs(data[i] - objdata[i]);
-        
-        return rtv;
+
+        return VectorDistanceKernel.getInstance().l1(data, objdata, distThreshold);
     }
 
 
@@ -78,13 +78,7 @@ public class ObjectFloatVectorL2 extends ObjectFloatVector {
         if (objdata.length != data.length)
             throw new IllegalArgumentException("Cannot compute distance on different vector dimensions (" + data.length + ", " + objdata.length + ")");
 
-        float powSum = 0;
-        for (int i = 0; i < data.length; i++) {
-            float dif = (data[i] - objdata[i]);
-            powSum += dif * dif;
-        }
-
-        return (float)Math.sqrt(powSum);
+        return VectorDistanceKernel.getInstance().l2(data, objdata, distThreshold);
     }
 
 
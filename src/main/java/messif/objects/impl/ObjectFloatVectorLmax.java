@@ -78,16 +78,8 @@ public class ObjectFloatVectorLmax extends ObjectFloatVector {
         float[] objdata = ((ObjectFloatVector)obj).data;
         if (objdata.length != data.length)
             throw new IllegalArgumentException("Cannot compute distance on different vector dimensions (" + data.length + ", " + objdata.length + ")");
-        
-        // Get maximum of absolute difference on all dimensions
-        float rtv = 0;
-        for (int i = 0; i < data.length; i++) {
-            float dist = Math.abs(data[i] - objdata[i]);
-            if (rtv < dist)
-                rtv = dist;
-        }
-        
-        return rtv;
+
+        return VectorDistanceKernel.getInstance().lmax(data, objdata, distThreshold);
     }
 
 
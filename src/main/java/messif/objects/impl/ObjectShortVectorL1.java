@@ -89,13 +89,8 @@ public class ObjectShortVectorL1 extends ObjectShortVector {
         short[] objdata = ((ObjectShortVector)obj).data;
         if (objdata.length != data.length)
             throw new IllegalArgumentException("Cannot compute distance on different vector dimensions (" + data.length + ", " + objdata.length + ")");
-        
-        // Get sum of absolute difference on all dimensions
-        float rtv = 0;
-        for (int i = 0; i < data.length; i++)
-            rtv += Math.abs(data[i] - objdata[i]);
-        
-        return rtv;
+
+        return VectorDistanceKernel.getInstance().l1(data, objdata, distThreshold);
     }
 
 
@@ -87,14 +87,8 @@ public class ObjectShortVectorL2 extends ObjectShortVector {
         short[] objdata = ((ObjectShortVector)obj).data;
         if (objdata.length != data.length)
             throw new IllegalArgumentException("Cannot compute distance on different vector dimensions (" + data.length + ", " + objdata.length + ")");
-        
-        float powSum = 0;
-        for (int i = 0; i < data.length; i++) {
-            float dif = (data[i] - objdata[i]);
-            powSum += dif * dif;
-        }
-        
-        return ((float)Math.sqrt(powSum));
+
+        return VectorDistanceKernel.getInstance().l2(data, objdata, distThreshold);
     }
 
 
@@ -133,8 +133,9 @@ public class ObjectStringEditDist extends ObjectString {
 
     @Override
     protected float getDistanceImpl(LocalAbstractObject obj, float distThreshold) {
+        String str2 = ((ObjectString)obj).text;
         int str1Len = this.text.length();
-        int str2Len = ((ObjectString)obj).text.length();
+        int str2Len = str2.length();
         int insertDeleteWeight = getInsertDeleteWeight();
 
         // Singularities  (Step 1)
@@ -156,14 +157,17 @@ public class ObjectStringEditDist extends ObjectString {
         // For all characters in the string1 (Step 3)
         for (int i = 1; i <= str1Len; i++) {
             char str1chr = this.text.charAt(i - 1);
-            int minDist = i * insertDeleteWeight;           // lower bound on distance (Deleting i letters from the first string ???)
-
-            d[0] = minDist;                                 // Deleting i letters from the first string ???
+            int str1Rest = str1Len - i;                     // number of characters of the first string that remain to be processed
+            d[0] = i * insertDeleteWeight;                  // Deleting i letters from the first string ???
             int prevDiagElem = (i-1) * insertDeleteWeight;  // Remember the previous diagonal element.
 
+            // Lower bound on distance: any path from d[j] to the final element must
+            // insert or delete at least the difference of the remaining string lengths
+            int minDist = d[0] + Math.abs(str1Rest - str2Len) * insertDeleteWeight;
+
             // For all characters in the string2 (Step 4)
             for (int j = 1; j <= str2Len; j++) {
-                char str2chr = ((ObjectString)obj).text.charAt(j - 1);
+                char str2chr = str2.charAt(j - 1);
 
                 // Compute new diagonal element (Step 5)
                 int diag = prevDiagElem + getChangeWeight(str1chr, str2chr);
@@ -177,8 +181,9 @@ public class ObjectStringEditDist extends ObjectString {
 
                 // Store minimum of diag, above and left values
                 d[j] = min(diag, above, left);
-                if (d[j] < minDist)
-                    minDist = d[j];
+                int bound = d[j] + Math.abs(str1Rest - (str2Len - j)) * insertDeleteWeight;
+                if (bound < minDist)
+                    minDist = bound;
             }
 
             // Test the condition to end prematurely
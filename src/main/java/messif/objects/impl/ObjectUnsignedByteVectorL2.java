@@ -88,10 +88,14 @@ public class ObjectUnsignedByteVectorL2 extends ObjectUnsignedByteVector {
         if (objdata.length != data.length)
             throw new IllegalArgumentException("Cannot compute distance on different vector dimensions (" + data.length + ", " + objdata.length + ")");
         
+        double thresholdSq = (double)Math.nextUp(distThreshold) * Math.nextUp(distThreshold);
         double powSum = 0;
         for (int i = 0; i < data.length; i++) {
             double dif = (double) (data[i] - objdata[i]);
             powSum += dif * dif;
+            // Check the threshold once per block of coordinates
+            if ((i & (VectorDistanceKernel.BLOCK_SIZE - 1)) == VectorDistanceKernel.BLOCK_SIZE - 1 && powSum > thresholdSq)
+                return Math.max((float)Math.sqrt(powSum), Math.nextUp(distThreshold));
         }
         
         return (float)Math.sqrt(powSum);
@@ -0,0 +1,185 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects.impl;
+
+/**
+ * Reference implementation of the {@link VectorDistanceKernel} that uses
+ * plain per-coordinate loops. The results of this kernel are exactly
+ * the same as of the original distance functions of the vector objects,
+ * i.e. the coordinates are summed sequentially in the order of the vector.
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class ScalarVectorDistanceKernel extends VectorDistanceKernel {
+
+    //****************** Float vectors ******************//
+
+    @Override
+    public float l1(float[] data1, float[] data2, float distThreshold) {
+        float rtv = 0;
+        for (int i = 0; i < data1.length; i++) {
+            rtv += Math.abs(data1[i] - data2[i]);
+            if ((i & BLOCK_MASK) == BLOCK_MASK && rtv > distThreshold)
+                return rtv;
+        }
+        return rtv;
+    }
+
+    @Override
+    public float l2(float[] data1, float[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        float powSum = 0;
+        for (int i = 0; i < data1.length; i++) {
+            float dif = (data1[i] - data2[i]);
+            powSum += dif * dif;
+            if ((i & BLOCK_MASK) == BLOCK_MASK && powSum > thresholdSq)
+                return abandonedL2(powSum, distThreshold);
+        }
+        return (float)Math.sqrt(powSum);
+    }
+
+    @Override
+    public float lmax(float[] data1, float[] data2, float distThreshold) {
+        float rtv = 0;
+        for (int i = 0; i < data1.length; i++) {
+            float dist = Math.abs(data1[i] - data2[i]);
+            if (rtv < dist) {
+                rtv = dist;
+                if (rtv > distThreshold)
+                    return rtv;
+            }
+        }
+        return rtv;
+    }
+
+    @Override
+    public float cosine(float[] data1, float[] data2) {
+        double productSum = 0f;
+        double powASum = 0f;
+        double powBSum = 0f;
+        for (int i = 0; i < data1.length; i++) {
+            productSum += data1[i] * data2[i];
+            powASum += data1[i] * data1[i];
+            powBSum += data2[i] * data2[i];
+        }
+        return 1f - (float) (Math.abs(productSum) / Math.sqrt(powASum * powBSum));
+    }
+
+
+    //****************** Double vectors ******************//
+
+    @Override
+    public float l1(double[] data1, double[] data2, float distThreshold) {
+        double rtv = 0;
+        for (int i = 0; i < data1.length; i++) {
+            rtv += Math.abs(data1[i] - data2[i]);
+            if ((i & BLOCK_MASK) == BLOCK_MASK && rtv > distThreshold)
+                return (float)rtv;
+        }
+        return (float)rtv;
+    }
+
+    @Override
+    public float l2(double[] data1, double[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        double powSum = 0;
+        for (int i = 0; i < data1.length; i++) {
+            double dif = (data1[i] - data2[i]);
+            powSum += dif * dif;
+            if ((i & BLOCK_MASK) == BLOCK_MASK && powSum > thresholdSq)
+                return abandonedL2(powSum, distThreshold);
+        }
+        return (float)Math.sqrt(powSum);
+    }
+
+
+    //****************** Integer vectors ******************//
+
+    @Override
+    public float l1(byte[] data1, byte[] data2, float distThreshold) {
+        float rtv = 0;
+        for (int i = 0; i < data1.length; i++) {
+            rtv += Math.abs(data1[i] - data2[i]);
+            if ((i & BLOCK_MASK) == BLOCK_MASK && rtv > distThreshold)
+                return rtv;
+        }
+        return rtv;
+    }
+
+    @Override
+    public float l2(byte[] data1, byte[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        float powSum = 0;
+        for (int i = 0; i < data1.length; i++) {
+            float dif = (data1[i] - data2[i]);
+            powSum += dif * dif;
+            if ((i & BLOCK_MASK) == BLOCK_MASK && powSum > thresholdSq)
+                return abandonedL2(powSum, distThreshold);
+        }
+        return (float)Math.sqrt(powSum);
+    }
+
+    @Override
+    public float l1(short[] data1, short[] data2, float distThreshold) {
+        float rtv = 0;
+        for (int i = 0; i < data1.length; i++) {
+            rtv += Math.abs(data1[i] - data2[i]);
+            if ((i & BLOCK_MASK) == BLOCK_MASK && rtv > distThreshold)
+                return rtv;
+        }
+        return rtv;
+    }
+
+    @Override
+    public float l2(short[] data1, short[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        float powSum = 0;
+        for (int i = 0; i < data1.length; i++) {
+            float dif = (data1[i] - data2[i]);
+            powSum += dif * dif;
+            if ((i & BLOCK_MASK) == BLOCK_MASK && powSum > thresholdSq)
+                return abandonedL2(powSum, distThreshold);
+        }
+        return (float)Math.sqrt(powSum);
+    }
+
+    @Override
+    public float l1(int[] data1, int[] data2, float distThreshold) {
+        float rtv = 0;
+        for (int i = 0; i < data1.length; i++) {
+            rtv += Math.abs(data1[i] - data2[i]);
+            if ((i & BLOCK_MASK) == BLOCK_MASK && rtv > distThreshold)
+                return rtv;
+        }
+        return rtv;
+    }
+
+    @Override
+    public float l2(int[] data1, int[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        float powSum = 0;
+        for (int i = 0; i < data1.length; i++) {
+            float dif = (data1[i] - data2[i]);
+            powSum += dif * dif;
+            if ((i & BLOCK_MASK) == BLOCK_MASK && powSum > thresholdSq)
+                return abandonedL2(powSum, distThreshold);
+        }
+        return (float)Math.sqrt(powSum);
+    }
+}
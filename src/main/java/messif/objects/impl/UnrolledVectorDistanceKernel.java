@@ -0,0 +1,295 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects.impl;
+
+/**
+ * Scalar implementation of the {@link VectorDistanceKernel} that unrolls
+ * the coordinate loops by four and sums the coordinates into independent
+ * accumulators. This breaks the dependency chain of the sequential summation
+ * so that the processor can overlap the additions and the JIT compiler
+ * can keep the accumulators in registers. The distance threshold is checked
+ * only once per {@link #BLOCK_SIZE block} of coordinates.
+ *
+ * <p>
+ * Integer vectors with byte or short coordinates are summed exactly in
+ * {@code long} accumulators. The floating point sums are computed in
+ * a different order than in {@link ScalarVectorDistanceKernel}, so the
+ * results can differ in the last bits of the mantissa, which is well below
+ * the precision of the returned float distance for normal vector dimensions.
+ * The {@link #lmax L-max} distance returns exactly the same values.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class UnrolledVectorDistanceKernel extends VectorDistanceKernel {
+
+    //****************** Float vectors ******************//
+
+    @Override
+    public float l1(float[] data1, float[] data2, float distThreshold) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            s0 += Math.abs(data1[i] - data2[i]);
+            s1 += Math.abs(data1[i + 1] - data2[i + 1]);
+            s2 += Math.abs(data1[i + 2] - data2[i + 2]);
+            s3 += Math.abs(data1[i + 3] - data2[i + 3]);
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > distThreshold)
+                return (s0 + s1) + (s2 + s3);
+        }
+        for (; i < data1.length; i++)
+            s0 += Math.abs(data1[i] - data2[i]);
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float l2(float[] data1, float[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            float d0 = data1[i] - data2[i];
+            float d1 = data1[i + 1] - data2[i + 1];
+            float d2 = data1[i + 2] - data2[i + 2];
+            float d3 = data1[i + 3] - data2[i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > thresholdSq)
+                return abandonedL2((s0 + s1) + (s2 + s3), distThreshold);
+        }
+        for (; i < data1.length; i++) {
+            float dif = data1[i] - data2[i];
+            s0 += dif * dif;
+        }
+        return (float)Math.sqrt((s0 + s1) + (s2 + s3));
+    }
+
+    @Override
+    public float lmax(float[] data1, float[] data2, float distThreshold) {
+        float m0 = 0, m1 = 0, m2 = 0, m3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            m0 = Math.max(m0, Math.abs(data1[i] - data2[i]));
+            m1 = Math.max(m1, Math.abs(data1[i + 1] - data2[i + 1]));
+            m2 = Math.max(m2, Math.abs(data1[i + 2] - data2[i + 2]));
+            m3 = Math.max(m3, Math.abs(data1[i + 3] - data2[i + 3]));
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && Math.max(Math.max(m0, m1), Math.max(m2, m3)) > distThreshold)
+                return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+        }
+        for (; i < data1.length; i++)
+            m0 = Math.max(m0, Math.abs(data1[i] - data2[i]));
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    @Override
+    public float cosine(float[] data1, float[] data2) {
+        double product0 = 0, product1 = 0;
+        double powA0 = 0, powA1 = 0;
+        double powB0 = 0, powB1 = 0;
+        int i = 0;
+        for (int end = data1.length - 1; i < end; i += 2) {
+            float a0 = data1[i], a1 = data1[i + 1];
+            float b0 = data2[i], b1 = data2[i + 1];
+            product0 += a0 * b0;
+            product1 += a1 * b1;
+            powA0 += a0 * a0;
+            powA1 += a1 * a1;
+            powB0 += b0 * b0;
+            powB1 += b1 * b1;
+        }
+        if (i < data1.length) {
+            product0 += data1[i] * data2[i];
+            powA0 += data1[i] * data1[i];
+            powB0 += data2[i] * data2[i];
+        }
+        return 1f - (float) (Math.abs(product0 + product1) / Math.sqrt((powA0 + powA1) * (powB0 + powB1)));
+    }
+
+
+    //****************** Double vectors ******************//
+
+    @Override
+    public float l1(double[] data1, double[] data2, float distThreshold) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            s0 += Math.abs(data1[i] - data2[i]);
+            s1 += Math.abs(data1[i + 1] - data2[i + 1]);
+            s2 += Math.abs(data1[i + 2] - data2[i + 2]);
+            s3 += Math.abs(data1[i + 3] - data2[i + 3]);
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > distThreshold)
+                return (float)((s0 + s1) + (s2 + s3));
+        }
+        for (; i < data1.length; i++)
+            s0 += Math.abs(data1[i] - data2[i]);
+        return (float)((s0 + s1) + (s2 + s3));
+    }
+
+    @Override
+    public float l2(double[] data1, double[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            double d0 = data1[i] - data2[i];
+            double d1 = data1[i + 1] - data2[i + 1];
+            double d2 = data1[i + 2] - data2[i + 2];
+            double d3 = data1[i + 3] - data2[i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > thresholdSq)
+                return abandonedL2((s0 + s1) + (s2 + s3), distThreshold);
+        }
+        for (; i < data1.length; i++) {
+            double dif = data1[i] - data2[i];
+            s0 += dif * dif;
+        }
+        return (float)Math.sqrt((s0 + s1) + (s2 + s3));
+    }
+
+
+    //****************** Integer vectors ******************//
+
+    @Override
+    public float l1(byte[] data1, byte[] data2, float distThreshold) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            s0 += Math.abs(data1[i] - data2[i]);
+            s1 += Math.abs(data1[i + 1] - data2[i + 1]);
+            s2 += Math.abs(data1[i + 2] - data2[i + 2]);
+            s3 += Math.abs(data1[i + 3] - data2[i + 3]);
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > distThreshold)
+                return (float)((s0 + s1) + (s2 + s3));
+        }
+        for (; i < data1.length; i++)
+            s0 += Math.abs(data1[i] - data2[i]);
+        return (float)((s0 + s1) + (s2 + s3));
+    }
+
+    @Override
+    public float l2(byte[] data1, byte[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            int d0 = data1[i] - data2[i];
+            int d1 = data1[i + 1] - data2[i + 1];
+            int d2 = data1[i + 2] - data2[i + 2];
+            int d3 = data1[i + 3] - data2[i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > thresholdSq)
+                return abandonedL2((s0 + s1) + (s2 + s3), distThreshold);
+        }
+        for (; i < data1.length; i++) {
+            int dif = data1[i] - data2[i];
+            s0 += dif * dif;
+        }
+        return (float)Math.sqrt((s0 + s1) + (s2 + s3));
+    }
+
+    @Override
+    public float l1(short[] data1, short[] data2, float distThreshold) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            s0 += Math.abs(data1[i] - data2[i]);
+            s1 += Math.abs(data1[i + 1] - data2[i + 1]);
+            s2 += Math.abs(data1[i + 2] - data2[i + 2]);
+            s3 += Math.abs(data1[i + 3] - data2[i + 3]);
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > distThreshold)
+                return (float)((s0 + s1) + (s2 + s3));
+        }
+        for (; i < data1.length; i++)
+            s0 += Math.abs(data1[i] - data2[i]);
+        return (float)((s0 + s1) + (s2 + s3));
+    }
+
+    @Override
+    public float l2(short[] data1, short[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            long d0 = data1[i] - data2[i];
+            long d1 = data1[i + 1] - data2[i + 1];
+            long d2 = data1[i + 2] - data2[i + 2];
+            long d3 = data1[i + 3] - data2[i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > thresholdSq)
+                return abandonedL2((s0 + s1) + (s2 + s3), distThreshold);
+        }
+        for (; i < data1.length; i++) {
+            long dif = data1[i] - data2[i];
+            s0 += dif * dif;
+        }
+        return (float)Math.sqrt((s0 + s1) + (s2 + s3));
+    }
+
+    @Override
+    public float l1(int[] data1, int[] data2, float distThreshold) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            s0 += Math.abs(data1[i] - data2[i]);
+            s1 += Math.abs(data1[i + 1] - data2[i + 1]);
+            s2 += Math.abs(data1[i + 2] - data2[i + 2]);
+            s3 += Math.abs(data1[i + 3] - data2[i + 3]);
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > distThreshold)
+                return (s0 + s1) + (s2 + s3);
+        }
+        for (; i < data1.length; i++)
+            s0 += Math.abs(data1[i] - data2[i]);
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float l2(int[] data1, int[] data2, float distThreshold) {
+        double thresholdSq = squareThreshold(distThreshold);
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int unrolledEnd = data1.length & ~3; i < unrolledEnd; i += 4) {
+            float d0 = data1[i] - data2[i];
+            float d1 = data1[i + 1] - data2[i + 1];
+            float d2 = data1[i + 2] - data2[i + 2];
+            float d3 = data1[i + 3] - data2[i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+            if ((i & BLOCK_MASK) == BLOCK_SIZE - 4 && (s0 + s1) + (s2 + s3) > thresholdSq)
+                return abandonedL2((s0 + s1) + (s2 + s3), distThreshold);
+        }
+        for (; i < data1.length; i++) {
+            float dif = data1[i] - data2[i];
+            s0 += dif * dif;
+        }
+        return (float)Math.sqrt((s0 + s1) + (s2 + s3));
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import messif.objects.LocalAbstractObject;
+import messif.utility.Convert;
+
+/**
+ * Computational kernel for the distance functions of the primitive vector objects.
+ * The vector objects in this package (e.g. {@link ObjectFloatVectorL2} or {@link ObjectByteVectorL1})
+ * do not compute the distances themselves, instead they dispatch the computation
+ * to the {@link #getInstance() current kernel}.
+ *
+ * <p>
+ * The kernel implementation is selected once when this class is initialized
+ * from the {@code messif.objects.impl.vectorDistanceKernel.class} system property,
+ * which holds the fully qualified name of a {@link VectorDistanceKernel} subclass
+ * that has a public nullary constructor. If the property is not set,
+ * the {@link ScalarVectorDistanceKernel} is used, which gives exactly the results
+ * of the original per-coordinate loops. The faster {@link UnrolledVectorDistanceKernel}
+ * must be enabled explicitly, since it sums the float coordinates in a different
+ * order and can thus change the last bits of the distances (and the order of ties
+ * in the query answers).
+ * </p>
+ *
+ * <p>
+ * The kernels get vectors of the same dimension, the dimension check is the
+ * responsibility of the caller. The distance methods accept the threshold
+ * distance passed to {@link LocalAbstractObject#getDistance(LocalAbstractObject, float)}.
+ * Once the partial distance computed on a block of {@link #BLOCK_SIZE} coordinates
+ * exceeds the threshold, the computation is abandoned and a value greater than
+ * the threshold is returned. Otherwise, the exact distance is returned.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public abstract class VectorDistanceKernel {
+
+    //****************** Kernel instance ******************//
+
+    /** Name of the system property that holds the kernel class */
+    public static final String KERNEL_CLASS_PROPERTY = "messif.objects.impl.vectorDistanceKernel.class";
+
+    /** Kernel used by the vector objects */
+    private static final VectorDistanceKernel instance = createInstance(System.getProperty(KERNEL_CLASS_PROPERTY));
+
+    /**
+     * Returns the kernel that is used by the vector objects to compute distances.
+     * @return the current kernel
+     */
+    public static VectorDistanceKernel getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a new instance of the kernel with the given class name.
+     * @param kernelClassName the fully qualified name of the kernel class,
+     *          if <tt>null</tt>, the {@link ScalarVectorDistanceKernel} is created
+     * @return a new instance of the kernel
+     * @throws IllegalArgumentException if the given class is not a valid kernel class or cannot be instantiated
+     */
+    public static VectorDistanceKernel createInstance(String kernelClassName) throws IllegalArgumentException {
+        if (kernelClassName == null || kernelClassName.isEmpty())
+            return new ScalarVectorDistanceKernel();
+        try {
+            return Convert.getClassForName(kernelClassName, VectorDistanceKernel.class).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Vector distance kernel class " + kernelClassName + " not found: " + e, e);
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException("Cannot create vector distance kernel " + kernelClassName + ": " + e, e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot create vector distance kernel " + kernelClassName + ": " + e, e);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Vector distance kernel " + kernelClassName + " has no nullary constructor: " + e, e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Cannot create vector distance kernel " + kernelClassName + ": " + e.getCause(), e.getCause());
+        }
+    }
+
+
+    //****************** Constants ******************//
+
+    /**
+     * Number of coordinates processed between two consecutive checks of the distance threshold.
+     * The value is a power of two and a multiple of the unrolling factor of the kernels.
+     */
+    public static final int BLOCK_SIZE = 64;
+
+    /** Bit mask that selects the coordinate index within a block */
+    protected static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+
+    //****************** Threshold helpers ******************//
+
+    /**
+     * Returns the squared threshold for comparing with the sums of squared differences.
+     * The next float value after the threshold is squared, so that a sum of squares whose
+     * square root is rounded to the threshold itself never exceeds the squared threshold.
+     * @param distThreshold the threshold value on the distance
+     * @return the squared threshold
+     */
+    protected static double squareThreshold(float distThreshold) {
+        double threshold = Math.nextUp(distThreshold);
+        return threshold * threshold;
+    }
+
+    /**
+     * Returns the value of L2 distance for a computation abandoned because the
+     * partial sum of squares exceeded the {@link #squareThreshold squared threshold}.
+     * The returned value is always strictly greater than the threshold, even if
+     * the square root is rounded down to the threshold.
+     * @param powSum the partial sum of squared differences
+     * @param distThreshold the threshold value on the distance
+     * @return the partial distance that is greater than the threshold
+     */
+    protected static float abandonedL2(double powSum, float distThreshold) {
+        return Math.max((float)Math.sqrt(powSum), Math.nextUp(distThreshold));
+    }
+
+
+    //****************** Float vectors ******************//
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given float vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L1 distance
+     */
+    public float l1(float[] data1, float[] data2) {
+        return l1(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given float vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L1 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l1(float[] data1, float[] data2, float distThreshold);
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given float vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L2 distance
+     */
+    public float l2(float[] data1, float[] data2) {
+        return l2(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given float vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L2 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l2(float[] data1, float[] data2, float distThreshold);
+
+    /**
+     * Returns the L-max (maximum of absolute differences) distance of the given float vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L-max distance
+     */
+    public float lmax(float[] data1, float[] data2) {
+        return lmax(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L-max (maximum of absolute differences) distance of the given float vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L-max distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float lmax(float[] data1, float[] data2, float distThreshold);
+
+    /**
+     * Returns the cosine distance, i.e. one minus the absolute value of the cosine
+     * of the angle between the given float vectors.
+     * Note that the cosine distance cannot be bounded by a partial computation,
+     * so there is no threshold version of this method.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the cosine distance
+     */
+    public abstract float cosine(float[] data1, float[] data2);
+
+
+    //****************** Double vectors ******************//
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given double vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L1 distance
+     */
+    public float l1(double[] data1, double[] data2) {
+        return l1(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given double vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L1 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l1(double[] data1, double[] data2, float distThreshold);
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given double vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L2 distance
+     */
+    public float l2(double[] data1, double[] data2) {
+        return l2(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given double vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L2 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l2(double[] data1, double[] data2, float distThreshold);
+
+
+    //****************** Integer vectors ******************//
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given byte vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L1 distance
+     */
+    public float l1(byte[] data1, byte[] data2) {
+        return l1(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given byte vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L1 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l1(byte[] data1, byte[] data2, float distThreshold);
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given byte vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L2 distance
+     */
+    public float l2(byte[] data1, byte[] data2) {
+        return l2(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given byte vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L2 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l2(byte[] data1, byte[] data2, float distThreshold);
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given short vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L1 distance
+     */
+    public float l1(short[] data1, short[] data2) {
+        return l1(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given short vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L1 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l1(short[] data1, short[] data2, float distThreshold);
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given short vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L2 distance
+     */
+    public float l2(short[] data1, short[] data2) {
+        return l2(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given short vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L2 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l2(short[] data1, short[] data2, float distThreshold);
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given int vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L1 distance
+     */
+    public float l1(int[] data1, int[] data2) {
+        return l1(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L1 (sum of absolute differences) distance of the given int vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L1 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l1(int[] data1, int[] data2, float distThreshold);
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given int vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @return the L2 distance
+     */
+    public float l2(int[] data1, int[] data2) {
+        return l2(data1, data2, LocalAbstractObject.MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the L2 (Euclidean) distance of the given int vectors.
+     * @param data1 the first vector
+     * @param data2 the second vector
+     * @param distThreshold the threshold value on the distance
+     * @return the L2 distance if it is lower than or equal to {@code distThreshold},
+     *          otherwise any value greater than {@code distThreshold}
+     */
+    public abstract float l2(int[] data1, int[] data2, float distThreshold);
+
+
+    //****************** String conversion ******************//
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+}
@@ -26,10 +26,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import messif.utility.Convert;
 
@@ -87,7 +87,7 @@ public class CachingSerializator<T> extends MultiClassSerializator<T> {
         this.cachedClasses = new HashMap<Class<? extends BinarySerializable>, Integer>(cachedClasses.length);
         this.cachedConstructors = new ArrayList<Constructor<?>>(cachedClasses.length);
         this.cachedFactoryMethods = new ArrayList<Method>(cachedClasses.length);
-        this.notCachedClasses = new HashSet<Class<? extends BinarySerializable>>();
+        this.notCachedClasses = Collections.newSetFromMap(new ConcurrentHashMap<Class<? extends BinarySerializable>, Boolean>());
 
         // Fill the predefined data
         for (Class<?> selClass : cachedClasses) {
@@ -253,7 +253,7 @@ public class CachingSerializator<T> extends MultiClassSerializator<T> {
         // Restore cached constructors and factory methods
         cachedConstructors = new ArrayList<Constructor<?>>(cachedClasses.size());
         cachedFactoryMethods = new ArrayList<Method>(cachedClasses.size());
-        notCachedClasses = new HashSet<Class<? extends BinarySerializable>>();
+        notCachedClasses = Collections.newSetFromMap(new ConcurrentHashMap<Class<? extends BinarySerializable>, Boolean>());
 
         // Get the list of classes sorted by position
         List<Class<? extends BinarySerializable>> classes = new ArrayList<Class<? extends BinarySerializable>>(cachedClasses.keySet());
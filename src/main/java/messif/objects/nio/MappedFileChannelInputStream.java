@@ -46,10 +46,43 @@ public class MappedFileChannelInputStream extends BufferInputStream {
      * @throws IOException if there was an error using readChannel
      */
     public MappedFileChannelInputStream(FileChannel fileChannel, long position, long maxLength) throws IOException {
-        super(bufferFile(fileChannel, position, maxLength));
+        this(fileChannel, position, maxLength, true);
+    }
+
+    /**
+     * Creates a new instance of FileChannelInputStream.
+     * @param fileChannel the file channel from which to read data
+     * @param position the starting position of the file
+     * @param maxLength the maximal length of data
+     * @param load flag whether to {@link MappedByteBuffer#load() load} the mapped data into the physical memory immediately
+     * @throws IOException if there was an error using readChannel
+     */
+    public MappedFileChannelInputStream(FileChannel fileChannel, long position, long maxLength, boolean load) throws IOException {
+        this(bufferFile(fileChannel, position, maxLength, load), position);
+    }
+
+    /**
+     * Creates a new instance of FileChannelInputStream over an already mapped buffer.
+     * @param buffer the buffer with the mapped data of the file
+     * @param position the starting position of the file that corresponds to the beginning of the buffer
+     */
+    private MappedFileChannelInputStream(ByteBuffer buffer, long position) {
+        super(buffer);
         this.startPosition = position;
     }
 
+    /**
+     * Creates a new stream that shares the mapped data of this stream.
+     * The returned stream has its own position (starting at the position of this stream),
+     * so it can be used concurrently with this stream without additional mapping of the file.
+     * @return a new stream sharing the mapped data of this stream
+     */
+    public MappedFileChannelInputStream duplicate() {
+        ByteBuffer buffer = byteBuffer.duplicate();
+        buffer.order(byteBuffer.order());
+        return new MappedFileChannelInputStream(buffer, startPosition);
+    }
+
     /**
      * Repositions this stream to the starting position.
      */
@@ -67,6 +100,14 @@ public class MappedFileChannelInputStream extends BufferInputStream {
         return startPosition + super.getPosition();
     }
 
+    /**
+     * Returns the position in the file right after the last mapped byte.
+     * @return the position in the file right after the last mapped byte
+     */
+    public long getEndPosition() {
+        return startPosition + bufferedSize();
+    }
+
     /**
      * Set the position from which the data will be read.
      * @param position the new position
@@ -77,6 +118,13 @@ public class MappedFileChannelInputStream extends BufferInputStream {
         super.setPosition(position - startPosition);
     }
 
+    @Override
+    public long skip(long n) throws IOException {
+        if (n > byteBuffer.remaining())
+            throw new EOFException("Cannot skip " + n + " bytes - end of buffer reached");
+        return super.skip(n);
+    }
+
     @Override
     public ByteBuffer readInput(int minBytes) throws IOException {
         // There is enough data remaining in the buffer
@@ -91,14 +139,16 @@ public class MappedFileChannelInputStream extends BufferInputStream {
      * @param fileChannel the file to read the data from
      * @param position the starting position in the file
      * @param maxLength the maximal number of bytes to read
+     * @param load flag whether to load the mapped data into the physical memory immediately
      * @return a buffer with file's data
      * @throws java.io.IOException
      */
-    private static ByteBuffer bufferFile(FileChannel fileChannel, long position, long maxLength) throws IOException {
+    private static ByteBuffer bufferFile(FileChannel fileChannel, long position, long maxLength, boolean load) throws IOException {
         long mappingBytes = Math.min(fileChannel.size() - position, maxLength);
 
         MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, mappingBytes);
-        buffer.load();
+        if (load)
+            buffer.load();
 
         /*
         if (mappingBytes >= Integer.MAX_VALUE)
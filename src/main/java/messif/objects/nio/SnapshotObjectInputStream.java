@@ -0,0 +1,200 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects.nio;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Object input stream that reads a binary snapshot file written by the {@link SnapshotObjectOutputStream}.
+ * The serialized object graph is read from the object stream section, while the
+ * other sections are {@link FileChannel#map mapped} into the memory on request.
+ * The mapped sections remain valid even after this stream is closed, so the classes
+ * that support the snapshots can keep the mapped section and process it lazily
+ * when it is accessed for the first time.
+ *
+ * @see SnapshotObjectOutputStream
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class SnapshotObjectInputStream extends ObjectInputStream {
+
+    //****************** Attributes ******************//
+
+    /** Table of the sections of the snapshot file */
+    private final SectionTable sectionTable;
+
+
+    //****************** Constructors ******************//
+
+    /**
+     * Creates a new snapshot input stream that reads the given file.
+     * @param file the snapshot file to read
+     * @throws IOException if there was an error reading the file or the file is not a valid snapshot
+     */
+    public SnapshotObjectInputStream(File file) throws IOException {
+        this(new SectionTable(file));
+    }
+
+    /**
+     * Creates a new snapshot input stream that reads the object stream section of the given table.
+     * @param sectionTable the table of the sections of the snapshot file
+     * @throws IOException if there was an error reading the file
+     */
+    private SnapshotObjectInputStream(SectionTable sectionTable) throws IOException {
+        super(sectionTable.openObjectStream());
+        this.sectionTable = sectionTable;
+    }
+
+    /**
+     * Returns whether the given file is a snapshot file, i.e. it starts with the {@link SnapshotObjectOutputStream#MAGIC}.
+     * @param file the file to check
+     * @return <tt>true</tt> if the given file is a snapshot
+     * @throws IOException if there was an error reading the file
+     */
+    public static boolean isSnapshot(File file) throws IOException {
+        if (file.length() < SnapshotObjectOutputStream.HEADER_SIZE)
+            return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readLong() == SnapshotObjectOutputStream.MAGIC;
+        }
+    }
+
+
+    //****************** Sections ******************//
+
+    /**
+     * Returns the number of sections in the snapshot file.
+     * @return the number of sections
+     */
+    public int getSectionCount() {
+        return sectionTable.names.length;
+    }
+
+    /**
+     * Returns the {@link FileChannel#map mapped} data of the given section.
+     * The returned buffer is read-only and remains valid after this stream is closed.
+     * @param section the number of the section (written by the {@link SnapshotObjectOutputStream})
+     * @param name the name of the section that must match the name used when writing the section
+     * @return the mapped data of the section
+     * @throws IOException if there was an error mapping the section or the section does not match
+     */
+    public ByteBuffer getSection(int section, String name) throws IOException {
+        if (section < 0 || section >= sectionTable.names.length)
+            throw new IOException("Snapshot does not contain section " + section);
+        if (!sectionTable.names[section].equals(name))
+            throw new IOException("Snapshot section " + section + " is " + sectionTable.names[section] + " but " + name + " was expected");
+        return sectionTable.map(section);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            sectionTable.channel.close();
+        }
+    }
+
+
+    //****************** Section table ******************//
+
+    /**
+     * Table of the sections read from the snapshot file.
+     */
+    private static class SectionTable {
+        /** Channel of the snapshot file */
+        private final FileChannel channel;
+        /** Number of the object stream section */
+        private final int objectStreamSection;
+        /** Names of the sections */
+        private final String[] names;
+        /** Positions of the sections */
+        private final long[] positions;
+        /** Lengths of the sections */
+        private final long[] lengths;
+
+        /**
+         * Reads the header and the table of the sections of the given snapshot file.
+         * @param file the snapshot file to read
+         * @throws IOException if there was an error reading the file or the file is not a valid snapshot
+         */
+        private SectionTable(File file) throws IOException {
+            this.channel = new RandomAccessFile(file, "r").getChannel();
+            try {
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SnapshotObjectOutputStream.HEADER_SIZE);
+                if (header.getLong() != SnapshotObjectOutputStream.MAGIC)
+                    throw new IOException("File " + file + " is not a snapshot");
+                int version = header.getInt();
+                if (version != SnapshotObjectOutputStream.VERSION)
+                    throw new IOException("Unsupported snapshot version " + version + " of file " + file);
+                this.objectStreamSection = header.getInt();
+                long tablePosition = header.getLong();
+                DataInputStream table = new DataInputStream(new BufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, tablePosition, channel.size() - tablePosition)));
+                int count = table.readInt();
+                this.names = new String[count];
+                this.positions = new long[count];
+                this.lengths = new long[count];
+                for (int i = 0; i < count; i++) {
+                    names[i] = table.readUTF();
+                    positions[i] = table.readLong();
+                    lengths[i] = table.readLong();
+                }
+                if (objectStreamSection < 0 || objectStreamSection >= count || !names[objectStreamSection].equals(SnapshotObjectOutputStream.OBJECT_STREAM_SECTION))
+                    throw new IOException("Snapshot " + file + " does not contain the object stream");
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Maps the given section into the memory.
+         * @param section the number of the section to map
+         * @return the mapped data of the section
+         * @throws IOException if there was an error mapping the section
+         */
+        private ByteBuffer map(int section) throws IOException {
+            if (lengths[section] > Integer.MAX_VALUE)
+                throw new IOException("Snapshot section " + names[section] + " is too big to be mapped");
+            return channel.map(FileChannel.MapMode.READ_ONLY, positions[section], lengths[section]);
+        }
+
+        /**
+         * Opens the stream with the data of the object stream section.
+         * The channel is closed if the section cannot be mapped.
+         * @return the stream with the serialized object graph
+         * @throws IOException if there was an error mapping the section
+         */
+        private InputStream openObjectStream() throws IOException {
+            try {
+                return new BufferInputStream(map(objectStreamSection));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+}
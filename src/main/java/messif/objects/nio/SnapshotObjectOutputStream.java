@@ -0,0 +1,289 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects.nio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Object output stream that writes a binary snapshot file.
+ * The snapshot consists of a header, a number of named binary sections and a table of the sections.
+ * The serialized object graph is stored as one of the sections, while the classes that
+ * hold bulk data (e.g. the arrays of indexes) can store them into separate sections
+ * during their serialization and write only the section number into the object stream.
+ * The sections are aligned so that they can be {@link FileChannel#map mapped}
+ * directly by the {@link SnapshotObjectInputStream} and processed lazily.
+ *
+ * <p>
+ * The format of the file is:
+ * <ul>
+ *   <li>header: {@link #MAGIC} (long), {@link #VERSION} (int), number of the object stream section (int), position of the section table (long)</li>
+ *   <li>sections: the data of the sections, each starting at a position aligned to {@link #SECTION_ALIGNMENT} bytes</li>
+ *   <li>section table: number of sections (int) followed by name (UTF), position (long) and length (long) of each section</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * A class that supports the snapshots checks in its {@code writeObject} method
+ * whether the stream is an instance of this class. If so, it
+ * {@link #startSection(java.lang.String) starts a section}, writes the data
+ * into the returned stream and writes the number returned by {@link #finishSection()}
+ * into this stream. The {@code readObject} method then reads the number and
+ * {@link SnapshotObjectInputStream#getSection(int, java.lang.String) retrieves the section}.
+ * Only one section can be written at a time.
+ * </p>
+ *
+ * <p>
+ * The snapshot is written into a temporary file in the directory of the target file
+ * and it is renamed over the target file when the stream is {@link #close() closed}.
+ * Thus, the target file is never modified in place and the objects restored from it
+ * (that can still access its mapped sections) can be stored back to the same file.
+ * </p>
+ *
+ * @see SnapshotObjectInputStream
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class SnapshotObjectOutputStream extends ObjectOutputStream {
+
+    //****************** Constants ******************//
+
+    /** Magic number that identifies the snapshot files */
+    public static final long MAGIC = 0x4d45535349465350L; // "MESSIFSP"
+    /** Version of the snapshot format */
+    public static final int VERSION = 1;
+    /** Size of the header of the snapshot file in bytes */
+    static final int HEADER_SIZE = 24;
+    /** Alignment of the section positions in bytes */
+    public static final int SECTION_ALIGNMENT = 8;
+    /** Name of the section with the serialized object graph */
+    static final String OBJECT_STREAM_SECTION = "ObjectStream";
+    /** Size of the buffer for writing the sections */
+    private static final int BUFFER_SIZE = 64*1024;
+
+
+    //****************** Attributes ******************//
+
+    /** Target snapshot file that is replaced by the written snapshot on close */
+    private final File file;
+    /** Temporary file the snapshot is written to */
+    private final File snapshotFile;
+    /** Channel of the temporary snapshot file */
+    private final FileChannel channel;
+    /** Temporary file with the object stream that is appended as the last section on close */
+    private final File objectStreamFile;
+    /** Names of the written sections */
+    private final List<String> sectionNames = new ArrayList<String>();
+    /** Positions of the written sections */
+    private final List<Long> sectionPositions = new ArrayList<Long>();
+    /** Lengths of the written sections */
+    private final List<Long> sectionLengths = new ArrayList<Long>();
+    /** Stream of the currently written section or <tt>null</tt> if there is no section being written */
+    private DataOutputStream section;
+    /** Flag whether this stream was already closed */
+    private boolean closed;
+
+
+    //****************** Constructors ******************//
+
+    /**
+     * Creates a new snapshot output stream that writes to the given file.
+     * The existing file is replaced when the stream is closed.
+     * @param file the snapshot file to write
+     * @throws IOException if there was an error creating the file
+     */
+    public SnapshotObjectOutputStream(File file) throws IOException {
+        this(file, File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile()));
+    }
+
+    /**
+     * Creates a new snapshot output stream that writes to the given file.
+     * @param file the snapshot file to write
+     * @param objectStreamFile the temporary file for the object stream
+     * @throws IOException if there was an error creating the file
+     */
+    private SnapshotObjectOutputStream(File file, File objectStreamFile) throws IOException {
+        super(new BufferedOutputStream(new FileOutputStream(objectStreamFile), BUFFER_SIZE));
+        this.file = file;
+        this.objectStreamFile = objectStreamFile;
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(file.getName(), ".snapshot", file.getAbsoluteFile().getParentFile());
+            this.channel = new RandomAccessFile(tempFile, "rw").getChannel();
+            channel.position(HEADER_SIZE);
+        } catch (IOException e) {
+            super.close();
+            objectStreamFile.delete();
+            if (tempFile != null)
+                tempFile.delete();
+            throw e;
+        }
+        this.snapshotFile = tempFile;
+    }
+
+
+    //****************** Sections ******************//
+
+    /**
+     * Starts a new section of the snapshot.
+     * The data of the section are written to the returned stream and
+     * the section is completed by calling {@link #finishSection()}.
+     * Note that the returned stream must not be closed.
+     * @param name the name of the section (used for consistency checks)
+     * @return the stream to write the section data to
+     * @throws IOException if there was an error writing the file
+     * @throws IllegalStateException if there is another section being written
+     */
+    public DataOutputStream startSection(String name) throws IOException, IllegalStateException {
+        if (section != null)
+            throw new IllegalStateException("Section " + sectionNames.get(sectionNames.size() - 1) + " was not finished");
+        if (closed)
+            throw new IOException("Snapshot stream is closed");
+        sectionNames.add(name);
+        sectionPositions.add(channel.position());
+        section = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        return section;
+    }
+
+    /**
+     * Finishes the section started by {@link #startSection(java.lang.String)}.
+     * @return the number of the section that should be written to this stream
+     * @throws IOException if there was an error writing the file
+     * @throws IllegalStateException if there is no section being written
+     */
+    public int finishSection() throws IOException, IllegalStateException {
+        if (section == null)
+            throw new IllegalStateException("There is no section being written");
+        section.flush();
+        section = null;
+        return addSectionEnd();
+    }
+
+    /**
+     * Records the length of the last section and aligns the position of the next section.
+     * @return the number of the last section
+     * @throws IOException if there was an error writing the file
+     */
+    private int addSectionEnd() throws IOException {
+        long position = channel.position();
+        int sectionNumber = sectionPositions.size() - 1;
+        sectionLengths.add(position - sectionPositions.get(sectionNumber));
+        int padding = (int)(-position & (SECTION_ALIGNMENT - 1));
+        if (padding > 0)
+            channel.write(ByteBuffer.allocate(padding));
+        return sectionNumber;
+    }
+
+    /**
+     * Writes a section with the given array of longs.
+     * @param name the name of the section (used for consistency checks)
+     * @param data the array to write
+     * @param count the number of items of the array to write
+     * @return the number of the section that should be written to this stream
+     * @throws IOException if there was an error writing the file
+     */
+    public int writeSection(String name, long[] data, int count) throws IOException {
+        DataOutputStream stream = startSection(name);
+        for (int i = 0; i < count; i++)
+            stream.writeLong(data[i]);
+        return finishSection();
+    }
+
+
+    //****************** Closing ******************//
+
+    /**
+     * Closes the stream.
+     * The object stream is appended as the last section of the snapshot
+     * and the section table and the header are written. Then, the written snapshot
+     * atomically replaces the target file. If there is an error, the target file is not modified.
+     * @throws IOException if there was an error writing the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        boolean written = false;
+        try {
+            super.close();
+            if (section != null)
+                throw new IOException("Section " + sectionNames.get(sectionNames.size() - 1) + " was not finished");
+
+            // Append the object stream as the last section
+            sectionNames.add(OBJECT_STREAM_SECTION);
+            sectionPositions.add(channel.position());
+            try (FileChannel objectStreamChannel = new FileInputStream(objectStreamFile).getChannel()) {
+                long size = objectStreamChannel.size();
+                for (long transferred = 0; transferred < size; )
+                    transferred += channel.transferFrom(objectStreamChannel, channel.position() + transferred, size - transferred);
+                channel.position(channel.position() + size);
+            }
+            int objectStreamSection = addSectionEnd();
+
+            // Write the section table
+            long tablePosition = channel.position();
+            DataOutputStream table = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            table.writeInt(sectionNames.size());
+            for (int i = 0; i < sectionNames.size(); i++) {
+                table.writeUTF(sectionNames.get(i));
+                table.writeLong(sectionPositions.get(i));
+                table.writeLong(sectionLengths.get(i));
+            }
+            table.flush();
+
+            // Write the header
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(objectStreamSection);
+            header.putLong(tablePosition);
+            header.flip();
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+            channel.force(true);
+            written = true;
+        } finally {
+            channel.close();
+            objectStreamFile.delete();
+            if (!written)
+                snapshotFile.delete();
+        }
+
+        // Replace the target file (the objects restored from it can still read the replaced file)
+        try {
+            Files.move(snapshotFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            snapshotFile.delete();
+            throw e;
+        }
+    }
+}
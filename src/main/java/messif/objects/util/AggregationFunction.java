@@ -36,6 +36,9 @@ public abstract class AggregationFunction implements DistanceFunction<MetaObject
     /** class id for serialization */
     private static final long serialVersionUID = 1L;
 
+    /** Number of bisection steps used to find the {@link #getParameterThreshold threshold} of a descriptor distance */
+    private static final int PARAMETER_THRESHOLD_BISECTION_STEPS = 16;
+
 
     //****************** Aggregation function evaluation ******************//
 
@@ -74,6 +77,18 @@ public abstract class AggregationFunction implements DistanceFunction<MetaObject
      */
     public abstract float compute(float... distances);
 
+    /**
+     * Returns whether the {@link #compute} function is monotonous, i.e. its value
+     * does not decrease when any of the (non-negative) distance parameters increases.
+     * The distance of a monotonous function can be evaluated lazily
+     * with respect to a threshold, see {@link #getDistance(MetaObject, MetaObject, float[], float)}.
+     * This method returns <tt>false</tt> by default.
+     * @return <tt>true</tt> if the {@link #compute} function is monotonous
+     */
+    public boolean isMonotonous() {
+        return false;
+    }
+
 
     //****************** Distance evaluation ******************//
 
@@ -106,6 +121,118 @@ public abstract class AggregationFunction implements DistanceFunction<MetaObject
         return compute(descriptorDistances);
     }
 
+    /**
+     * Computes distance of two meta objects using this combination function with respect to the given threshold.
+     * If this function is {@link #isMonotonous() monotonous}, the descriptor distances are evaluated lazily
+     * in the order of the {@link MetaObject#getEvaluationPriority evaluation priorities} of the descriptors of {@code object1}
+     * (the same order as used by the weighted sums of the meta objects, i.e. the maximal distance divided by the size).
+     * Each descriptor distance is computed with the {@link #getParameterThreshold remaining threshold}, i.e. the
+     * distance above which the function would exceed the {@code distThreshold}. After each descriptor distance is computed,
+     * the function is evaluated with zero distances for the descriptors that were not computed yet.
+     * This yields a lower bound on the aggregate distance and if it exceeds the {@code distThreshold},
+     * the evaluation stops and the lower bound is returned. The items of {@code descriptorDistances} for the
+     * descriptors that were not computed are set to {@link LocalAbstractObject#UNKNOWN_DISTANCE}.
+     *
+     * @param object1 the one meta object to compute distance for
+     * @param object2 the other meta object to compute distance for
+     * @param descriptorDistances array that will be filled with distances of the respective sub-distances
+     *        (see {@link #getDistance(MetaObject, MetaObject, float[])})
+     * @param distThreshold the threshold value on the distance
+     * @return the distance between object1 and object1 using this combination function if the distance is lower than distThreshold;
+     *         otherwise the returned value is not guaranteed to be exact, but it is greater than the threshold distance
+     */
+    public float getDistance(MetaObject object1, MetaObject object2, float[] descriptorDistances, float distThreshold) {
+        if (distThreshold >= LocalAbstractObject.MAX_DISTANCE || !isMonotonous())
+            return getDistance(object1, object2, descriptorDistances);
+
+        // Allocate descriptor distance if not provided
+        int parameterCount = getParameterCount();
+        if (descriptorDistances == null)
+            descriptorDistances = new float[parameterCount];
+
+        // Get the descriptors and their priorities (the distances of the missing descriptors are maximal)
+        LocalAbstractObject[] descriptorObjects1 = new LocalAbstractObject[parameterCount];
+        LocalAbstractObject[] descriptorObjects2 = new LocalAbstractObject[parameterCount];
+        float[] priorities = new float[parameterCount];
+        boolean missingDescriptor = false;
+        for (int paramIndex = 0; paramIndex < parameterCount; paramIndex++) {
+            String descriptorName = getParameterName(paramIndex);
+            descriptorObjects1[paramIndex] = object1.getObject(descriptorName);
+            descriptorObjects2[paramIndex] = object2.getObject(descriptorName);
+            if (descriptorObjects1[paramIndex] == null || descriptorObjects2[paramIndex] == null) {
+                descriptorDistances[paramIndex] = getParameterMaximalDistance(paramIndex);
+                missingDescriptor = true;
+            } else {
+                descriptorDistances[paramIndex] = 0;
+                priorities[paramIndex] = MetaObject.getEvaluationPriority(descriptorObjects1[paramIndex], 1);
+            }
+        }
+        int[] order = MetaObject.createEvaluationOrder(priorities);
+
+        // Compute the distances in respective descriptors until the lower bound exceeds the threshold
+        for (int k = 0; k < order.length; k++) {
+            if (k > 0 || missingDescriptor) {
+                float lowerBound = compute(descriptorDistances);
+                if (lowerBound > distThreshold) {
+                    for (; k < order.length; k++)
+                        descriptorDistances[order[k]] = LocalAbstractObject.UNKNOWN_DISTANCE;
+                    return lowerBound;
+                }
+            }
+            int paramIndex = order[k];
+            float descriptorThreshold = getParameterThreshold(descriptorDistances, paramIndex, descriptorObjects1[paramIndex].getMaxDistance(), distThreshold);
+            descriptorDistances[paramIndex] = descriptorObjects1[paramIndex].getDistance(descriptorObjects2[paramIndex], descriptorThreshold);
+        }
+
+        // Compute overall distance
+        return compute(descriptorDistances);
+    }
+
+    /**
+     * Returns the threshold for the distance of the given descriptor, above which the value of this
+     * {@link #isMonotonous() monotonous} function exceeds the {@code distThreshold}.
+     * The distances of the other descriptors are taken from {@code descriptorDistances}
+     * (zero for the descriptors not computed yet). The threshold is searched by bisection
+     * and the smallest found distance for which the function exceeds the {@code distThreshold} is returned,
+     * so a descriptor distance greater than the returned threshold always makes the function exceed the {@code distThreshold}.
+     *
+     * @param descriptorDistances the distances of the respective descriptors, the item for {@code paramIndex} is restored to zero
+     * @param paramIndex the index of the parameter for which to get the threshold
+     * @param maxDistance the maximal distance of the descriptor
+     * @param distThreshold the threshold value on the aggregate distance
+     * @return the threshold for the descriptor distance or {@link LocalAbstractObject#MAX_DISTANCE}
+     *          if no distance of the descriptor can make the function exceed the {@code distThreshold}
+     */
+    protected float getParameterThreshold(float[] descriptorDistances, int paramIndex, float maxDistance, float distThreshold) {
+        float bound = Math.min(maxDistance, getParameterMaximalDistance(paramIndex));
+        try {
+            // Find the distance for which the function exceeds the threshold by doubling
+            float low = 0;
+            float high = Math.min(Math.max(distThreshold, 1), bound);
+            descriptorDistances[paramIndex] = high;
+            while (compute(descriptorDistances) <= distThreshold) {
+                if (high >= bound)
+                    return LocalAbstractObject.MAX_DISTANCE;
+                low = high;
+                high = Math.min(high * 2, bound);
+                descriptorDistances[paramIndex] = high;
+            }
+
+            // Narrow the interval by bisection
+            for (int i = 0; i < PARAMETER_THRESHOLD_BISECTION_STEPS; i++) {
+                float middle = (low + high) / 2;
+                descriptorDistances[paramIndex] = middle;
+                if (compute(descriptorDistances) <= distThreshold)
+                    low = middle;
+                else
+                    high = middle;
+            }
+            return high;
+        } finally {
+            descriptorDistances[paramIndex] = 0;
+        }
+    }
+
     /**
      * Computes distance of two meta objects using this combination function.
      * @param object1 the one meta object to compute distance for
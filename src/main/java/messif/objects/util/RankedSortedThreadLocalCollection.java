@@ -0,0 +1,417 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import messif.objects.LocalAbstractObject;
+import messif.operations.AbstractOperation;
+import messif.operations.EndOperationListener;
+import messif.operations.RankingQueryOperation;
+import messif.utility.ErrorCode;
+import messif.utility.SortedCollection;
+
+/**
+ * Extension of {@link RankedSortedCollection} that allows several threads to add
+ * objects concurrently without locking each other.
+ * Every thread adds the objects into its own bounded max-heap that keeps at most
+ * {@link #getMaximalCapacity() maximal capacity} best objects seen by the thread.
+ * Whenever a heap is full, the distance of its worst object bounds the distance of the
+ * final answer, so it is published as the shared {@link #getThresholdDistance() threshold}
+ * (updated by atomic compare-and-set) and objects above the threshold are rejected
+ * without touching the heap.
+ *
+ * <p>
+ * The heaps are merged into the sorted collection when the operation that uses this
+ * collection as its answer {@link EndOperationListener ends} or when the collection
+ * is read (e.g. by {@link #size()} or {@link #iterator()}).
+ * The collection can be set to an operation using
+ * {@link RankingQueryOperation#setAnswerCollection(messif.objects.util.RankedSortedCollection)}.
+ * Note that if the collection is {@link #setIgnoringDuplicates ignoring duplicates},
+ * the objects are added directly to the synchronized sorted collection and the shared
+ * threshold is lowered whenever the collection is full.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class RankedSortedThreadLocalCollection extends RankedSortedCollection implements EndOperationListener {
+    /** class serial id for serialization */
+    private static final long serialVersionUID = 1L;
+
+    //****************** Attributes ******************//
+
+    /** Bits of the current threshold distance shared by all the threads */
+    private transient AtomicInteger thresholdBits;
+    /** Heap of the current thread */
+    private transient ThreadLocal<Heap> threadHeap;
+    /** All the heaps created by the threads that added objects to this collection */
+    private transient List<Heap> heaps;
+
+
+    //****************** Constructors ******************//
+
+    /**
+     * Constructs an empty collection with the specified initial and maximal capacity.
+     * @param initialCapacity the initial capacity of the collection
+     * @param maximalCapacity the maximal capacity of the collection
+     * @param comparator the comparator that defines ordering
+     * @throws IllegalArgumentException if the specified initial or maximal capacity is invalid
+     */
+    public RankedSortedThreadLocalCollection(int initialCapacity, int maximalCapacity, Comparator<? super RankedAbstractObject> comparator) throws IllegalArgumentException {
+        super(initialCapacity, maximalCapacity, comparator);
+        initThreadHeaps();
+    }
+
+    /**
+     * Constructs an empty collection with the specified initial and maximal capacity.
+     * The order is defined using the natural order of items.
+     * @param initialCapacity the initial capacity of the collection
+     * @param maximalCapacity the maximal capacity of the collection
+     * @throws IllegalArgumentException if the specified initial or maximal capacity is invalid
+     */
+    public RankedSortedThreadLocalCollection(int initialCapacity, int maximalCapacity) throws IllegalArgumentException {
+        this(initialCapacity, maximalCapacity, null);
+    }
+
+    /**
+     * Constructs an empty collection.
+     * The order is defined using the natural order of items.
+     * The initial capacity of the collection is set to {@link #DEFAULT_INITIAL_CAPACITY}
+     * and maximal capacity is not limited.
+     */
+    public RankedSortedThreadLocalCollection() {
+        super();
+        initThreadHeaps();
+    }
+
+    /**
+     * Constructor from an existing operation - all parameters are copied from the operation answer.
+     * @param operation operation with collection to copy all parameters from
+     */
+    public RankedSortedThreadLocalCollection(RankingQueryOperation operation) {
+        this(operation.getAnswerCount(), operation.getAnswerMaximalCapacity(), operation.getAnswerComparator());
+    }
+
+    /**
+     * Initializes the per-thread heaps and the shared threshold.
+     */
+    private void initThreadHeaps() {
+        thresholdBits = new AtomicInteger(Float.floatToIntBits(LocalAbstractObject.MAX_DISTANCE));
+        heaps = new ArrayList<Heap>();
+        threadHeap = new ThreadLocal<Heap>() {
+            @Override
+            protected Heap initialValue() {
+                Heap heap = new Heap();
+                synchronized (heaps) {
+                    heaps.add(heap);
+                }
+                return heap;
+            }
+        };
+    }
+
+
+    //****************** Threshold ******************//
+
+    @Override
+    public float getThresholdDistance() {
+        return Float.intBitsToFloat(thresholdBits.get());
+    }
+
+    /**
+     * Lowers the shared threshold to the given distance.
+     * Nothing is done if the current threshold is smaller or equal.
+     * Note that the bits of non-negative floats are ordered in the same way as the floats.
+     * @param distance the new threshold distance
+     */
+    private void updateThreshold(float distance) {
+        int bits = Float.floatToIntBits(distance);
+        int currentBits = thresholdBits.get();
+        while (bits < currentBits && !thresholdBits.compareAndSet(currentBits, bits))
+            currentBits = thresholdBits.get();
+    }
+
+
+    //****************** Adding and merging ******************//
+
+    @Override
+    public boolean add(RankedAbstractObject e) {
+        if (isIgnoringDuplicates()) {
+            synchronized (this) {
+                boolean added = super.add(e);
+                if (super.isFull())
+                    updateThreshold(get(super.size() - 1).getDistance());
+                return added;
+            }
+        }
+        if (e.getDistance() > getThresholdDistance())
+            return false;
+        return threadHeap.get().add(e);
+    }
+
+    /**
+     * Merges the objects from all the per-thread heaps into this sorted collection.
+     * This method is called automatically whenever the collection is read.
+     * Note that the sorted collection itself must be accessed via {@code super}
+     * in this method, since the overridden read methods merge the heaps.
+     */
+    public synchronized void merge() {
+        List<Heap> heapsCopy;
+        synchronized (heaps) {
+            heapsCopy = new ArrayList<Heap>(heaps);
+        }
+        for (Heap heap : heapsCopy) {
+            for (RankedAbstractObject object : heap.drain())
+                super.add(object);
+        }
+        if (super.isFull())
+            updateThreshold(get(super.size() - 1).getDistance());
+    }
+
+    @Override
+    public void onEndOperation(AbstractOperation operation, ErrorCode errorCode) {
+        merge();
+    }
+
+
+    //****************** Overrides with merging ******************//
+
+    @Override
+    public int size() {
+        merge();
+        return super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        merge();
+        return super.isEmpty();
+    }
+
+    @Override
+    public boolean isFull() {
+        merge();
+        return super.isFull();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        merge();
+        return super.contains(o);
+    }
+
+    @Override
+    public RankedAbstractObject first() throws NoSuchElementException, IllegalStateException {
+        merge();
+        return super.first();
+    }
+
+    @Override
+    public synchronized RankedAbstractObject removeLast() throws NoSuchElementException {
+        merge();
+        return super.removeLast();
+    }
+
+    @Override
+    public synchronized RankedAbstractObject removeFirst() throws NoSuchElementException {
+        merge();
+        return super.removeFirst();
+    }
+
+    @Override
+    public synchronized void removeFirstN(int count) throws NoSuchElementException {
+        merge();
+        super.removeFirstN(count);
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        merge();
+        return super.remove(o);
+    }
+
+    @Override
+    public synchronized Object[] toArray() {
+        merge();
+        return super.toArray();
+    }
+
+    @Override
+    public synchronized <E> E[] toArray(E[] array) {
+        merge();
+        return super.toArray(array);
+    }
+
+    @Override
+    public Iterator<RankedAbstractObject> iterator() {
+        merge();
+        return super.iterator();
+    }
+
+    @Override
+    public Iterator<RankedAbstractObject> iterator(int skip, int count) {
+        merge();
+        return super.iterator(skip, count);
+    }
+
+    @Override
+    public synchronized void clear() {
+        synchronized (heaps) {
+            for (Heap heap : heaps)
+                heap.drain();
+        }
+        super.clear();
+        thresholdBits.set(Float.floatToIntBits(LocalAbstractObject.MAX_DISTANCE));
+    }
+
+    @Override
+    public synchronized SortedCollection<RankedAbstractObject> clone(boolean copyData) throws CloneNotSupportedException {
+        merge();
+        RankedSortedThreadLocalCollection ret = (RankedSortedThreadLocalCollection)super.clone(copyData);
+        ret.initThreadHeaps();
+        if (copyData && super.isFull())
+            ret.updateThreshold(get(super.size() - 1).getDistance());
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        merge();
+        return super.toString();
+    }
+
+
+    //****************** Serialization ******************//
+
+    /**
+     * Merges the per-thread heaps and writes this collection to the object stream.
+     * @param out the object stream to which to write this collection
+     * @throws IOException if there was an I/O error during serialization
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        merge();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Read the serialized collection from an object stream.
+     * @param in the object stream from which to read the collection
+     * @throws IOException if there was an I/O error during deserialization
+     * @throws ClassNotFoundException if there was an unknown object in the stream
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initThreadHeaps();
+        if (super.isFull())
+            updateThreshold(get(super.size() - 1).getDistance());
+    }
+
+
+    //****************** Per-thread heap ******************//
+
+    /**
+     * Bounded binary max-heap of the objects added by one thread.
+     * The heap is accessed by its thread and by the merging, which is
+     * why the access is synchronized (the lock is thus almost never contended).
+     */
+    private class Heap {
+        /** Objects in the heap, the worst object is at index zero */
+        private RankedAbstractObject[] items = new RankedAbstractObject[DEFAULT_INITIAL_CAPACITY];
+        /** Number of objects in the heap */
+        private int size;
+
+        /**
+         * Adds the object to this heap.
+         * If the heap is full, the object replaces the worst object if it is better.
+         * @param e the object to add
+         * @return <tt>true</tt> if the object was added
+         */
+        private synchronized boolean add(RankedAbstractObject e) {
+            int capacity = getMaximalCapacity();
+            if (size < capacity) {
+                if (size == items.length)
+                    items = Arrays.copyOf(items, (int)Math.min(capacity, items.length * 2L));
+                items[size] = e;
+                siftUp(size++);
+            } else {
+                if (compare(e, items[0]) >= 0)
+                    return false;
+                items[0] = e;
+                siftDown(0);
+            }
+            if (size == capacity)
+                updateThreshold(items[0].getDistance());
+            return true;
+        }
+
+        /**
+         * Moves the object at the given index up to restore the heap order.
+         * @param index the index of the object to move
+         */
+        private void siftUp(int index) {
+            RankedAbstractObject e = items[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (compare(e, items[parent]) <= 0)
+                    break;
+                items[index] = items[parent];
+                index = parent;
+            }
+            items[index] = e;
+        }
+
+        /**
+         * Moves the object at the given index down to restore the heap order.
+         * @param index the index of the object to move
+         */
+        private void siftDown(int index) {
+            RankedAbstractObject e = items[index];
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && compare(items[child + 1], items[child]) > 0)
+                    child++;
+                if (compare(e, items[child]) >= 0)
+                    break;
+                items[index] = items[child];
+                index = child;
+            }
+            items[index] = e;
+        }
+
+        /**
+         * Removes all the objects from this heap.
+         * @return the removed objects
+         */
+        private synchronized RankedAbstractObject[] drain() {
+            RankedAbstractObject[] ret = Arrays.copyOf(items, size);
+            Arrays.fill(items, 0, size, null);
+            size = 0;
+            return ret;
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package messif.objects.util.impl;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +30,12 @@ import messif.objects.util.AggregationFunction;
  * Evaluator for basic arithmetic operators and functions applied on particular sub-distances.
  * Basic arithmetic operators (+, -, *, /, ^) and "log" and "log10" functions are
  * supported as well as numeric constants (treated as floats).
+ * <p>
+ * By default, the parsed function is compiled into a tree of specialized nodes
+ * that evaluate the function without any allocation and without the dispatching
+ * on the operator types (see {@link #isCompiled()}). The compiled function
+ * returns exactly the same values as the interpreted one.
+ * </p>
  * 
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
@@ -54,6 +62,15 @@ public class AggregationFunctionEvaluator extends AggregationFunction {
     /** The top level token that encapsulates the whole aggregation function string. */
     private final PatternToken pattern;
 
+    /** Flag whether the function does not decrease when any of the sub-distances increases */
+    private final boolean monotonous;
+
+    /** Flag whether the function is evaluated by the compiled pattern */
+    private final boolean compiled;
+
+    /** The compiled pattern used for evaluation (<tt>null</tt> if the function is interpreted) */
+    private transient PatternToken compiledPattern;
+
     //****************** Constructors ******************//
 
     /**
@@ -63,9 +80,10 @@ public class AggregationFunctionEvaluator extends AggregationFunction {
      * Blank space is ignored and everything else is considered to be a variable.
      * @param function the function string
      * @param maxDistances the list of maximal distances (map values) for the variable names (map keys)
+     * @param compiled flag whether the parsed function is compiled (<tt>true</tt>) or interpreted (<tt>false</tt>)
      * @throws IllegalArgumentException if the specified function cannot be parsed
      */
-    public AggregationFunctionEvaluator(String function, Map<String, Float> maxDistances) throws IllegalArgumentException {
+    public AggregationFunctionEvaluator(String function, Map<String, Float> maxDistances, boolean compiled) throws IllegalArgumentException {
         List<SubdistanceToken> subdistancesList = new ArrayList<SubdistanceToken>();
         
         this.pattern = parse(function, subdistancesList);
@@ -76,6 +94,22 @@ public class AggregationFunctionEvaluator extends AggregationFunction {
             Float maxDistance = (maxDistances == null)?null:maxDistances.get(variableNames[i]);
             this.maxDistances[i] = (maxDistance == null)?LocalAbstractObject.MAX_DISTANCE:maxDistance;
         }
+        this.monotonous = isMonotonous(pattern);
+        this.compiled = compiled;
+        this.compiledPattern = compiled ? PatternTokenCompiler.compile(pattern) : null;
+    }
+
+    /**
+     * Creates a new instance of AggregationFunctionEvaluator.
+     * The specified function is parsed and compiled. Basic arithmetic operations
+     * are supported as well as numeric constants.
+     * Blank space is ignored and everything else is considered to be a variable.
+     * @param function the function string
+     * @param maxDistances the list of maximal distances (map values) for the variable names (map keys)
+     * @throws IllegalArgumentException if the specified function cannot be parsed
+     */
+    public AggregationFunctionEvaluator(String function, Map<String, Float> maxDistances) throws IllegalArgumentException {
+        this(function, maxDistances, true);
     }
 
     /**
@@ -224,11 +258,63 @@ public class AggregationFunctionEvaluator extends AggregationFunction {
         return operand1;
     }
     
+    /**
+     * Returns whether the given parsed token is monotonous, i.e. its value does not decrease
+     * when any of the (non-negative) sub-distances increases.
+     * Note that only the obviously monotonous expressions are recognized, e.g. sums and logarithms
+     * of monotonous expressions or their multiples by a non-negative constant.
+     * @param token the parsed token to check
+     * @return <tt>true</tt> if the token is known to be monotonous
+     */
+    private static boolean isMonotonous(PatternToken token) {
+        if (token instanceof ConstantToken || token instanceof SubdistanceToken)
+            return true;
+        if (token instanceof ArithmeticFunctionToken)
+            return isMonotonous(((ArithmeticFunctionToken)token).operand);
+        if (!(token instanceof ArithmeticOperatorToken))
+            return false;
+        ArithmeticOperatorToken operatorToken = (ArithmeticOperatorToken)token;
+        PatternToken operand1 = operatorToken.operand1;
+        PatternToken operand2 = operatorToken.operand2;
+        switch (operatorToken.operator) {
+            case PLUS:
+                return isMonotonous(operand1) && isMonotonous(operand2);
+            case MINUS:
+                return isMonotonous(operand1) && operand2 instanceof ConstantToken;
+            case TIMES:
+                if (operand1 instanceof ConstantToken)
+                    return ((ConstantToken)operand1).getConstant() >= 0 && isMonotonous(operand2);
+                return operand2 instanceof ConstantToken && ((ConstantToken)operand2).getConstant() >= 0 && isMonotonous(operand1);
+            case SLASH:
+                return operand2 instanceof ConstantToken && ((ConstantToken)operand2).getConstant() > 0 && isMonotonous(operand1);
+            case POW:
+                return operand1 instanceof SubdistanceToken && operand2 instanceof ConstantToken && ((ConstantToken)operand2).getConstant() > 0;
+            default:
+                return false;
+        }
+    }
+
+
     //****************** Evaluating methods ******************//
 
     @Override
     public float compute(float... distances) {
-        return pattern.evaluate(distances);
+        PatternToken evaluatedPattern = compiledPattern;
+        return (evaluatedPattern != null) ? evaluatedPattern.evaluate(distances) : pattern.evaluate(distances);
+    }
+
+    @Override
+    public boolean isMonotonous() {
+        return monotonous;
+    }
+
+    /**
+     * Returns whether the function is evaluated by the compiled pattern.
+     * Otherwise, the parsed tree of tokens is interpreted.
+     * @return <tt>true</tt> if the function is compiled
+     */
+    public boolean isCompiled() {
+        return compiled;
     }
 
     @Override
@@ -247,6 +333,21 @@ public class AggregationFunctionEvaluator extends AggregationFunction {
     }
 
 
+    //****************** Serialization ******************//
+
+    /**
+     * Read the serialized evaluator from an object stream and compiles the pattern.
+     * @param in the object stream from which to read the evaluator
+     * @throws IOException if there was an I/O error during deserialization
+     * @throws ClassNotFoundException if there was an unknown object in the stream
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (compiled)
+            compiledPattern = PatternTokenCompiler.compile(pattern);
+    }
+
+
     //****************** String conversion ******************//
 
     /**
@@ -44,6 +44,14 @@ public class ConstantToken implements PatternToken {
         }
     }
 
+    /**
+     * Returns the value of this constant.
+     * @return the value of this constant
+     */
+    public float getConstant() {
+        return constant;
+    }
+
     /**
      * Return the constant
      * @param subdistances distnaces that are ignored by the constant.
@@ -0,0 +1,443 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.objects.util.impl;
+
+/**
+ * Compiler that transforms a parsed tree of {@link PatternToken}s into
+ * a tree of specialized evaluation nodes.
+ * The compiled tree has no switches on the operator type, the constant
+ * sub-expressions are pre-computed and the sums of (weighted) sub-distances
+ * are flattened into a single loop over the sub-distances.
+ * The evaluation of the compiled tree does not allocate any memory and
+ * returns exactly the same values as the interpreted tree, since the
+ * arithmetic operations are applied in the same order.
+ *
+ * <p>
+ * Tokens that are not known to the compiler are kept in the compiled tree
+ * and interpreted by their own {@link PatternToken#evaluate evaluate} method.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+final class PatternTokenCompiler {
+
+    /** This class cannot be instantiated */
+    private PatternTokenCompiler() {
+    }
+
+
+    //****************** Compilation ******************//
+
+    /**
+     * Compiles the given tree of tokens.
+     * @param token the root of the parsed tree to compile
+     * @return the root of the compiled tree
+     */
+    public static PatternToken compile(PatternToken token) {
+        if (token instanceof ConstantToken)
+            return new Constant(((ConstantToken)token).getConstant());
+        if (token instanceof SubdistanceToken)
+            return new Subdistance(((SubdistanceToken)token).index);
+        if (token instanceof ArithmeticFunctionToken)
+            return compileFunction((ArithmeticFunctionToken)token);
+        if (token instanceof ArithmeticOperatorToken)
+            return compileOperator((ArithmeticOperatorToken)token);
+        return token;
+    }
+
+    /**
+     * Compiles the given function token.
+     * @param token the function token to compile
+     * @return the compiled node
+     */
+    private static PatternToken compileFunction(ArithmeticFunctionToken token) {
+        PatternToken operand = compile(token.operand);
+        if (operand instanceof Constant)
+            return new Constant(token.evaluate(null));
+        switch (token.function) {
+            case LOG:
+                return new Log(operand);
+            case LOG10:
+                return new Log10(operand);
+            default:
+                return token;
+        }
+    }
+
+    /**
+     * Compiles the given operator token.
+     * @param token the operator token to compile
+     * @return the compiled node
+     */
+    private static PatternToken compileOperator(ArithmeticOperatorToken token) {
+        PatternToken operand1 = compile(token.operand1);
+        PatternToken operand2 = compile(token.operand2);
+        if (operand1 instanceof Constant && operand2 instanceof Constant)
+            return new Constant(token.evaluate(null));
+        switch (token.operator) {
+            case PLUS:
+                // The terms of the right operand would be summed in a different order, thus it must not be a sum
+                if (isSumTerm(operand1) && isSumTerm(operand2) && !(operand2 instanceof WeightedSum))
+                    return new WeightedSum(operand1, operand2);
+                return new Plus(operand1, operand2);
+            case MINUS:
+                return new Minus(operand1, operand2);
+            case TIMES:
+                return new Times(operand1, operand2);
+            case SLASH:
+                return new Slash(operand1, operand2);
+            case POW:
+                return new Pow(operand1, operand2);
+            default:
+                return token;
+        }
+    }
+
+    /**
+     * Returns whether the given compiled node can be a term of a {@link WeightedSum}.
+     * @param node the compiled node to check
+     * @return <tt>true</tt> if the node is a sub-distance, a (non-NaN) constant multiple of a sub-distance or a weighted sum
+     */
+    private static boolean isSumTerm(PatternToken node) {
+        if (node instanceof Subdistance || node instanceof WeightedSum)
+            return true;
+        if (node instanceof Times) {
+            Times times = (Times)node;
+            if (times.operand1 instanceof Constant && times.operand2 instanceof Subdistance)
+                return !Float.isNaN(((Constant)times.operand1).value);
+            if (times.operand1 instanceof Subdistance && times.operand2 instanceof Constant)
+                return !Float.isNaN(((Constant)times.operand2).value);
+        }
+        return false;
+    }
+
+
+    //****************** Compiled nodes ******************//
+
+    /** Compiled constant */
+    private static final class Constant implements PatternToken {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /** The constant value */
+        private final float value;
+
+        /**
+         * Creates a new compiled constant.
+         * @param value the constant value
+         */
+        private Constant(float value) {
+            this.value = value;
+        }
+
+        @Override
+        public float evaluate(float[] subdistances) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(value);
+        }
+    }
+
+    /** Compiled sub-distance access */
+    private static final class Subdistance implements PatternToken {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /** Index of the sub-distance */
+        private final int index;
+
+        /**
+         * Creates a new compiled sub-distance access.
+         * @param index the index of the sub-distance
+         */
+        private Subdistance(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public float evaluate(float[] subdistances) {
+            return subdistances[index];
+        }
+
+        @Override
+        public String toString() {
+            return "d[" + index + "]";
+        }
+    }
+
+    /**
+     * Compiled sum of sub-distances that are optionally multiplied by constants.
+     * The terms are summed in the order of the original expression.
+     */
+    private static final class WeightedSum implements PatternToken {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /** Indexes of the summed sub-distances */
+        private final int[] indexes;
+        /** Constants the sub-distances are multiplied by (<tt>NaN</tt> if there is no multiplication) */
+        private final float[] weights;
+        /** Flags whether the constant is the left operand of the multiplication */
+        private final boolean[] weightFirst;
+
+        /**
+         * Creates a new compiled sum of the two terms.
+         * @param term1 the first term (see {@link #isSumTerm})
+         * @param term2 the second term (see {@link #isSumTerm})
+         */
+        private WeightedSum(PatternToken term1, PatternToken term2) {
+            int size = getTermCount(term1) + getTermCount(term2);
+            this.indexes = new int[size];
+            this.weights = new float[size];
+            this.weightFirst = new boolean[size];
+            addTerms(term2, addTerms(term1, 0));
+        }
+
+        /**
+         * Returns the number of sub-distances in the given term.
+         * @param term the term to examine
+         * @return the number of sub-distances
+         */
+        private static int getTermCount(PatternToken term) {
+            return (term instanceof WeightedSum) ? ((WeightedSum)term).indexes.length : 1;
+        }
+
+        /**
+         * Copies the given term into this sum.
+         * @param term the term to add
+         * @param pos the position in this sum where to add the term
+         * @return the position after the added term
+         */
+        private int addTerms(PatternToken term, int pos) {
+            if (term instanceof WeightedSum) {
+                WeightedSum sum = (WeightedSum)term;
+                System.arraycopy(sum.indexes, 0, indexes, pos, sum.indexes.length);
+                System.arraycopy(sum.weights, 0, weights, pos, sum.weights.length);
+                System.arraycopy(sum.weightFirst, 0, weightFirst, pos, sum.weightFirst.length);
+                return pos + sum.indexes.length;
+            }
+            if (term instanceof Subdistance) {
+                indexes[pos] = ((Subdistance)term).index;
+                weights[pos] = Float.NaN;
+            } else {
+                Times times = (Times)term;
+                weightFirst[pos] = times.operand1 instanceof Constant;
+                indexes[pos] = ((Subdistance)(weightFirst[pos] ? times.operand2 : times.operand1)).index;
+                weights[pos] = ((Constant)(weightFirst[pos] ? times.operand1 : times.operand2)).value;
+            }
+            return pos + 1;
+        }
+
+        /**
+         * Returns the value of the given term.
+         * @param i the index of the term
+         * @param subdistances the sub-distances
+         * @return the value of the term
+         */
+        private float getTerm(int i, float[] subdistances) {
+            float weight = weights[i];
+            if (weight != weight) // NaN means no multiplication
+                return subdistances[indexes[i]];
+            return weightFirst[i] ? weight * subdistances[indexes[i]] : subdistances[indexes[i]] * weight;
+        }
+
+        @Override
+        public float evaluate(float[] subdistances) {
+            float sum = getTerm(0, subdistances);
+            for (int i = 1; i < indexes.length; i++)
+                sum += getTerm(i, subdistances);
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder str = new StringBuilder("SUM(");
+            for (int i = 0; i < indexes.length; i++) {
+                if (i > 0)
+                    str.append(", ");
+                if (weights[i] == weights[i])
+                    str.append(weights[i]).append('*');
+                str.append("d[").append(indexes[i]).append(']');
+            }
+            return str.append(')').toString();
+        }
+    }
+
+    /** Ancestor of the compiled binary operators */
+    private static abstract class BinaryOperator implements PatternToken {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /** First operand */
+        protected final PatternToken operand1;
+        /** Second operand */
+        protected final PatternToken operand2;
+
+        /**
+         * Creates a new compiled binary operator.
+         * @param operand1 the first operand
+         * @param operand2 the second operand
+         */
+        protected BinaryOperator(PatternToken operand1, PatternToken operand2) {
+            this.operand1 = operand1;
+            this.operand2 = operand2;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder("( ").append(operand1).append(' ').append(getClass().getSimpleName().toUpperCase()).append(' ').append(operand2).append(" )").toString();
+        }
+    }
+
+    /** Compiled addition */
+    private static final class Plus extends BinaryOperator {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Creates a new compiled addition.
+         * @param operand1 the first operand
+         * @param operand2 the second operand
+         */
+        private Plus(PatternToken operand1, PatternToken operand2) {
+            super(operand1, operand2);
+        }
+        @Override
+        public float evaluate(float[] subdistances) {
+            return operand1.evaluate(subdistances) + operand2.evaluate(subdistances);
+        }
+    }
+
+    /** Compiled subtraction */
+    private static final class Minus extends BinaryOperator {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Creates a new compiled subtraction.
+         * @param operand1 the first operand
+         * @param operand2 the second operand
+         */
+        private Minus(PatternToken operand1, PatternToken operand2) {
+            super(operand1, operand2);
+        }
+        @Override
+        public float evaluate(float[] subdistances) {
+            return operand1.evaluate(subdistances) - operand2.evaluate(subdistances);
+        }
+    }
+
+    /** Compiled multiplication */
+    private static final class Times extends BinaryOperator {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Creates a new compiled multiplication.
+         * @param operand1 the first operand
+         * @param operand2 the second operand
+         */
+        private Times(PatternToken operand1, PatternToken operand2) {
+            super(operand1, operand2);
+        }
+        @Override
+        public float evaluate(float[] subdistances) {
+            return operand1.evaluate(subdistances) * operand2.evaluate(subdistances);
+        }
+    }
+
+    /** Compiled division */
+    private static final class Slash extends BinaryOperator {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Creates a new compiled division.
+         * @param operand1 the first operand
+         * @param operand2 the second operand
+         */
+        private Slash(PatternToken operand1, PatternToken operand2) {
+            super(operand1, operand2);
+        }
+        @Override
+        public float evaluate(float[] subdistances) {
+            return operand1.evaluate(subdistances) / operand2.evaluate(subdistances);
+        }
+    }
+
+    /** Compiled power */
+    private static final class Pow extends BinaryOperator {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Creates a new compiled power.
+         * @param operand1 the first operand
+         * @param operand2 the second operand
+         */
+        private Pow(PatternToken operand1, PatternToken operand2) {
+            super(operand1, operand2);
+        }
+        @Override
+        public float evaluate(float[] subdistances) {
+            return (float) Math.pow(operand1.evaluate(subdistances), operand2.evaluate(subdistances));
+        }
+    }
+
+    /** Compiled natural logarithm */
+    private static final class Log implements PatternToken {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /** Operand */
+        private final PatternToken operand;
+        /**
+         * Creates a new compiled natural logarithm.
+         * @param operand the operand
+         */
+        private Log(PatternToken operand) {
+            this.operand = operand;
+        }
+        @Override
+        public float evaluate(float[] subdistances) {
+            return (float) Math.log(operand.evaluate(subdistances));
+        }
+        @Override
+        public String toString() {
+            return "LOG( " + operand + " )";
+        }
+    }
+
+    /** Compiled decadic logarithm */
+    private static final class Log10 implements PatternToken {
+        /** Class id for object serialization. */
+        private static final long serialVersionUID = 1L;
+        /** Operand */
+        private final PatternToken operand;
+        /**
+         * Creates a new compiled decadic logarithm.
+         * @param operand the operand
+         */
+        private Log10(PatternToken operand) {
+            this.operand = operand;
+        }
+        @Override
+        public float evaluate(float[] subdistances) {
+            return (float) Math.log10(operand.evaluate(subdistances));
+        }
+        @Override
+        public String toString() {
+            return "LOG10( " + operand + " )";
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.operations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectIterator;
+
+/**
+ * Evaluates several query operations in a single pass over the data.
+ * The objects are read from the source iterator in blocks of a given size
+ * and every operation is {@link QueryOperation#evaluate evaluated} on the whole
+ * block before the next block is read. Thus the data are read (e.g. from the disk)
+ * only once for all the operations and the objects of the block are likely to stay
+ * in the processor cache while the operations are evaluated.
+ * Each operation applies its own pruning, e.g. a {@link messif.operations.query.KNNQueryOperation}
+ * uses its current answer radius both for the precomputed-distance filtering and
+ * for the early termination of the distance computation.
+ *
+ * <p>
+ * Note that the operations of one shared scan are evaluated sequentially by the calling thread.
+ * Several shared scans (e.g. over different buckets) can run in parallel on the same operations,
+ * provided that the answer collections of the operations are synchronized.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class SharedScanEvaluator {
+
+    //****************** Constants ******************//
+
+    /** Default number of objects in one block of the shared scan */
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+
+    //****************** Attributes ******************//
+
+    /** Operations evaluated by this shared scan */
+    private final Collection<? extends QueryOperation<?>> operations;
+    /** Number of objects in one block of the shared scan */
+    private final int blockSize;
+
+
+    //****************** Constructors ******************//
+
+    /**
+     * Creates a new shared scan evaluator for the given operations.
+     * @param operations the operations to evaluate
+     * @param blockSize the number of objects in one block of the shared scan
+     * @throws IllegalArgumentException if the block size is not positive
+     */
+    public SharedScanEvaluator(Collection<? extends QueryOperation<?>> operations, int blockSize) throws IllegalArgumentException {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("Block size must be positive");
+        this.operations = operations;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Creates a new shared scan evaluator for the given operations with the {@link #DEFAULT_BLOCK_SIZE default block size}.
+     * @param operations the operations to evaluate
+     */
+    public SharedScanEvaluator(Collection<? extends QueryOperation<?>> operations) {
+        this(operations, DEFAULT_BLOCK_SIZE);
+    }
+
+
+    //****************** Evaluation ******************//
+
+    /**
+     * Evaluates all the operations of this shared scan on the given objects.
+     * @param objects the iterator over the objects to evaluate the operations on
+     * @return the number of objects added to the answers of all the operations
+     */
+    public int evaluate(AbstractObjectIterator<? extends LocalAbstractObject> objects) {
+        int count = 0;
+        List<LocalAbstractObject> block = new ArrayList<LocalAbstractObject>(blockSize);
+        while (objects.hasNext()) {
+            // Read the next block of objects
+            block.clear();
+            do {
+                block.add(objects.next());
+            } while (block.size() < blockSize && objects.hasNext());
+
+            // Evaluate all the operations on the block
+            for (QueryOperation<?> operation : operations)
+                count += operation.evaluate(AbstractObjectIterator.getIterator(block.iterator()));
+        }
+        return count;
+    }
+
+    /**
+     * Evaluates the given operations on the given objects in a single pass over the objects.
+     * @param objects the iterator over the objects to evaluate the operations on
+     * @param operations the operations to evaluate
+     * @return the number of objects added to the answers of all the operations
+     */
+    public static int evaluate(AbstractObjectIterator<? extends LocalAbstractObject> objects, Collection<? extends QueryOperation<?>> operations) {
+        return new SharedScanEvaluator(operations).evaluate(objects);
+    }
+
+}
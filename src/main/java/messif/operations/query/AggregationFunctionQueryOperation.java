@@ -165,7 +165,10 @@ public class AggregationFunctionQueryOperation extends RankingSingleQueryOperati
             MetaObject object = (MetaObject)objects.next();
 
             // Compute overall distance (the object must be MetaObject otherwise ClassCastException is thrown)
-            float distance = aggregationFunction.getDistance(getQueryObject(), object, descriptorDistances);
+            float threshold = getAnswerThreshold();
+            float distance = aggregationFunction.getDistance(getQueryObject(), object, descriptorDistances, threshold);
+            if (distance > threshold)
+                continue;
 
             // Object satisfies the query (i.e. distance is smaller than radius)
             addToAnswer(object, distance, descriptorDistances);
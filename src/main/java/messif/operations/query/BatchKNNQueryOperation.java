@@ -26,9 +26,12 @@ import messif.operations.AbstractOperation;
 import messif.operations.AnswerType;
 import messif.operations.OperationErrorCode;
 import messif.operations.QueryOperation;
+import messif.operations.SharedScanEvaluator;
 
 /**
  * A batch of several K-nearest neighbors query operations encapsulated as a single operation.
+ * The {@link #evaluate(messif.objects.util.AbstractObjectIterator) evaluation} processes all the
+ * encapsulated operations in a single pass over the data using the {@link SharedScanEvaluator}.
  * 
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
@@ -134,9 +137,17 @@ public class BatchKNNQueryOperation extends QueryOperation {
         endOperation(OperationErrorCode.RESPONSE_RETURNED);
     }
 
+    /**
+     * Evaluates all the encapsulated k-nearest neighbors query operations on the given objects.
+     * The objects are processed in blocks and every block is evaluated for all the operations
+     * before the next block is read, see {@link SharedScanEvaluator}.
+     * @param objects the collection of objects on which to evaluate this query
+     * @return number of objects satisfying the query
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public int evaluate(AbstractObjectIterator objects) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return SharedScanEvaluator.evaluate(objects, knnOperations);
     }
 
     @Override
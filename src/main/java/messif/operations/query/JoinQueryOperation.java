@@ -16,8 +16,13 @@
  */
 package messif.operations.query;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveTask;
 import messif.objects.AbstractObject;
 import messif.objects.LocalAbstractObject;
 import messif.objects.util.AbstractObjectIterator;
@@ -29,7 +34,10 @@ import messif.operations.AbstractOperation;
 import messif.operations.AnswerType;
 import messif.operations.EndOperationListener;
 import messif.operations.QueryOperation;
+import messif.statistics.OperationStatistics;
+import messif.statistics.Statistics;
 import messif.utility.ErrorCode;
+import messif.utility.SharedForkJoinPool;
 
 /**
  * Similarity join query operation.
@@ -40,6 +48,13 @@ import messif.utility.ErrorCode;
  * 
  * It also supports approximate parameters for early termination.
  * 
+ * The {@link #evaluate evaluation} splits the space of object pairs into tiles of {@link #TILE_SIZE} &times; {@link #TILE_SIZE}
+ * objects that are processed in parallel by the {@link SharedForkJoinPool shared fork-join pool}. The pairs are pruned using the precomputed distances
+ * (e.g. {@link messif.objects.PrecomputedDistancesFixedArrayFilter}) if the objects have them
+ * and the pairs found in the tiles are merged into the answer at once.
+ * The {@link OperationStatistics operation statistics} gathered by the tiles processed in the pool
+ * are merged into the operation statistics of the calling thread.
+ * 
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
  * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
@@ -179,37 +194,201 @@ public class JoinQueryOperation extends QueryOperation<RankedJoinObject> {
     //****************** Implementation of query evaluation ******************//
 
     
+    /** Number of objects in one dimension of a tile of the pair space processed as a whole by the evaluation */
+    public static final int TILE_SIZE = 256;
+
     /**
      * Evaluate this query on a given set of objects.
-     * The objects found by this evaluation are added to answer of this query via {@link #addToAnswer}.
+     * The objects found by this evaluation are added to answer of this query.
+     * The pairs are evaluated in parallel in {@link #TILE_SIZE tiles}, see {@link JoinQueryOperation}.
      *
      * @param objects the collection of objects on which to evaluate this query
      * @return number of objects satisfying the query
      */
     @Override
     public int evaluate(AbstractObjectIterator<? extends LocalAbstractObject> objects) {
-        int beforeCount = getAnswerCount();
-
         // Make a local list of all passed objects
         AbstractObjectList<LocalAbstractObject> list = new AbstractObjectList<LocalAbstractObject>(objects);
 
-        if (skipSymmetricPairs) {
-            for (int i1 = 0; i1 < list.size(); i1++) {
-                LocalAbstractObject o1 = list.get(i1);
-                for (int i2 = i1+1; i2 < list.size(); i2++)
-                    addToAnswer(o1, list.get(i2));
+        // Prepare the tiles of the upper triangle of the pair space
+        int tiles = (list.size() + TILE_SIZE - 1) / TILE_SIZE;
+        int[] tileRows = new int[tiles * (tiles + 1) / 2];
+        int[] tileColumns = new int[tileRows.length];
+        for (int row = 0, i = 0; row < tiles; row++) {
+            for (int column = row; column < tiles; column++, i++) {
+                tileRows[i] = row;
+                tileColumns[i] = column;
             }
+        }
+
+        // Evaluate the tiles
+        DistanceRankedSortedCollection<RankedJoinObject> pairs;
+        if (tileRows.length > 1) {
+            OperationStatistics operationStatistics = OperationStatistics.getLocalThreadStatistics();
+            Collection<OperationStatistics> tileStatistics = new ConcurrentLinkedQueue<OperationStatistics>();
+            pairs = SharedForkJoinPool.getInstance().invoke(new JoinTilesTask(list, tileRows, tileColumns, 0, tileRows.length, Math.min(mu, getAnswerThreshold()), getBoundStatisticNames(operationStatistics), tileStatistics));
+            for (OperationStatistics statistics : tileStatistics)
+                operationStatistics.updateFrom(statistics);
         } else {
-            for (int i1 = 0; i1 < list.size(); i1++) {
-                LocalAbstractObject o1 = list.get(i1);
-                for (int i2 = 0; i2 < i1; i2++)
-                    addToAnswer(o1, list.get(i2));
-                for (int i2 = i1+1; i2 < list.size(); i2++)
-                    addToAnswer(o1, list.get(i2));
+            pairs = new JoinTilesTask(list, tileRows, tileColumns, 0, tileRows.length, Math.min(mu, getAnswerThreshold()), null, null).compute();
+        }
+
+        // Merge the pairs into the answer
+        synchronized (this) {
+            int beforeCount = getAnswerCount();
+            for (RankedJoinObject pair : pairs)
+                answer.add(pair);
+            return getAnswerCount() - beforeCount;
+        }
+    }
+
+    /**
+     * Returns the names of the given operation statistics that have a global counterpart.
+     * These statistics are gathered by the tiles processed in the pool.
+     * @param operationStatistics the operation statistics of the calling thread
+     * @return the names of the operation statistics to gather by the tiles
+     */
+    private static List<String> getBoundStatisticNames(OperationStatistics operationStatistics) {
+        List<String> names = new ArrayList<String>();
+        for (Statistics<?> statistics : operationStatistics)
+            if (Statistics.getStatistics(statistics.getName()) != null)
+                names.add(statistics.getName());
+        return names;
+    }
+
+    /**
+     * Creates a ranked pair of objects for the answer of this query.
+     * @param leftObject the left object of the pair
+     * @param rightObject the right object of the pair
+     * @param distance the distance between the left and right objects
+     * @return the distance-ranked join object
+     */
+    private RankedJoinObject createRankedObject(LocalAbstractObject leftObject, LocalAbstractObject rightObject, float distance) {
+        try {
+            return new RankedJoinObject(getAnswerType().update(leftObject), getAnswerType().update(rightObject), distance);
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Task that evaluates the join on a range of tiles of the pair space.
+     * The tiles are split recursively and the resulting pairs of the subtasks are merged
+     * into a collection limited by the number of nearest pairs {@link #k}.
+     * The tiles processed by the pool worker threads gather their statistics
+     * separately, since the workers are not bound to the statistics of the calling thread.
+     */
+    private class JoinTilesTask extends RecursiveTask<DistanceRankedSortedCollection<RankedJoinObject>> {
+        /** class id for serialization */
+        private static final long serialVersionUID = 1L;
+        /** List of all objects on which the join is evaluated */
+        private final List<LocalAbstractObject> objects;
+        /** Row indexes of the tiles */
+        private final int[] tileRows;
+        /** Column indexes of the tiles */
+        private final int[] tileColumns;
+        /** Index of the first tile to process */
+        private final int from;
+        /** Index after the last tile to process */
+        private final int to;
+        /** The distance threshold at the start of the evaluation */
+        private final float threshold;
+        /** Names of the global statistics to gather by the tiles processed in the pool (<tt>null</tt> if the statistics are not gathered) */
+        private final List<String> statisticNames;
+        /** Collection where the statistics gathered by the tiles processed in the pool are added */
+        private final Collection<OperationStatistics> tileStatistics;
+
+        /**
+         * Creates a new task that evaluates the join on the given range of tiles.
+         * @param objects the list of all objects on which the join is evaluated
+         * @param tileRows the row indexes of the tiles
+         * @param tileColumns the column indexes of the tiles
+         * @param from the index of the first tile to process
+         * @param to the index after the last tile to process
+         * @param threshold the distance threshold at the start of the evaluation
+         * @param statisticNames the names of the global statistics to gather by the tiles processed in the pool
+         *          or <tt>null</tt> if the statistics are not gathered
+         * @param tileStatistics the collection where the statistics gathered by the tiles processed in the pool are added
+         */
+        private JoinTilesTask(List<LocalAbstractObject> objects, int[] tileRows, int[] tileColumns, int from, int to, float threshold, List<String> statisticNames, Collection<OperationStatistics> tileStatistics) {
+            this.objects = objects;
+            this.tileRows = tileRows;
+            this.tileColumns = tileColumns;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.statisticNames = statisticNames;
+            this.tileStatistics = tileStatistics;
+        }
+
+        @Override
+        protected DistanceRankedSortedCollection<RankedJoinObject> compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                JoinTilesTask left = new JoinTilesTask(objects, tileRows, tileColumns, from, middle, threshold, statisticNames, tileStatistics);
+                left.fork();
+                DistanceRankedSortedCollection<RankedJoinObject> pairs = new JoinTilesTask(objects, tileRows, tileColumns, middle, to, threshold, statisticNames, tileStatistics).compute();
+                DistanceRankedSortedCollection<RankedJoinObject> leftPairs = left.join();
+                if (leftPairs.size() > pairs.size()) {
+                    leftPairs.addAll(pairs);
+                    return leftPairs;
+                } else {
+                    pairs.addAll(leftPairs);
+                    return pairs;
+                }
+            }
+
+            DistanceRankedSortedCollection<RankedJoinObject> pairs = (k < Integer.MAX_VALUE) ?
+                    new DistanceRankedSortedCollection<RankedJoinObject>(Math.min(k, TILE_SIZE), k) :
+                    new DistanceRankedSortedCollection<RankedJoinObject>();
+            if (from >= to)
+                return pairs;
+
+            // The tile is processed by the calling thread, the statistics are updated directly
+            if (statisticNames == null || !inForkJoinPool()) {
+                computeTile(tileRows[from] * TILE_SIZE, tileColumns[from] * TILE_SIZE, pairs);
+                return pairs;
+            }
+
+            OperationStatistics.resetLocalThreadStatistics();
+            OperationStatistics statistics = OperationStatistics.getLocalThreadStatistics();
+            for (String statisticName : statisticNames)
+                statistics.registerBoundStat(statisticName);
+            try {
+                computeTile(tileRows[from] * TILE_SIZE, tileColumns[from] * TILE_SIZE, pairs);
+            } finally {
+                statistics.unbindAllStats();
+                tileStatistics.add(statistics);
             }
+            return pairs;
         }
 
-        return getAnswerCount() - beforeCount;
+        /**
+         * Evaluates the join on one tile of the pair space.
+         * The distance of each pair is computed only once.
+         * @param rowStart the index of the first object of the tile's row
+         * @param columnStart the index of the first object of the tile's column
+         * @param pairs the collection to add the qualifying pairs to
+         */
+        private void computeTile(int rowStart, int columnStart, DistanceRankedSortedCollection<RankedJoinObject> pairs) {
+            int rowEnd = Math.min(rowStart + TILE_SIZE, objects.size());
+            int columnEnd = Math.min(columnStart + TILE_SIZE, objects.size());
+            for (int i1 = rowStart; i1 < rowEnd; i1++) {
+                LocalAbstractObject o1 = objects.get(i1);
+                for (int i2 = (rowStart == columnStart) ? i1 + 1 : columnStart; i2 < columnEnd; i2++) {
+                    LocalAbstractObject o2 = objects.get(i2);
+                    float currentThreshold = Math.min(threshold, pairs.getThresholdDistance());
+                    if (o1.excludeUsingPrecompDist(o2, currentThreshold))
+                        continue;
+                    float distance = o1.getDistance(o2, currentThreshold);
+                    if (distance > currentThreshold)
+                        continue;
+                    pairs.add(createRankedObject(o1, o2, distance));
+                    if (!skipSymmetricPairs)
+                        pairs.add(createRankedObject(o2, o1, distance));
+                }
+            }
+        }
     }
 
 
@@ -279,13 +458,8 @@ public class JoinQueryOperation extends QueryOperation<RankedJoinObject> {
         if (distance > mu || distance > distThreshold)
             return null;
         
-        RankedJoinObject rankedObject;
-        try {
-            // Create the ranked object encapsulation
-            rankedObject = new RankedJoinObject(getAnswerType().update(leftObject), getAnswerType().update(rightObject), distance);
-        } catch (CloneNotSupportedException e) {
-            throw new IllegalArgumentException(e);
-        }
+        // Create the ranked object encapsulation
+        RankedJoinObject rankedObject = createRankedObject(leftObject, rightObject, distance);
 
         // Add the encapsulated object to the answer
         if (answer.add(rankedObject))
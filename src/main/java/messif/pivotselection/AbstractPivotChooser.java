@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.RecursiveAction;
 import messif.objects.LocalAbstractObject;
 import messif.objects.ObjectProvider;
 import messif.objects.util.AbstractObjectIterator;
@@ -28,6 +29,7 @@ import messif.objects.util.AbstractObjectList;
 import messif.objects.util.ObjectProvidersIterator;
 import messif.statistics.StatisticCounter;
 import messif.statistics.StatisticRefCounter;
+import messif.utility.SharedForkJoinPool;
 
 
 /**
@@ -41,6 +43,12 @@ import messif.statistics.StatisticRefCounter;
  * Pivot selection also supports transactions - if a transaction is initialized, the actual state
  * of the list of selected objects is remember. The transaction ends by either commiting all changes
  * made to the list or by rolling back all the changes.
+ *
+ * The distance-heavy phases of the pivot choosers can be computed in parallel
+ * using the {@link SharedForkJoinPool shared fork-join pool}, see also {@link DistanceMatrix}.
+ * Note that the statistic <I>DistanceComputations.PivotChooser</I> is bound
+ * to the global <I>DistanceComputations</I>, so the distances computed by the pool
+ * threads are counted as well.
  * 
  *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
@@ -210,6 +218,67 @@ public abstract class AbstractPivotChooser {
     protected abstract void selectPivot(int count, AbstractObjectIterator<? extends LocalAbstractObject> sampleSetIterator);
 
 
+    //****************** Parallel distance computation ******************//
+
+    /** Minimal number of distances computed by one fork-join task */
+    protected static final int PARALLEL_TASK_SIZE = 64;
+
+    /**
+     * Computes the distances between the given object and all the objects in the list in parallel.
+     * @param object the object to compute the distances from
+     * @param objects the list of objects to compute the distances to
+     * @return the array of distances, the i-th item is the distance between {@code object} and the i-th object in the list
+     */
+    protected static float[] computeDistances(LocalAbstractObject object, List<? extends LocalAbstractObject> objects) {
+        float[] distances = new float[objects.size()];
+        SharedForkJoinPool.getInstance().invoke(new ComputeDistancesTask(object, objects, distances, 0, distances.length));
+        return distances;
+    }
+
+    /** Fork-join task that computes a range of distances between an object and a list of objects */
+    private static class ComputeDistancesTask extends RecursiveAction {
+        /** Class id for serialization. */
+        private static final long serialVersionUID = 1L;
+        /** Object to compute the distances from */
+        private final LocalAbstractObject object;
+        /** Objects to compute the distances to */
+        private final List<? extends LocalAbstractObject> objects;
+        /** Array for the computed distances */
+        private final float[] distances;
+        /** First index of the range (inclusive) */
+        private final int from;
+        /** Last index of the range (exclusive) */
+        private final int to;
+
+        /**
+         * Creates a new task that computes the distances in the given range.
+         * @param object the object to compute the distances from
+         * @param objects the objects to compute the distances to
+         * @param distances the array for the computed distances
+         * @param from the first index of the range (inclusive)
+         * @param to the last index of the range (exclusive)
+         */
+        private ComputeDistancesTask(LocalAbstractObject object, List<? extends LocalAbstractObject> objects, float[] distances, int from, int to) {
+            this.object = object;
+            this.objects = objects;
+            this.distances = distances;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_TASK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ComputeDistancesTask(object, objects, distances, from, middle), new ComputeDistancesTask(object, objects, distances, middle, to));
+            } else {
+                for (int i = from; i < to; i++)
+                    distances[i] = object.getDistance(objects.get(i));
+            }
+        }
+    }
+
+
     //****************** Sample set management methods ******************//
     
     /**
@@ -223,18 +223,16 @@ public class CoveragePivotChooser extends AbstractPivotChooser implements Serial
      */
     protected class PrecomputedDistances {
 
-        final int objectCount;
-
         final Map<LocalAbstractObject,Integer> objectToIndex;
 
-        final float[][] distances;
+        final DistanceMatrix distances;
 
         /**
-         * Create and initilize the new instance of PrecomputedDistances. All pairs of distances are computed and cached.
+         * Create and initilize the new instance of PrecomputedDistances. All pairs of distances are computed in parallel and cached.
          * @param objectList list of objects
          */
         public PrecomputedDistances(AbstractObjectList<? extends LocalAbstractObject> objectList) {
-            objectCount = objectList.size();
+            int objectCount = objectList.size();
 
             // Initialize the map
             objectToIndex = new HashMap<LocalAbstractObject,Integer>();
@@ -242,13 +240,8 @@ public class CoveragePivotChooser extends AbstractPivotChooser implements Serial
                 objectToIndex.put(objectList.get(i), i);
 
             // Initalize the distances
-            distances = new float[objectCount][objectCount];
-            for (int i = 0; i < objectCount; i++) {
-                distances[i][i] = 0f;
-                for (int j = i + 1; j < objectCount; j++) {
-                    distances[i][j] = distances[j][i] = objectList.get(i).getDistance(objectList.get(j));
-                }
-            }
+            distances = new DistanceMatrix(objectList);
+            distances.computeAll();
         }
 
         float getDistance(LocalAbstractObject obj1, LocalAbstractObject obj2) {
@@ -257,7 +250,7 @@ public class CoveragePivotChooser extends AbstractPivotChooser implements Serial
         }
 
         float getDistance(int index1, int index2) {
-            return distances[index1][index2];
+            return distances.getDistance(index1, index2);
         }
 
         /**
@@ -265,7 +258,7 @@ public class CoveragePivotChooser extends AbstractPivotChooser implements Serial
          * @return number of objects that all pairs of distances among them are stored.
          */
         public int getObjectCount() {
-            return objectCount;
+            return distances.getObjectCount();
         }
     }
 
@@ -0,0 +1,227 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.pivotselection;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import messif.objects.LocalAbstractObject;
+import messif.utility.SharedForkJoinPool;
+
+/**
+ * Cache of the mutual distances of a list of objects.
+ * Since the distance is symmetric, only the upper triangle of the distance matrix is stored.
+ * The triangle is divided into square blocks of {@link #BLOCK_SIZE} times {@link #BLOCK_SIZE}
+ * distances that are computed lazily when a distance from the block is requested
+ * or in parallel for all the blocks by {@link #computeAll()}.
+ * Each distance is computed exactly once, even if the cache is accessed concurrently.
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class DistanceMatrix {
+
+    //****************** Constants ******************//
+
+    /** Number of rows (and columns) of one block of the distance matrix */
+    public static final int BLOCK_SIZE = 64;
+
+    /** Number of locks used to guard the computation of the blocks */
+    private static final int LOCK_COUNT = 64;
+
+
+    //****************** Attributes ******************//
+
+    /** List of objects the mutual distances of which are cached */
+    private final List<? extends LocalAbstractObject> objects;
+
+    /** Number of blocks in one row of the distance matrix */
+    private final int blockRowCount;
+
+    /** Computed blocks of the upper triangle of the distance matrix stored row by row */
+    private final AtomicReferenceArray<float[]> blocks;
+
+    /** Locks that guard the computation of the blocks */
+    private final Object[] locks;
+
+
+    //****************** Constructor ******************//
+
+    /**
+     * Creates a new distance matrix for the given objects.
+     * No distances are computed, see {@link #computeAll()}.
+     * @param objects the list of objects the mutual distances of which are cached;
+     *          the list must not be modified while this matrix is used
+     */
+    public DistanceMatrix(List<? extends LocalAbstractObject> objects) {
+        this.objects = objects;
+        this.blockRowCount = (objects.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.blocks = new AtomicReferenceArray<float[]>(blockRowCount * (blockRowCount + 1) / 2);
+        this.locks = new Object[LOCK_COUNT];
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
+    }
+
+
+    //****************** Attribute access ******************//
+
+    /**
+     * Returns the number of objects the mutual distances of which are cached.
+     * @return the number of objects
+     */
+    public int getObjectCount() {
+        return objects.size();
+    }
+
+    /**
+     * Returns the object at the given index.
+     * @param index the index of the object to get
+     * @return the object at the given index
+     * @throws IndexOutOfBoundsException if the index is not valid
+     */
+    public LocalAbstractObject getObject(int index) throws IndexOutOfBoundsException {
+        return objects.get(index);
+    }
+
+    /**
+     * Returns the distance between the objects at the given indexes.
+     * The distance is computed if it is not cached yet.
+     * @param index1 the index of the first object
+     * @param index2 the index of the second object
+     * @return the distance between the two objects
+     * @throws IndexOutOfBoundsException if any of the indexes is not valid
+     */
+    public float getDistance(int index1, int index2) throws IndexOutOfBoundsException {
+        if (index1 > index2) {
+            int tmp = index1;
+            index1 = index2;
+            index2 = tmp;
+        }
+        if (index1 < 0 || index2 >= objects.size())
+            throw new IndexOutOfBoundsException("Index out of range: " + (index1 < 0 ? index1 : index2));
+        int blockRow = index1 / BLOCK_SIZE;
+        int blockCol = index2 / BLOCK_SIZE;
+        return getBlock(blockRow, blockCol)[(index1 - blockRow * BLOCK_SIZE) * BLOCK_SIZE + index2 - blockCol * BLOCK_SIZE];
+    }
+
+
+    //****************** Block computation ******************//
+
+    /**
+     * Returns the position of the given block in the {@link #blocks} array.
+     * @param blockRow the row of the block
+     * @param blockCol the column of the block (must be greater than or equal to {@code blockRow})
+     * @return the position of the block
+     */
+    private int getBlockIndex(int blockRow, int blockCol) {
+        return blockRow * blockRowCount - blockRow * (blockRow - 1) / 2 + blockCol - blockRow;
+    }
+
+    /**
+     * Returns the block of the distance matrix, the block is computed if necessary.
+     * @param blockRow the row of the block
+     * @param blockCol the column of the block (must be greater than or equal to {@code blockRow})
+     * @return the distances of the block
+     */
+    private float[] getBlock(int blockRow, int blockCol) {
+        int blockIndex = getBlockIndex(blockRow, blockCol);
+        float[] block = blocks.get(blockIndex);
+        if (block != null)
+            return block;
+        synchronized (locks[blockIndex % locks.length]) {
+            block = blocks.get(blockIndex);
+            if (block == null) {
+                block = computeBlock(blockRow, blockCol);
+                blocks.set(blockIndex, block);
+            }
+            return block;
+        }
+    }
+
+    /**
+     * Computes the distances of the given block.
+     * @param blockRow the row of the block
+     * @param blockCol the column of the block (must be greater than or equal to {@code blockRow})
+     * @return the computed distances of the block
+     */
+    private float[] computeBlock(int blockRow, int blockCol) {
+        float[] block = new float[BLOCK_SIZE * BLOCK_SIZE];
+        int rowOffset = blockRow * BLOCK_SIZE;
+        int colOffset = blockCol * BLOCK_SIZE;
+        int rowCount = Math.min(BLOCK_SIZE, objects.size() - rowOffset);
+        int colCount = Math.min(BLOCK_SIZE, objects.size() - colOffset);
+        for (int i = 0; i < rowCount; i++) {
+            LocalAbstractObject object = objects.get(rowOffset + i);
+            if (blockRow == blockCol) {
+                // Diagonal block is symmetric itself
+                for (int j = i + 1; j < colCount; j++)
+                    block[i * BLOCK_SIZE + j] = block[j * BLOCK_SIZE + i] = object.getDistance(objects.get(colOffset + j));
+            } else {
+                for (int j = 0; j < colCount; j++)
+                    block[i * BLOCK_SIZE + j] = object.getDistance(objects.get(colOffset + j));
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Computes all the distances of this matrix in parallel.
+     * The blocks that are already computed are skipped.
+     */
+    public void computeAll() {
+        SharedForkJoinPool.getInstance().invoke(new ComputeBlocksTask(0, blocks.length()));
+    }
+
+    /** Fork-join task that computes a range of blocks */
+    private class ComputeBlocksTask extends RecursiveAction {
+        /** Class id for serialization. */
+        private static final long serialVersionUID = 1L;
+        /** First block index (inclusive) */
+        private final int from;
+        /** Last block index (exclusive) */
+        private final int to;
+
+        /**
+         * Creates a new task that computes the blocks in the given range.
+         * @param from the first block index (inclusive)
+         * @param to the last block index (exclusive)
+         */
+        private ComputeBlocksTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (from >= to)
+                return;
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ComputeBlocksTask(from, middle), new ComputeBlocksTask(middle, to));
+                return;
+            }
+            // Convert the block index to the row and column
+            int blockRow = 0;
+            int rowStart = 0;
+            while (rowStart + blockRowCount - blockRow <= from)
+                rowStart += blockRowCount - blockRow++;
+            getBlock(blockRow, blockRow + from - rowStart);
+        }
+    }
+
+}
@@ -17,12 +17,14 @@
 package messif.pivotselection;
 
 import java.io.Serializable;
+import java.util.concurrent.RecursiveAction;
 import messif.buckets.BucketFilterAfterAdd;
 import messif.buckets.BucketFilterAfterRemove;
 import messif.buckets.LocalBucket;
 import messif.objects.LocalAbstractObject;
 import messif.objects.util.AbstractObjectIterator;
 import messif.objects.util.AbstractObjectList;
+import messif.utility.SharedForkJoinPool;
 
 /**
  * Incremental selection of pivots. This pivot chooser is based on the technique called Incremental selection
@@ -151,21 +153,65 @@ public class IncrementalPivotChooser extends AbstractPivotChooser implements Ser
         // Initialize the array of distances between left and right sample objects according to current pivots
         distsFormer = new float[sampleSize];    
 
-        AbstractObjectIterator<LocalAbstractObject> leftIter = leftPair.iterator();
-        AbstractObjectIterator<LocalAbstractObject> rightIter = rightPair.iterator();
-        for (int i = 0; i < sampleSize; i++) {
-            LocalAbstractObject leftObj = leftIter.next();
-            LocalAbstractObject rightObj = rightIter.next();
-            
-            distsFormer[i] = 0;
-            for (LocalAbstractObject pivot : preselectedPivots ) {
-                float distD = Math.abs(leftObj.getDistance(pivot)
-                                        - rightObj.getDistance(pivot));
-                distsFormer[i] = Math.max(distsFormer[i], distD);
-            }
+        float[] distsToPivot = new float[sampleSize];
+        for (LocalAbstractObject pivot : preselectedPivots) {
+            computePairDistances(pivot, distsToPivot);
+            for (int i = 0; i < sampleSize; i++)
+                distsFormer[i] = Math.max(distsFormer[i], distsToPivot[i]);
         }
         
     }
+
+    /**
+     * Computes the distances between the left and right sample objects with respect to the given pivot.
+     * The distances are computed in parallel.
+     * @param pivot the pivot to use
+     * @param pairDistances the array that receives the absolute difference of the distances
+     *          of the respective left and right sample objects to the pivot
+     */
+    private void computePairDistances(LocalAbstractObject pivot, float[] pairDistances) {
+        SharedForkJoinPool.getInstance().invoke(new PairDistancesTask(pivot, pairDistances, 0, sampleSize));
+    }
+
+    /** Fork-join task that computes a range of the pair distances with respect to a pivot */
+    private class PairDistancesTask extends RecursiveAction {
+        /** Class id for serialization. */
+        private static final long serialVersionUID = 1L;
+        /** Pivot to compute the distances to */
+        private final LocalAbstractObject pivot;
+        /** Array for the computed distances */
+        private final float[] pairDistances;
+        /** First index of the range (inclusive) */
+        private final int from;
+        /** Last index of the range (exclusive) */
+        private final int to;
+
+        /**
+         * Creates a new task that computes the pair distances in the given range.
+         * @param pivot the pivot to compute the distances to
+         * @param pairDistances the array for the computed distances
+         * @param from the first index of the range (inclusive)
+         * @param to the last index of the range (exclusive)
+         */
+        private PairDistancesTask(LocalAbstractObject pivot, float[] pairDistances, int from, int to) {
+            this.pivot = pivot;
+            this.pairDistances = pairDistances;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_TASK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PairDistancesTask(pivot, pairDistances, from, middle), new PairDistancesTask(pivot, pairDistances, middle, to));
+            } else {
+                // compute the distance or use the precomputed distance if available but do not STORE!
+                for (int i = from; i < to; i++)
+                    pairDistances[i] = Math.abs(leftPair.get(i).getDistance(pivot) - rightPair.get(i).getDistance(pivot));
+            }
+        }
+    }
     
     /** Selects one new pivot.
      * Implementation of the incremental pivot selection algorithm.
@@ -201,18 +247,7 @@ public class IncrementalPivotChooser extends AbstractPivotChooser implements Ser
             LocalAbstractObject pivot = p;
             
             // compute distance between sample objects and the pivot
-            AbstractObjectIterator<LocalAbstractObject> leftIter = leftPair.iterator();
-            AbstractObjectIterator<LocalAbstractObject> rightIter = rightPair.iterator();
-            for (int i = 0; i < sampleSize; i++) {
-                LocalAbstractObject leftObj = leftIter.next();
-                LocalAbstractObject rightObj = rightIter.next();
-                
-                // compute the distance or use the precomputed distance if available but do not STORE!
-                distsToCand[i] = Math.abs(leftObj.getDistance(pivot) - rightObj.getDistance(pivot));
-                // No longer used, see comments above
-                //distsLeftToCand[i] = leftObj.getDistanceFastly(pivot, false);
-                //distsRightToCand[i] = rightObj.getDistanceFastly(pivot, false);
-            }
+            computePairDistances(pivot, distsToCand);
             
             // Compute mu
             float mu = 0;
@@ -284,16 +319,10 @@ public class IncrementalPivotChooser extends AbstractPivotChooser implements Ser
             return;
         
         // compute distance between sample objects and the pivot
-        AbstractObjectIterator<LocalAbstractObject> leftIter = leftPair.iterator();
-        AbstractObjectIterator<LocalAbstractObject> rightIter = rightPair.iterator();
-        for (int i = 0; i < sampleSize; i++) {
-            LocalAbstractObject leftObj = leftIter.next();
-            LocalAbstractObject rightObj = rightIter.next();
-
-            // compute the distance or use the precomputed distance if available but do not STORE!
-            float d = Math.abs(leftObj.getDistance(newPivot) - rightObj.getDistance(newPivot));
-            distsFormer[i] = Math.max(distsFormer[i], d);
-        }
+        float[] distsToPivot = new float[sampleSize];
+        computePairDistances(newPivot, distsToPivot);
+        for (int i = 0; i < sampleSize; i++)
+            distsFormer[i] = Math.max(distsFormer[i], distsToPivot[i]);
     }
 
 }
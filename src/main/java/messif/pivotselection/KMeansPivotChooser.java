@@ -17,11 +17,17 @@
 package messif.pivotselection;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import messif.objects.LocalAbstractObject;
 import messif.objects.PrecompDistPerforatedArrayFilter;
 import messif.objects.util.AbstractObjectIterator;
 import messif.objects.util.AbstractObjectList;
+import messif.utility.SharedForkJoinPool;
 
 
 /**
@@ -104,30 +110,26 @@ public class KMeansPivotChooser extends AbstractPivotChooser {
             System.err.println("    Selecting clustroids...");
             // now calculate the new pivots for the new clusters
             int i = 0;
-            List<SelectClustroidThread> selectingThreads = new ArrayList<SelectClustroidThread>();
+            List<SelectClustroidTask> selectingTasks = new ArrayList<SelectClustroidTask>();
             for (AbstractObjectList<LocalAbstractObject> cluster : actualClusters) {
-                SelectClustroidThread thread = new SelectClustroidThread(cluster, pivots.get(i++));
-                thread.start();
-                selectingThreads.add(thread);
+                SelectClustroidTask task = new SelectClustroidTask(cluster, pivots.get(i++));
+                SharedForkJoinPool.getInstance().execute(task);
+                selectingTasks.add(task);
             }
             
             i = 0;
             continueKMeans = false;
-            for (SelectClustroidThread thread : selectingThreads) {
-                try {
-                    thread.join();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                if (thread.clustroid == null) {
+            for (SelectClustroidTask task : selectingTasks) {
+                LocalAbstractObject clustroid = task.join();
+                if (clustroid == null) {
                     System.err.println("        WARNING: no clustroid selected - empty cluster?: "+ actualClusters.get(i).size());
                     //System.out.println("          selecting the pivot at random");
                     continueKMeans = true;
                 } else {
-                    float pivotShiftDist = pivots.get(i).getDistance(thread.clustroid);
+                    float pivotShiftDist = pivots.get(i).getDistance(clustroid);
                     if (pivotShiftDist > PIVOTS_DISTINCTION_THRESHOLD) {
                         System.err.println("        pivot "+ i +" shifted by "+pivotShiftDist);
-                        pivots.set(i, thread.clustroid);
+                        pivots.set(i, clustroid);
                         continueKMeans = true;
                     }
                 }
@@ -178,38 +180,125 @@ public class KMeansPivotChooser extends AbstractPivotChooser {
             clusters.add(new AbstractObjectList<LocalAbstractObject>());
         }
         
-        for (LocalAbstractObject object : objects) {
+        // find the closest pivot for each object in parallel
+        int[] closestPivots = new int[objects.size()];
+        Set<LocalAbstractObject> pivotSet = Collections.newSetFromMap(new IdentityHashMap<LocalAbstractObject, Boolean>());
+        pivotSet.addAll(pivots);
+        PrecompDistPerforatedArrayFilter[] pivotObjectFilters = new PrecompDistPerforatedArrayFilter[objects.size()];
+        SharedForkJoinPool.getInstance().invoke(new VoronoiPartitioningTask(objects, pivots, pivotSet, closestPivots, pivotObjectFilters, 0, closestPivots.length));
+        for (int i = 0; i < closestPivots.length; i++)
+            clusters.get(closestPivots[i]).add(objects.get(i));
+
+        // reset the filters of the objects that are pivots now that their mutual distances are no longer needed
+        for (int i = 0; i < pivotObjectFilters.length; i++) {
+            if (pivotObjectFilters[i] == null)
+                continue;
+            LocalAbstractObject object = objects.get(i);
             PrecompDistPerforatedArrayFilter filter = object.getDistanceFilter(PrecompDistPerforatedArrayFilter.class);
             if (filter == null) {
-                filter = new PrecompDistPerforatedArrayFilter(pivots.size());
-                object.chainFilter(filter, true);
-            } else filter.resetAllPrecompDist();
-            
-            float minDistance = Float.MAX_VALUE;
-            int i = 0;
-            int closestPivot = -1;
-            float objPivotDist;
-            for (LocalAbstractObject pivot : pivots) {
-                if (object.excludeUsingPrecompDist(pivot, minDistance))
-                    filter.addPrecompDist(LocalAbstractObject.UNKNOWN_DISTANCE);
-                else {
-                    objPivotDist = object.getDistance(pivot);
-                    filter.addPrecompDist(objPivotDist);
-                    if (minDistance > objPivotDist) {
-                        closestPivot = i;
-                        minDistance = objPivotDist;
-                    }
-                }
-                i++;
+                object.chainFilter(pivotObjectFilters[i], true);
+            } else {
+                filter.resetAllPrecompDist();
+                filter.addPrecompDist(pivotObjectFilters[i].getPrecompDist());
             }
-            clusters.get(closestPivot).add(object);
         }
         
         return clusters;
     }
     
-    /** Internal thread for selecting the "center" of a cluster. */
-    protected class SelectClustroidThread extends Thread {
+    /**
+     * Fork-join task for finding the closest pivots of a range of objects.
+     * The precomputed distances filter of every object is reset and filled with the distances
+     * to the pivots. The filters of the objects that are pivots are read concurrently by the other
+     * tasks, so their new distances are collected in separate filters that replace the contents
+     * of the original filters after all the tasks are finished.
+     */
+    private static class VoronoiPartitioningTask extends RecursiveAction {
+        /** Class id for serialization. */
+        private static final long serialVersionUID = 1L;
+        /** Objects to partition */
+        private final List<LocalAbstractObject> objects;
+        /** Pivots that define the partitions */
+        private final List<LocalAbstractObject> pivots;
+        /** Pivots that are also among the objects, their filters with the mutual pivot distances must be kept intact */
+        private final Set<LocalAbstractObject> pivotSet;
+        /** Array that receives the indexes of the closest pivots */
+        private final int[] closestPivots;
+        /** Array that receives the new filters of the objects that are pivots */
+        private final PrecompDistPerforatedArrayFilter[] pivotObjectFilters;
+        /** First object index of the range (inclusive) */
+        private final int from;
+        /** Last object index of the range (exclusive) */
+        private final int to;
+
+        /**
+         * Creates a new task for finding the closest pivots of the objects in the given range.
+         * @param objects the objects to partition
+         * @param pivots the pivots that define the partitions
+         * @param pivotSet the pivots in an identity set
+         * @param closestPivots the array that receives the indexes of the closest pivots
+         * @param pivotObjectFilters the array that receives the new filters of the objects that are pivots
+         * @param from the first object index of the range (inclusive)
+         * @param to the last object index of the range (exclusive)
+         */
+        private VoronoiPartitioningTask(List<LocalAbstractObject> objects, List<LocalAbstractObject> pivots, Set<LocalAbstractObject> pivotSet, int[] closestPivots, PrecompDistPerforatedArrayFilter[] pivotObjectFilters, int from, int to) {
+            this.objects = objects;
+            this.pivots = pivots;
+            this.pivotSet = pivotSet;
+            this.closestPivots = closestPivots;
+            this.pivotObjectFilters = pivotObjectFilters;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ((to - from) * pivots.size() > PARALLEL_TASK_SIZE && to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new VoronoiPartitioningTask(objects, pivots, pivotSet, closestPivots, pivotObjectFilters, from, middle), new VoronoiPartitioningTask(objects, pivots, pivotSet, closestPivots, pivotObjectFilters, middle, to));
+                return;
+            }
+            for (int objectIndex = from; objectIndex < to; objectIndex++) {
+                LocalAbstractObject object = objects.get(objectIndex);
+                PrecompDistPerforatedArrayFilter filter;
+                if (pivotSet.contains(object)) {
+                    // the filters of the pivots are read concurrently, so the distances are collected separately
+                    filter = new PrecompDistPerforatedArrayFilter(pivots.size());
+                    pivotObjectFilters[objectIndex] = filter;
+                } else {
+                    filter = object.getDistanceFilter(PrecompDistPerforatedArrayFilter.class);
+                    if (filter == null) {
+                        filter = new PrecompDistPerforatedArrayFilter(pivots.size());
+                        object.chainFilter(filter, true);
+                    } else filter.resetAllPrecompDist();
+                }
+
+                float minDistance = Float.MAX_VALUE;
+                int i = 0;
+                int closestPivot = -1;
+                float objPivotDist;
+                for (LocalAbstractObject pivot : pivots) {
+                    if (object.excludeUsingPrecompDist(pivot, minDistance)) {
+                        filter.addPrecompDist(LocalAbstractObject.UNKNOWN_DISTANCE);
+                    } else {
+                        objPivotDist = object.getDistance(pivot);
+                        filter.addPrecompDist(objPivotDist);
+                        if (minDistance > objPivotDist) {
+                            closestPivot = i;
+                            minDistance = objPivotDist;
+                        }
+                    }
+                    i++;
+                }
+                closestPivots[objectIndex] = closestPivot;
+            }
+        }
+    }
+
+    /** Internal fork-join task for selecting the "center" of a cluster. */
+    protected class SelectClustroidTask extends RecursiveTask<LocalAbstractObject> {
+        /** Class id for serialization. */
+        private static final long serialVersionUID = 1L;
         
         // parameter
         AbstractObjectList<LocalAbstractObject> cluster;
@@ -217,34 +306,82 @@ public class KMeansPivotChooser extends AbstractPivotChooser {
         // always try the original pivot - put it to the sample pivots list
         LocalAbstractObject originalPivot;
         
-        // result
-        LocalAbstractObject clustroid;
-        
         /**
-         * Creates a new SelectClustroidThread for computing the "center" of a cluster.
+         * Creates a new SelectClustroidTask for computing the "center" of a cluster.
          * @param cluster the list of objects that form a cluster
          * @param originalPivot the original pivot that is improved
          */
-        protected SelectClustroidThread(AbstractObjectList<LocalAbstractObject> cluster, LocalAbstractObject originalPivot) {
+        protected SelectClustroidTask(AbstractObjectList<LocalAbstractObject> cluster, LocalAbstractObject originalPivot) {
             this.cluster = cluster;
             this.originalPivot = originalPivot;
         }
         
         @Override
-        public void run() {
+        protected LocalAbstractObject compute() {
             AbstractObjectList<LocalAbstractObject> samplePivots = cluster.randomList(PIVOTS_SAMPLE_SIZE, true, new AbstractObjectList<LocalAbstractObject>(PIVOTS_SAMPLE_SIZE));
             samplePivots.add(this.originalPivot);
             
+            // compute the sums of squared distances of the sample pivots in parallel
+            double[] rowSums = new double[samplePivots.size()];
+            new RowSumsTask(samplePivots, cluster, rowSums, 0, rowSums.length).invoke();
+
+            LocalAbstractObject clustroid = null;
             double minRowSum = Double.MAX_VALUE;
-            for (LocalAbstractObject pivot : samplePivots) {
+            for (int i = 0; i < rowSums.length; i++) {
+                if (minRowSum > rowSums[i]) {
+                    clustroid = samplePivots.get(i);
+                    minRowSum = rowSums[i];
+                }
+            }
+            return clustroid;
+        }
+    }
+
+    /** Fork-join task for computing the sums of squared distances between a range of sample pivots and a cluster. */
+    private static class RowSumsTask extends RecursiveAction {
+        /** Class id for serialization. */
+        private static final long serialVersionUID = 1L;
+        /** Sample pivots */
+        private final List<LocalAbstractObject> samplePivots;
+        /** Objects of the cluster */
+        private final List<LocalAbstractObject> cluster;
+        /** Array that receives the sums of the squared distances */
+        private final double[] rowSums;
+        /** First sample pivot index of the range (inclusive) */
+        private final int from;
+        /** Last sample pivot index of the range (exclusive) */
+        private final int to;
+
+        /**
+         * Creates a new task for computing the sums of squared distances of the sample pivots in the given range.
+         * @param samplePivots the sample pivots
+         * @param cluster the objects of the cluster
+         * @param rowSums the array that receives the sums of the squared distances
+         * @param from the first sample pivot index of the range (inclusive)
+         * @param to the last sample pivot index of the range (exclusive)
+         */
+        private RowSumsTask(List<LocalAbstractObject> samplePivots, List<LocalAbstractObject> cluster, double[] rowSums, int from, int to) {
+            this.samplePivots = samplePivots;
+            this.cluster = cluster;
+            this.rowSums = rowSums;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ((to - from) * cluster.size() > PARALLEL_TASK_SIZE && to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowSumsTask(samplePivots, cluster, rowSums, from, middle), new RowSumsTask(samplePivots, cluster, rowSums, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                LocalAbstractObject pivot = samplePivots.get(i);
                 double rowSum = 0;
                 for (LocalAbstractObject object : cluster) {
                     rowSum += Math.pow(pivot.getDistance(object), 2);
                 }
-                if (minRowSum > rowSum) {
-                    clustroid = pivot;
-                    minRowSum = rowSum;
-                }
+                rowSums[i] = rowSum;
             }
         }
     }
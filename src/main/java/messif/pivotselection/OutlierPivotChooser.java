@@ -112,15 +112,13 @@ public class OutlierPivotChooser extends AbstractPivotChooser implements Seriali
         LocalAbstractObject rand = objectList.randomObject();
 
         // The first pivot is the farthest object from rand
-        int i = 0;
-        for (LocalAbstractObject obj : objectList) {
-            float d = rand.getDistance(obj);
-            if (d > pivotDist) {
-                pivot = obj;
-                pivotDist = d;
+        float[] distances = computeDistances(rand, objectList);
+        for (int i = 0; i < distances.length; i++) {
+            if (distances[i] > pivotDist) {
+                pivot = objectList.get(i);
+                pivotDist = distances[i];
                 pivotIndex = i;
             }
-            i++;
         }
         preselectedPivots.add(pivot);
         // Remove the pivot from the list of objects
@@ -137,16 +135,15 @@ public class OutlierPivotChooser extends AbstractPivotChooser implements Seriali
         float dist = -1f;
         int pivotIndex = -1;
 
-        // Compute distances to all objects and accumulate them in the array of distances
-        int i = 0;
-        for (LocalAbstractObject obj : objectList) {
-            pivotDists[i] += lastPivot.getDistance(obj);
+        // Compute distances to all objects in parallel and accumulate them in the array of distances
+        float[] distances = computeDistances(lastPivot, objectList);
+        for (int i = 0; i < distances.length; i++) {
+            pivotDists[i] += distances[i];
             if (pivotDists[i] > dist) {
-                pivot = obj;
+                pivot = objectList.get(i);
                 dist = pivotDists[i];
                 pivotIndex = i;
             }
-            i++;
         }
 
         preselectedPivots.add(pivot);
@@ -0,0 +1,89 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.statistics;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Per-thread cells of a striped statistic.
+ * Every thread that updates a striped statistic gets its own cell,
+ * so the threads do not contend for the statistic lock. The cells
+ * are merged into the statistic (and propagated to the bound statistics)
+ * when the statistic is read.
+ *
+ * <p>
+ * Each cell remembers the {@link Statistics#getCurrentThreadLock serial number}
+ * of its thread, so that the deferred updates are propagated only to the
+ * bound statistics that are locked to the same thread (see {@link OperationStatistics}).
+ * The cells of the terminated threads are removed once they are merged.
+ * </p>
+ *
+ * @param <C> the type of the cells
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+abstract class StatisticCells<C extends StatisticCells.Cell> extends ThreadLocal<C> implements Iterable<C> {
+
+    /** All the cells created for the threads */
+    private final Queue<C> cells = new ConcurrentLinkedQueue<C>();
+
+    /**
+     * Creates a new cell for the current thread.
+     * @return a new cell
+     */
+    protected abstract C createCell();
+
+    @Override
+    protected C initialValue() {
+        C cell = createCell();
+        cells.add(cell);
+        return cell;
+    }
+
+    /**
+     * Returns an iterator over all the cells.
+     * The iterator supports removal of the cells.
+     * @return an iterator over all the cells
+     */
+    @Override
+    public Iterator<C> iterator() {
+        return cells.iterator();
+    }
+
+    /** Cell of one thread */
+    static class Cell {
+        /** Serial number of the thread that owns this cell */
+        final Integer threadNum = Statistics.getCurrentThreadLock();
+        /** Thread that owns this cell */
+        private final WeakReference<Thread> thread = new WeakReference<Thread>(Thread.currentThread());
+
+        /**
+         * Returns <tt>true</tt> if the thread that owns this cell has terminated,
+         * i.e. the cell will not be updated anymore.
+         * @return <tt>true</tt> if the thread that owns this cell has terminated
+         */
+        boolean isThreadTerminated() {
+            Thread owner = thread.get();
+            return owner == null || !owner.isAlive();
+        }
+    }
+
+}
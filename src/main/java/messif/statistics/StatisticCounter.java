@@ -16,9 +16,23 @@
  */
 package messif.statistics;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
 
 
 /**
+ * Statistic that counts a long value.
+ *
+ * <p>
+ * The counter can be switched to the {@link #setStriped striped} mode, in which
+ * the {@link #add additions} of every thread are accumulated in a separate cell
+ * without any locking. The cells are merged into the counter and propagated to
+ * the bound statistics when the value is read, thus the heavily used global counters
+ * (e.g. the number of distance computations) do not become a contention point.
+ * The values seen by the bound {@link OperationStatistics operation statistics}
+ * are the same as in the standard mode.
+ * </p>
  *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
@@ -42,6 +56,7 @@ public final class StatisticCounter extends Statistics<StatisticCounter> {
     public void set(long value) {
         if (!canPerformOperation()) return;
         synchronized (this) {
+            flushDeferredUpdates();
             this.value = value;
             for (StatisticCounter stat : getBoundStats())
                 stat.set(value);
@@ -50,6 +65,11 @@ public final class StatisticCounter extends Statistics<StatisticCounter> {
 
     public void add(long value) {
         if (!canPerformOperation()) return;
+        StatisticCells<CounterCell> stripes = cells;
+        if (stripes != null) {
+            stripes.get().value += value;
+            return;
+        }
         synchronized (this) {
             this.value += value;
             for (StatisticCounter stat : getBoundStats())
@@ -61,7 +81,10 @@ public final class StatisticCounter extends Statistics<StatisticCounter> {
     public void sub(long value) { add(-value); }
     public void sub() { add(-1); }
     
-    public long get() { return value; }
+    public long get() {
+        flushAllDeferredUpdates();
+        return value;
+    }
 
     @Override
     public Long getValue() {
@@ -71,6 +94,7 @@ public final class StatisticCounter extends Statistics<StatisticCounter> {
     public void max(long value) {
         if (!canPerformOperation()) return;
         synchronized (this) {
+            flushDeferredUpdates();
             if (this.value < value)
                 this.value = value;
             for (StatisticCounter stat : getBoundStats())
@@ -81,6 +105,7 @@ public final class StatisticCounter extends Statistics<StatisticCounter> {
     public void min(long value) {
         if (!canPerformOperation()) return;
         synchronized (this) {
+            flushDeferredUpdates();
             if (this.value > value)
                 this.value = value;
             for (StatisticCounter stat : getBoundStats())
@@ -89,19 +114,113 @@ public final class StatisticCounter extends Statistics<StatisticCounter> {
     }
 
 
+    //****************** Striped counting ******************//
+
+    /** Cells with the additions of the respective threads, <tt>null</tt> if this counter is not striped */
+    private transient volatile StatisticCells<CounterCell> cells;
+
+    /** Binding version of the {@link StatisticRefCounter} this counter belongs to, for which the counter exists in all its bound statistics */
+    int refCounterVersion = -1;
+
+    /** Cell with the additions of one thread */
+    private static final class CounterCell extends StatisticCells.Cell {
+        /** Sum of the additions of the thread (written only by the owner thread) */
+        private volatile long value;
+        /** Part of the {@link #value} that was already merged into the counter (guarded by the counter lock) */
+        private long merged;
+    }
+
+    /**
+     * Returns whether this counter is in the striped mode.
+     * @return <tt>true</tt> if this counter accumulates the additions in per-thread cells
+     */
+    public boolean isStriped() {
+        return cells != null;
+    }
+
+    /**
+     * Switches this counter to/from the striped mode.
+     * In the striped mode, the {@link #add additions} are accumulated in per-thread
+     * cells without locking and merged into the counter when it is read.
+     * Note that the mode should be switched while the counter is not being updated.
+     * @param striped flag whether to use the striped mode
+     */
+    public synchronized void setStriped(boolean striped) {
+        if (striped == isStriped())
+            return;
+        if (striped) {
+            cells = new StatisticCells<CounterCell>() {
+                @Override
+                protected CounterCell createCell() {
+                    return new CounterCell();
+                }
+            };
+        } else {
+            flushDeferredUpdates();
+            cells = null;
+        }
+    }
+
+    @Override
+    protected void flushDeferredUpdates() {
+        StatisticCells<CounterCell> stripes = cells;
+        if (stripes != null)
+            mergeCells(stripes);
+    }
+
+    /**
+     * Merges the values of the cells into this counter and propagates them to the bound statistics.
+     * @param stripes the cells to merge
+     */
+    private synchronized void mergeCells(StatisticCells<CounterCell> stripes) {
+        Iterator<CounterCell> iterator = stripes.iterator();
+        while (iterator.hasNext()) {
+            CounterCell cell = iterator.next();
+            boolean terminated = cell.isThreadTerminated(); // Must be checked before reading the value
+            long cellValue = cell.value;
+            long delta = cellValue - cell.merged;
+            if (delta != 0) {
+                cell.merged = cellValue;
+                this.value += delta;
+                for (StatisticCounter stat : getBoundStats())
+                    stat.addDeferred(delta, cell.threadNum);
+            }
+            if (terminated)
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Adds a deferred update of a striped counter this counter is bound to.
+     * @param value the value to add
+     * @param threadNum the serial number of the thread that made the update
+     */
+    private void addDeferred(long value, Integer threadNum) {
+        if (!canPerformOperation(threadNum)) return;
+        synchronized (this) {
+            this.value += value;
+            for (StatisticCounter stat : getBoundStats())
+                stat.addDeferred(value, threadNum);
+        }
+    }
+
+
     //****************** Statistics merging ******************//
     
     protected synchronized void updateFrom(StatisticCounter sourceStat) {
-        this.value += sourceStat.value;
+        flushDeferredUpdates();
+        this.value += sourceStat.get();
     }
     
     protected synchronized void setFrom(StatisticCounter sourceStat) {
-        this.value = sourceStat.value;
+        flushDeferredUpdates();
+        this.value = sourceStat.get();
     }
     
     /** Reset the current statistic (this one only).
      */
     public void reset() {
+        flushAllDeferredUpdates();
         this.value = 0;
         setCheckpoint();
     }
@@ -127,6 +246,19 @@ public final class StatisticCounter extends Statistics<StatisticCounter> {
         return getStatistics(name, StatisticCounter.class);
     }
 
+    /**
+     * Create new statistic counter with specified name or get the one already existing.
+     * @param name the name of the statistic counter
+     * @param striped if <tt>true</tt>, the counter is switched to the {@link #setStriped striped} mode
+     * @return the global statistic counter
+     */
+    public static StatisticCounter getStatistics(String name, boolean striped) {
+        StatisticCounter counter = getStatistics(name);
+        if (striped)
+            counter.setStriped(true);
+        return counter;
+    }
+
     //****************** Text representation ******************//
     
     @Override
@@ -137,13 +269,27 @@ public final class StatisticCounter extends Statistics<StatisticCounter> {
     /** Reports if value of counter has been changed since the last setCheckpoint() call.
      */
     public boolean changedSinceCheckpoint() {
-        return (value != valueCheckpoint);
+        return (get() != valueCheckpoint);
     }
     
     /** Sets checkpoint. Stores the current state of counter.
      */
     public void setCheckpoint() {
-        valueCheckpoint = value;
+        valueCheckpoint = get();
+    }
+
+
+    //****************** Serialization ******************//
+
+    /**
+     * Serialization method.
+     * The deferred updates are merged before the value is stored.
+     * @param out the stream to store this object to
+     * @throws IOException if there was an error writing to the stream
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        flushDeferredUpdates();
+        out.defaultWriteObject();
     }
     
 }
@@ -0,0 +1,336 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.statistics;
+
+import java.util.Arrays;
+
+
+/**
+ * Statistic that maintains a histogram of the added values and provides their percentiles.
+ * The values are non-negative longs, typically latencies in microseconds.
+ *
+ * <p>
+ * The histogram uses logarithmic buckets that are linearly subdivided (similarly
+ * to the HDR histogram), i.e. the values up to {@value #SUB_BUCKET_COUNT} are
+ * counted exactly and the larger values with the relative error smaller than
+ * 1/{@value #SUB_BUCKET_HALF_COUNT}. The memory occupied by the histogram is
+ * therefore proportional to the logarithm of the maximal value and the percentiles
+ * are computed in constant time with respect to the number of added values.
+ * </p>
+ *
+ * <p>
+ * Since the histogram is cumulative, use {@link #resetWindow()} to get the
+ * percentiles of the values added since the previous call.
+ * </p>
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public final class StatisticHistogram extends Statistics<StatisticHistogram> {
+    /** Class serial id for serialization */
+    private static final long serialVersionUID = 1L;
+
+    //****************** Constants ******************//
+
+    /** Number of bits of the value that are kept exactly */
+    private static final int SUB_BUCKET_BITS = 8;
+    /** Number of values that are counted exactly */
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** Number of sub-buckets in every logarithmic bucket */
+    public static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+    /** Percentiles that are reported by default */
+    public static final double[] DEFAULT_PERCENTILES = { 50, 95, 99, 99.9 };
+
+
+    //****************** Histogram data ******************//
+
+    /** Number of values in the respective buckets (grows when a larger value is added) */
+    private long[] counts = new long[SUB_BUCKET_COUNT];
+    /** Number of added values */
+    private long count = 0;
+    /** Sum of the added values */
+    private double sum = 0;
+    /** Minimal added value */
+    private long min = Long.MAX_VALUE;
+    /** Maximal added value */
+    private long max = 0;
+    /** Backed-up count for checkpointing feature */
+    private long countCheckpoint = 0;
+
+
+    //****************** Bucket computations ******************//
+
+    /**
+     * Returns the index of the bucket for the given value.
+     * @param value the non-negative value
+     * @return the index of the bucket
+     */
+    static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int)value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int)(value >>> shift) - SUB_BUCKET_HALF_COUNT;
+    }
+
+    /**
+     * Returns the highest value that falls into the bucket with the given index.
+     * @param index the index of the bucket
+     * @return the highest value of the bucket
+     */
+    static long getBucketHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long mantissa = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+
+    //****************** Histogram operations ******************//
+
+    /**
+     * Adds a value to this histogram.
+     * Negative values are counted as zeros.
+     * @param value the value to add
+     */
+    public void addValue(long value) {
+        if (!canPerformOperation()) return;
+        if (value < 0)
+            value = 0;
+        synchronized (this) {
+            int index = getBucketIndex(value);
+            if (index >= counts.length)
+                counts = Arrays.copyOf(counts, index + SUB_BUCKET_HALF_COUNT);
+            counts[index]++;
+            count++;
+            sum += value;
+            if (value < min)
+                min = value;
+            if (value > max)
+                max = value;
+            for (StatisticHistogram stat : getBoundStats())
+                stat.addValue(value);
+        }
+    }
+
+    /**
+     * Returns the number of values added to this histogram.
+     * @return the number of values
+     */
+    public synchronized long getCnt() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of values added to this histogram.
+     * @return the sum of values
+     */
+    public synchronized double getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the average of values added to this histogram.
+     * @return the average of values or zero if no value was added
+     */
+    public synchronized double getAvg() {
+        return (count == 0)?0:sum/count;
+    }
+
+    /**
+     * Returns the minimal value added to this histogram.
+     * @return the minimal value or zero if no value was added
+     */
+    public synchronized long getMin() {
+        return (count == 0)?0:min;
+    }
+
+    /**
+     * Returns the maximal value added to this histogram.
+     * @return the maximal value or zero if no value was added
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the value at the given percentile.
+     * That is, the given percentage of the added values is smaller than or equal
+     * to the returned value (up to the precision of the histogram buckets).
+     * @param percentile the percentile to get (from 0 to 100)
+     * @return the value at the given percentile or zero if no value was added
+     * @throws IllegalArgumentException if the percentile is not within the 0 to 100 range
+     */
+    public synchronized long getPercentile(double percentile) throws IllegalArgumentException {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * count));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank)
+                return Math.max(min, Math.min(max, getBucketHighestValue(i)));
+        }
+        return max;
+    }
+
+    /**
+     * Returns the values at the given percentiles.
+     * @param percentiles the percentiles to get (from 0 to 100)
+     * @return the values at the respective percentiles
+     * @throws IllegalArgumentException if a percentile is not within the 0 to 100 range
+     */
+    public synchronized long[] getPercentiles(double... percentiles) throws IllegalArgumentException {
+        long[] ret = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++)
+            ret[i] = getPercentile(percentiles[i]);
+        return ret;
+    }
+
+    /**
+     * Resets this histogram and returns a copy of its values gathered so far.
+     * This can be used to report percentiles of consecutive time windows.
+     * The returned copy is not registered nor bound to any statistic.
+     * @return a copy of this histogram before the reset
+     */
+    public synchronized StatisticHistogram resetWindow() {
+        StatisticHistogram window = new StatisticHistogram(getName());
+        window.setFrom(this);
+        reset();
+        return window;
+    }
+
+    @Override
+    public String getValue() {
+        return printPercentiles(DEFAULT_PERCENTILES);
+    }
+
+
+    //****************** Statistics merging ******************//
+
+    @Override
+    protected synchronized void updateFrom(StatisticHistogram sourceStat) {
+        long[] sourceCounts = sourceStat.counts;
+        if (sourceCounts.length > counts.length)
+            counts = Arrays.copyOf(counts, sourceCounts.length);
+        for (int i = 0; i < sourceCounts.length; i++)
+            counts[i] += sourceCounts[i];
+        count += sourceStat.count;
+        sum += sourceStat.sum;
+        if (sourceStat.min < min)
+            min = sourceStat.min;
+        if (sourceStat.max > max)
+            max = sourceStat.max;
+    }
+
+    @Override
+    protected synchronized void setFrom(StatisticHistogram sourceStat) {
+        counts = sourceStat.counts.clone();
+        count = sourceStat.count;
+        sum = sourceStat.sum;
+        min = sourceStat.min;
+        max = sourceStat.max;
+    }
+
+    @Override
+    public synchronized void reset() {
+        counts = new long[SUB_BUCKET_COUNT];
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        setCheckpoint();
+    }
+
+
+    //****************** Constructors ******************//
+
+    /**
+     * Creates a new instance of StatisticHistogram.
+     * @param name the requested name of the statistics
+     */
+    protected StatisticHistogram(String name) {
+        super(name);
+    }
+
+
+    //****************** Creator ******************//
+
+    /**
+     * Factory method for creating a new statistic histogram with the specified name or get the one already existing.
+     * @param name requested name of the statistics
+     * @return instance of {@link StatisticHistogram} having the passed name.
+     * @throws ClassCastException if the statistics of the given name exists, but is of a different class than {@link StatisticHistogram}
+     */
+    public static StatisticHistogram getStatistics(String name) throws ClassCastException {
+        return getStatistics(name, StatisticHistogram.class);
+    }
+
+
+    //****************** Text representation ******************//
+
+    /**
+     * Returns a string with the number of values, their average, the given percentiles and the maximum.
+     * @param percentiles the percentiles to print (from 0 to 100)
+     * @return a string with the values at the given percentiles
+     * @throws IllegalArgumentException if a percentile is not within the 0 to 100 range
+     */
+    public synchronized String printPercentiles(double... percentiles) throws IllegalArgumentException {
+        StringBuilder str = new StringBuilder();
+        str.append("cnt: ").append(count);
+        str.append(", avg: ").append(getAvg());
+        for (double percentile : percentiles) {
+            str.append(", p");
+            if (percentile == Math.rint(percentile))
+                str.append((long)percentile);
+            else
+                str.append(Double.toString(percentile).replace(".", ""));
+            str.append(": ").append(getPercentile(percentile));
+        }
+        str.append(", max: ").append(max);
+        return str.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getName() + ": " + getValue();
+    }
+
+    /**
+     * Test whether this statistics has been changed since the last checkpoint.
+     * @return <code>true</code> if it has been changed, otherwise <code>false</code>.
+     */
+    public boolean changedSinceCheckpoint() {
+        return (count != countCheckpoint);
+    }
+
+    /**
+     * Sets checkpoint. Stores the current number of values.
+     */
+    public void setCheckpoint() {
+        countCheckpoint = count;
+    }
+
+    @Override
+    protected StatisticHistogram cast() {
+        return this;
+    }
+}
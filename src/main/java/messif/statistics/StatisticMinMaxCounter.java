@@ -16,10 +16,19 @@
  */
 package messif.statistics;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.*;
 
 
 /**
+ * Statistic that maintains the minimum, maximum, sum and count of the added values.
+ *
+ * <p>
+ * As with the {@link StatisticCounter}, this statistic can be switched to the
+ * {@link #setStriped striped} mode, in which the values added by every thread
+ * are aggregated in a separate cell and merged when the statistic is read.
+ * </p>
  *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
@@ -40,6 +49,14 @@ public final class StatisticMinMaxCounter extends Statistics<StatisticMinMaxCoun
     
     public void addValue(double value) {
         if (!canPerformOperation()) return;
+        StatisticCells<MinMaxCell> stripes = cells;
+        if (stripes != null) {
+            MinMaxCell cell = stripes.get();
+            synchronized (cell) {
+                cell.add(value, value, value, 1, 1);
+            }
+            return;
+        }
         synchronized (this) {
             sum += value;
             if (count == 0) {
@@ -58,6 +75,14 @@ public final class StatisticMinMaxCounter extends Statistics<StatisticMinMaxCoun
     }
     public void removeValue(double value) {
         if (!canPerformOperation()) return;
+        StatisticCells<MinMaxCell> stripes = cells;
+        if (stripes != null) {
+            MinMaxCell cell = stripes.get();
+            synchronized (cell) {
+                cell.add(Double.NaN, Double.NaN, -value, -1, 0);
+            }
+            return;
+        }
         synchronized (this) {
             sum -= value;
             count--;
@@ -66,17 +91,155 @@ public final class StatisticMinMaxCounter extends Statistics<StatisticMinMaxCoun
         }
     }
     public synchronized void clear() {
+        flushDeferredUpdates();
         min = Double.MAX_VALUE;
         max = Double.MIN_VALUE;
         sum = 0;
         count = 0;
     }
     
-    public double getMin() { return min; }
-    public double getMax() { return max; }
-    public double getSum() { return sum; }
-    public double getCnt() { return count; }
-    public double getAvg() { return (count == 0)?0:sum/count; }
+    public double getMin() { flushAllDeferredUpdates(); return min; }
+    public double getMax() { flushAllDeferredUpdates(); return max; }
+    public double getSum() { flushAllDeferredUpdates(); return sum; }
+    public double getCnt() { flushAllDeferredUpdates(); return count; }
+    public double getAvg() { flushAllDeferredUpdates(); return (count == 0)?0:sum/count; }
+
+
+    /****************** Striped counting ******************/
+
+    /** Cells with the values of the respective threads, <tt>null</tt> if this statistic is not striped */
+    private transient volatile StatisticCells<MinMaxCell> cells;
+
+    /** Cell with the aggregated values of one thread that were not merged yet (guarded by the cell lock) */
+    private static final class MinMaxCell extends StatisticCells.Cell {
+        /** Minimal added value */
+        private double min = Double.NaN;
+        /** Maximal added value */
+        private double max = Double.NaN;
+        /** Sum of the added minus removed values */
+        private double sum;
+        /** Number of the added minus removed values */
+        private long count;
+        /** Number of the added values */
+        private long added;
+
+        /**
+         * Aggregates the given values into this cell.
+         * @param min the minimal added value (ignored if nothing was added)
+         * @param max the maximal added value (ignored if nothing was added)
+         * @param sum the sum of the added minus removed values
+         * @param count the number of the added minus removed values
+         * @param added the number of the added values
+         */
+        private void add(double min, double max, double sum, long count, long added) {
+            if (added > 0) {
+                if (this.added == 0 || min < this.min)
+                    this.min = min;
+                if (this.added == 0 || max > this.max)
+                    this.max = max;
+                this.added += added;
+            }
+            this.sum += sum;
+            this.count += count;
+        }
+    }
+
+    /**
+     * Returns whether this statistic is in the striped mode.
+     * @return <tt>true</tt> if this statistic aggregates the values in per-thread cells
+     */
+    public boolean isStriped() {
+        return cells != null;
+    }
+
+    /**
+     * Switches this statistic to/from the striped mode.
+     * In the striped mode, the added and removed values are aggregated in per-thread
+     * cells and merged into this statistic when it is read.
+     * Note that the mode should be switched while the statistic is not being updated.
+     * @param striped flag whether to use the striped mode
+     */
+    public synchronized void setStriped(boolean striped) {
+        if (striped == isStriped())
+            return;
+        if (striped) {
+            cells = new StatisticCells<MinMaxCell>() {
+                @Override
+                protected MinMaxCell createCell() {
+                    return new MinMaxCell();
+                }
+            };
+        } else {
+            flushDeferredUpdates();
+            cells = null;
+        }
+    }
+
+    @Override
+    protected void flushDeferredUpdates() {
+        StatisticCells<MinMaxCell> stripes = cells;
+        if (stripes != null)
+            mergeCells(stripes);
+    }
+
+    /**
+     * Merges the aggregated values of the cells into this statistic and propagates them to the bound statistics.
+     * @param stripes the cells to merge
+     */
+    private synchronized void mergeCells(StatisticCells<MinMaxCell> stripes) {
+        Iterator<MinMaxCell> iterator = stripes.iterator();
+        while (iterator.hasNext()) {
+            MinMaxCell cell = iterator.next();
+            boolean terminated = cell.isThreadTerminated(); // Must be checked before reading the values
+            double cellMin, cellMax, cellSum;
+            long cellCount, cellAdded;
+            synchronized (cell) {
+                cellMin = cell.min;
+                cellMax = cell.max;
+                cellSum = cell.sum;
+                cellCount = cell.count;
+                cellAdded = cell.added;
+                cell.sum = 0;
+                cell.count = 0;
+                cell.added = 0;
+            }
+            if (cellAdded != 0 || cellCount != 0 || cellSum != 0)
+                addDeferred(cellMin, cellMax, cellSum, cellCount, cellAdded, null);
+            if (terminated)
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Adds the aggregated values of a striped statistic.
+     * @param min the minimal added value (ignored if nothing was added)
+     * @param max the maximal added value (ignored if nothing was added)
+     * @param sum the sum of the added minus removed values
+     * @param count the number of the added minus removed values
+     * @param added the number of the added values
+     * @param threadNum the serial number of the thread that made the update or
+     *          <tt>null</tt> if the values are merged from the own cells
+     */
+    private void addDeferred(double min, double max, double sum, long count, long added, Integer threadNum) {
+        if (threadNum != null && !canPerformOperation(threadNum)) return;
+        synchronized (this) {
+            if (added > 0) {
+                if (this.count == 0) {
+                    this.min = min;
+                    this.max = max;
+                } else {
+                    if (min < this.min)
+                        this.min = min;
+                    if (max > this.max)
+                        this.max = max;
+                }
+            }
+            this.sum += sum;
+            this.count += count;
+            for (StatisticMinMaxCounter stat : getBoundStats())
+                stat.addDeferred(min, max, sum, count, added, threadNum);
+        }
+    }
 
     @Override
     public String getValue() {
@@ -88,6 +251,8 @@ public final class StatisticMinMaxCounter extends Statistics<StatisticMinMaxCoun
     /****************** Statistics merging ******************/
     
     protected synchronized void updateFrom(StatisticMinMaxCounter sourceStat) {
+        flushDeferredUpdates();
+        sourceStat.flushAllDeferredUpdates();
         if (this.min > sourceStat.min) this.min = sourceStat.min;
         if (this.max < sourceStat.max) this.max = sourceStat.max;
         this.sum += sourceStat.sum;
@@ -95,6 +260,8 @@ public final class StatisticMinMaxCounter extends Statistics<StatisticMinMaxCoun
     }
     
     protected synchronized void setFrom(StatisticMinMaxCounter sourceStat) {
+        flushDeferredUpdates();
+        sourceStat.flushAllDeferredUpdates();
         this.min = sourceStat.min;
         this.max = sourceStat.max;
         this.sum = sourceStat.sum;
@@ -104,6 +271,7 @@ public final class StatisticMinMaxCounter extends Statistics<StatisticMinMaxCoun
     /** Reset the current statistic (this one only).
      */
     public void reset() {
+        flushAllDeferredUpdates();
         min = Double.MAX_VALUE;
         max = Double.MIN_VALUE;
         sum = 0;
@@ -130,6 +298,7 @@ public final class StatisticMinMaxCounter extends Statistics<StatisticMinMaxCoun
     /****************** Text representation ******************/
     
     public String toString() {
+        flushAllDeferredUpdates();
         return new StringBuffer().
                 append(getName()).append(".min: ").append(min).append(", ").
                 append(getName()).append(".max: ").append(max).append(", ").
@@ -142,15 +311,27 @@ public final class StatisticMinMaxCounter extends Statistics<StatisticMinMaxCoun
     /** Reports if value of min/max has been changed since the last setCheckpoint() call.
      */
     public boolean changedSinceCheckpoint() {
+        flushAllDeferredUpdates();
         return (count != countCheckpoint);
     }
     
     /** Sets checkpoint. Stores the current state of min/max.
      */
     public void setCheckpoint() {
+        flushAllDeferredUpdates();
         countCheckpoint = count;
     }
 
+    /**
+     * Merges the pending striped values before this statistic is serialized.
+     * @param out the stream to write this statistic to
+     * @throws IOException if there was an error writing to the stream
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        flushDeferredUpdates();
+        out.defaultWriteObject();
+    }
+
     @Override
     protected StatisticMinMaxCounter cast() {
         return this;
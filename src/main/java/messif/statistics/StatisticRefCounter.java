@@ -18,8 +18,16 @@ package messif.statistics;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Statistic that maintains a {@link StatisticCounter} for every reference key.
+ *
+ * <p>
+ * Updates of the keys that already have a counter bypass the lock of this statistic
+ * and go directly to the respective counter. Together with the {@link #setStriped striped}
+ * mode of the counters, this allows concurrent updates without any contention.
+ * </p>
  *
  * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
  * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
@@ -31,7 +39,13 @@ public final class StatisticRefCounter extends Statistics<StatisticRefCounter> {
     private static final long serialVersionUID = 1L;
     
     /****************** Reference counter data ******************/
-    protected Map<Object, StatisticCounter> values = new HashMap<Object, StatisticCounter>();
+    protected Map<Object, StatisticCounter> values = new ConcurrentHashMap<Object, StatisticCounter>();
+
+    /** Flag whether the counters are created in the striped mode */
+    private boolean striped = false;
+
+    /** Version of the bindings, the counters with a different version must be checked for existence in the bound statistics */
+    private volatile int bindingVersion = 0;
     
     private long valueSumCheckpoint = 0;    /* backed-up state of value for checkpointing */
     
@@ -69,6 +83,8 @@ public final class StatisticRefCounter extends Statistics<StatisticRefCounter> {
         // Create new counter, if there is not one associated with the key
         if (counter == null && createIfNotExist) {
             counter = new StatisticCounter(new StringBuffer(getName()).append(".").append(key.toString()).toString(), initialValue);
+            if (striped)
+                counter.setStriped(true);
             values.put(key, counter);
         }
         
@@ -115,6 +131,7 @@ public final class StatisticRefCounter extends Statistics<StatisticRefCounter> {
                     boundCounter.unbind();
             }
 
+            invalidateBindings();
             return counter;
         }
     }
@@ -124,15 +141,24 @@ public final class StatisticRefCounter extends Statistics<StatisticRefCounter> {
     public void add(Object key, long value) {
         if (!canPerformOperation())
             return;
-        
+
+        // Fast path for the counters that are known to exist on all bound statistics
+        StatisticCounter counter = values.get(key);
+        if (counter != null && counter.refCounterVersion == bindingVersion) {
+            counter.add(value);
+            return;
+        }
+
         synchronized (this) {
-            StatisticCounter counter = getStatisticCounter(key, true);
+            int version = bindingVersion;
+            counter = getStatisticCounter(key, true);
 
             // Create this key on all bound statistics
             for (StatisticRefCounter stat : getBoundStats())
                 if (!stat.values.containsKey(key))
                     stat.getStatisticCounter(key, true).bindTo(counter);
 
+            counter.refCounterVersion = version;
             counter.add(value);
         }
     }
@@ -175,7 +201,52 @@ public final class StatisticRefCounter extends Statistics<StatisticRefCounter> {
         }
     }
 
-    public synchronized void clear() { values.clear(); }
+    public synchronized void clear() { values.clear(); invalidateBindings(); }
+
+
+    /****************** Striped counting ******************/
+
+    /**
+     * Returns whether the counters of this statistic are in the striped mode.
+     * @return <tt>true</tt> if the counters aggregate the values in per-thread cells
+     */
+    public boolean isStriped() {
+        return striped;
+    }
+
+    /**
+     * Switches the counters of this statistic to/from the {@link StatisticCounter#setStriped striped} mode.
+     * The mode is applied to the existing counters as well as the counters created later.
+     * @param striped flag whether to use the striped mode
+     */
+    public synchronized void setStriped(boolean striped) {
+        this.striped = striped;
+        for (StatisticCounter counter : values.values())
+            counter.setStriped(striped);
+    }
+
+    /**
+     * Forces the next updates of this statistic and the statistic this one is bound to
+     * to check the existence of the updated keys in the bound statistics.
+     */
+    private void invalidateBindings() {
+        bindingVersion++;
+        StatisticRefCounter stat = getBoundTo();
+        if (stat != null)
+            stat.bindingVersion++;
+    }
+
+    @Override
+    protected void addBoundStat(StatisticRefCounter stat) {
+        super.addBoundStat(stat);
+        bindingVersion++;
+    }
+
+    @Override
+    protected void removeBoundStat(StatisticRefCounter stat) {
+        super.removeBoundStat(stat);
+        bindingVersion++;
+    }
 
     
     /****************** Statistics merging ******************/
@@ -204,7 +275,8 @@ public final class StatisticRefCounter extends Statistics<StatisticRefCounter> {
         for (StatisticCounter stat : values.values())
             stat.unbind();
         
-        values = new HashMap<Object, StatisticCounter>();
+        values = new ConcurrentHashMap<Object, StatisticCounter>();
+        invalidateBindings();
         setCheckpoint();
     }
         
@@ -287,6 +359,19 @@ public final class StatisticRefCounter extends Statistics<StatisticRefCounter> {
         return getStatistics(name, StatisticRefCounter.class);
     }
 
+    /**
+     * Create new statistic object with specified name or get the one already existing.
+     * @param name the name of the statistic
+     * @param striped if <tt>true</tt>, the counters are switched to the {@link #setStriped striped} mode
+     * @return the global statistic
+     */
+    public static StatisticRefCounter getStatistics(String name, boolean striped) {
+        StatisticRefCounter counter = getStatistics(name);
+        if (striped)
+            counter.setStriped(true);
+        return counter;
+    }
+
     
     /****************** Text representation ******************/
     
@@ -214,6 +214,26 @@ public abstract class Statistics<TSelf extends Statistics<TSelf>> implements Ser
      * Reset the value of this statistic.
      */
     public abstract void reset();
+
+    /**
+     * Merges the deferred updates of this statistic into its value and propagates them to the bound statistics.
+     * The striped statistics defer the updates made by the concurrent threads until they are read,
+     * this implementation does nothing.
+     */
+    protected void flushDeferredUpdates() {
+    }
+
+    /**
+     * Merges the deferred updates of all the statistics this statistic is (transitively) bound to
+     * and of this statistic.
+     * This must be called before the value of this statistic is read so that
+     * the updates of the striped statistics are visible.
+     */
+    protected final void flushAllDeferredUpdates() {
+        for (TSelf stat = boundTo; stat != null; stat = stat.getBoundTo())
+            stat.flushDeferredUpdates();
+        flushDeferredUpdates();
+    }
     
 
     //****************** Statistic binding ******************//
@@ -250,6 +270,9 @@ public abstract class Statistics<TSelf extends Statistics<TSelf>> implements Ser
      */
     public void unbind() {
         try {
+            // Updates deferred before unbinding must be delivered to this statistic
+            if (boundTo != null)
+                flushAllDeferredUpdates();
             if (boundTo != null)
                 synchronized (boundTo) {
                     synchronized (this) {
@@ -277,6 +300,9 @@ public abstract class Statistics<TSelf extends Statistics<TSelf>> implements Ser
         // Ignore null argument
         if (object == null)
             return;
+
+        // Updates deferred before binding must not be delivered to this statistic
+        object.flushAllDeferredUpdates();
         
         // Must maintain lock order (as in the statistics internal method call)
         synchronized (object) {
@@ -302,7 +328,18 @@ public abstract class Statistics<TSelf extends Statistics<TSelf>> implements Ser
     static Integer getCurrentThreadLock() {
         return threadNum.get();
     }
-    
+
+    /**
+     * Assigns a new serial number to the current thread.
+     * The {@link OperationStatistics} of the thread that created the current one
+     * will no longer receive the updates made by the current thread.
+     * This is used by the pooled threads that are shared by all the operations
+     * and thus must not inherit the serial number of the thread that started them.
+     */
+    public static void resetCurrentThreadLock() {
+        threadNum.set(nextThreadNum.getAndIncrement());
+    }
+
     /**
      * Lock this statistic's updates to current thread (and the threads started from it).
      */
@@ -325,6 +362,15 @@ public abstract class Statistics<TSelf extends Statistics<TSelf>> implements Ser
         return statisticsEnabled && ((lockedThreadNum == null) || lockedThreadNum.equals(threadNum.get()));
     }
 
+    /**
+     * Check if this statistic can receive a deferred update made by a thread with the given serial number.
+     * @param threadNum the serial number of the thread that made the update
+     * @return <tt>true</tt> if this statistic is not locked to another thread
+     */
+    protected final boolean canPerformOperation(Integer threadNum) {
+        return (lockedThreadNum == null) || lockedThreadNum.equals(threadNum);
+    }
+
 
     //****************** Suspending Stastics Counting ******************//
 
@@ -70,6 +70,7 @@ import messif.operations.QueryOperation;
 import messif.operations.RankingQueryOperation;
 import messif.operations.RankingSingleQueryOperation;
 import messif.statistics.OperationStatistics;
+import messif.statistics.StatisticHistogram;
 import messif.statistics.Statistics;
 import messif.utility.reflection.ConstructorInstantiator;
 import messif.utility.reflection.InstantiatorSignature;
@@ -1878,6 +1879,89 @@ public class CoreApplication {
         return true;
     }
 
+    /**
+     * Print percentiles of the global {@link StatisticHistogram histogram} statistics.
+     * The algorithms record the latencies (in microseconds) of the executed operations
+     * into the histograms named {@value Algorithm#OPERATION_LATENCY_STATISTICS_PREFIX}<em>operation-class</em>,
+     * i.e. the suffix is the {@link Class#getSimpleName() simple name} of the operation class (e.g. <em>KNNQueryOperation</em>).
+     * <p>
+     * Two optional arguments are accepted:
+     *   <ul>
+     *     <li>regular expression applied on names as a filter (defaults to all histograms)</li>
+     *     <li>comma-separated list of percentiles to print (defaults to 50,95,99,99.9)</li>
+     *   </ul>
+     * </p>
+     * <p>
+     * Example of usage:
+     * <pre>
+     * MESSIF &gt;&gt;&gt; statisticsPercentiles OperationLatency.* 50,99,99.9
+     * </pre>
+     * </p>
+     *
+     * @param out a stream where the application writes information for the user
+     * @param args regular expression to match statistic names and the list of percentiles
+     * @return <tt>true</tt> if the method completes successfully, otherwise <tt>false</tt>
+     */
+    @ExecutableMethod(description = "show percentiles of global histogram statistics", arguments = { "statistic name regexp (not required)", "comma-separated percentiles (not required)" })
+    public boolean statisticsPercentiles(PrintStream out, String... args) {
+        return printStatisticsPercentiles(out, false, args);
+    }
+
+    /**
+     * Print percentiles of the global {@link StatisticHistogram histogram} statistics and reset them.
+     * This allows to report the percentiles of consecutive time windows.
+     * The arguments are the same as for the {@link #statisticsPercentiles} method.
+     * <p>
+     * Example of usage:
+     * <pre>
+     * MESSIF &gt;&gt;&gt; statisticsPercentilesWindow OperationLatency.KNNQueryOperation
+     * </pre>
+     * </p>
+     *
+     * @param out a stream where the application writes information for the user
+     * @param args regular expression to match statistic names and the list of percentiles
+     * @return <tt>true</tt> if the method completes successfully, otherwise <tt>false</tt>
+     */
+    @ExecutableMethod(description = "show percentiles of global histogram statistics and reset them", arguments = { "statistic name regexp (not required)", "comma-separated percentiles (not required)" })
+    public boolean statisticsPercentilesWindow(PrintStream out, String... args) {
+        return printStatisticsPercentiles(out, true, args);
+    }
+
+    /**
+     * Print percentiles of the global {@link StatisticHistogram histogram} statistics.
+     * @param out a stream where the application writes information for the user
+     * @param resetWindow flag whether to reset the printed histograms
+     * @param args regular expression to match statistic names and the list of percentiles
+     * @return <tt>true</tt> if the method completes successfully, otherwise <tt>false</tt>
+     */
+    private boolean printStatisticsPercentiles(PrintStream out, boolean resetWindow, String... args) {
+        double[] percentiles = StatisticHistogram.DEFAULT_PERCENTILES;
+        try {
+            if (args.length >= 3) {
+                String[] percentileStrings = args[2].split("\\s*,\\s*");
+                percentiles = new double[percentileStrings.length];
+                for (int i = 0; i < percentileStrings.length; i++)
+                    percentiles[i] = Double.parseDouble(percentileStrings[i]);
+            }
+            Iterator<Statistics<?>> iterator = Statistics.getAllStatistics(args.length >= 2 ? args[1] : null);
+            while (iterator.hasNext()) {
+                Statistics<?> stat = iterator.next();
+                if (stat instanceof StatisticHistogram) {
+                    StatisticHistogram histogram = (StatisticHistogram)stat;
+                    if (resetWindow)
+                        histogram = histogram.resetWindow();
+                    out.print(histogram.getName());
+                    out.print(": ");
+                    out.println(histogram.printPercentiles(percentiles));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            out.println("Cannot print percentiles: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Print statistics gathered by the last executed operation.
      * Only the {@link messif.statistics.Statistics#bindTo bound} statistics are
@@ -0,0 +1,87 @@
+/*
+ *  This file is part of MESSIF library.
+ *
+ *  MESSIF library is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  MESSIF library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with MESSIF library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package messif.utility;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import messif.statistics.OperationStatistics;
+import messif.statistics.Statistics;
+
+/**
+ * Provides the fork-join pool shared by all the parallel computations of the library,
+ * e.g. the distance computations of the pivot choosers, the evaluation of the similarity
+ * joins or the serialization of the batches stored in the disk storage.
+ * The pool is created on the first use with the parallelism equal to the number of processors.
+ * Its worker threads are daemons, so they never prevent the virtual machine from exiting.
+ * The worker threads get their own {@link Statistics#resetCurrentThreadLock() statistics serial number},
+ * so that the distance computations of the tasks are never counted in the {@link OperationStatistics}
+ * of the operation whose thread happened to start the worker. The tasks that need to account
+ * their work to an operation must gather their statistics and merge them into the operation statistics.
+ *
+ * @author Michal Batko, Masaryk University, Brno, Czech Republic, batko@fi.muni.cz
+ * @author Vlastislav Dohnal, Masaryk University, Brno, Czech Republic, dohnal@fi.muni.cz
+ * @author David Novak, Masaryk University, Brno, Czech Republic, david.novak@fi.muni.cz
+ */
+public class SharedForkJoinPool {
+
+    /** Shared fork-join pool, created on first use */
+    private static ForkJoinPool instance;
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private SharedForkJoinPool() {
+    }
+
+    /**
+     * Returns the shared fork-join pool.
+     * The pool is created on the first call.
+     * @return the shared fork-join pool
+     */
+    public static synchronized ForkJoinPool getInstance() {
+        if (instance == null)
+            instance = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    return new WorkerThread(pool);
+                }
+            }, null, false);
+        return instance;
+    }
+
+
+    /**
+     * Daemon worker thread of the shared pool with its own statistics serial number.
+     */
+    private static class WorkerThread extends ForkJoinWorkerThread {
+        /**
+         * Creates a new worker thread of the given pool.
+         * @param pool the pool this thread works in
+         */
+        private WorkerThread(ForkJoinPool pool) {
+            super(pool);
+            setDaemon(true);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            Statistics.resetCurrentThreadLock();
+        }
+    }
+
+}
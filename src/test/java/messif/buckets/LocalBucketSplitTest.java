@@ -0,0 +1,180 @@
+/*
+ *  LocalBucketSplitTest
+ *
+ */
+
+package messif.buckets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+import messif.buckets.impl.MemoryStorageBucket;
+import messif.buckets.split.impl.SplitPolicyBallPartitioning;
+import messif.objects.LocalAbstractObject;
+import messif.objects.impl.ObjectIntVectorL1;
+import messif.objects.keys.AbstractObjectKey;
+import messif.objects.util.AbstractObjectIterator;
+
+/**
+ *
+ * @author xbatko
+ */
+public class LocalBucketSplitTest extends TestCase {
+
+    private static final int objectCount = 5000;
+    private static final float radius = 2500;
+
+    public LocalBucketSplitTest(String testName) {
+        super(testName);
+    }
+
+    private static LocalAbstractObject createObject(int i) {
+        LocalAbstractObject object = new ObjectIntVectorL1(new int[] { i, 0 });
+        object.setObjectKey(new AbstractObjectKey("obj" + i));
+        return object;
+    }
+
+    private static SplitPolicyBallPartitioning createPolicy() {
+        SplitPolicyBallPartitioning policy = new SplitPolicyBallPartitioning();
+        policy.setPivot(new ObjectIntVectorL1(new int[] { 0, 0 }));
+        policy.setRadius(radius);
+        return policy;
+    }
+
+    private static void assertPartition(LocalBucket bucket, int expectedPartition) {
+        SplitPolicyBallPartitioning policy = createPolicy();
+        AbstractObjectIterator<LocalAbstractObject> iterator = bucket.getAllObjects();
+        while (iterator.hasNext())
+            assertEquals(expectedPartition, policy.match(iterator.next()));
+    }
+
+    /**
+     * Test of the asynchronous split with concurrent inserts and deletes.
+     */
+    public void testSplitAsync() throws Exception {
+        LocalBucket bucket = new MemoryStorageBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false);
+        for (int i = 0; i < objectCount; i++)
+            bucket.addObject(createObject(i));
+
+        List<Bucket> targetBuckets = new ArrayList<Bucket>();
+        targetBuckets.add(null);
+        // The split waits for the latch, so the following modifications happen during the split
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        targetBuckets.add(new MemoryStorageBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public void addObject(LocalAbstractObject object) throws BucketStorageException {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                super.addObject(object);
+            }
+        });
+        Future<Integer> future = bucket.splitAsync(createPolicy(), targetBuckets, null, SplitPolicyBallPartitioning.PART_ID_INNER);
+        try {
+            bucket.splitAsync(createPolicy(), new ArrayList<Bucket>(targetBuckets), null, SplitPolicyBallPartitioning.PART_ID_INNER);
+            fail("Concurrent split must not be allowed");
+        } catch (IllegalStateException ignore) {
+        }
+
+        // Modify the bucket while the split is running (the even objects are deleted, new objects are added)
+        for (int i = 0; i < objectCount; i += 2)
+            assertEquals(1, bucket.deleteObject("obj" + i));
+        for (int i = objectCount; i < objectCount + 1000; i++)
+            bucket.addObject(createObject(i));
+        assertTrue(bucket.isSplitRunning());
+        startLatch.countDown();
+
+        int moved = future.get();
+        assertFalse(bucket.isSplitRunning());
+
+        LocalBucket target = (LocalBucket)targetBuckets.get(SplitPolicyBallPartitioning.PART_ID_OUTER);
+        int expectedInner = 0;
+        int expectedOuter = 0;
+        for (int i = 1; i < objectCount + 1000; i++)
+            if (i >= objectCount || i % 2 == 1) {
+                if (i <= radius)
+                    expectedInner++;
+                else
+                    expectedOuter++;
+            }
+        assertEquals(expectedOuter, moved);
+        assertEquals(expectedInner, bucket.getObjectCount());
+        assertEquals(expectedOuter, target.getObjectCount());
+        assertPartition(bucket, SplitPolicyBallPartitioning.PART_ID_INNER);
+        assertPartition(target, SplitPolicyBallPartitioning.PART_ID_OUTER);
+    }
+
+    /**
+     * Test of the blocking split that creates the target bucket in the dispatcher.
+     */
+    public void testSplitCreatedBucketHidden() throws Throwable {
+        // The created bucket stops the split when it is being filled
+        final CountDownLatch fillStarted = new CountDownLatch(1);
+        final CountDownLatch fillResumed = new CountDownLatch(1);
+        final BucketDispatcher dispatcher = new BucketDispatcher(10, Long.MAX_VALUE, MemoryStorageBucket.class) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public LocalBucket createStandaloneBucket() {
+                return new MemoryStorageBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false) {
+                    private static final long serialVersionUID = 1L;
+                    @Override
+                    public void addObject(LocalAbstractObject object) throws BucketStorageException {
+                        fillStarted.countDown();
+                        try {
+                            fillResumed.await();
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        super.addObject(object);
+                    }
+                };
+            }
+        };
+        final LocalBucket bucket = dispatcher.createBucket();
+        for (int i = 0; i < objectCount; i++)
+            bucket.addObject(createObject(i));
+        final SplitPolicyBallPartitioning policy = createPolicy();
+
+        final List<Bucket> targetBuckets = new ArrayList<Bucket>();
+        final AtomicInteger moved = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread splitThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    moved.set(bucket.split(policy, targetBuckets, dispatcher, SplitPolicyBallPartitioning.PART_ID_INNER));
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        splitThread.start();
+
+        // The bucket is accessible and the target bucket is not visible until the split is committed
+        fillStarted.await();
+        assertTrue(bucket.isSplitRunning());
+        assertEquals(1, dispatcher.getBucketCount());
+        bucket.addObject(createObject(objectCount));
+        fillResumed.countDown();
+        splitThread.join();
+        if (failure.get() != null)
+            throw failure.get();
+
+        assertFalse(bucket.isSplitRunning());
+        assertEquals(2, dispatcher.getBucketCount());
+        LocalBucket target = (LocalBucket)targetBuckets.get(SplitPolicyBallPartitioning.PART_ID_OUTER);
+        assertSame(target, dispatcher.getBucket(target.getBucketID()));
+        assertEquals(objectCount - (int)radius, moved.get());
+        assertEquals(objectCount - (int)radius, target.getObjectCount());
+        assertEquals((int)radius + 1, bucket.getObjectCount());
+        assertPartition(bucket, SplitPolicyBallPartitioning.PART_ID_INNER);
+        assertPartition(target, SplitPolicyBallPartitioning.PART_ID_OUTER);
+    }
+}
@@ -5,8 +5,18 @@
 
 package messif.buckets;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import junit.framework.TestCase;
+import messif.buckets.impl.DiskBlockBucket;
+import messif.buckets.impl.DiskBlockLocatorBucket;
+import messif.buckets.impl.DiskBlockObjectKeyBucket;
+import messif.buckets.impl.DiskBlockObjectKeyMemoryBucket;
 import messif.buckets.impl.MemoryStorageNoDupsBucket;
 import messif.objects.LocalAbstractObject;
 import messif.objects.util.AbstractObjectIterator;
@@ -56,6 +66,58 @@ public class LocalBucketTest extends TestCase {
         }
     }
 
+    /**
+     * Creates the disk buckets with the object-count capacity, one for each index over the disk storage.
+     */
+    private static List<LocalBucket> createDiskBuckets(long capacity) throws Exception {
+        List<LocalBucket> buckets = new ArrayList<LocalBucket>();
+        for (int i = 0; i < 4; i++) {
+            Map<String, Object> parameters = new HashMap<String, Object>();
+            parameters.put("file", File.createTempFile(TestConstants.storfilePrefix, ".stor", new File(".")));
+            parameters.put("serializator", TestConstants.createSerializator());
+            parameters.put("frontCodedIndex", true);
+            switch (i) {
+                case 0: buckets.add(DiskBlockBucket.getBucket(capacity, capacity, 0, false, parameters)); break;
+                case 1: buckets.add(DiskBlockObjectKeyBucket.getBucket(capacity, capacity, 0, false, parameters)); break;
+                case 2: buckets.add(DiskBlockObjectKeyMemoryBucket.getBucket(capacity, capacity, 0, false, parameters)); break;
+                default: buckets.add(DiskBlockLocatorBucket.getBucket(capacity, capacity, 0, false, parameters)); break;
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Test of addObjects method with the batched store into the disk buckets, of class LocalBucket.
+     */
+    public void testAddObjects() throws Throwable {
+        for (LocalBucket instance : createDiskBuckets(Long.MAX_VALUE)) {
+            try {
+                instance.addObject(fillObjects.get(0));
+                assertEquals(fillObjects.size() - 1, instance.addObjects(fillObjects.subList(1, fillObjects.size())));
+                assertEquals("Number of objects after insert", fillObjects.size(), instance.getObjectCount());
+                for (LocalAbstractObject object : fillObjects)
+                    assertTrue("Inserted object has the same data", object.dataEquals(instance.getObject(object.getLocatorURI())));
+            } finally {
+                instance.destroy();
+            }
+        }
+
+        // Only the objects that fit into the capacity are inserted
+        for (LocalBucket instance : createDiskBuckets(5)) {
+            try {
+                instance.addObjects(fillObjects);
+                fail("Capacity full exception should be thrown for " + instance.getClass().getSimpleName());
+            } catch (CapacityFullException e) {
+                assertEquals(5, e.getNumberOfInsertedObjects());
+                assertEquals(5, instance.getObjectCount());
+                for (LocalAbstractObject object : fillObjects.subList(0, 5))
+                    assertTrue("Inserted object has the same data", object.dataEquals(instance.getObject(object.getLocatorURI())));
+            } finally {
+                instance.destroy();
+            }
+        }
+    }
+
     /**
      * Test of addObject method when adding duplicate object, of class LocalBucket.
      */
@@ -157,4 +219,89 @@ public class LocalBucketTest extends TestCase {
             instance.destroy();
         }
     }
+
+    /**
+     * Test of concurrent retrievals and modifications, of class LocalBucket.
+     */
+    public void testConcurrentAccess() throws Throwable {
+        final LocalBucket instance = createFilledBucket();
+        try {
+            final List<Throwable> errors = new ArrayList<Throwable>();
+            Thread[] readers = new Thread[4];
+            for (int t = 0; t < readers.length; t++) {
+                readers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 20; i++)
+                                for (LocalAbstractObject object : fillObjects)
+                                    assertTrue(object.dataEquals(instance.getObject(object.getLocatorURI())));
+                        } catch (Throwable e) {
+                            synchronized (errors) {
+                                errors.add(e);
+                            }
+                        }
+                    }
+                };
+                readers[t].start();
+            }
+
+            // Objects that are added and removed again while the readers run
+            for (int i = 0; i < 20; i++) {
+                LocalAbstractObject object = TestConstants.createObject("added" + i);
+                instance.addObject(object);
+                assertEquals(1, instance.deleteObject(object, 1));
+            }
+
+            for (Thread reader : readers)
+                reader.join();
+            if (!errors.isEmpty())
+                throw errors.get(0);
+            assertEquals(fillObjects.size(), instance.getObjectCount());
+
+            // Retrievals are not blocked by the read lock, but the modifications are
+            final CountDownLatch retrieved = new CountDownLatch(1);
+            final CountDownLatch writerStarted = new CountDownLatch(1);
+            final CountDownLatch deleted = new CountDownLatch(1);
+            instance.getObjectsLock().readLock().lock();
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        writerStarted.countDown();
+                        instance.deleteObject(fillObjects.get(0));
+                        deleted.countDown();
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            try {
+                readers[0] = new Thread() {
+                    @Override
+                    public void run() {
+                        instance.getObject(fillObjects.get(1).getLocatorURI());
+                        retrieved.countDown();
+                    }
+                };
+                readers[0].start();
+                assertTrue("Reader is blocked by another reader", retrieved.await(10, TimeUnit.SECONDS));
+                writer.start();
+                writerStarted.await();
+                assertFalse("Writer is not blocked by a reader", deleted.await(100, TimeUnit.MILLISECONDS));
+                assertEquals(fillObjects.size(), instance.getObjectCount());
+            } finally {
+                instance.getObjectsLock().readLock().unlock();
+            }
+            assertTrue("Writer is blocked after the read lock is released", deleted.await(10, TimeUnit.SECONDS));
+            writer.join();
+            if (!errors.isEmpty())
+                throw errors.get(0);
+            assertEquals(fillObjects.size() - 1, instance.getObjectCount());
+        } finally {
+            instance.destroy();
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ *  FloatVectorMemoryBucketTest
+ *
+ */
+
+package messif.buckets.impl;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Random;
+import junit.framework.TestCase;
+import messif.buckets.LocalBucket;
+import messif.objects.LocalAbstractObject;
+import messif.objects.PrecomputedDistancesFixedArrayFilter;
+import messif.objects.PrecomputedDistancesTable;
+import messif.buckets.storage.impl.FloatVectorMemoryStorage;
+import messif.objects.impl.ObjectFloatVectorL2;
+import messif.objects.keys.AbstractObjectKey;
+import messif.objects.util.RankedAbstractObject;
+import messif.operations.RankingQueryOperation;
+import messif.operations.query.KNNQueryOperation;
+import messif.operations.query.RangeQueryOperation;
+
+/**
+ *
+ * @author xbatko
+ */
+public class FloatVectorMemoryBucketTest extends TestCase {
+
+    private final Random random = new Random(42);
+
+    public FloatVectorMemoryBucketTest(String testName) {
+        super(testName);
+    }
+
+    private ObjectFloatVectorL2 randomVector(int id) {
+        float[] data = new float[32];
+        for (int i = 0; i < data.length; i++)
+            data[i] = random.nextFloat();
+        ObjectFloatVectorL2 object = new ObjectFloatVectorL2(data);
+        object.setObjectKey(new AbstractObjectKey("obj" + id));
+        return object;
+    }
+
+    private static void assertSameAnswer(RankingQueryOperation expected, RankingQueryOperation actual) {
+        assertEquals("Answer size", expected.getAnswerCount(), actual.getAnswerCount());
+        Iterator<RankedAbstractObject> expectedIterator = expected.getAnswer();
+        Iterator<RankedAbstractObject> actualIterator = actual.getAnswer();
+        while (expectedIterator.hasNext()) {
+            RankedAbstractObject expectedObject = expectedIterator.next();
+            RankedAbstractObject actualObject = actualIterator.next();
+            assertEquals("Answer distance", expectedObject.getDistance(), actualObject.getDistance());
+            assertEquals("Answer object", expectedObject.getObject().getLocatorURI(), actualObject.getObject().getLocatorURI());
+        }
+    }
+
+    /**
+     * Test of processQuery method, of class FloatVectorMemoryBucket.
+     */
+    public void testProcessQuery() throws Throwable {
+        LocalBucket expected = new MemoryStorageBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false);
+        LocalBucket actual = new FloatVectorMemoryBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false);
+        for (int i = 0; i < 1000; i++) {
+            LocalAbstractObject object = randomVector(i);
+            expected.addObject(object);
+            actual.addObject(object);
+        }
+        assertEquals(1, expected.deleteObject("obj10", 1));
+        assertEquals(1, actual.deleteObject("obj10", 1));
+        assertEquals(expected.getObjectCount(), actual.getObjectCount());
+
+        for (int i = 0; i < 10; i++) {
+            LocalAbstractObject query = randomVector(-1);
+            KNNQueryOperation expectedKNN = new KNNQueryOperation(query, 20);
+            KNNQueryOperation actualKNN = new KNNQueryOperation(query, 20);
+            expected.processQuery(expectedKNN);
+            actual.processQuery(actualKNN);
+            assertSameAnswer(expectedKNN, actualKNN);
+
+            float radius = expectedKNN.getAnswerDistance();
+            RangeQueryOperation expectedRange = new RangeQueryOperation(query, radius);
+            RangeQueryOperation actualRange = new RangeQueryOperation(query, radius);
+            expected.processQuery(expectedRange);
+            actual.processQuery(actualRange);
+            assertSameAnswer(expectedRange, actualRange);
+        }
+    }
+
+    /**
+     * Test of the filtering using the precomputed distances table, of class FloatVectorMemoryBucket.
+     */
+    public void testPrecomputedDistances() throws Throwable {
+        LocalAbstractObject[] pivots = new LocalAbstractObject[5];
+        for (int i = 0; i < pivots.length; i++)
+            pivots[i] = randomVector(-2);
+        LocalBucket expected = new MemoryStorageBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false);
+        FloatVectorMemoryBucket actual = new FloatVectorMemoryBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false);
+        FloatVectorMemoryStorage storage = actual.objects;
+        for (int i = 0; i < 1000; i++) {
+            LocalAbstractObject object = randomVector(i);
+            new PrecomputedDistancesFixedArrayFilter(object).addPrecompDist(pivots, object);
+            expected.addObject(object);
+            actual.addObject(object);
+        }
+
+        PrecomputedDistancesTable table = storage.getPrecomputedDistances();
+        assertEquals(pivots.length, table.getPivotCount());
+        assertEquals(1000, table.getRowCount());
+        assertEquals(pivots[3].getDistance(storage.read(7)), table.getDistance(7, 3));
+        assertEquals(pivots.length, storage.read(7).getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class).getPrecompDistSize());
+
+        for (int i = 0; i < 10; i++) {
+            LocalAbstractObject query = randomVector(-1);
+            PrecomputedDistancesFixedArrayFilter queryFilter = new PrecomputedDistancesFixedArrayFilter(query);
+            queryFilter.addPrecompDist(pivots, query);
+            float[] queryDistances = queryFilter.getPrecompDist();
+            KNNQueryOperation expectedKNN = new KNNQueryOperation(query, 5);
+            KNNQueryOperation actualKNN = new KNNQueryOperation(query, 5);
+            expected.processQuery(expectedKNN);
+            actual.processQuery(actualKNN);
+            assertSameAnswer(expectedKNN, actualKNN);
+
+            // Block filtering must be consistent with the per-row filtering
+            float radius = expectedKNN.getAnswerDistance();
+            BitSet excluded = new BitSet();
+            int excludedCount = table.excludeUsingPrecompDist(0, 1000, queryDistances, radius, excluded);
+            assertEquals(excludedCount, excluded.cardinality());
+            for (int row = 0; row < 1000; row++)
+                assertEquals(excluded.get(row), table.excludeUsingPrecompDist(row, queryDistances, radius));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  MemoryStorageBucketTest
+ *
+ */
+
+package messif.buckets.impl;
+
+import java.util.Iterator;
+import java.util.Random;
+import junit.framework.TestCase;
+import messif.buckets.storage.impl.MemoryStorage;
+import messif.objects.LocalAbstractObject;
+import messif.objects.PrecomputedDistancesFixedArrayFilter;
+import messif.objects.PrecomputedDistancesPivotMapFilter;
+import messif.objects.PrecomputedDistancesTable;
+import messif.objects.impl.ObjectFloatVectorL2;
+import messif.objects.keys.AbstractObjectKey;
+import messif.objects.util.RankedAbstractObject;
+import messif.operations.RankingQueryOperation;
+import messif.operations.query.KNNQueryOperation;
+import messif.operations.query.RangeQueryOperation;
+
+/**
+ *
+ * @author xbatko
+ */
+public class MemoryStorageBucketTest extends TestCase {
+
+    private final Random random = new Random(42);
+
+    public MemoryStorageBucketTest(String testName) {
+        super(testName);
+    }
+
+    private ObjectFloatVectorL2 randomVector(int id) {
+        float[] data = new float[32];
+        for (int i = 0; i < data.length; i++)
+            data[i] = random.nextFloat();
+        ObjectFloatVectorL2 object = new ObjectFloatVectorL2(data);
+        object.setObjectKey(new AbstractObjectKey("obj" + id));
+        return object;
+    }
+
+    private static void assertSameAnswer(RankingQueryOperation expected, RankingQueryOperation actual) {
+        assertEquals("Answer size", expected.getAnswerCount(), actual.getAnswerCount());
+        Iterator<RankedAbstractObject> expectedIterator = expected.getAnswer();
+        Iterator<RankedAbstractObject> actualIterator = actual.getAnswer();
+        while (expectedIterator.hasNext()) {
+            RankedAbstractObject expectedObject = expectedIterator.next();
+            RankedAbstractObject actualObject = actualIterator.next();
+            assertEquals("Answer distance", expectedObject.getDistance(), actualObject.getDistance());
+            assertEquals("Answer object", expectedObject.getObject().getLocatorURI(), actualObject.getObject().getLocatorURI());
+        }
+    }
+
+    /**
+     * Test of processQuery method with the precomputed distances table, of class MemoryStorageBucket.
+     */
+    public void testProcessQuery() throws Throwable {
+        LocalAbstractObject[] pivots = new LocalAbstractObject[5];
+        for (int i = 0; i < pivots.length; i++)
+            pivots[i] = randomVector(-2);
+        MemoryStorageBucket bucket = new MemoryStorageBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false);
+        for (int i = 0; i < 1000; i++) {
+            LocalAbstractObject object = randomVector(i);
+            new PrecomputedDistancesFixedArrayFilter(object).addPrecompDist(pivots, object);
+            bucket.addObject(object);
+        }
+        assertEquals(1, bucket.deleteObject("obj10", 1));
+        assertEquals(1, bucket.deleteObject("obj999", 1));
+
+        MemoryStorage<?> storage = (MemoryStorage<?>)bucket.objects;
+        PrecomputedDistancesTable table = storage.getPrecomputedDistances();
+        assertEquals(pivots.length, table.getPivotCount());
+        assertEquals(1000, table.getRowCount());
+        assertEquals(pivots[3].getDistance((LocalAbstractObject)storage.read(7)), table.getDistance(7, 3));
+
+        for (int i = 0; i < 10; i++) {
+            LocalAbstractObject query = randomVector(-1);
+            new PrecomputedDistancesFixedArrayFilter(query).addPrecompDist(pivots, query);
+            KNNQueryOperation expectedKNN = new KNNQueryOperation(query, 20);
+            KNNQueryOperation actualKNN = new KNNQueryOperation(query, 20);
+            expectedKNN.evaluate(bucket.getAllObjects());
+            bucket.processQuery(actualKNN);
+            assertSameAnswer(expectedKNN, actualKNN);
+
+            float radius = expectedKNN.getAnswerDistance();
+            RangeQueryOperation expectedRange = new RangeQueryOperation(query, radius);
+            RangeQueryOperation actualRange = new RangeQueryOperation(query, radius);
+            expectedRange.evaluate(bucket.getAllObjects());
+            bucket.processQuery(actualRange);
+            assertSameAnswer(expectedRange, actualRange);
+        }
+    }
+
+    /**
+     * Test of processQuery method with the pivots kept only by the storage, of class MemoryStorageBucket.
+     */
+    public void testProcessQueryWithPivots() throws Throwable {
+        LocalAbstractObject[] pivots = new LocalAbstractObject[5];
+        for (int i = 0; i < pivots.length; i++)
+            pivots[i] = randomVector(-2);
+        MemoryStorageBucket bucket = new MemoryStorageBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false);
+        for (int i = 0; i < 500; i++)
+            bucket.addObject(randomVector(i));
+        bucket.setPrecomputedDistancesPivots(pivots, false);
+        for (int i = 500; i < 1000; i++)
+            bucket.addObject(randomVector(i));
+
+        MemoryStorage<?> storage = (MemoryStorage<?>)bucket.objects;
+        PrecomputedDistancesTable table = storage.getPrecomputedDistances();
+        assertEquals(pivots.length, table.getPivotCount());
+        assertEquals(1000, table.getRowCount());
+        for (int address : new int[] { 7, 700 }) {
+            LocalAbstractObject object = (LocalAbstractObject)storage.read(address);
+            assertNull("Stored object has a filter", object.getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class, false));
+            assertEquals(pivots[3].getDistance(object), table.getDistance(address, 3));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            LocalAbstractObject query = randomVector(-1);
+            KNNQueryOperation expectedKNN = new KNNQueryOperation(query, 20);
+            expectedKNN.evaluate(bucket.getAllObjects());
+            new PrecomputedDistancesFixedArrayFilter(query).addPrecompDist(pivots, query);
+            KNNQueryOperation actualKNN = new KNNQueryOperation(query, 20);
+            bucket.processQuery(actualKNN);
+            assertSameAnswer(expectedKNN, actualKNN);
+        }
+    }
+
+    /**
+     * Test of processQuery method with filters other than the fixed array, of class MemoryStorageBucket.
+     */
+    public void testProcessQueryObjectFilters() throws Throwable {
+        LocalAbstractObject pivot = randomVector(-2);
+        MemoryStorageBucket bucket = new MemoryStorageBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false);
+        for (int i = 0; i < 100; i++) {
+            LocalAbstractObject object = randomVector(i);
+            // Odd objects pretend to be far from the pivot, so they must be excluded by the filter
+            new PrecomputedDistancesPivotMapFilter(object).setPrecompDist(pivot, i % 2 == 0 ? pivot.getDistance(object) : 1000);
+            bucket.addObject(object);
+        }
+        assertNull(((MemoryStorage<?>)bucket.objects).getPrecomputedDistances());
+
+        LocalAbstractObject query = randomVector(-1);
+        new PrecomputedDistancesPivotMapFilter(query).setPrecompDist(pivot, pivot.getDistance(query));
+        RangeQueryOperation op = new RangeQueryOperation(query, 100);
+        bucket.processQuery(op);
+        assertEquals(50, op.getAnswerCount());
+        Iterator<RankedAbstractObject> iterator = op.getAnswer();
+        while (iterator.hasNext())
+            assertEquals(0, Integer.parseInt(iterator.next().getObject().getLocatorURI().substring(3)) % 2);
+    }
+}
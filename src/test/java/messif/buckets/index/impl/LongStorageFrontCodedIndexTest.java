@@ -0,0 +1,243 @@
+/*
+ *  LongStorageFrontCodedIndexTest
+ *
+ */
+
+package messif.buckets.index.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+import messif.buckets.index.LocalAbstractObjectOrder;
+import messif.buckets.storage.StorageSearch;
+import messif.buckets.storage.impl.DiskStorage;
+import messif.objects.LocalAbstractObject;
+import test.TestConstants;
+
+/**
+ *
+ * @author xbatko
+ */
+public class LongStorageFrontCodedIndexTest extends TestCase {
+
+    private static final int objectCount = 1000;
+
+    private DiskStorage<LocalAbstractObject> storage;
+    private LongStorageFrontCodedIndex<LocalAbstractObject> index;
+    private List<String> locators;
+
+    public LongStorageFrontCodedIndexTest(String testName) {
+        super(testName);
+    }
+
+    private static String createLocator(int i) {
+        return String.format("http://images.example.org/collection/%06d.jpg", i);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File file = File.createTempFile(TestConstants.storfilePrefix, ".stor", new File("."));
+        storage = new DiskStorage<LocalAbstractObject>(LocalAbstractObject.class, file, false, 1024, false, 0, 0, Long.MAX_VALUE, TestConstants.createSerializator());
+        index = new LongStorageFrontCodedIndex<LocalAbstractObject>(storage, LocalAbstractObjectOrder.locatorToLocalObjectComparator);
+
+        // Insert the objects in random order with a duplicate of every tenth object
+        locators = new ArrayList<String>();
+        for (int i = 0; i < objectCount; i++) {
+            locators.add(createLocator(i));
+            if (i % 10 == 0)
+                locators.add(createLocator(i));
+        }
+        Collections.shuffle(locators, new Random(42));
+        for (String locator : locators)
+            index.add(TestConstants.createObject(locator));
+        Collections.sort(locators);
+    }
+
+    private static List<String> searchLocators(StorageSearch<LocalAbstractObject> search) {
+        List<String> ret = new ArrayList<String>();
+        while (search.next())
+            ret.add(search.getCurrentObject().getLocatorURI());
+        search.close();
+        return ret;
+    }
+
+    private void assertIndexLocators() throws Exception {
+        assertEquals(locators.size(), index.size());
+        assertEquals(locators, searchLocators(index.search()));
+    }
+
+    /**
+     * Test of the ordered and key searches.
+     */
+    public void testSearch() throws Throwable {
+        try {
+            checkSearch();
+        } finally {
+            index.destroy();
+        }
+    }
+
+    private void checkSearch() throws Exception {
+        assertIndexLocators();
+        assertTrue("Keys are front-coded", index.getKeysSize() < locators.size() * createLocator(0).length() / 2);
+
+        assertEquals(Arrays.asList(createLocator(10), createLocator(10)), searchLocators(index.search(createLocator(10), true)));
+        assertEquals(Collections.singletonList(createLocator(11)), searchLocators(index.search(createLocator(11), true)));
+        assertTrue(searchLocators(index.search("missing", true)).isEmpty());
+        assertEquals(locators.subList(locators.indexOf(createLocator(100)), locators.lastIndexOf(createLocator(200)) + 1), searchLocators(index.search(createLocator(100), createLocator(200))));
+
+        // Backward search from the start key
+        StorageSearch<LocalAbstractObject> search = index.search(createLocator(500), false);
+        int count = 0;
+        while (search.previous())
+            count++;
+        assertEquals(locators.indexOf(createLocator(500)), count);
+
+        // Collection search
+        List<String> keys = Arrays.asList(createLocator(999), createLocator(0), "missing", createLocator(555), createLocator(0));
+        assertEquals(Arrays.asList(createLocator(0), createLocator(0), createLocator(555), createLocator(999)), searchLocators(index.search(keys)));
+        assertEquals(Arrays.asList(createLocator(0), createLocator(0), createLocator(555), createLocator(999)), searchLocators(index.search(LocalAbstractObjectOrder.locatorToLocalObjectComparator, keys)));
+        search = index.search(keys);
+        assertTrue(search.skip(4));
+        assertFalse(search.next());
+        assertTrue(search.skip(-4));
+        assertEquals(createLocator(0), search.getCurrentObject().getLocatorURI());
+        assertFalse(search.previous());
+    }
+
+    /**
+     * Test that the destroyed index is no longer a remapping listener of the storage.
+     */
+    public void testDestroyRemappingListener() throws Throwable {
+        index.destroy();
+        assertFalse(storage.removeRemappingListener(index));
+    }
+
+    /**
+     * Test of the removal, the compaction of the storage and the serialization.
+     */
+    public void testRemove() throws Throwable {
+        try {
+            checkRemove();
+        } finally {
+            index.destroy();
+        }
+    }
+
+    private void checkRemove() throws Exception {
+        // Remove every third object
+        StorageSearch<LocalAbstractObject> search = index.search();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; search.next(); i++) {
+            if (i % 3 == 0)
+                search.remove();
+            else
+                expected.add(search.getCurrentObject().getLocatorURI());
+        }
+        search.close();
+        locators = expected;
+        assertIndexLocators();
+
+        // Remove a range
+        search = index.search(createLocator(300), createLocator(399));
+        while (search.next())
+            search.remove();
+        search.close();
+        expected = new ArrayList<String>();
+        for (String locator : locators)
+            if (locator.compareTo(createLocator(300)) < 0 || locator.compareTo(createLocator(399)) > 0)
+                expected.add(locator);
+        locators = expected;
+        assertIndexLocators();
+
+        // The addresses are preserved by the compaction
+        assertNotNull(storage.compactDataAsync().get());
+        assertIndexLocators();
+
+        // Serialization
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(index);
+        out.close();
+        @SuppressWarnings("unchecked")
+        LongStorageFrontCodedIndex<LocalAbstractObject> restored = (LongStorageFrontCodedIndex<LocalAbstractObject>)new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(locators, searchLocators(restored.search()));
+        assertEquals(Collections.singletonList(createLocator(1)), searchLocators(restored.search(createLocator(1), true)));
+    }
+
+    /**
+     * Test of concurrent insertions with searches running at the same time.
+     */
+    public void testConcurrentAdd() throws Throwable {
+        try {
+            checkConcurrentAdd();
+        } finally {
+            index.destroy();
+        }
+    }
+
+    private void checkConcurrentAdd() throws Throwable {
+        final int threadCount = 8;
+        final int threadObjects = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch writersDone = new CountDownLatch(threadCount);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final int first = objectCount + t * threadObjects;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = first; i < first + threadObjects; i++)
+                            index.add(TestConstants.createObject(createLocator(i)));
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        writersDone.countDown();
+                    }
+                }
+            });
+        }
+        threads.add(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    start.await();
+                    do {
+                        // The searches must always see the keys sorted
+                        List<String> found = searchLocators(index.search());
+                        for (int i = 1; i < found.size(); i++)
+                            assertTrue(found.get(i - 1).compareTo(found.get(i)) <= 0);
+                    } while (writersDone.getCount() > 0);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        });
+        for (Thread thread : threads)
+            thread.start();
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw failure.get();
+
+        for (int i = objectCount; i < objectCount + threadCount * threadObjects; i++)
+            locators.add(createLocator(i));
+        Collections.sort(locators);
+        assertIndexLocators();
+    }
+}
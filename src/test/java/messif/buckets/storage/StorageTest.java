@@ -11,11 +11,25 @@ import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 import junit.framework.TestCase;
 import messif.buckets.TemporaryCloseable;
 import messif.buckets.TemporaryCloseableThread;
+import messif.buckets.index.LocalAbstractObjectOrder;
+import messif.buckets.index.ModifiableOrderedIndex;
+import messif.buckets.index.ModifiableSearch;
+import messif.buckets.index.impl.LongStorageIndex;
+import messif.buckets.index.impl.LongStorageMemoryIndex;
+import messif.buckets.storage.impl.CachingIntStorage;
+import messif.buckets.storage.impl.DiskStorage;
+import messif.buckets.storage.impl.MemoryStorage;
+import messif.buckets.storage.impl.ObjectCache;
 import messif.objects.LocalAbstractObject;
+import messif.objects.nio.MultiClassSerializator;
+import messif.statistics.StatisticCounter;
 import test.TestConstants;
 
 /**
@@ -111,4 +125,291 @@ public class StorageTest extends TestCase {
         instance.destroy();
     }
 
+    /**
+     * Test of reading from the memory-mapped file, of class DiskStorage.
+     */
+    public void testMappedRead() throws Throwable {
+        File file = File.createTempFile(TestConstants.storfilePrefix, ".stor", new File("."));
+        DiskStorage<LocalAbstractObject> instance = new DiskStorage<LocalAbstractObject>(LocalAbstractObject.class, file, false, 16*1024, false, true, 0, 0, Long.MAX_VALUE, new MultiClassSerializator<LocalAbstractObject>(LocalAbstractObject.class));
+        List<LongAddress<LocalAbstractObject>> addrs = new ArrayList<LongAddress<LocalAbstractObject>>();
+        for (LocalAbstractObject obj : objects)
+            addrs.add(instance.store(obj));
+
+        // Test read
+        for (int i = 0; i < objects.size(); i++) {
+            LocalAbstractObject storageObj = addrs.get(i).read();
+            assertEquals("Inserted object has the same key", objects.get(i).getObjectKey(), storageObj.getObjectKey());
+            assertTrue("Inserted object has the same data", objects.get(i).dataEquals(storageObj));
+        }
+
+        // Test sequential scan with a removed object and an object stored after the first read
+        instance.remove(addrs.get(0).getAddress());
+        instance.store(objects.get(0));
+        LongStorageSearch<LocalAbstractObject> search = instance.search();
+        for (int i = 1; i <= objects.size(); i++) {
+            assertTrue("Search has next object", search.next());
+            assertTrue("Search object has the same data", objects.get(i % objects.size()).dataEquals(search.getCurrentObject()));
+        }
+        assertFalse("Search has no more objects", search.next());
+        search.close();
+
+        instance.destroy();
+    }
+
+    private static void removeObject(ModifiableOrderedIndex<String, LocalAbstractObject> index, String locator) throws Exception {
+        ModifiableSearch<LocalAbstractObject> search = index.search(locator, true);
+        assertTrue("Object " + locator + " found", search.next());
+        search.remove();
+        search.close();
+    }
+
+    private static void assertIndexObjects(ModifiableOrderedIndex<String, LocalAbstractObject> index, List<LocalAbstractObject> expected) throws Exception {
+        assertEquals(expected.size(), index.size());
+        for (LocalAbstractObject obj : expected) {
+            ModifiableSearch<LocalAbstractObject> search = index.search(obj.getLocatorURI(), true);
+            assertTrue("Object " + obj.getLocatorURI() + " found", search.next());
+            assertTrue("Object " + obj.getLocatorURI() + " has the same data", obj.dataEquals(search.getCurrentObject()));
+            search.close();
+        }
+    }
+
+    /**
+     * Test of the online compaction with concurrent modifications, of class DiskStorage.
+     * @param storage the storage to compact
+     * @param index the index on the storage the addresses of which must be preserved
+     */
+    private void compactStorage(DiskStorage<LocalAbstractObject> storage, final ModifiableOrderedIndex<String, LocalAbstractObject> index) throws Throwable {
+        final List<LocalAbstractObject> expected = new ArrayList<LocalAbstractObject>();
+        for (int i = 0; i < 2000; i++) {
+            LocalAbstractObject obj = TestConstants.createObject("obj" + i);
+            index.add(obj);
+            if (i % 2 == 0)
+                removeObject(index, obj.getLocatorURI());
+            else
+                expected.add(obj);
+        }
+        float fragmentation = storage.getFragmentation();
+        assertEquals(0.5f, fragmentation, 0.01f);
+
+        // Add and remove objects while the compaction is running
+        Future<LongAddressRemapping> compaction = storage.compactDataAsync();
+        assertNotNull(compaction);
+        for (int i = 0; i < 500; i++) {
+            LocalAbstractObject obj = TestConstants.createObject("added" + i);
+            index.add(obj);
+            expected.add(obj);
+            removeObject(index, expected.remove(0).getLocatorURI());
+        }
+        assertNotNull(compaction.get());
+
+        assertTrue(storage.getFragmentation() < fragmentation);
+        assertIndexObjects(index, expected);
+
+        // Reopen the storage and compact synchronously
+        assertFalse(storage.closeTemporarilyIfIdle(true));
+        assertTrue(storage.closeTemporarilyIfIdle(true));
+        assertIndexObjects(index, expected);
+        storage.compactDataAsync().get();
+        assertEquals(0f, storage.getFragmentation());
+        assertIndexObjects(index, expected);
+    }
+
+    /**
+     * Test of the online compaction of a storage with an index, of class DiskStorage.
+     */
+    public void testCompaction() throws Throwable {
+        File file = File.createTempFile(TestConstants.storfilePrefix, ".stor", new File("."));
+        DiskStorage<LocalAbstractObject> instance = new DiskStorage<LocalAbstractObject>(LocalAbstractObject.class, file, false, 1024, false, 0, 0, Long.MAX_VALUE, TestConstants.createSerializator());
+        LongStorageIndex<String, LocalAbstractObject> index = new LongStorageIndex<String, LocalAbstractObject>(instance, LocalAbstractObjectOrder.locatorToLocalObjectComparator);
+        compactStorage(instance, index);
+        index.destroy();
+    }
+
+    /**
+     * Test of the online compaction of a storage with a memory index, of class DiskStorage.
+     */
+    public void testCompactionMemoryIndex() throws Throwable {
+        File file = File.createTempFile(TestConstants.storfilePrefix, ".stor", new File("."));
+        DiskStorage<LocalAbstractObject> instance = new DiskStorage<LocalAbstractObject>(LocalAbstractObject.class, file, false, 1024, false, 0, 0, 1L << 30, TestConstants.createSerializator());
+        instance.setCacheSize(64*1024);
+        LongStorageMemoryIndex<String, LocalAbstractObject> index = new LongStorageMemoryIndex<String, LocalAbstractObject>(instance, LocalAbstractObjectOrder.locatorToLocalObjectComparator);
+        compactStorage(instance, index);
+        index.destroy();
+    }
+
+    /**
+     * Test that the storage in a part of a file is not compacted, of class DiskStorage.
+     */
+    public void testCompactionSegment() throws Throwable {
+        File file = File.createTempFile(TestConstants.storfilePrefix, ".stor", new File("."));
+        DiskStorage<LocalAbstractObject> instance = new DiskStorage<LocalAbstractObject>(LocalAbstractObject.class, file, false, 1024, false, 0, 4096, 1L << 30, TestConstants.createSerializator());
+        LongStorageMemoryIndex<String, LocalAbstractObject> index = new LongStorageMemoryIndex<String, LocalAbstractObject>(instance, LocalAbstractObjectOrder.locatorToLocalObjectComparator);
+        List<LocalAbstractObject> expected = new ArrayList<LocalAbstractObject>();
+        for (int i = 0; i < 100; i++) {
+            LocalAbstractObject obj = TestConstants.createObject("obj" + i);
+            index.add(obj);
+            if (i % 2 == 0)
+                removeObject(index, obj.getLocatorURI());
+            else
+                expected.add(obj);
+        }
+        assertNull(instance.compactDataAsync());
+        assertIndexObjects(index, expected);
+        index.destroy();
+    }
+
+    /**
+     * Test that the compaction swap waits for the open search, of class DiskStorage.
+     */
+    public void testCompactionDeferredBySearch() throws Throwable {
+        File file = File.createTempFile(TestConstants.storfilePrefix, ".stor", new File("."));
+        DiskStorage<LocalAbstractObject> instance = new DiskStorage<LocalAbstractObject>(LocalAbstractObject.class, file, false, 1024, false, 0, 0, Long.MAX_VALUE, TestConstants.createSerializator());
+        LongStorageIndex<String, LocalAbstractObject> index = new LongStorageIndex<String, LocalAbstractObject>(instance, LocalAbstractObjectOrder.locatorToLocalObjectComparator);
+        List<LocalAbstractObject> expected = new ArrayList<LocalAbstractObject>();
+        for (int i = 0; i < 1000; i++) {
+            LocalAbstractObject obj = TestConstants.createObject("obj" + i);
+            index.add(obj);
+            if (i % 2 == 0)
+                removeObject(index, obj.getLocatorURI());
+            else
+                expected.add(obj);
+        }
+
+        // The positions read by the open search must remain valid until it is closed
+        LongStorageSearch<LocalAbstractObject> search = instance.search();
+        Future<LongAddressRemapping> compaction = instance.compactDataAsync();
+        assertNotNull(compaction);
+        int count = 0;
+        while (search.next()) {
+            assertTrue(expected.get(count).dataEquals(instance.read(search.getCurrentObjectLongAddress())));
+            count++;
+        }
+        assertEquals(expected.size(), count);
+        search.close();
+
+        assertNotNull(compaction.get());
+        assertEquals(0f, instance.getFragmentation());
+        assertIndexObjects(index, expected);
+        index.destroy();
+    }
+
+    /**
+     * Test of the batched store and the group commit, of class DiskStorage.
+     */
+    public void testBatchStore() throws Throwable {
+        File file = File.createTempFile(TestConstants.storfilePrefix, ".stor", new File("."));
+        final DiskStorage<LocalAbstractObject> instance = new DiskStorage<LocalAbstractObject>(LocalAbstractObject.class, file, false, 1024, false, 0, 0, Long.MAX_VALUE, TestConstants.createSerializator());
+        List<LocalAbstractObject> batch = new ArrayList<LocalAbstractObject>();
+        for (int i = 0; i < 500; i++)
+            batch.add(TestConstants.createObject("batch" + i));
+
+        // Mix single and batched stores
+        List<LongAddress<LocalAbstractObject>> addrs = new ArrayList<LongAddress<LocalAbstractObject>>();
+        List<LocalAbstractObject> stored = new ArrayList<LocalAbstractObject>();
+        addrs.add(instance.store(objects.get(0)));
+        stored.add(objects.get(0));
+        addrs.addAll(instance.store(batch));
+        stored.addAll(batch);
+        addrs.addAll(instance.store(objects.subList(1, 3)));
+        stored.addAll(objects.subList(1, 3));
+        addrs.add(instance.store(objects.get(3)));
+        stored.add(objects.get(3));
+        assertEquals(stored.size(), instance.size());
+        for (int i = 0; i < stored.size(); i++)
+            assertTrue("Stored object has the same data", stored.get(i).dataEquals(addrs.get(i).read()));
+
+        // Sequential scan must see all the objects in the order of storing
+        LongStorageSearch<LocalAbstractObject> search = instance.search();
+        for (int i = 0; i < stored.size(); i++) {
+            assertTrue("Search has next object", search.next());
+            assertEquals(addrs.get(i).getAddress(), search.getCurrentObjectLongAddress());
+        }
+        assertFalse("Search has no more objects", search.next());
+        search.close();
+
+        // Concurrent physical flushes with the group commit
+        instance.setGroupCommitLatency(20);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int threadIndex = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 5; i++) {
+                            instance.store(TestConstants.createObject("flush" + threadIndex + "_" + i));
+                            instance.flush(true);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        if (!errors.isEmpty())
+            throw errors.get(0);
+        assertEquals(stored.size() + threads.length * 5, instance.size());
+
+        instance.destroy();
+    }
+
+
+    /**
+     * Test of the object cache, of classes DiskStorage and CachingIntStorage.
+     */
+    public void testObjectCache() throws Throwable {
+        StatisticCounter hits = StatisticCounter.getStatistics("StorageCache.Hits");
+        StatisticCounter misses = StatisticCounter.getStatistics("StorageCache.Misses");
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("file", File.createTempFile(TestConstants.storfilePrefix, ".stor", new File(".")));
+        parameters.put("cacheSize", 4096L);
+        DiskStorage<LocalAbstractObject> instance = DiskStorage.create(LocalAbstractObject.class, parameters);
+        ObjectCache<LocalAbstractObject> cache = instance.getObjectCache();
+        assertEquals(4096L, cache.getMaximalWeight());
+        List<LongAddress<LocalAbstractObject>> addrs = new ArrayList<LongAddress<LocalAbstractObject>>();
+        for (LocalAbstractObject obj : objects)
+            addrs.add(instance.store(obj));
+
+        // The second read returns a clone of the cached instance
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        LocalAbstractObject obj = addrs.get(0).read();
+        assertTrue("Stored object has the same data", objects.get(0).dataEquals(obj));
+        LocalAbstractObject cachedObj = addrs.get(0).read();
+        assertNotSame(obj, cachedObj);
+        assertTrue("Cached object has the same data", obj.dataEquals(cachedObj));
+        assertEquals(hitCount + 1, hits.get());
+        assertEquals(missCount + 1, misses.get());
+
+        // The cache is bounded by the binary size of the objects
+        for (LongAddress<LocalAbstractObject> addr : addrs)
+            assertNotNull(addr.read());
+        assertTrue(cache.getWeight() <= cache.getMaximalWeight());
+        assertTrue(cache.size() < addrs.size());
+
+        // Removed object is discarded from the cache
+        LongAddress<LocalAbstractObject> last = addrs.get(addrs.size() - 1);
+        assertTrue(last.read().dataEquals(last.read()));
+        int size = cache.size();
+        last.remove();
+        assertEquals(size - 1, cache.size());
+        instance.destroy();
+
+        // Caching of a memory storage
+        CachingIntStorage<LocalAbstractObject> memory = new CachingIntStorage<LocalAbstractObject>(new MemoryStorage<LocalAbstractObject>(LocalAbstractObject.class), TestConstants.createSerializator(), 1024*1024);
+        IntAddress<LocalAbstractObject> addr = memory.store(objects.get(0));
+        obj = addr.read();
+        assertNotSame(obj, addr.read());
+        assertEquals(1, memory.getObjectCache().size());
+        addr.remove();
+        assertEquals(0, memory.getObjectCache().size());
+        assertEquals(0L, memory.getObjectCache().getWeight());
+    }
+
 }
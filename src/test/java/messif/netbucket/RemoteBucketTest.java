@@ -0,0 +1,131 @@
+/*
+ *  RemoteBucketTest
+ *
+ */
+
+package messif.netbucket;
+
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import junit.framework.TestCase;
+import messif.buckets.impl.MemoryStorageBucket;
+import messif.network.MessageDispatcher;
+import messif.network.NetworkNode;
+import messif.objects.LocalAbstractObject;
+import messif.objects.impl.ObjectIntVectorL1;
+import messif.objects.keys.AbstractObjectKey;
+import messif.objects.util.AbstractObjectIterator;
+import messif.objects.util.AbstractObjectList;
+import test.TestConstants;
+
+/**
+ *
+ * @author xbatko
+ */
+public class RemoteBucketTest extends TestCase {
+
+    private static final int objectCount = 2500;
+
+    private MessageDispatcher clientMessageDisp;
+    private MessageDispatcher serverMessageDisp;
+    private NetworkBucketDispatcher client;
+    private NetworkBucketDispatcher server;
+
+    public RemoteBucketTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clientMessageDisp = new MessageDispatcher(new NetworkNode("127.0.0.1", TestConstants.getFreePort()), 0, true);
+        serverMessageDisp = new MessageDispatcher(new NetworkNode("127.0.0.1", TestConstants.getFreePort()), 0, true);
+        client = new NetworkBucketDispatcher(clientMessageDisp, 10, Long.MAX_VALUE, MemoryStorageBucket.class);
+        server = new NetworkBucketDispatcher(serverMessageDisp, 10, Long.MAX_VALUE, MemoryStorageBucket.class);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clientMessageDisp.closeSockets();
+        serverMessageDisp.closeSockets();
+        super.tearDown();
+    }
+
+    private RemoteBucket createFilledBucket() throws Exception {
+        AbstractObjectList<LocalAbstractObject> objects = new AbstractObjectList<LocalAbstractObject>(objectCount);
+        for (int i = 0; i < objectCount; i++) {
+            LocalAbstractObject object = new ObjectIntVectorL1(new int[] { i, i + 1 });
+            object.setObjectKey(new AbstractObjectKey("obj" + i));
+            objects.add(object);
+        }
+        RemoteBucket bucket = client.createRemoteBucket(serverMessageDisp.getNetworkNode());
+        bucket.addObjects(objects.iterator());
+        assertEquals(objectCount, server.getBucket(bucket.getBucketID()).getObjectCount());
+        return bucket;
+    }
+
+    /**
+     * Test of the chunked transfer of all objects of a remote bucket.
+     */
+    public void testGetAllObjects() throws Exception {
+        RemoteBucket bucket = createFilledBucket();
+        for (int chunkSize : new int[] { 1, 100, objectCount, objectCount * 2 }) {
+            Set<String> locators = new HashSet<String>();
+            AbstractObjectIterator<LocalAbstractObject> iterator = bucket.getAllObjects(chunkSize);
+            while (iterator.hasNext())
+                assertTrue(locators.add(iterator.next().getLocatorURI()));
+            assertEquals(objectCount, locators.size());
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    /**
+     * Test of closing the cursor before all objects are transferred.
+     */
+    public void testClose() throws Exception {
+        RemoteBucket bucket = createFilledBucket();
+        RemoteBucketObjectIterator iterator = (RemoteBucketObjectIterator)bucket.getAllObjects(100);
+        for (int i = 0; i < 150; i++)
+            iterator.next();
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        try {
+            server.getCursor(0);
+            fail("Cursor was not closed");
+        } catch (NoSuchElementException ignore) {
+        }
+
+        // Empty bucket
+        RemoteBucket emptyBucket = client.createRemoteBucket(serverMessageDisp.getNetworkNode());
+        assertFalse(emptyBucket.getAllObjects().hasNext());
+    }
+
+    /**
+     * Test of removing objects from the remote bucket while the cursor is open.
+     */
+    public void testRemove() throws Exception {
+        RemoteBucket bucket = createFilledBucket();
+        Set<String> locators = new HashSet<String>();
+        AbstractObjectIterator<LocalAbstractObject> iterator = bucket.getAllObjects(100);
+        while (iterator.hasNext()) {
+            assertTrue(locators.add(iterator.next().getLocatorURI()));
+            if (locators.size() % 2 == 0)
+                iterator.remove();
+        }
+        assertEquals(objectCount, locators.size());
+        assertEquals(objectCount - objectCount / 2, server.getBucket(bucket.getBucketID()).getObjectCount());
+        try {
+            iterator.remove();
+            fail("Object was removed twice");
+        } catch (IllegalStateException ignore) {
+        }
+
+        // The exhausted cursor is closed
+        try {
+            server.getCursor(0);
+            fail("Cursor was not closed");
+        } catch (NoSuchElementException ignore) {
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  ReplicationBucketTest
+ *
+ */
+
+package messif.netbucket.replication;
+
+import junit.framework.TestCase;
+import messif.buckets.impl.MemoryStorageBucket;
+import messif.netbucket.NetworkBucketDispatcher;
+import messif.network.MessageDispatcher;
+import messif.network.NetworkNode;
+import messif.objects.impl.ObjectIntVectorL1;
+import messif.operations.query.KNNQueryOperation;
+import test.TestConstants;
+
+/**
+ *
+ * @author xbatko
+ */
+public class ReplicationBucketTest extends TestCase {
+
+    private static final int objectCount = 500;
+
+    private MessageDispatcher primaryMessageDisp;
+    private MessageDispatcher replicaMessageDisp;
+    private ReplicationNetworkBucketDispatcher primary;
+    private ReplicationBucket bucket;
+
+    public ReplicationBucketTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        primaryMessageDisp = new MessageDispatcher(new NetworkNode("127.0.0.1", TestConstants.getFreePort()), 0, true);
+        replicaMessageDisp = new MessageDispatcher(new NetworkNode("127.0.0.1", TestConstants.getFreePort()), 0, true);
+        primary = new ReplicationNetworkBucketDispatcher(primaryMessageDisp, 10, Long.MAX_VALUE, false, MemoryStorageBucket.class);
+        new NetworkBucketDispatcher(replicaMessageDisp, 10, Long.MAX_VALUE, MemoryStorageBucket.class);
+
+        bucket = (ReplicationBucket)primary.createBucket();
+        for (int i = 0; i < objectCount; i++)
+            bucket.addObject(new ObjectIntVectorL1(new int[] { i, 0 }));
+        bucket.createReplica(replicaMessageDisp.getNetworkNode());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            primary.finalize();
+        } catch (Throwable e) {
+            throw new Exception(e);
+        }
+        primaryMessageDisp.closeSockets();
+        replicaMessageDisp.closeSockets();
+        super.tearDown();
+    }
+
+    private void assertQuery() {
+        KNNQueryOperation query = new KNNQueryOperation(new ObjectIntVectorL1(new int[] { 100, 0 }), 3);
+        bucket.processQuery(query);
+        assertEquals(3, query.getAnswerCount());
+        assertEquals(1f, query.getAnswerDistance());
+    }
+
+    /**
+     * Test of the load-aware selection of the replicas.
+     */
+    public void testReplicaSelection() {
+        assertEquals(2, bucket.getReplicaLoads().size());
+        for (int i = 0; i < 20; i++)
+            assertQuery();
+
+        long processed = 0;
+        for (ReplicationBucket.ReplicaLoad load : bucket.getReplicaLoads()) {
+            assertTrue(load.getProcessedCount() > 0);
+            assertEquals(0, load.getInFlight());
+            processed += load.getProcessedCount();
+        }
+        assertEquals(20, processed);
+    }
+
+    /**
+     * Test of the hedged queries.
+     */
+    public void testHedgedQueries() {
+        primary.setHedgedQueryDelay(0);
+        for (int i = 0; i < 20; i++)
+            assertQuery();
+        primary.setHedgedQueryDelay(-1);
+        assertQuery();
+
+        // The executor threads must not prevent the virtual machine from exiting
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            if (thread.getName().startsWith("HedgedQuery-"))
+                assertTrue(thread.isDaemon());
+    }
+
+    /**
+     * Test of the hedged queries with a partially answered query.
+     */
+    public void testHedgedQueriesPartialAnswer() {
+        primary.setHedgedQueryDelay(0);
+        for (int i = 0; i < 20; i++) {
+            KNNQueryOperation query = new KNNQueryOperation(new ObjectIntVectorL1(new int[] { 100, 0 }), 3);
+            query.addToAnswer(new ObjectIntVectorL1(new int[] { 100, 0 }));
+            query.addToAnswer(new ObjectIntVectorL1(new int[] { 1000, 0 }));
+            assertEquals(2, query.getAnswerCount());
+            assertEquals(1, bucket.processQuery(query));
+            assertEquals(3, query.getAnswerCount());
+            assertEquals(0f, query.getAnswer().next().getDistance());
+            assertEquals(1f, query.getAnswerDistance());
+        }
+    }
+}
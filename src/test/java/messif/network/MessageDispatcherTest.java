@@ -0,0 +1,174 @@
+/*
+ *  MessageDispatcherTest
+ *
+ */
+
+package messif.network;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import messif.objects.nio.BinaryInput;
+import messif.objects.nio.BinaryOutput;
+import messif.objects.nio.BinarySerializator;
+import test.TestConstants;
+
+/**
+ *
+ * @author xbatko
+ */
+public class MessageDispatcherTest extends TestCase {
+
+    public MessageDispatcherTest(String testName) {
+        super(testName);
+    }
+
+    private static class TestMessage extends Message {
+        private static final long serialVersionUID = 1L;
+        private final int value;
+        private TestMessage(int value) {
+            this.value = value;
+        }
+    }
+
+    private static class TestReplyMessage extends ReplyMessage {
+        private static final long serialVersionUID = 1L;
+        private final int value;
+        private TestReplyMessage(TestMessage message) {
+            super(message);
+            this.value = message.value * 2;
+        }
+    }
+
+    private static final AtomicInteger binaryMessagesRead = new AtomicInteger();
+
+    private static class TestBinaryMessage extends Message {
+        private static final long serialVersionUID = 1L;
+        private final String text;
+        private TestBinaryMessage(String text) {
+            this.text = text;
+        }
+        protected TestBinaryMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+            super(input, serializator);
+            this.text = serializator.readString(input);
+            binaryMessagesRead.incrementAndGet();
+        }
+        @Override
+        public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+            return super.binarySerialize(output, serializator) + serializator.write(output, text);
+        }
+        @Override
+        public int getBinarySize(BinarySerializator serializator) {
+            return super.getBinarySize(serializator) + serializator.getBinarySize(text);
+        }
+    }
+
+    private static class TestBinaryReplyMessage extends ReplyMessage {
+        private static final long serialVersionUID = 1L;
+        private final String text;
+        private TestBinaryReplyMessage(TestBinaryMessage message) {
+            super(message);
+            this.text = message.text + message.text;
+        }
+        protected TestBinaryReplyMessage(BinaryInput input, BinarySerializator serializator) throws IOException {
+            super(input, serializator);
+            this.text = serializator.readString(input);
+            binaryMessagesRead.incrementAndGet();
+        }
+        @Override
+        public int binarySerialize(BinaryOutput output, BinarySerializator serializator) throws IOException {
+            return super.binarySerialize(output, serializator) + serializator.write(output, text);
+        }
+        @Override
+        public int getBinarySize(BinarySerializator serializator) {
+            return super.getBinarySize(serializator) + serializator.getBinarySize(text);
+        }
+    }
+
+    private static MessageDispatcher createDispatcher() throws IOException {
+        return new MessageDispatcher(new NetworkNode("127.0.0.1", TestConstants.getFreePort()), 0, true);
+    }
+
+    private static void registerReplyingReceiver(final MessageDispatcher server) {
+        server.registerReceiver(new Receiver() {
+            @Override
+            public boolean acceptMessage(Message msg, boolean allowSuperclass) {
+                try {
+                    if (msg instanceof TestMessage)
+                        server.replyMessage(new TestReplyMessage((TestMessage)msg));
+                    else if (msg instanceof TestBinaryMessage)
+                        server.replyMessage(new TestBinaryReplyMessage((TestBinaryMessage)msg));
+                    else
+                        return false;
+                } catch (IOException e) {
+                    fail(e.toString());
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Test of sending messages and replies through the non-blocking transport.
+     */
+    public void testNonBlockingTransport() throws Throwable {
+        final MessageDispatcher client = createDispatcher();
+        final MessageDispatcher server = createDispatcher();
+        try {
+            assertTrue(client.isNonBlockingTransport());
+            registerReplyingReceiver(server);
+
+            final List<Throwable> errors = new ArrayList<Throwable>();
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 100; i++) {
+                                TestReplyMessage reply = client.sendMessageWaitSingleReply(new TestMessage(i), TestReplyMessage.class, server.getNetworkNode(), 10000);
+                                assertEquals(i * 2, reply.value);
+                            }
+                        } catch (Throwable e) {
+                            synchronized (errors) {
+                                errors.add(e);
+                            }
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+            if (!errors.isEmpty())
+                throw errors.get(0);
+        } finally {
+            client.closeSockets();
+            server.closeSockets();
+        }
+    }
+
+    /**
+     * Test of sending binary-serialized messages and replies through the non-blocking transport.
+     */
+    public void testBinaryTransport() throws Throwable {
+        MessageDispatcher client = createDispatcher();
+        MessageDispatcher server = createDispatcher();
+        try {
+            registerReplyingReceiver(server);
+            binaryMessagesRead.set(0);
+            for (int i = 0; i < 100; i++) {
+                TestBinaryReplyMessage reply = client.sendMessageWaitSingleReply(new TestBinaryMessage("msg" + i), TestBinaryReplyMessage.class, server.getNetworkNode(), 10000);
+                assertEquals("msg" + i + "msg" + i, reply.text);
+                assertEquals(server.getNetworkNode(), reply.getSender());
+            }
+            // The first messages are sent by Java serialization until the handshake is confirmed
+            assertTrue(binaryMessagesRead.get() > 100);
+        } finally {
+            client.closeSockets();
+            server.closeSockets();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  MetaObjectArrayWeightedSumTest
+ *
+ */
+
+package messif.objects.impl;
+
+import java.util.Random;
+import junit.framework.TestCase;
+import messif.objects.LocalAbstractObject;
+
+/**
+ *
+ * @author xbatko
+ */
+public class MetaObjectArrayWeightedSumTest extends TestCase {
+
+    public MetaObjectArrayWeightedSumTest(String testName) {
+        super(testName);
+    }
+
+    private static MetaObjectArrayWeightedSum createObject(Random random) {
+        int[] small = new int[4];
+        int[] large = new int[64];
+        float[] medium = new float[16];
+        for (int i = 0; i < small.length; i++)
+            small[i] = random.nextInt(100);
+        for (int i = 0; i < large.length; i++)
+            large[i] = random.nextInt(100);
+        for (int i = 0; i < medium.length; i++)
+            medium[i] = random.nextFloat() * 100;
+        return new MetaObjectArrayWeightedSum(new ObjectIntVectorL1(large), null, new ObjectIntVectorL1(small), new ObjectFloatVectorL2(medium));
+    }
+
+    /**
+     * Test of the lazy evaluation of the weighted sum with threshold.
+     */
+    public void testLazyDistance() {
+        Random random = new Random(42);
+        MetaObjectArrayWeightedSum query = createObject(random);
+        for (int i = 0; i < 1000; i++) {
+            MetaObjectArrayWeightedSum object = createObject(random);
+            float[] metaDistances = new float[query.getObjectCount()];
+            float distance = query.getDistance(object, metaDistances, LocalAbstractObject.MAX_DISTANCE);
+            float expected = 0;
+            for (int j = 0; j < query.getObjectCount(); j++) {
+                if (j == 1) {
+                    assertEquals(LocalAbstractObject.UNKNOWN_DISTANCE, metaDistances[j]);
+                } else {
+                    assertEquals(query.getObject(j).getDistance(object.getObject(j)), metaDistances[j]);
+                    expected += metaDistances[j];
+                }
+            }
+            assertEquals(expected, distance, expected * 1e-6f);
+
+            // The distances above threshold are not exact, but must be greater
+            float threshold = random.nextFloat() * 2 * expected;
+            float thresholdDistance = query.getDistance(object, threshold);
+            if (expected <= threshold)
+                assertEquals(distance, thresholdDistance, expected * 1e-6f);
+            else
+                assertTrue(thresholdDistance > threshold);
+        }
+    }
+
+    /**
+     * Test that the meta distances of the objects with zero weights are not modified.
+     */
+    public void testZeroWeightDistance() {
+        Random random = new Random(42);
+        MetaObjectArrayWeightedSum query = new MetaObjectArrayWeightedSum(createObject(random).getObjects().toArray(new LocalAbstractObject[4])) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected float getWeight(int index) {
+                return index == 0 ? 0 : 1;
+            }
+        };
+        MetaObjectArrayWeightedSum object = createObject(random);
+        float[] metaDistances = new float[] { 123, 0, 0, 0 };
+        float distance = query.getDistance(object, metaDistances, LocalAbstractObject.MAX_DISTANCE);
+        assertEquals(123f, metaDistances[0]);
+        assertEquals(metaDistances[2] + metaDistances[3], distance, distance * 1e-6f);
+
+        metaDistances[0] = 123;
+        assertTrue(query.getDistance(object, metaDistances, distance / 10) > distance / 10);
+        assertEquals(123f, metaDistances[0]);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *  VectorDistanceKernelTest
+ *
+ */
+
+package messif.objects.impl;
+
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author xbatko
+ */
+public class VectorDistanceKernelTest extends TestCase {
+
+    private static final int[] dimensions = { 0, 1, 3, 4, 7, 64, 513, 4096 };
+
+    private final VectorDistanceKernel reference = new ScalarVectorDistanceKernel();
+    private final VectorDistanceKernel unrolled = new UnrolledVectorDistanceKernel();
+    private final Random random = new Random(42);
+
+    public VectorDistanceKernelTest(String testName) {
+        super(testName);
+    }
+
+    private float[] randomFloats(int dimension) {
+        float[] data = new float[dimension];
+        for (int i = 0; i < dimension; i++)
+            data[i] = random.nextFloat() * 255;
+        return data;
+    }
+
+    private static void assertClose(float expected, float actual) {
+        assertClose(expected, actual, 1e-5f);
+    }
+
+    private static void assertClose(float expected, float actual, float relativeError) {
+        assertEquals(expected, actual, Math.max(Math.abs(expected), 1f) * relativeError);
+    }
+
+    /**
+     * Test of float distances of the unrolled kernel against the reference kernel.
+     */
+    public void testFloatDistances() {
+        for (int dimension : dimensions) {
+            float[] data1 = randomFloats(dimension);
+            float[] data2 = randomFloats(dimension);
+            assertClose(reference.l1(data1, data2), unrolled.l1(data1, data2));
+            assertClose(reference.l2(data1, data2), unrolled.l2(data1, data2));
+            assertEquals(reference.lmax(data1, data2), unrolled.lmax(data1, data2));
+            if (dimension > 0)
+                assertClose(reference.cosine(data1, data2), unrolled.cosine(data1, data2));
+        }
+    }
+
+    /**
+     * Test of integer distances of the unrolled kernel against the reference kernel.
+     */
+    public void testIntegerDistances() {
+        for (int dimension : dimensions) {
+            byte[] bytes1 = new byte[dimension];
+            byte[] bytes2 = new byte[dimension];
+            random.nextBytes(bytes1);
+            random.nextBytes(bytes2);
+            assertEquals(reference.l1(bytes1, bytes2), unrolled.l1(bytes1, bytes2));
+            // The reference kernel sums the squares in float, which is not exact above 2^24
+            assertClose(reference.l2(bytes1, bytes2), unrolled.l2(bytes1, bytes2), 1e-4f);
+
+            short[] shorts1 = new short[dimension];
+            short[] shorts2 = new short[dimension];
+            int[] ints1 = new int[dimension];
+            int[] ints2 = new int[dimension];
+            for (int i = 0; i < dimension; i++) {
+                shorts1[i] = (short)random.nextInt();
+                shorts2[i] = (short)random.nextInt();
+                ints1[i] = random.nextInt(1 << 20);
+                ints2[i] = random.nextInt(1 << 20);
+            }
+            assertClose(reference.l1(shorts1, shorts2), unrolled.l1(shorts1, shorts2));
+            assertClose(reference.l2(shorts1, shorts2), unrolled.l2(shorts1, shorts2), 1e-4f);
+            assertClose(reference.l1(ints1, ints2), unrolled.l1(ints1, ints2));
+            assertClose(reference.l2(ints1, ints2), unrolled.l2(ints1, ints2));
+        }
+    }
+
+    /**
+     * Test of the early abandoning of the distance computation when the threshold is exceeded.
+     */
+    public void testThreshold() {
+        for (VectorDistanceKernel kernel : new VectorDistanceKernel[] { reference, unrolled }) {
+            for (int dimension : dimensions) {
+                float[] data1 = randomFloats(dimension);
+                float[] data2 = randomFloats(dimension);
+                float l1 = kernel.l1(data1, data2);
+                float l2 = kernel.l2(data1, data2);
+                float lmax = kernel.lmax(data1, data2);
+                assertEquals(l1, kernel.l1(data1, data2, l1));
+                assertEquals(l2, kernel.l2(data1, data2, l2));
+                assertEquals(lmax, kernel.lmax(data1, data2, lmax));
+                if (dimension > 0) {
+                    assertTrue(kernel.l1(data1, data2, l1 / 4) > l1 / 4);
+                    assertTrue(kernel.l2(data1, data2, l2 / 4) > l2 / 4);
+                    assertTrue(kernel.lmax(data1, data2, lmax / 4) > lmax / 4);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of the early abandoning of the edit distance computation.
+     */
+    public void testEditDistanceThreshold() {
+        ObjectStringEditDist o1 = new ObjectStringEditDist("kitten sitting on the mat");
+        ObjectStringEditDist o2 = new ObjectStringEditDist("sitting kitten at the mall");
+        float distance = o1.getDistance(o2);
+        assertEquals(distance, o1.getDistance(o2, distance));
+        assertTrue(o1.getDistance(o2, distance - 1) > distance - 1);
+        assertEquals(3f, new ObjectStringEditDist("kitten").getDistance(new ObjectStringEditDist("sitting"), 3));
+    }
+
+    /**
+     * Test that the vector objects compute the same distances as the reference kernel.
+     */
+    public void testObjectDispatch() {
+        float[] data1 = randomFloats(128);
+        float[] data2 = randomFloats(128);
+        assertClose(reference.l2(data1, data2), new ObjectFloatVectorL2(data1).getDistance(new ObjectFloatVectorL2(data2)));
+        assertClose(reference.l1(data1, data2), new ObjectFloatVectorL1(data1).getDistance(new ObjectFloatVectorL1(data2)));
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *  SnapshotObjectStreamTest
+ *
+ */
+
+package messif.objects.nio;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+import messif.buckets.index.LocalAbstractObjectOrder;
+import messif.buckets.index.ModifiableOrderedIndex;
+import messif.buckets.index.Search;
+import messif.buckets.index.impl.LongStorageFrontCodedIndex;
+import messif.buckets.index.impl.LongStorageIndex;
+import messif.buckets.index.impl.LongStorageMemoryIndex;
+import messif.buckets.storage.LongAddress;
+import messif.buckets.storage.impl.DiskStorage;
+import messif.objects.LocalAbstractObject;
+import test.TestConstants;
+
+/**
+ *
+ * @author xbatko
+ */
+public class SnapshotObjectStreamTest extends TestCase {
+
+    private static final int objectCount = 1000;
+
+    private File snapshotFile;
+    private List<ModifiableOrderedIndex<String, LocalAbstractObject>> indexes;
+    private List<String> locators;
+
+    public SnapshotObjectStreamTest(String testName) {
+        super(testName);
+    }
+
+    private static String createLocator(int i) {
+        return String.format("http://images.example.org/collection/%06d.jpg", i);
+    }
+
+    private static DiskStorage<LocalAbstractObject> createStorage() throws Exception {
+        File file = File.createTempFile(TestConstants.storfilePrefix, ".stor", new File("."));
+        return new DiskStorage<LocalAbstractObject>(LocalAbstractObject.class, file, false, 1024, false, 0, 0, Long.MAX_VALUE, TestConstants.createSerializator());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        snapshotFile = File.createTempFile(TestConstants.storfilePrefix, ".bin", new File("."));
+        indexes = new ArrayList<ModifiableOrderedIndex<String, LocalAbstractObject>>();
+        indexes.add(new LongStorageIndex<String, LocalAbstractObject>(createStorage(), LocalAbstractObjectOrder.locatorToLocalObjectComparator));
+        indexes.add(new LongStorageMemoryIndex<String, LocalAbstractObject>(createStorage(), LocalAbstractObjectOrder.locatorToLocalObjectComparator));
+        indexes.add(new LongStorageFrontCodedIndex<LocalAbstractObject>(createStorage(), LocalAbstractObjectOrder.locatorToLocalObjectComparator));
+
+        locators = new ArrayList<String>();
+        for (int i = 0; i < objectCount; i++)
+            locators.add(createLocator(i));
+        Collections.shuffle(locators, new Random(42));
+        for (ModifiableOrderedIndex<String, LocalAbstractObject> index : indexes)
+            for (String locator : locators)
+                index.add(TestConstants.createObject(locator));
+        Collections.sort(locators);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (ModifiableOrderedIndex<String, LocalAbstractObject> index : indexes) {
+            try {
+                index.destroy();
+            } catch (Throwable e) {
+                throw new Exception(e);
+            }
+        }
+        snapshotFile.delete();
+        super.tearDown();
+    }
+
+    private static List<String> searchLocators(Search<LocalAbstractObject> search) {
+        List<String> ret = new ArrayList<String>();
+        while (search.next())
+            ret.add(search.getCurrentObject().getLocatorURI());
+        search.close();
+        return ret;
+    }
+
+    /**
+     * Test of writing the indexes to a snapshot and restoring them.
+     */
+    public void testSnapshot() throws Exception {
+        assertFalse(SnapshotObjectInputStream.isSnapshot(snapshotFile));
+        ObjectOutputStream out = new SnapshotObjectOutputStream(snapshotFile);
+        try {
+            out.writeObject(indexes);
+        } finally {
+            out.close();
+        }
+        assertTrue(SnapshotObjectInputStream.isSnapshot(snapshotFile));
+
+        List<ModifiableOrderedIndex<String, LocalAbstractObject>> restored;
+        SnapshotObjectInputStream in = new SnapshotObjectInputStream(snapshotFile);
+        try {
+            // Three storage headers, two sections of the memory index and front-coded index, one section of the address index and the object stream
+            assertEquals(3 + 2 + 2 + 1 + 1, in.getSectionCount());
+            @SuppressWarnings("unchecked")
+            List<ModifiableOrderedIndex<String, LocalAbstractObject>> list = (List<ModifiableOrderedIndex<String, LocalAbstractObject>>)in.readObject();
+            restored = list;
+        } finally {
+            in.close();
+        }
+
+        // The sections remain accessible after the snapshot stream is closed
+        for (ModifiableOrderedIndex<String, LocalAbstractObject> index : restored) {
+            assertEquals(objectCount, index.size());
+            assertEquals(locators, searchLocators(index.search()));
+            assertEquals(Collections.singletonList(createLocator(123)), searchLocators(index.search(createLocator(123), true)));
+        }
+
+        // The front-coded index must not modify the mapped section
+        ModifiableOrderedIndex<String, LocalAbstractObject> frontCoded = restored.get(2);
+        frontCoded.add(TestConstants.createObject(createLocator(123)));
+        assertEquals(Arrays.asList(createLocator(123), createLocator(123)), searchLocators(frontCoded.search(createLocator(123), true)));
+        assertEquals(objectCount + 1, frontCoded.size());
+        assertEquals(locators, searchLocators(indexes.get(2).search()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ModifiableOrderedIndex<String, LocalAbstractObject>> writeAndRestore(List<ModifiableOrderedIndex<String, LocalAbstractObject>> indexes) throws Exception {
+        ObjectOutputStream out = new SnapshotObjectOutputStream(snapshotFile);
+        try {
+            out.writeObject(indexes);
+        } finally {
+            out.close();
+        }
+        ObjectInputStream in = new SnapshotObjectInputStream(snapshotFile);
+        try {
+            return (List<ModifiableOrderedIndex<String, LocalAbstractObject>>)in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Test of storing the indexes restored from a snapshot back to the same snapshot file.
+     */
+    public void testSnapshotStoredBack() throws Exception {
+        List<ModifiableOrderedIndex<String, LocalAbstractObject>> restored = writeAndRestore(indexes);
+        List<ModifiableOrderedIndex<String, LocalAbstractObject>> restoredAgain = writeAndRestore(restored);
+
+        // Both the indexes read from the replaced file and the ones read from the new file must work
+        for (List<ModifiableOrderedIndex<String, LocalAbstractObject>> list : Arrays.asList(restored, restoredAgain)) {
+            for (ModifiableOrderedIndex<String, LocalAbstractObject> index : list) {
+                assertEquals(objectCount, index.size());
+                assertEquals(locators, searchLocators(index.search()));
+            }
+        }
+        assertEquals(0, snapshotFile.getAbsoluteFile().getParentFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(snapshotFile.getName()) && !name.equals(snapshotFile.getName());
+            }
+        }).length);
+    }
+
+    private DiskStorage<LocalAbstractObject> writeAndRestore(DiskStorage<LocalAbstractObject> storage, LongAddress<LocalAbstractObject> removed) throws Exception {
+        ObjectOutputStream out = new SnapshotObjectOutputStream(snapshotFile);
+        try {
+            out.writeObject(storage);
+        } finally {
+            out.close();
+        }
+        // Modify the file in place after the snapshot (the size of the file does not change)
+        if (removed != null) {
+            removed.remove();
+            storage.flush(true);
+        }
+        ObjectInputStream in = new SnapshotObjectInputStream(snapshotFile);
+        try {
+            @SuppressWarnings("unchecked")
+            DiskStorage<LocalAbstractObject> restored = (DiskStorage<LocalAbstractObject>)in.readObject();
+            return restored;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Test of restoring the disk storage header from a snapshot, the header must not be used
+     * if the storage file was modified after the snapshot.
+     */
+    public void testSnapshotHeader() throws Exception {
+        DiskStorage<LocalAbstractObject> storage = createStorage();
+        List<LongAddress<LocalAbstractObject>> addresses = new ArrayList<LongAddress<LocalAbstractObject>>();
+        for (String locator : locators)
+            addresses.add(storage.store(TestConstants.createObject(locator)));
+
+        // The unmodified file is restored with the snapshot header values
+        assertEquals(objectCount, writeAndRestore(storage, null).size());
+
+        // The object removed after the snapshot must not be counted
+        storage.store(TestConstants.createObject(createLocator(objectCount)));
+        assertEquals(objectCount, writeAndRestore(storage, addresses.get(0)).size());
+        assertEquals(objectCount, storage.size());
+
+        try {
+            storage.destroy();
+        } catch (Throwable e) {
+            throw new Exception(e);
+        }
+    }
+}
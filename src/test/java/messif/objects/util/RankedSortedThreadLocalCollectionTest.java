@@ -0,0 +1,93 @@
+/*
+ *  RankedSortedThreadLocalCollectionTest
+ *
+ */
+
+package messif.objects.util;
+
+import java.util.Iterator;
+import java.util.Random;
+import junit.framework.TestCase;
+import messif.objects.LocalAbstractObject;
+import messif.objects.impl.ObjectIntVectorL1;
+import messif.objects.keys.AbstractObjectKey;
+import messif.operations.OperationErrorCode;
+import messif.operations.query.KNNQueryOperation;
+
+/**
+ *
+ * @author xbatko
+ */
+public class RankedSortedThreadLocalCollectionTest extends TestCase {
+
+    private static final int threadCount = 4;
+    private static final int objectsPerThread = 10000;
+    private static final int k = 30;
+
+    public RankedSortedThreadLocalCollectionTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * Test of concurrent add method, of class RankedSortedThreadLocalCollection.
+     */
+    public void testConcurrentAdd() throws Throwable {
+        final RankedSortedCollection expected = new RankedSortedCollection(k, k);
+        final RankedSortedThreadLocalCollection instance = new RankedSortedThreadLocalCollection(k, k);
+        KNNQueryOperation operation = new KNNQueryOperation(new ObjectIntVectorL1(new int[] { 0 }), k);
+        operation.setAnswerCollection(instance);
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final Random random = new Random(i);
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < objectsPerThread; j++) {
+                        RankedAbstractObject object = new RankedAbstractObject(null, random.nextFloat());
+                        instance.add(object);
+                        expected.add(object);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        operation.endOperation(OperationErrorCode.RESPONSE_RETURNED);
+
+        assertEquals(k, instance.size());
+        assertTrue(instance.getThresholdDistance() == expected.getThresholdDistance());
+        Iterator<RankedAbstractObject> expectedIterator = expected.iterator();
+        for (RankedAbstractObject object : instance)
+            assertSame(expectedIterator.next(), object);
+    }
+
+    /**
+     * Test of add method when ignoring duplicates, of class RankedSortedThreadLocalCollection.
+     */
+    public void testAddIgnoringDuplicates() throws Throwable {
+        RankedSortedCollection expected = new RankedSortedCollection(k, k);
+        RankedSortedThreadLocalCollection instance = new RankedSortedThreadLocalCollection(k, k);
+        expected.setIgnoringDuplicates(true);
+        instance.setIgnoringDuplicates(true);
+
+        Random random = new Random(42);
+        for (int j = 0; j < objectsPerThread; j++) {
+            ObjectIntVectorL1 object = new ObjectIntVectorL1(new int[] { random.nextInt(1000) });
+            object.setObjectKey(new AbstractObjectKey(Integer.toString(j)));
+            float distance = random.nextFloat();
+            // Every object is added twice, the duplicate must be ignored
+            for (int d = 0; d < 2; d++) {
+                assertEquals(expected.add(new RankedAbstractObject(object, distance)), instance.add(new RankedAbstractObject(object, distance)));
+                assertTrue(instance.getThresholdDistance() == expected.getThresholdDistance());
+            }
+        }
+
+        assertEquals(k, instance.size());
+        assertTrue(instance.getThresholdDistance() < LocalAbstractObject.MAX_DISTANCE);
+        Iterator<RankedAbstractObject> expectedIterator = expected.iterator();
+        for (RankedAbstractObject object : instance)
+            assertSame(expectedIterator.next().getObject(), object.getObject());
+    }
+}
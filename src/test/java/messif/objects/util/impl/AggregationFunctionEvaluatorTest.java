@@ -0,0 +1,128 @@
+/*
+ *  AggregationFunctionEvaluatorTest
+ *
+ */
+
+package messif.objects.util.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.TestCase;
+import messif.objects.LocalAbstractObject;
+import messif.objects.MetaObject;
+import messif.objects.impl.MetaObjectMap;
+import messif.objects.impl.ObjectFloatVectorL2;
+import messif.objects.impl.ObjectIntVectorL1;
+
+/**
+ *
+ * @author xbatko
+ */
+public class AggregationFunctionEvaluatorTest extends TestCase {
+
+    private static final String[] functions = {
+        "(0.3*ColorLayout) + (0.7*EdgeHistogram)",
+        "(ColorLayout*2) + EdgeHistogram + (0.5*ScalableColor) + ColorLayout",
+        "ColorLayout + (EdgeHistogram + ScalableColor)",
+        "(NaN*ColorLayout) + EdgeHistogram",
+        "log(ColorLayout + 1) - (EdgeHistogram / ScalableColor)",
+        "(ColorLayout ^ 2) + log10(EdgeHistogram) * (2 + 3)",
+        "(2 * 3) + log(10)"
+    };
+
+    public AggregationFunctionEvaluatorTest(String testName) {
+        super(testName);
+    }
+
+    private static AggregationFunctionEvaluator serialize(AggregationFunctionEvaluator evaluator) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(buffer);
+        out.writeObject(evaluator);
+        out.close();
+        return (AggregationFunctionEvaluator)new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray())).readObject();
+    }
+
+    /**
+     * Test of the compiled evaluation against the interpreted one.
+     */
+    public void testCompute() throws Exception {
+        Random random = new Random(42);
+        for (String function : functions) {
+            AggregationFunctionEvaluator interpreted = new AggregationFunctionEvaluator(function, null, false);
+            AggregationFunctionEvaluator compiled = new AggregationFunctionEvaluator(function);
+            AggregationFunctionEvaluator deserialized = serialize(compiled);
+            assertFalse(interpreted.isCompiled());
+            assertTrue(deserialized.isCompiled());
+            assertEquals(interpreted.getParameterCount(), compiled.getParameterCount());
+
+            float[] distances = new float[compiled.getParameterCount()];
+            for (int i = 0; i < 1000; i++) {
+                for (int j = 0; j < distances.length; j++)
+                    distances[j] = random.nextFloat() * 100;
+                float expected = interpreted.compute(distances);
+                assertEquals(function, Float.floatToIntBits(expected), Float.floatToIntBits(compiled.compute(distances)));
+                assertEquals(function, Float.floatToIntBits(expected), Float.floatToIntBits(deserialized.compute(distances)));
+            }
+        }
+    }
+
+    /**
+     * Test of the recognition of monotonous functions.
+     */
+    public void testMonotonous() {
+        assertTrue(new AggregationFunctionEvaluator("(0.3*ColorLayout) + (0.7*EdgeHistogram)").isMonotonous());
+        assertTrue(new AggregationFunctionEvaluator("log(ColorLayout + 1) + (EdgeHistogram ^ 2) / 4").isMonotonous());
+        assertFalse(new AggregationFunctionEvaluator("ColorLayout - EdgeHistogram").isMonotonous());
+        assertFalse(new AggregationFunctionEvaluator("(0 - ColorLayout) + EdgeHistogram").isMonotonous());
+        assertFalse(new AggregationFunctionEvaluator("ColorLayout / EdgeHistogram").isMonotonous());
+    }
+
+    private static MetaObject createObject(Random random) {
+        int[] large = new int[64];
+        float[] small = new float[4];
+        for (int i = 0; i < large.length; i++)
+            large[i] = random.nextInt(100);
+        for (int i = 0; i < small.length; i++)
+            small[i] = random.nextFloat() * 100;
+        Map<String, LocalAbstractObject> objects = new HashMap<String, LocalAbstractObject>();
+        objects.put("EdgeHistogram", new ObjectIntVectorL1(large));
+        objects.put("ColorLayout", new ObjectFloatVectorL2(small));
+        return new MetaObjectMap((String)null, objects);
+    }
+
+    /**
+     * Test of the lazy evaluation of a monotonous function with threshold.
+     */
+    public void testLazyDistance() {
+        Random random = new Random(42);
+        AggregationFunctionEvaluator function = new AggregationFunctionEvaluator("(0.3*EdgeHistogram) + (ColorLayout ^ 2) / 4");
+        MetaObject query = createObject(random);
+        int skipped = 0;
+        for (int i = 0; i < 1000; i++) {
+            MetaObject object = createObject(random);
+            float[] descriptorDistances = new float[function.getParameterCount()];
+            float expected = function.getDistance(query, object, descriptorDistances);
+
+            // The distances above threshold are not exact, but must be greater
+            float threshold = random.nextFloat() * 2 * expected;
+            float[] lazyDistances = new float[function.getParameterCount()];
+            float distance = function.getDistance(query, object, lazyDistances, threshold);
+            if (expected <= threshold) {
+                assertEquals(expected, distance, expected * 1e-6f);
+                for (int j = 0; j < descriptorDistances.length; j++)
+                    assertEquals(descriptorDistances[j], lazyDistances[j]);
+            } else {
+                assertTrue(distance > threshold);
+                for (float lazyDistance : lazyDistances)
+                    if (lazyDistance == LocalAbstractObject.UNKNOWN_DISTANCE)
+                        skipped++;
+            }
+        }
+        assertTrue("No descriptor distance skipped", skipped > 0);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *  BatchKNNQueryOperationTest
+ *
+ */
+
+package messif.operations.query;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import junit.framework.TestCase;
+import messif.buckets.LocalBucket;
+import messif.buckets.impl.MemoryStorageBucket;
+import messif.objects.LocalAbstractObject;
+import messif.objects.PrecomputedDistancesFixedArrayFilter;
+import messif.objects.impl.ObjectIntVectorL1;
+import messif.objects.util.RankedAbstractObject;
+import messif.objects.util.StreamGenericAbstractObjectIterator;
+import messif.operations.AnswerType;
+import messif.operations.SharedScanEvaluator;
+import test.TestConstants;
+
+/**
+ *
+ * @author xbatko
+ */
+public class BatchKNNQueryOperationTest extends TestCase {
+
+    private static final int objectCount = 3 * SharedScanEvaluator.DEFAULT_BLOCK_SIZE + 17;
+    private static final int queryCount = 7;
+
+    public BatchKNNQueryOperationTest(String testName) {
+        super(testName);
+    }
+
+    private static LocalBucket createBucket(List<LocalAbstractObject> objects) throws Exception {
+        LocalBucket bucket = new MemoryStorageBucket(Long.MAX_VALUE, Long.MAX_VALUE, 0, false);
+        for (LocalAbstractObject object : objects)
+            bucket.addObject(object);
+        return bucket;
+    }
+
+    private static StreamGenericAbstractObjectIterator<LocalAbstractObject> createQueryObjects() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < queryCount; i++)
+            TestConstants.createObject("query" + i).write(stream);
+        return new StreamGenericAbstractObjectIterator<LocalAbstractObject>(
+                ObjectIntVectorL1.class, new BufferedReader(new StringReader(stream.toString()))
+        );
+    }
+
+    private static void addPrecomputedDistances(LocalAbstractObject object, LocalAbstractObject[] pivots) {
+        new PrecomputedDistancesFixedArrayFilter(object).addPrecompDist(pivots, object);
+    }
+
+    private static void assertAnswerEquals(KNNQueryOperation expected, KNNQueryOperation actual) {
+        assertEquals("Number of answer objects", expected.getAnswerCount(), actual.getAnswerCount());
+        Iterator<RankedAbstractObject> expectedAnswer = expected.getAnswer();
+        Iterator<RankedAbstractObject> actualAnswer = actual.getAnswer();
+        while (expectedAnswer.hasNext()) {
+            RankedAbstractObject expectedObject = expectedAnswer.next();
+            RankedAbstractObject actualObject = actualAnswer.next();
+            assertEquals("Answer distance", expectedObject.getDistance(), actualObject.getDistance());
+            assertEquals("Answer object", expectedObject.getObject().getLocatorURI(), actualObject.getObject().getLocatorURI());
+        }
+    }
+
+    private static void assertBatch(LocalBucket bucket, int k, LocalAbstractObject[] pivots) throws IOException {
+        BatchKNNQueryOperation batch = new BatchKNNQueryOperation(createQueryObjects(), k, AnswerType.ORIGINAL_OBJECTS);
+        assertEquals("Number of batch operations", queryCount, batch.getNOperations());
+        List<KNNQueryOperation> singles = new ArrayList<KNNQueryOperation>(queryCount);
+        for (KNNQueryOperation operation : batch.getKnnOperations()) {
+            if (pivots != null)
+                addPrecomputedDistances(operation.getQueryObject(), pivots);
+            singles.add(new KNNQueryOperation(operation.getQueryObject(), k, AnswerType.ORIGINAL_OBJECTS));
+        }
+
+        bucket.processQuery(batch);
+        for (int i = 0; i < queryCount; i++) {
+            bucket.processQuery(singles.get(i));
+            assertAnswerEquals(singles.get(i), batch.getOperation(i));
+        }
+    }
+
+    /**
+     * Test of evaluate method, of class BatchKNNQueryOperation.
+     */
+    public void testEvaluate() throws Throwable {
+        List<LocalAbstractObject> objects = TestConstants.createObjects();
+        LocalBucket bucket = createBucket(objects);
+        try {
+            assertBatch(bucket, 1, null);
+            assertBatch(bucket, 10, null);
+            assertBatch(bucket, objects.size() + 1, null);
+        } finally {
+            bucket.destroy();
+        }
+    }
+
+    /**
+     * Test of evaluate method with the objects pruned by the answer threshold
+     * and by the precomputed distances, of class BatchKNNQueryOperation.
+     */
+    public void testEvaluatePruned() throws Throwable {
+        List<LocalAbstractObject> objects = new ArrayList<LocalAbstractObject>(objectCount);
+        for (int i = 0; i < objectCount; i++)
+            objects.add(TestConstants.createObject(Integer.toString(i + 1)));
+        LocalAbstractObject[] pivots = new LocalAbstractObject[] { objects.get(0), objects.get(1), objects.get(2) };
+        for (LocalAbstractObject object : objects)
+            addPrecomputedDistances(object, pivots);
+
+        LocalBucket bucket = createBucket(objects);
+        try {
+            assertBatch(bucket, 1, pivots);
+            assertBatch(bucket, 5, pivots);
+            assertBatch(bucket, 50, pivots);
+        } finally {
+            bucket.destroy();
+        }
+    }
+}
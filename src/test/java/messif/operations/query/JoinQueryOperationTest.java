@@ -0,0 +1,123 @@
+/*
+ *  JoinQueryOperationTest
+ *
+ */
+
+package messif.operations.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+import messif.objects.LocalAbstractObject;
+import messif.objects.PrecomputedDistancesFixedArrayFilter;
+import messif.objects.impl.ObjectIntVectorL1;
+import messif.objects.util.AbstractObjectList;
+import messif.objects.util.RankedJoinObject;
+import messif.operations.AnswerType;
+import messif.statistics.OperationStatistics;
+import messif.statistics.StatisticCounter;
+import messif.statistics.Statistics;
+
+/**
+ *
+ * @author xbatko
+ */
+public class JoinQueryOperationTest extends TestCase {
+
+    private static final int objectCount = 3 * JoinQueryOperation.TILE_SIZE + 17;
+
+    public JoinQueryOperationTest(String testName) {
+        super(testName);
+    }
+
+    private static List<LocalAbstractObject> createObjects(boolean precomputedDistances) {
+        Random random = new Random(42);
+        List<LocalAbstractObject> objects = new ArrayList<LocalAbstractObject>(objectCount);
+        for (int i = 0; i < objectCount; i++)
+            objects.add(new ObjectIntVectorL1(new int[] { random.nextInt(1000), random.nextInt(1000) }));
+        if (precomputedDistances) {
+            LocalAbstractObject[] pivots = new LocalAbstractObject[] { objects.get(0), objects.get(1), objects.get(2) };
+            for (LocalAbstractObject object : objects)
+                new PrecomputedDistancesFixedArrayFilter(object).addPrecompDist(pivots, object);
+        }
+        return objects;
+    }
+
+    /**
+     * Returns the sorted distances of all qualifying pairs computed by the nested loop.
+     */
+    private static List<Float> computeDistances(List<LocalAbstractObject> objects, float mu, int k, boolean skipSymmetricPairs) {
+        List<Float> distances = new ArrayList<Float>();
+        for (int i1 = 0; i1 < objects.size(); i1++)
+            for (int i2 = 0; i2 < objects.size(); i2++)
+                if (i1 != i2 && (!skipSymmetricPairs || i1 < i2)) {
+                    float distance = objects.get(i1).getDistance(objects.get(i2));
+                    if (distance <= mu)
+                        distances.add(distance);
+                }
+        Collections.sort(distances);
+        return distances.size() > k ? distances.subList(0, k) : distances;
+    }
+
+    private static void assertJoin(List<LocalAbstractObject> objects, float mu, int k, boolean skipSymmetricPairs) {
+        JoinQueryOperation operation = new JoinQueryOperation(mu, k, skipSymmetricPairs, AnswerType.ORIGINAL_OBJECTS);
+        operation.evaluate(new AbstractObjectList<LocalAbstractObject>(objects).iterator());
+        List<Float> expected = computeDistances(objects, mu, k, skipSymmetricPairs);
+        assertEquals(expected.size(), operation.getAnswerCount());
+
+        Iterator<RankedJoinObject> answer = operation.getAnswer();
+        for (Float distance : expected) {
+            RankedJoinObject pair = answer.next();
+            assertEquals(distance.floatValue(), pair.getDistance());
+            assertEquals(distance.floatValue(), ((LocalAbstractObject)pair.getLeftObject()).getDistance((LocalAbstractObject)pair.getRightObject()));
+        }
+    }
+
+    /**
+     * Test of the range join, of class JoinQueryOperation.
+     */
+    public void testRangeJoin() {
+        for (boolean precomputedDistances : new boolean[] { false, true }) {
+            List<LocalAbstractObject> objects = createObjects(precomputedDistances);
+            assertJoin(objects, 20, Integer.MAX_VALUE, true);
+            assertJoin(objects, 20, Integer.MAX_VALUE, false);
+            assertJoin(objects.subList(0, 10), 300, Integer.MAX_VALUE, false);
+        }
+    }
+
+    /**
+     * Test of the k-closest pairs join, of class JoinQueryOperation.
+     */
+    public void testNearestPairsJoin() {
+        for (boolean precomputedDistances : new boolean[] { false, true }) {
+            List<LocalAbstractObject> objects = createObjects(precomputedDistances);
+            assertJoin(objects, LocalAbstractObject.MAX_DISTANCE, 50, true);
+            assertJoin(objects, 100, 1000, false);
+        }
+    }
+
+    /**
+     * Test that the distance computations of the parallel join are counted in the operation statistics.
+     */
+    public void testDistanceComputationsStatistics() {
+        List<LocalAbstractObject> objects = createObjects(false);
+        // Make sure the pool workers exist before this thread gets a new statistics serial number
+        new JoinQueryOperation(10, 10, true).evaluate(new AbstractObjectList<LocalAbstractObject>(objects).iterator());
+
+        Statistics.resetCurrentThreadLock();
+        OperationStatistics.resetLocalThreadStatistics();
+        StatisticCounter distanceComputations = OperationStatistics.getLocalThreadStatistics().registerBoundStat(StatisticCounter.class, "DistanceComputations", "DistanceComputations");
+        try {
+            JoinQueryOperation operation = new JoinQueryOperation(LocalAbstractObject.MAX_DISTANCE, Integer.MAX_VALUE, true);
+            operation.evaluate(new AbstractObjectList<LocalAbstractObject>(objects).iterator());
+            assertEquals(objectCount * (objectCount - 1) / 2, operation.getAnswerCount());
+            assertEquals((long)operation.getAnswerCount(), OperationStatistics.getOpStatisticCounter("DistanceComputations").get());
+        } finally {
+            distanceComputations.unbind();
+            OperationStatistics.resetLocalThreadStatistics();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  PivotChooserTest
+ *
+ */
+
+package messif.pivotselection;
+
+import java.util.HashSet;
+import java.util.Random;
+import junit.framework.TestCase;
+import messif.objects.LocalAbstractObject;
+import messif.objects.impl.ObjectIntVectorL1;
+import messif.objects.util.AbstractObjectList;
+import messif.statistics.StatisticCounter;
+
+/**
+ *
+ * @author xbatko
+ */
+public class PivotChooserTest extends TestCase {
+
+    private static final int objectCount = 300;
+
+    private final StatisticCounter distanceComputations = StatisticCounter.getStatistics("DistanceComputations");
+    private final StatisticCounter pivotDistanceComputations = StatisticCounter.getStatistics("DistanceComputations.PivotChooser");
+
+    public PivotChooserTest(String testName) {
+        super(testName);
+    }
+
+    private static AbstractObjectList<LocalAbstractObject> createObjects() {
+        Random random = new Random(42);
+        AbstractObjectList<LocalAbstractObject> objects = new AbstractObjectList<LocalAbstractObject>(objectCount);
+        for (int i = 0; i < objectCount; i++)
+            objects.add(new ObjectIntVectorL1(new int[] { random.nextInt(1000), random.nextInt(1000) }));
+        return objects;
+    }
+
+    /**
+     * Test of the parallel computation of the distance matrix.
+     */
+    public void testDistanceMatrix() {
+        AbstractObjectList<LocalAbstractObject> objects = createObjects();
+        DistanceMatrix matrix = new DistanceMatrix(objects);
+        assertEquals(objectCount, matrix.getObjectCount());
+
+        long before = distanceComputations.get();
+        matrix.computeAll();
+        assertEquals(objectCount * (objectCount - 1) / 2, distanceComputations.get() - before);
+
+        before = distanceComputations.get();
+        for (int i = 0; i < objectCount; i++) {
+            assertEquals(0f, matrix.getDistance(i, i));
+            for (int j = 0; j < i; j++) {
+                float distance = matrix.getDistance(i, j);
+                assertEquals(distance, matrix.getDistance(j, i));
+                assertEquals(objects.get(i).getDistance(objects.get(j)), distance);
+            }
+        }
+        assertEquals(objectCount * (objectCount - 1) / 2, distanceComputations.get() - before);
+
+        // Lazy computation of a single block
+        matrix = new DistanceMatrix(objects);
+        before = distanceComputations.get();
+        matrix.getDistance(0, objectCount - 1);
+        matrix.getDistance(1, objectCount - 2);
+        assertEquals(DistanceMatrix.BLOCK_SIZE * (objectCount % DistanceMatrix.BLOCK_SIZE), distanceComputations.get() - before);
+    }
+
+    /**
+     * Test of the parallel outlier pivot chooser and its statistics.
+     */
+    public void testOutlierPivotChooser() {
+        OutlierPivotChooser chooser = new OutlierPivotChooser();
+        chooser.registerSampleProvider(createObjects());
+        long before = pivotDistanceComputations.get();
+        chooser.selectPivot(5);
+        assertEquals(5, chooser.size());
+        assertEquals(objectCount + (objectCount - 1) + (objectCount - 2) + (objectCount - 3) + (objectCount - 4), pivotDistanceComputations.get() - before);
+
+        HashSet<LocalAbstractObject> pivots = new HashSet<LocalAbstractObject>();
+        for (int i = 0; i < chooser.size(); i++)
+            assertTrue(pivots.add(chooser.getPivot(i)));
+    }
+
+    /**
+     * Test of the parallel k-means and incremental pivot choosers.
+     */
+    public void testParallelPivotChoosers() {
+        AbstractPivotChooser[] choosers = { new KMeansPivotChooser(), new IncrementalPivotChooser() };
+        for (AbstractPivotChooser chooser : choosers) {
+            chooser.registerSampleProvider(createObjects());
+            long before = pivotDistanceComputations.get();
+            chooser.selectPivot(3);
+            assertEquals(3, chooser.size());
+            assertTrue(pivotDistanceComputations.get() > before);
+        }
+    }
+}
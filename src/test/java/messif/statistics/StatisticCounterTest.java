@@ -0,0 +1,145 @@
+/*
+ *  StatisticCounterTest
+ *
+ */
+
+package messif.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author xbatko
+ */
+public class StatisticCounterTest extends TestCase {
+
+    private static final int threadCount = 8;
+    private static final int iterations = 10000;
+
+    public StatisticCounterTest(String testName) {
+        super(testName);
+    }
+
+    private static void runThreads(final Runnable task) throws Throwable {
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        if (!errors.isEmpty())
+            throw errors.get(0);
+    }
+
+    /**
+     * Test of concurrent updates of a striped counter and its propagation to the bound statistics.
+     */
+    public void testStripedCounter() throws Throwable {
+        final StatisticCounter global = new StatisticCounter("testStripedCounter");
+        global.setStriped(true);
+        assertTrue(global.isStriped());
+        StatisticCounter bound = new StatisticCounter("testStripedCounter.bound");
+        bound.lockToThread();
+        bound.bindTo(global);
+
+        global.add(5);
+        assertEquals(5, global.get());
+        assertEquals(5, bound.get());
+
+        // The threads inherit the serial number of this thread, so the updates are visible in the bound statistic
+        runThreads(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < iterations; i++)
+                    global.add();
+            }
+        });
+        assertEquals(5 + threadCount * iterations, global.get());
+        assertEquals(5 + threadCount * iterations, bound.get());
+
+        // The pending updates are merged on unbinding
+        global.add(10);
+        bound.unbind();
+        assertEquals(15 + threadCount * iterations, bound.get());
+        global.add(10);
+        assertEquals(15 + threadCount * iterations, bound.get());
+        assertEquals(25 + threadCount * iterations, global.get());
+
+        global.setStriped(false);
+        assertFalse(global.isStriped());
+        global.max(1);
+        assertEquals(25 + threadCount * iterations, global.get());
+    }
+
+    /**
+     * Test of concurrent updates of a striped min-max counter.
+     */
+    public void testStripedMinMaxCounter() throws Throwable {
+        final StatisticMinMaxCounter global = new StatisticMinMaxCounter("testStripedMinMaxCounter");
+        global.setStriped(true);
+        StatisticMinMaxCounter bound = new StatisticMinMaxCounter("testStripedMinMaxCounter.bound");
+        bound.bindTo(global);
+
+        runThreads(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= iterations; i++)
+                    global.addValue(i);
+                global.removeValue(iterations);
+            }
+        });
+        for (StatisticMinMaxCounter stat : new StatisticMinMaxCounter[] { global, bound }) {
+            assertEquals(1.0, stat.getMin());
+            assertEquals((double)iterations, stat.getMax());
+            assertEquals((double)threadCount * (iterations - 1), stat.getCnt());
+            assertEquals((double)threadCount * (iterations - 1) * iterations / 2, stat.getSum());
+        }
+    }
+
+    /**
+     * Test of concurrent updates of a reference counter with striped counters.
+     */
+    public void testStripedRefCounter() throws Throwable {
+        final StatisticRefCounter global = new StatisticRefCounter("testStripedRefCounter");
+        global.setStriped(true);
+        StatisticRefCounter bound = new StatisticRefCounter("testStripedRefCounter.bound");
+        bound.bindTo(global);
+
+        runThreads(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < iterations; i++)
+                    global.add(i % 10);
+            }
+        });
+        assertEquals(10, global.getKeyCount());
+        assertEquals(10, bound.getKeyCount());
+        for (int key = 0; key < 10; key++) {
+            assertEquals(threadCount * iterations / 10, global.get(key));
+            assertEquals(threadCount * iterations / 10, bound.get(key));
+        }
+
+        // Reset of the bound statistic must recreate the keys on the next update
+        bound.reset();
+        bound.bindTo(global);
+        global.add(0);
+        global.add(10);
+        assertEquals(1, bound.get(10));
+        assertEquals(threadCount * iterations / 10 + 1, global.get(0));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  StatisticHistogramTest
+ *
+ */
+
+package messif.statistics;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author xbatko
+ */
+public class StatisticHistogramTest extends TestCase {
+
+    public StatisticHistogramTest(String testName) {
+        super(testName);
+    }
+
+    private static void assertPrecision(long expected, long actual) {
+        assertEquals(expected, actual, Math.max(1, expected / StatisticHistogram.SUB_BUCKET_HALF_COUNT));
+    }
+
+    /**
+     * Test of the bucket index computation.
+     */
+    public void testBuckets() {
+        int lastIndex = -1;
+        for (long value = 0; value < 1000000; value++) {
+            int index = StatisticHistogram.getBucketIndex(value);
+            assertTrue(index == lastIndex || index == lastIndex + 1);
+            assertTrue(StatisticHistogram.getBucketHighestValue(index) >= value);
+            if (index > 0)
+                assertTrue(StatisticHistogram.getBucketHighestValue(index - 1) < value);
+            lastIndex = index;
+        }
+        int index = StatisticHistogram.getBucketIndex(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, StatisticHistogram.getBucketHighestValue(index));
+    }
+
+    /**
+     * Test of the percentiles against the sorted values.
+     */
+    public void testPercentiles() {
+        StatisticHistogram histogram = new StatisticHistogram("testPercentiles");
+        assertEquals(0, histogram.getPercentile(99));
+
+        Random random = new Random(42);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long)Math.abs(random.nextGaussian() * 10000) + random.nextInt(100);
+            histogram.addValue(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCnt());
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+        for (double percentile : new double[] { 1, 50, 95, 99, 99.9 }) {
+            long expected = values[(int)Math.ceil(percentile / 100 * values.length) - 1];
+            assertPrecision(expected, histogram.getPercentile(percentile));
+        }
+    }
+
+    /**
+     * Test of merging, binding and window reset.
+     */
+    public void testWindow() {
+        StatisticHistogram global = new StatisticHistogram("testWindow");
+        StatisticHistogram bound = new StatisticHistogram("testWindow.bound");
+        bound.bindTo(global);
+        for (long value = 1; value <= 1000; value++)
+            global.addValue(value);
+        bound.unbind();
+        global.addValue(1000000);
+
+        StatisticHistogram window = global.resetWindow();
+        assertEquals(0, global.getCnt());
+        assertEquals(1001, window.getCnt());
+        assertEquals(1000000, window.getMax());
+        assertPrecision(500, window.getPercentile(50));
+        assertEquals(1000, bound.getCnt());
+        assertPrecision(990, bound.getPercentile(99));
+
+        global.updateFrom(window);
+        global.updateFrom(bound);
+        assertEquals(2001, global.getCnt());
+        assertEquals(1, global.getMin());
+        assertEquals(1000000, global.getMax());
+        assertTrue(global.getValue().contains(", p999: "));
+        assertTrue(global.getValue().endsWith(", max: 1000000"));
+    }
+}
@@ -7,6 +7,7 @@ package test;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.ServerSocket;
 import java.util.ArrayList;
 import java.util.List;
 import messif.buckets.BucketStorageException;
@@ -110,6 +111,15 @@ public class TestConstants {
         return o;
     }
 
+    public static int getFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
     public static BinarySerializator createSerializator() {
         return new CachingSerializator<LocalAbstractObject>(
                 LocalAbstractObject.class,